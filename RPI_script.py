@@ -1,5 +1,6 @@
 #!/usr/bin/env python3
 
+import json
 import math
 import time
 from datetime import datetime
@@ -74,17 +75,11 @@ def save_unsent_data(file_name: str, unsent_data: dict) -> None:
 
 
 def send_data_to_rest_controller(payload: dict, url: str, unsent_data_file: str) -> bool:
-    combined_payload = load_unsent_data(unsent_data_file)
-
-    for key in payload:
-        combined_payload[key].extend(payload[key])
+    unsent_data = load_unsent_data(unsent_data_file)
 
     try:
-        response = requests.post(url, json=combined_payload)
+        response = requests.post(url, json=payload)
         response.raise_for_status()
-        save_unsent_data(unsent_data_file, {
-                         "currents": [], "gridFrequencies": [], "voltages": []})
-        return True
     except requests.exceptions.RequestException as e:
         if isinstance(e, requests.exceptions.ConnectionError):
             error_message = f"Error occurred while connecting to API: {e}"
@@ -92,7 +87,38 @@ def send_data_to_rest_controller(payload: dict, url: str, unsent_data_file: str)
             error_message = f"Error occurred sending data to API: {e}"
         print(error_message)
         log_error(LOG_FILE_PATH, error_message)
-        save_unsent_data(unsent_data_file, combined_payload)
+        for key in payload:
+            unsent_data[key].extend(payload[key])
+        save_unsent_data(unsent_data_file, unsent_data)
+        return False
+
+    if any(len(data_list) > 0 for data_list in unsent_data.values()):
+        if import_unsent_data(unsent_data, url):
+            save_unsent_data(unsent_data_file, {
+                             "currents": [], "gridFrequencies": [], "voltages": []})
+
+    return True
+
+
+def import_unsent_data(unsent_data: dict, url: str) -> bool:
+    samples = [sample for key in ("currents", "gridFrequencies", "voltages")
+               for sample in unsent_data[key]]
+    # the same backlog keeps the same id, so interrupted import is resumed by server
+    import_id = f"rpi-{samples[0]['time']}-{len(samples)}"
+
+    def ndjson_lines():
+        for sample in samples:
+            yield (json.dumps(sample) + "\n").encode("utf-8")
+
+    try:
+        response = requests.post(url + "/import", params={"importId": import_id}, data=ndjson_lines(),
+                                 headers={"Content-Type": "application/x-ndjson"})
+        response.raise_for_status()
+        return True
+    except requests.exceptions.RequestException as e:
+        error_message = f"Error occurred while importing unsent data: {e}"
+        print(error_message)
+        log_error(LOG_FILE_PATH, error_message)
         return False
 
 
@@ -174,17 +200,9 @@ def mainLoop(unsent_data_file) -> None:
         currents, grid_frequencies, voltages)
 
     rest_controller_url = "http://10.10.0.101:8080/api/electric-quantities"
-    send_success = send_data_to_rest_controller(
+    send_data_to_rest_controller(
         electric_quantities_payload, rest_controller_url, unsent_data_file)
 
-    if send_success:
-        unsent_data = load_unsent_data(unsent_data_file)
-        if any(len(data_list) > 0 for data_list in unsent_data.values()):
-            unsent_send_success = send_data_to_rest_controller(
-                unsent_data, rest_controller_url, unsent_data_file)
-            if not unsent_send_success:
-                save_unsent_data(unsent_data_file, unsent_data)
-
 if __name__ == "__main__":
     while True:
         mainLoop(UNSENT_FILE_PATH)
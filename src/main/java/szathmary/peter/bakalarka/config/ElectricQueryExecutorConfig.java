@@ -0,0 +1,33 @@
+package szathmary.peter.bakalarka.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+@Configuration
+public class ElectricQueryExecutorConfig {
+
+  @Value("${electric-quantities.query.pool-size}")
+  private int poolSize;
+
+  @Value("${electric-quantities.query.queue-capacity}")
+  private int queueCapacity;
+
+  /**
+   * Executor running queries of single electric quantities in parallel. When it is saturated,
+   * query is rejected and its quantity is reported as failed.
+   */
+  @Bean
+  public ThreadPoolTaskExecutor electricQueryExecutor() {
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(poolSize);
+    executor.setMaxPoolSize(poolSize);
+    executor.setQueueCapacity(queueCapacity);
+    executor.setThreadNamePrefix("electric-query-");
+    executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+    return executor;
+  }
+}
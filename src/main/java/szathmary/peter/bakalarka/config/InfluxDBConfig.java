@@ -3,10 +3,15 @@ package szathmary.peter.bakalarka.config;
 import com.influxdb.client.InfluxDBClient;
 import com.influxdb.client.InfluxDBClientFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 @Configuration
+@ConditionalOnProperty(
+    name = "electric-quantities.storage.type",
+    havingValue = "influxdb",
+    matchIfMissing = true)
 public class InfluxDBConfig {
 
   @Value("${influxdb.url}")
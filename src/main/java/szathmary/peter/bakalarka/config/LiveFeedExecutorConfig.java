@@ -0,0 +1,26 @@
+package szathmary.peter.bakalarka.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+public class LiveFeedExecutorConfig {
+
+  @Value("${electric-quantities.live-feed.pool-size}")
+  private int poolSize;
+
+  /**
+   * Executor sending buffered values to live feed subscribers. Every subscriber has at most one
+   * sending task at a time, so queue is bounded by number of subscribers.
+   */
+  @Bean
+  public ThreadPoolTaskExecutor liveFeedExecutor() {
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(poolSize);
+    executor.setMaxPoolSize(poolSize);
+    executor.setThreadNamePrefix("live-feed-");
+    return executor;
+  }
+}
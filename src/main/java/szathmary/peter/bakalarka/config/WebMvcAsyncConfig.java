@@ -0,0 +1,41 @@
+package szathmary.peter.bakalarka.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+public class WebMvcAsyncConfig implements WebMvcConfigurer {
+
+  @Value("${electric-quantities.streaming.pool-size}")
+  private int poolSize;
+
+  @Value("${electric-quantities.streaming.queue-capacity}")
+  private int queueCapacity;
+
+  @Value("${electric-quantities.streaming.timeout-ms}")
+  private long timeoutMillis;
+
+  @Override
+  public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+    configurer.setTaskExecutor(streamingResponseExecutor());
+    configurer.setDefaultTimeout(timeoutMillis);
+  }
+
+  /**
+   * Executor writing streamed response bodies. Streams exceeding its queue are rejected instead of
+   * starting new threads.
+   */
+  @Bean
+  public ThreadPoolTaskExecutor streamingResponseExecutor() {
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(poolSize);
+    executor.setMaxPoolSize(poolSize);
+    executor.setQueueCapacity(queueCapacity);
+    executor.setThreadNamePrefix("streaming-response-");
+    return executor;
+  }
+}
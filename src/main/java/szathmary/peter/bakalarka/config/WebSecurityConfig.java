@@ -2,6 +2,7 @@ package szathmary.peter.bakalarka.config;
 
 import java.util.Arrays;
 import java.util.List;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
@@ -10,10 +11,13 @@ import org.springframework.security.config.annotation.web.configuration.EnableWe
 import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
+import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 import szathmary.peter.bakalarka.config.filter.JwtAuthenticationFilter;
+import szathmary.peter.bakalarka.controller.ElectricQuantityController;
 
 @Configuration
 @EnableWebSecurity
@@ -21,8 +25,13 @@ public class WebSecurityConfig {
 
   private final JwtAuthenticationFilter jwtAuthenticationFilter;
 
-  public WebSecurityConfig(JwtAuthenticationFilter jwtAuthenticationFilter) {
+  private final int managementPort;
+
+  public WebSecurityConfig(
+      JwtAuthenticationFilter jwtAuthenticationFilter,
+      @Value("${management.server.port}") int managementPort) {
     this.jwtAuthenticationFilter = jwtAuthenticationFilter;
+    this.managementPort = managementPort;
   }
 
   @Bean
@@ -38,6 +47,12 @@ public class WebSecurityConfig {
         .permitAll()
         .antMatchers(HttpMethod.POST, "/api/electric-quantities")
         .permitAll()
+        .antMatchers(HttpMethod.POST, "/api/electric-quantities/import")
+        .permitAll()
+        .antMatchers(HttpMethod.GET, "/actuator/health")
+        .permitAll()
+        .requestMatchers(prometheusScrape())
+        .permitAll()
         .anyRequest()
         .authenticated()
         .and()
@@ -47,13 +62,24 @@ public class WebSecurityConfig {
     return http.build();
   }
 
+  /**
+   * Prometheus scrapes metrics without token only on management port, which is not published, so
+   * metrics are reachable only from internal network
+   */
+  private RequestMatcher prometheusScrape() {
+    RequestMatcher prometheusPath =
+        new AntPathRequestMatcher("/actuator/prometheus", HttpMethod.GET.name());
+    return request -> request.getLocalPort() == managementPort && prometheusPath.matches(request);
+  }
+
   @Bean
   CorsConfigurationSource corsConfigurationSource() {
     CorsConfiguration configuration = new CorsConfiguration();
     configuration.setAllowedOrigins(List.of("http://localhost:4200"));
     configuration.setAllowedMethods(Arrays.asList("GET", "POST", "PUT", "DELETE", "OPTIONS"));
     configuration.setAllowedHeaders(Arrays.asList("Authorization", "Content-Type"));
-    configuration.setExposedHeaders(List.of("Authorization"));
+    configuration.setExposedHeaders(
+        List.of("Authorization", ElectricQuantityController.FAILED_QUANTITIES_HEADER));
     configuration.setAllowCredentials(true);
     UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
     source.registerCorsConfiguration("/**", configuration);
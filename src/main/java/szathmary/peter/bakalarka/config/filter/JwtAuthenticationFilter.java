@@ -36,8 +36,8 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
       @NotNull FilterChain filterChain)
       throws ServletException, IOException {
     String jwt = parseJwt(request);
-    if (jwt != null && jwtUtils.validateJwt(jwt)) {
-      String username = jwtUtils.getUsernameFromJwt(jwt);
+    String username = jwt == null ? null : jwtUtils.getUsernameFromValidJwt(jwt);
+    if (username != null) {
       UserDetails userDetails =
           User.withUsername(username).password("").authorities(new ArrayList<>()).build();
       Authentication authentication =
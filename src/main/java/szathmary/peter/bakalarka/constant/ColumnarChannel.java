@@ -0,0 +1,35 @@
+package szathmary.peter.bakalarka.constant;
+
+/**
+ * Channel of columnar electric quantities payload. Channel is identified in payload by its
+ * ordinal, so new channels may only be appended.
+ */
+public enum ColumnarChannel {
+  GRID_FREQUENCY(ElectricQuantities.GRID_FREQUENCY, null),
+  CURRENT_L1(ElectricQuantities.CURRENT, ElectricPhase.L1),
+  CURRENT_L2(ElectricQuantities.CURRENT, ElectricPhase.L2),
+  CURRENT_L3(ElectricQuantities.CURRENT, ElectricPhase.L3),
+  VOLTAGE_L1(ElectricQuantities.VOLTAGE, ElectricPhase.L1),
+  VOLTAGE_L2(ElectricQuantities.VOLTAGE, ElectricPhase.L2),
+  VOLTAGE_L3(ElectricQuantities.VOLTAGE, ElectricPhase.L3);
+
+  private final ElectricQuantities quantity;
+
+  private final ElectricPhase phase;
+
+  ColumnarChannel(ElectricQuantities quantity, ElectricPhase phase) {
+    this.quantity = quantity;
+    this.phase = phase;
+  }
+
+  public ElectricQuantities getQuantity() {
+    return quantity;
+  }
+
+  /**
+   * @return phase of channel, null if quantity has no phases
+   */
+  public ElectricPhase getPhase() {
+    return phase;
+  }
+}
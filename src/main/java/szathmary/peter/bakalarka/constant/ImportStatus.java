@@ -0,0 +1,7 @@
+package szathmary.peter.bakalarka.constant;
+
+public enum ImportStatus {
+  RUNNING,
+  COMPLETED,
+  FAILED
+}
@@ -0,0 +1,12 @@
+package szathmary.peter.bakalarka.constant;
+
+/** What happens with buffered values of live feed subscriber that does not keep up. */
+public enum LiveFeedOverflowPolicy {
+  /** the oldest buffered value is dropped */
+  DROP_OLDEST,
+  /**
+   * buffered values are replaced by the latest value of every quantity, phase and device, the
+   * oldest of them is dropped if there are more of them than capacity
+   */
+  COALESCE
+}
@@ -1,80 +1,189 @@
 package szathmary.peter.bakalarka.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import lombok.extern.slf4j.Slf4j;
 import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import szathmary.peter.bakalarka.constant.ElectricPhase;
 import szathmary.peter.bakalarka.constant.ElectricQuantities;
+import szathmary.peter.bakalarka.constant.LiveFeedOverflowPolicy;
+import szathmary.peter.bakalarka.dto.electric.ElectricQuantitiesColumnarResponseDto;
 import szathmary.peter.bakalarka.dto.electric.ElectricQuantitiesDto;
+import szathmary.peter.bakalarka.dto.electric.ElectricQuantitiesIncrementalResponseDto;
 import szathmary.peter.bakalarka.dto.electric.ElectricQuantitiesMinMaxMeanResponseDto;
+import szathmary.peter.bakalarka.dto.electric.GroupedSeriesDto;
+import szathmary.peter.bakalarka.dto.electric.ImportProgressDto;
 import szathmary.peter.bakalarka.entity.Current;
 import szathmary.peter.bakalarka.entity.GridFrequency;
 import szathmary.peter.bakalarka.entity.Voltage;
+import szathmary.peter.bakalarka.exception.ElectricQuantityQueryException;
+import szathmary.peter.bakalarka.exception.ImportAlreadyRunningException;
 import szathmary.peter.bakalarka.exception.InvalidElectricQuantityException;
+import szathmary.peter.bakalarka.exception.LiveFeedUnavailableException;
 import szathmary.peter.bakalarka.exception.NoDataFound;
+import szathmary.peter.bakalarka.exception.WriteBatchTooLargeException;
+import szathmary.peter.bakalarka.exception.WriteQueueFullException;
+import szathmary.peter.bakalarka.repository.quantity.DeviceRegistry;
+import szathmary.peter.bakalarka.repository.rollup.WindowPlanner;
 import szathmary.peter.bakalarka.service.CurrentElectricService;
 import szathmary.peter.bakalarka.service.GridFrequencyElectricService;
+import szathmary.peter.bakalarka.service.ImportService;
+import szathmary.peter.bakalarka.service.LiveFeedService;
 import szathmary.peter.bakalarka.service.VoltageElectricService;
+import szathmary.peter.bakalarka.service.cache.IncrementalWindowCache;
+import szathmary.peter.bakalarka.service.ingest.ColumnarElectricQuantities;
+import szathmary.peter.bakalarka.service.ingest.ColumnarPayloadDecoder;
+import szathmary.peter.bakalarka.util.QueryParameterUtil;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.List;
-import java.util.function.BiConsumer;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Slf4j
 @RestController
 @RequestMapping("api/electric-quantities")
 public class ElectricQuantityController {
 
+  public static final String FAILED_QUANTITIES_HEADER = "X-Failed-Electric-Quantities";
+
+  public static final String NDJSON_MEDIA_TYPE = "application/x-ndjson";
+
+  public static final String CSV_MEDIA_TYPE = "text/csv";
+
   private final CurrentElectricService currentService;
   private final GridFrequencyElectricService gridFrequencyService;
   private final VoltageElectricService voltageService;
+  private final LiveFeedService liveFeedService;
+  private final ImportService importService;
+  private final DeviceRegistry deviceRegistry;
+  private final AsyncTaskExecutor electricQueryExecutor;
+  private final long queryTimeoutMillis;
+  private final long settleMillis;
+  private final ObjectMapper objectMapper;
 
   public ElectricQuantityController(
       CurrentElectricService currentService,
       GridFrequencyElectricService gridFrequencyService,
-      VoltageElectricService voltageService) {
+      VoltageElectricService voltageService,
+      LiveFeedService liveFeedService,
+      ImportService importService,
+      DeviceRegistry deviceRegistry,
+      @Qualifier("electricQueryExecutor") AsyncTaskExecutor electricQueryExecutor,
+      @Value("${electric-quantities.query.timeout-ms}") long queryTimeoutMillis,
+      @Value("${electric-quantities.cache.grouped-results-settle-ms}") long settleMillis,
+      ObjectMapper objectMapper) {
     this.currentService = currentService;
     this.gridFrequencyService = gridFrequencyService;
     this.voltageService = voltageService;
+    this.liveFeedService = liveFeedService;
+    this.importService = importService;
+    this.deviceRegistry = deviceRegistry;
+    this.electricQueryExecutor = electricQueryExecutor;
+    this.queryTimeoutMillis = queryTimeoutMillis;
+    this.settleMillis = settleMillis;
+    this.objectMapper = objectMapper;
   }
 
   @GetMapping("/selected")
   public ResponseEntity<ElectricQuantitiesDto> findSelected(
       @RequestParam List<ElectricQuantities> electricQuantities,
+      @RequestParam(required = false) String device,
       @RequestParam(required = false) List<ElectricPhase> currentPhaseFilters,
-      @RequestParam(required = false) List<ElectricPhase> voltagePhaseFilters)
-      throws InvalidElectricQuantityException {
+      @RequestParam(required = false) List<ElectricPhase> voltagePhaseFilters,
+      @RequestParam(required = false) Integer maxPoints)
+      throws InvalidElectricQuantityException, ElectricQuantityQueryException {
+    QueryParameterUtil.validateDevice(device);
+    QueryParameterUtil.validateMaxPoints(maxPoints);
     log.info(
         "All electric quantities: {} with Current phases: {} and Voltage phases: {} requested",
-        electricQuantities.toString(),
-        currentPhaseFilters.toString(),
-        voltagePhaseFilters.toString());
+        electricQuantities,
+        currentPhaseFilters,
+        voltagePhaseFilters);
+
+    ElectricQuantitiesResult<List<Current>, List<GridFrequency>, List<Voltage>> result =
+        processElectricQuantities(
+            electricQuantities,
+            currentPhaseFilters,
+            voltagePhaseFilters,
+            phaseFilters ->
+                maxPoints == null
+                    ? currentService.findAll(device, phaseFilters)
+                    : currentService.findAllDownsampled(device, phaseFilters, maxPoints),
+            () ->
+                maxPoints == null
+                    ? gridFrequencyService.findAll(device, null)
+                    : gridFrequencyService.findAllDownsampled(device, null, maxPoints),
+            phaseFilters ->
+                maxPoints == null
+                    ? voltageService.findAll(device, phaseFilters)
+                    : voltageService.findAllDownsampled(device, phaseFilters, maxPoints));
 
-    List<Current> currents = new ArrayList<>();
-    List<GridFrequency> gridFrequencies = new ArrayList<>();
-    List<Voltage> voltages = new ArrayList<>();
+    return okWithFailedQuantities(result.failedQuantities())
+        .body(
+            new ElectricQuantitiesDto(
+                orEmpty(result.currents()),
+                orEmpty(result.gridFrequencies()),
+                orEmpty(result.voltages())));
+  }
 
-    processElectricQuantities(
+  @GetMapping(value = "/selected", params = "stream=true")
+  public ResponseEntity<StreamingResponseBody> streamSelected(
+      @RequestParam List<ElectricQuantities> electricQuantities,
+      @RequestParam(required = false) String device,
+      @RequestParam(required = false) List<ElectricPhase> currentPhaseFilters,
+      @RequestParam(required = false) List<ElectricPhase> voltagePhaseFilters,
+      @RequestParam(required = false) Integer maxPoints)
+      throws InvalidElectricQuantityException {
+    QueryParameterUtil.validateDevice(device);
+    QueryParameterUtil.validateMaxPoints(maxPoints);
+    log.info(
+        "Streaming of all electric quantities: {} with Current phases: {} and Voltage phases: {} requested",
         electricQuantities,
         currentPhaseFilters,
-        voltagePhaseFilters,
-        (quantity, phaseFilters) -> currents.addAll(currentService.findAll(phaseFilters)),
-        quantity -> gridFrequencies.addAll(gridFrequencyService.findAll(null)),
-        (quantity, phaseFilters) -> voltages.addAll(voltageService.findAll(phaseFilters)));
+        voltagePhaseFilters);
 
-    return ResponseEntity.ok().body(new ElectricQuantitiesDto(currents, gridFrequencies, voltages));
+    return streamElectricQuantities(
+        electricQuantities,
+        consumer -> currentService.streamAll(device, currentPhaseFilters, maxPoints, consumer),
+        consumer -> gridFrequencyService.streamAll(device, null, maxPoints, consumer),
+        consumer -> voltageService.streamAll(device, voltagePhaseFilters, maxPoints, consumer));
   }
 
   @GetMapping("/last/{count}")
   public ResponseEntity<ElectricQuantitiesDto> getLastNElectricalQuantities(
       @PathVariable Integer count,
       @RequestParam List<ElectricQuantities> electricQuantities,
+      @RequestParam(required = false) String device,
       @RequestParam(required = false) List<ElectricPhase> currentPhaseFilters,
       @RequestParam(required = false) List<ElectricPhase> voltagePhaseFilters)
-      throws InvalidElectricQuantityException {
+      throws InvalidElectricQuantityException, ElectricQuantityQueryException {
+    QueryParameterUtil.validateDevice(device);
     log.info(
         "{} last {} with current filters {} and voltage filters {} requested",
         count,
@@ -82,19 +191,18 @@ public class ElectricQuantityController {
         currentPhaseFilters,
         voltagePhaseFilters);
 
-    List<Current> currents = new ArrayList<>();
-    List<GridFrequency> gridFrequencies = new ArrayList<>();
-    List<Voltage> voltages = new ArrayList<>();
+    ElectricQuantitiesResult<List<Current>, List<GridFrequency>, List<Voltage>> result =
+        processElectricQuantities(
+            electricQuantities,
+            currentPhaseFilters,
+            voltagePhaseFilters,
+            phaseFilters -> currentService.getLastNData(device, count, phaseFilters),
+            () -> gridFrequencyService.getLastNData(device, count, null),
+            phaseFilters -> voltageService.getLastNData(device, count, phaseFilters));
 
-    processElectricQuantities(
-        electricQuantities,
-        currentPhaseFilters,
-        voltagePhaseFilters,
-        (quantity, phaseFilters) ->
-            currents.addAll(currentService.getLastNData(count, phaseFilters)),
-        quantity -> gridFrequencies.addAll(gridFrequencyService.getLastNData(count, null)),
-        (quantity, phaseFilters) ->
-            voltages.addAll(voltageService.getLastNData(count, phaseFilters)));
+    List<Current> currents = orEmpty(result.currents());
+    List<GridFrequency> gridFrequencies = orEmpty(result.gridFrequencies());
+    List<Voltage> voltages = orEmpty(result.voltages());
 
     log.info(
         "{} last currents, {} last voltages and {} last grid frequencies returned",
@@ -102,7 +210,8 @@ public class ElectricQuantityController {
         voltages.size(),
         gridFrequencies.size());
 
-    return ResponseEntity.ok().body(new ElectricQuantitiesDto(currents, gridFrequencies, voltages));
+    return okWithFailedQuantities(result.failedQuantities())
+        .body(new ElectricQuantitiesDto(currents, gridFrequencies, voltages));
   }
 
   @GetMapping("/between/{startDate}/{endDate}")
@@ -110,69 +219,272 @@ public class ElectricQuantityController {
       @PathVariable @NotNull Instant startDate,
       @PathVariable @NotNull Instant endDate,
       @RequestParam List<ElectricQuantities> electricQuantities,
+      @RequestParam(required = false) String device,
       @RequestParam(required = false) List<ElectricPhase> currentPhaseFilters,
-      @RequestParam(required = false) List<ElectricPhase> voltagePhaseFilters)
-      throws InvalidElectricQuantityException {
+      @RequestParam(required = false) List<ElectricPhase> voltagePhaseFilters,
+      @RequestParam(required = false) Integer maxPoints)
+      throws InvalidElectricQuantityException, ElectricQuantityQueryException {
+    QueryParameterUtil.validateDevice(device);
+    QueryParameterUtil.validateMaxPoints(maxPoints);
 
     log.info(
         "All Electric quantities: {} with Current phases: {} and Voltage phases: {} requested between dates {} and {}",
         electricQuantities,
-        currentPhaseFilters.toString(),
-        voltagePhaseFilters.toString(),
+        currentPhaseFilters,
+        voltagePhaseFilters,
         startDate,
         endDate);
 
-    List<Current> currents = new ArrayList<>();
-    List<GridFrequency> gridFrequencies = new ArrayList<>();
-    List<Voltage> voltages = new ArrayList<>();
+    ElectricQuantitiesResult<List<Current>, List<GridFrequency>, List<Voltage>> result =
+        processElectricQuantities(
+            electricQuantities,
+            currentPhaseFilters,
+            voltagePhaseFilters,
+            phaseFilters ->
+                maxPoints == null
+                    ? currentService.findAllBetweenDate(device, startDate, endDate, phaseFilters)
+                    : currentService.findAllBetweenDateDownsampled(
+                        device, startDate, endDate, phaseFilters, maxPoints),
+            () ->
+                maxPoints == null
+                    ? gridFrequencyService.findAllBetweenDate(device, startDate, endDate, null)
+                    : gridFrequencyService.findAllBetweenDateDownsampled(
+                        device, startDate, endDate, null, maxPoints),
+            phaseFilters ->
+                maxPoints == null
+                    ? voltageService.findAllBetweenDate(device, startDate, endDate, phaseFilters)
+                    : voltageService.findAllBetweenDateDownsampled(
+                        device, startDate, endDate, phaseFilters, maxPoints));
+
+    return okWithFailedQuantities(result.failedQuantities())
+        .body(
+            new ElectricQuantitiesDto(
+                orEmpty(result.currents()),
+                orEmpty(result.gridFrequencies()),
+                orEmpty(result.voltages())));
+  }
 
-    processElectricQuantities(
+  @GetMapping(value = "/between/{startDate}/{endDate}", params = "stream=true")
+  public ResponseEntity<StreamingResponseBody> streamAllElectricQuantitiesBetweenDates(
+      @PathVariable @NotNull Instant startDate,
+      @PathVariable @NotNull Instant endDate,
+      @RequestParam List<ElectricQuantities> electricQuantities,
+      @RequestParam(required = false) String device,
+      @RequestParam(required = false) List<ElectricPhase> currentPhaseFilters,
+      @RequestParam(required = false) List<ElectricPhase> voltagePhaseFilters,
+      @RequestParam(required = false) Integer maxPoints)
+      throws InvalidElectricQuantityException {
+    QueryParameterUtil.validateDevice(device);
+    QueryParameterUtil.validateMaxPoints(maxPoints);
+    log.info(
+        "Streaming of Electric quantities: {} with Current phases: {} and Voltage phases: {} requested between dates {} and {}",
         electricQuantities,
         currentPhaseFilters,
         voltagePhaseFilters,
-        (quantity, phaseFilters) ->
-            currents.addAll(currentService.findAllBetweenDate(startDate, endDate, phaseFilters)),
-        quantity ->
-            gridFrequencies.addAll(
-                gridFrequencyService.findAllBetweenDate(startDate, endDate, null)),
-        (quantity, phaseFilters) ->
-            voltages.addAll(voltageService.findAllBetweenDate(startDate, endDate, phaseFilters)));
+        startDate,
+        endDate);
 
-    return ResponseEntity.ok().body(new ElectricQuantitiesDto(currents, gridFrequencies, voltages));
+    return streamElectricQuantities(
+        electricQuantities,
+        consumer ->
+            currentService.streamAllBetweenDate(
+                device, startDate, endDate, currentPhaseFilters, maxPoints, consumer),
+        consumer ->
+            gridFrequencyService.streamAllBetweenDate(
+                device, startDate, endDate, null, maxPoints, consumer),
+        consumer ->
+            voltageService.streamAllBetweenDate(
+                device, startDate, endDate, voltagePhaseFilters, maxPoints, consumer));
   }
 
   @GetMapping(path = "since/{timestamp}")
   public ResponseEntity<ElectricQuantitiesMinMaxMeanResponseDto> getElectricQuantitiesSince(
       @PathVariable Instant timestamp,
       @RequestParam List<ElectricQuantities> electricQuantities,
+      @RequestParam(required = false) String device,
       @RequestParam(required = false) List<ElectricPhase> currentPhaseFilters,
       @RequestParam(required = false) List<ElectricPhase> voltagePhaseFilters)
-      throws InvalidElectricQuantityException {
+      throws InvalidElectricQuantityException, ElectricQuantityQueryException {
+    QueryParameterUtil.validateDevice(device);
     log.info("All Electric quantities : {} requested since {}", electricQuantities, timestamp);
 
-    List<List<Current>> currents = new ArrayList<>();
-    List<List<GridFrequency>> gridFrequencies = new ArrayList<>();
-    List<List<Voltage>> voltages = new ArrayList<>();
+    return createElectricQuantitiesMinMaxMeanResponseDto(
+        processElectricQuantities(
+            electricQuantities,
+            currentPhaseFilters,
+            voltagePhaseFilters,
+            phaseFilters -> currentService.getValueSince(device, timestamp, phaseFilters),
+            () -> gridFrequencyService.getValueSince(device, timestamp, null),
+            phaseFilters -> voltageService.getValueSince(device, timestamp, phaseFilters)));
+  }
 
-    processElectricQuantities(
+  @GetMapping(path = "since/{timestamp}", params = {"format=columnar", "!incremental"})
+  public ResponseEntity<ElectricQuantitiesColumnarResponseDto>
+      getColumnarElectricQuantitiesSince(
+          @PathVariable Instant timestamp,
+          @RequestParam List<ElectricQuantities> electricQuantities,
+          @RequestParam(required = false) String device,
+          @RequestParam(required = false) List<ElectricPhase> currentPhaseFilters,
+          @RequestParam(required = false) List<ElectricPhase> voltagePhaseFilters)
+          throws InvalidElectricQuantityException, ElectricQuantityQueryException {
+    QueryParameterUtil.validateDevice(device);
+    log.info(
+        "All Electric quantities : {} requested since {} in columnar format",
         electricQuantities,
-        currentPhaseFilters,
-        voltagePhaseFilters,
-        (quantity, phaseFilters) ->
-            currents.addAll(currentService.getValueSince(timestamp, phaseFilters)),
-        quantity -> gridFrequencies.addAll(gridFrequencyService.getValueSince(timestamp, null)),
-        (quantity, phaseFilters) ->
-            voltages.addAll(voltageService.getValueSince(timestamp, phaseFilters)));
+        timestamp);
 
-    return createElectricQuantitiesMinMaxMeanResponseDto(currents, gridFrequencies, voltages);
+    return createElectricQuantitiesColumnarResponseDto(
+        processElectricQuantities(
+            electricQuantities,
+            currentPhaseFilters,
+            voltagePhaseFilters,
+            phaseFilters -> currentService.getSeriesSince(device, timestamp, phaseFilters),
+            () -> gridFrequencyService.getSeriesSince(device, timestamp, null),
+            phaseFilters -> voltageService.getSeriesSince(device, timestamp, phaseFilters)));
+  }
+
+  /**
+   * Returns grouped values since timestamp in columnar format incrementally. The first poll
+   * without cursor fixes window duration and returns all windows, following polls with returned
+   * cursor return only windows after the last settled window of previous poll. When values saved
+   * late since previous poll changed windows already returned, windows are returned again from
+   * the window of the oldest late value. Settled windows are served from cache, so cost of poll
+   * depends on values written since previous poll, not on length of range. Response has entity tag
+   * of its content, so repeated poll with the same cursor and If-None-Match header is answered with
+   * 304 when nothing changed.
+   */
+  @GetMapping(path = "since/{timestamp}", params = "incremental=true")
+  public ResponseEntity<ElectricQuantitiesIncrementalResponseDto>
+      getIncrementalElectricQuantitiesSince(
+          @PathVariable Instant timestamp,
+          @RequestParam List<ElectricQuantities> electricQuantities,
+          @RequestParam(required = false) String device,
+          @RequestParam(required = false) List<ElectricPhase> currentPhaseFilters,
+          @RequestParam(required = false) List<ElectricPhase> voltagePhaseFilters,
+          @RequestParam(required = false) String cursor,
+          @RequestParam(required = false) Integer maxPoints)
+          throws InvalidElectricQuantityException, ElectricQuantityQueryException {
+    QueryParameterUtil.validateDevice(device);
+    QueryParameterUtil.validateMaxWindows(maxPoints);
+    Instant now = Instant.now();
+    // read before loading, so values saved during this poll are returned again by the next one
+    long invalidationSequence = IncrementalWindowCache.getInvalidationSequence();
+    IncrementalCursor previousCursor = IncrementalCursor.parse(cursor);
+    long windowDurationMillis;
+    long startMillis;
+    if (previousCursor == null) {
+      // windows of planned durations are shared by clients polling similar ranges
+      windowDurationMillis =
+          WindowPlanner.planWindowMillis(
+              now.toEpochMilli() - timestamp.toEpochMilli(), maxPoints);
+      startMillis =
+          WindowPlanner.alignStart(timestamp, windowDurationMillis).toEpochMilli();
+    } else {
+      windowDurationMillis = previousCursor.windowDurationMillis();
+      startMillis = previousCursor.settledEndMillis();
+      if (startMillis > now.toEpochMilli()) {
+        throw new InvalidElectricQuantityException("Invalid cursor " + cursor);
+      }
+
+      Long lateMillis =
+          findLateValuesSince(
+              electricQuantities, device, previousCursor.invalidationSequence());
+      if (lateMillis != null && lateMillis < startMillis) {
+        // windows changed by late values are returned again, but not more windows than limit
+        long oldestStartMillis =
+            (Math.floorDiv(now.toEpochMilli(), windowDurationMillis)
+                    - WindowPlanner.MAX_WINDOWS
+                    + 1)
+                * windowDurationMillis;
+        long resumeMillis =
+            Math.max(Math.max(lateMillis, timestamp.toEpochMilli()), oldestStartMillis);
+        startMillis =
+            Math.min(
+                startMillis,
+                WindowPlanner.alignStart(Instant.ofEpochMilli(resumeMillis), windowDurationMillis)
+                    .toEpochMilli());
+      }
+    }
+    // start is aligned to windows, window indexes are subtracted so distant start can not overflow
+    long windows =
+        Math.floorDiv(now.toEpochMilli(), windowDurationMillis)
+            - startMillis / windowDurationMillis
+            + 1;
+    if (windows > WindowPlanner.MAX_WINDOWS) {
+      throw new InvalidElectricQuantityException(
+          String.format(
+              "%d windows since %s exceed limit of %d windows",
+              windows,
+              Instant.ofEpochMilli(startMillis),
+              WindowPlanner.MAX_WINDOWS));
+    }
+    long settledEndMillis =
+        Math.max(
+            startMillis,
+            Math.floorDiv(now.toEpochMilli() - settleMillis, windowDurationMillis)
+                * windowDurationMillis);
+
+    log.info(
+        "Electric quantities : {} requested incrementally since {} with cursor {}",
+        electricQuantities,
+        timestamp,
+        previousCursor);
+
+    Instant startDate = Instant.ofEpochMilli(startMillis);
+    Instant settledEndDate = Instant.ofEpochMilli(settledEndMillis);
+    ElectricQuantitiesResult<
+            List<GroupedSeriesDto>, List<GroupedSeriesDto>, List<GroupedSeriesDto>>
+        result =
+            processElectricQuantities(
+                electricQuantities,
+                currentPhaseFilters,
+                voltagePhaseFilters,
+                phaseFilters ->
+                    currentService.getIncrementalSeries(
+                        device, startDate, settledEndDate, windowDurationMillis, phaseFilters),
+                () ->
+                    gridFrequencyService.getIncrementalSeries(
+                        device, startDate, settledEndDate, windowDurationMillis, null),
+                phaseFilters ->
+                    voltageService.getIncrementalSeries(
+                        device, startDate, settledEndDate, windowDurationMillis, phaseFilters));
+
+    String nextCursor =
+        new IncrementalCursor(windowDurationMillis, settledEndMillis, invalidationSequence)
+            .toString();
+    ElectricQuantitiesIncrementalResponseDto electricQuantitiesIncrementalResponseDto =
+        ElectricQuantitiesIncrementalResponseDto.builder()
+            .cursor(nextCursor)
+            .start(startMillis)
+            .currents(orEmpty(result.currents()))
+            .gridFrequencies(orEmpty(result.gridFrequencies()))
+            .voltages(orEmpty(result.voltages()))
+            .build();
+
+    log.info(
+        "Returned {} currents, {} voltages, {} grid frequencies after cursor {}",
+        countWindows(electricQuantitiesIncrementalResponseDto.getCurrents()),
+        countWindows(electricQuantitiesIncrementalResponseDto.getVoltages()),
+        countWindows(electricQuantitiesIncrementalResponseDto.getGridFrequencies()),
+        previousCursor);
+
+    ResponseEntity.BodyBuilder response = okWithFailedQuantities(result.failedQuantities());
+    if (result.failedQuantities().isEmpty()) {
+      // not modified response is sent by Spring when tag matches If-None-Match header
+      response.eTag(Integer.toHexString(electricQuantitiesIncrementalResponseDto.hashCode()));
+    }
+
+    return response.body(electricQuantitiesIncrementalResponseDto);
   }
 
   @GetMapping("/last")
   public ResponseEntity<ElectricQuantitiesDto> getLastElectricQuantities(
       @RequestParam List<ElectricQuantities> electricQuantities,
+      @RequestParam(required = false) String device,
       @RequestParam(required = false) List<ElectricPhase> currentPhaseFilters,
       @RequestParam(required = false) List<ElectricPhase> voltagePhaseFilters)
-      throws InvalidElectricQuantityException {
+      throws InvalidElectricQuantityException, ElectricQuantityQueryException {
+    QueryParameterUtil.validateDevice(device);
 
     log.info(
         "Last value of {} with current phases {} and voltage phases {} requested",
@@ -180,46 +492,25 @@ public class ElectricQuantityController {
         currentPhaseFilters,
         voltagePhaseFilters);
 
-    ArrayList<Current> currents = new ArrayList<>();
-    ArrayList<GridFrequency> gridFrequencies = new ArrayList<>();
-    ArrayList<Voltage> voltages = new ArrayList<>();
-
-    processElectricQuantities(
-        electricQuantities,
-        currentPhaseFilters,
-        voltagePhaseFilters,
-        (quantity, phaseFilters) -> {
-          try {
-            currents.add(currentService.getLastValue(phaseFilters));
-          } catch (NoDataFound e) {
-            throw new RuntimeException(e);
-          }
-        },
-        quantity -> {
-          try {
-            gridFrequencies.add(gridFrequencyService.getLastValue(null));
-          } catch (NoDataFound e) {
-            throw new RuntimeException(e);
-          }
-        },
-        (quantity, phaseFilters) -> {
-          try {
-            voltages.add(voltageService.getLastValue(phaseFilters));
-          } catch (NoDataFound e) {
-            throw new RuntimeException(e);
-          }
-        });
+    ElectricQuantitiesResult<Current, GridFrequency, Voltage> result =
+        processElectricQuantities(
+            electricQuantities,
+            currentPhaseFilters,
+            voltagePhaseFilters,
+            phaseFilters -> currentService.getLastValue(device, phaseFilters),
+            () -> gridFrequencyService.getLastValue(device, null),
+            phaseFilters -> voltageService.getLastValue(device, phaseFilters));
 
     ElectricQuantitiesDto electricQuantitiesDto =
         ElectricQuantitiesDto.builder()
-            .currents(currents)
-            .gridFrequencies(gridFrequencies)
-            .voltages(voltages)
+            .currents(singletonOrEmpty(result.currents()))
+            .gridFrequencies(singletonOrEmpty(result.gridFrequencies()))
+            .voltages(singletonOrEmpty(result.voltages()))
             .build();
 
-    log.info("Last value {} returned", electricQuantitiesDto.toString());
+    log.info("Last values of {} returned", electricQuantities);
 
-    return ResponseEntity.ok().body(electricQuantitiesDto);
+    return okWithFailedQuantities(result.failedQuantities()).body(electricQuantitiesDto);
   }
 
   @GetMapping("/grouped/between/{startDate}/{endDate}")
@@ -228,9 +519,13 @@ public class ElectricQuantityController {
           @PathVariable @NotNull Instant startDate,
           @PathVariable @NotNull Instant endDate,
           @RequestParam List<ElectricQuantities> electricQuantities,
+          @RequestParam(required = false) String device,
           @RequestParam(required = false) List<ElectricPhase> currentPhaseFilters,
-          @RequestParam(required = false) List<ElectricPhase> voltagePhaseFilters)
-          throws InvalidElectricQuantityException {
+          @RequestParam(required = false) List<ElectricPhase> voltagePhaseFilters,
+          @RequestParam(required = false) Integer maxPoints)
+          throws InvalidElectricQuantityException, ElectricQuantityQueryException {
+    QueryParameterUtil.validateDevice(device);
+    QueryParameterUtil.validateMaxWindows(maxPoints);
 
     log.info(
         "All Electric quantities : {} with currentPhases: {} and voltagePhases: {} requested between {} and {}",
@@ -240,56 +535,144 @@ public class ElectricQuantityController {
         startDate,
         endDate);
 
-    List<List<Current>> currents = new ArrayList<>();
-    List<List<GridFrequency>> gridFrequencies = new ArrayList<>();
-    List<List<Voltage>> voltages = new ArrayList<>();
+    return createElectricQuantitiesMinMaxMeanResponseDto(
+        processElectricQuantities(
+            electricQuantities,
+            currentPhaseFilters,
+            voltagePhaseFilters,
+            phaseFilters ->
+                currentService.getGroupedMinMaxMean(
+                    device, startDate, endDate, phaseFilters, maxPoints),
+            () ->
+                gridFrequencyService.getGroupedMinMaxMean(
+                    device, startDate, endDate, null, maxPoints),
+            phaseFilters ->
+                voltageService.getGroupedMinMaxMean(
+                    device, startDate, endDate, phaseFilters, maxPoints)));
+  }
+
+  /**
+   * Returns the same grouped values as {@link #getGroupedElectricQuantitiesBetweenDate} as
+   * primitive arrays of every phase instead of entity per value
+   */
+  @GetMapping(value = "/grouped/between/{startDate}/{endDate}", params = "format=columnar")
+  public ResponseEntity<ElectricQuantitiesColumnarResponseDto>
+      getColumnarGroupedElectricQuantitiesBetweenDate(
+          @PathVariable @NotNull Instant startDate,
+          @PathVariable @NotNull Instant endDate,
+          @RequestParam List<ElectricQuantities> electricQuantities,
+          @RequestParam(required = false) String device,
+          @RequestParam(required = false) List<ElectricPhase> currentPhaseFilters,
+          @RequestParam(required = false) List<ElectricPhase> voltagePhaseFilters,
+          @RequestParam(required = false) Integer maxPoints)
+          throws InvalidElectricQuantityException, ElectricQuantityQueryException {
+    QueryParameterUtil.validateDevice(device);
+    QueryParameterUtil.validateMaxWindows(maxPoints);
 
-    processElectricQuantities(
+    log.info(
+        "All Electric quantities : {} with currentPhases: {} and voltagePhases: {} requested between {} and {} in columnar format",
         electricQuantities,
         currentPhaseFilters,
         voltagePhaseFilters,
-        (quantity, phaseFilters) ->
-            currents.addAll(currentService.getGroupedMinMaxMean(startDate, endDate, phaseFilters)),
-        quantity ->
-            gridFrequencies.addAll(
-                gridFrequencyService.getGroupedMinMaxMean(startDate, endDate, null)),
-        (quantity, phaseFilters) ->
-            voltages.addAll(voltageService.getGroupedMinMaxMean(startDate, endDate, phaseFilters)));
+        startDate,
+        endDate);
 
-    return createElectricQuantitiesMinMaxMeanResponseDto(currents, gridFrequencies, voltages);
+    return createElectricQuantitiesColumnarResponseDto(
+        processElectricQuantities(
+            electricQuantities,
+            currentPhaseFilters,
+            voltagePhaseFilters,
+            phaseFilters ->
+                currentService.getGroupedSeries(
+                    device, startDate, endDate, phaseFilters, maxPoints),
+            () ->
+                gridFrequencyService.getGroupedSeries(device, startDate, endDate, null, maxPoints),
+            phaseFilters ->
+                voltageService.getGroupedSeries(
+                    device, startDate, endDate, phaseFilters, maxPoints)));
   }
 
   @GetMapping(path = "/{startDate}")
   public ResponseEntity<ElectricQuantitiesMinMaxMeanResponseDto> getAllElectricQuantitiesFromDate(
       @PathVariable @NotNull Instant startDate,
       @RequestParam List<ElectricQuantities> electricQuantities,
+      @RequestParam(required = false) String device,
       @RequestParam(required = false) List<ElectricPhase> currentPhaseFilters,
       @RequestParam(required = false) List<ElectricPhase> voltagePhaseFilters)
-      throws InvalidElectricQuantityException {
+      throws InvalidElectricQuantityException, ElectricQuantityQueryException {
+    QueryParameterUtil.validateDevice(device);
 
     log.info("All Electric quantities : {} requested from date {}", electricQuantities, startDate);
 
-    List<List<Current>> currents = new ArrayList<>();
-    List<List<GridFrequency>> gridFrequencies = new ArrayList<>();
-    List<List<Voltage>> voltages = new ArrayList<>();
+    return createElectricQuantitiesMinMaxMeanResponseDto(
+        processElectricQuantities(
+            electricQuantities,
+            currentPhaseFilters,
+            voltagePhaseFilters,
+            phaseFilters -> currentService.getAllValuesFromDate(device, startDate, phaseFilters),
+            () -> gridFrequencyService.getAllValuesFromDate(device, startDate, null),
+            phaseFilters -> voltageService.getAllValuesFromDate(device, startDate, phaseFilters)));
+  }
+
+  @GetMapping(path = "/{startDate}", params = "format=columnar")
+  public ResponseEntity<ElectricQuantitiesColumnarResponseDto>
+      getColumnarElectricQuantitiesFromDate(
+          @PathVariable @NotNull Instant startDate,
+          @RequestParam List<ElectricQuantities> electricQuantities,
+          @RequestParam(required = false) String device,
+          @RequestParam(required = false) List<ElectricPhase> currentPhaseFilters,
+          @RequestParam(required = false) List<ElectricPhase> voltagePhaseFilters)
+          throws InvalidElectricQuantityException, ElectricQuantityQueryException {
+    QueryParameterUtil.validateDevice(device);
+
+    log.info(
+        "All Electric quantities : {} requested from date {} in columnar format",
+        electricQuantities,
+        startDate);
+
+    return createElectricQuantitiesColumnarResponseDto(
+        processElectricQuantities(
+            electricQuantities,
+            currentPhaseFilters,
+            voltagePhaseFilters,
+            phaseFilters -> currentService.getAllSeriesFromDate(device, startDate, phaseFilters),
+            () -> gridFrequencyService.getAllSeriesFromDate(device, startDate, null),
+            phaseFilters -> voltageService.getAllSeriesFromDate(device, startDate, phaseFilters)));
+  }
 
-    processElectricQuantities(
+  /**
+   * Pushes values accepted by {@link #addElectricQuantities} as server-sent events. Values not
+   * sent before subscriber buffer fills up are handled by overflow policy and their count is sent
+   * as dropped event.
+   */
+  @GetMapping(path = "/live", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  public SseEmitter subscribeToLiveFeed(
+      @RequestParam(required = false) List<ElectricQuantities> electricQuantities,
+      @RequestParam(required = false) String device,
+      @RequestParam(required = false) List<ElectricPhase> currentPhaseFilters,
+      @RequestParam(required = false) List<ElectricPhase> voltagePhaseFilters,
+      @RequestParam(defaultValue = "COALESCE") LiveFeedOverflowPolicy overflowPolicy)
+      throws InvalidElectricQuantityException, LiveFeedUnavailableException {
+    QueryParameterUtil.validateDevice(device);
+    log.info(
+        "Live feed of {} with current phases {} and voltage phases {} requested",
         electricQuantities,
         currentPhaseFilters,
-        voltagePhaseFilters,
-        (quantity, phaseFilters) ->
-            currents.addAll(currentService.getAllValuesFromDate(startDate, phaseFilters)),
-        quantity ->
-            gridFrequencies.addAll(gridFrequencyService.getAllValuesFromDate(startDate, null)),
-        (quantity, phaseFilters) ->
-            voltages.addAll(voltageService.getAllValuesFromDate(startDate, phaseFilters)));
+        voltagePhaseFilters);
 
-    return createElectricQuantitiesMinMaxMeanResponseDto(currents, gridFrequencies, voltages);
+    return liveFeedService.subscribe(
+        device, electricQuantities, currentPhaseFilters, voltagePhaseFilters, overflowPolicy);
   }
 
   @PostMapping
   public ResponseEntity<Void> addElectricQuantities(
-      @RequestBody ElectricQuantitiesDto electricQuantitiesRequestDto) {
+      @RequestBody ElectricQuantitiesDto electricQuantitiesRequestDto)
+      throws InvalidElectricQuantityException,
+          WriteQueueFullException,
+          WriteBatchTooLargeException {
+    registerDevices(electricQuantitiesRequestDto.getCurrents(), Current::getDevice);
+    registerDevices(electricQuantitiesRequestDto.getGridFrequencies(), GridFrequency::getDevice);
+    registerDevices(electricQuantitiesRequestDto.getVoltages(), Voltage::getDevice);
     log.info(
         "Adding Current: {}, Grid frequency: {}, Voltage: {} in ElectricQuantityController",
         electricQuantitiesRequestDto.getCurrents().size(),
@@ -306,15 +689,102 @@ public class ElectricQuantityController {
       this.voltageService.saveValues(electricQuantitiesRequestDto.getVoltages());
     }
 
-    return ResponseEntity.ok().build();
+    this.liveFeedService.publish(electricQuantitiesRequestDto);
+
+    return ResponseEntity.accepted().build();
+  }
+
+  /**
+   * Accepts values in columnar binary payload described in {@link ColumnarPayloadDecoder}. Values
+   * are decoded straight into batches written to storage, so large backfills are cheap to parse.
+   */
+  @PostMapping(consumes = ColumnarPayloadDecoder.MEDIA_TYPE)
+  public ResponseEntity<Void> addColumnarElectricQuantities(
+      @RequestParam(required = false) String device, @RequestBody byte[] payload)
+      throws InvalidElectricQuantityException,
+          WriteQueueFullException,
+          WriteBatchTooLargeException {
+    deviceRegistry.register(device);
+    ColumnarElectricQuantities electricQuantities =
+        ColumnarPayloadDecoder.decode(ByteBuffer.wrap(payload));
+
+    log.info(
+        "Adding columnar Current: {}, Grid frequency: {}, Voltage: {} of device {}",
+        electricQuantities.currents().size(),
+        electricQuantities.gridFrequencies().size(),
+        electricQuantities.voltages().size(),
+        device);
+
+    if (electricQuantities.currents().size() > 0) {
+      this.currentService.saveBatch(device, electricQuantities.currents());
+    }
+    if (electricQuantities.gridFrequencies().size() > 0) {
+      this.gridFrequencyService.saveBatch(device, electricQuantities.gridFrequencies());
+    }
+    if (electricQuantities.voltages().size() > 0) {
+      this.voltageService.saveBatch(device, electricQuantities.voltages());
+    }
+
+    this.liveFeedService.publish(device, electricQuantities);
+
+    return ResponseEntity.accepted().build();
+  }
+
+  /**
+   * Imports newline delimited JSON records read incrementally from request body. Failed import
+   * is resumed by sending the same body with the same import id again.
+   */
+  @PostMapping(path = "/import", consumes = NDJSON_MEDIA_TYPE)
+  public ResponseEntity<ImportProgressDto> importNdjsonElectricQuantities(
+      @RequestParam String importId,
+      @RequestParam(required = false) String device,
+      InputStream body)
+      throws InvalidElectricQuantityException,
+          ImportAlreadyRunningException,
+          WriteQueueFullException,
+          WriteBatchTooLargeException,
+          IOException {
+    deviceRegistry.register(device);
+    log.info("Importing NDJSON electric quantities {} of device {}", importId, device);
+
+    return ResponseEntity.ok(this.importService.importNdjson(importId, device, body));
+  }
+
+  /**
+   * Imports CSV records read incrementally from request body. Failed import is resumed by sending
+   * the same body with the same import id again.
+   */
+  @PostMapping(path = "/import", consumes = CSV_MEDIA_TYPE)
+  public ResponseEntity<ImportProgressDto> importCsvElectricQuantities(
+      @RequestParam String importId,
+      @RequestParam(required = false) String device,
+      InputStream body)
+      throws InvalidElectricQuantityException,
+          ImportAlreadyRunningException,
+          WriteQueueFullException,
+          WriteBatchTooLargeException,
+          IOException {
+    deviceRegistry.register(device);
+    log.info("Importing CSV electric quantities {} of device {}", importId, device);
+
+    return ResponseEntity.ok(this.importService.importCsv(importId, device, body));
+  }
+
+  @GetMapping("/import/{importId}")
+  public ResponseEntity<ImportProgressDto> getImportProgress(@PathVariable String importId)
+      throws NoDataFound {
+    return ResponseEntity.ok(this.importService.getProgress(importId));
   }
 
   @NotNull
   private ResponseEntity<ElectricQuantitiesMinMaxMeanResponseDto>
       createElectricQuantitiesMinMaxMeanResponseDto(
-          List<List<Current>> currents,
-          List<List<GridFrequency>> gridFrequencies,
-          List<List<Voltage>> voltages) {
+          ElectricQuantitiesResult<List<List<Current>>, List<List<GridFrequency>>, List<List<Voltage>>>
+              result) {
+    List<List<Current>> currents = orEmpty(result.currents());
+    List<List<GridFrequency>> gridFrequencies = orEmpty(result.gridFrequencies());
+    List<List<Voltage>> voltages = orEmpty(result.voltages());
+
     ElectricQuantitiesMinMaxMeanResponseDto electricQuantitiesMinMaxMeanResponseDto =
         new ElectricQuantitiesMinMaxMeanResponseDto();
 
@@ -352,25 +822,299 @@ public class ElectricQuantityController {
         voltagesSize,
         gridFrequenciesSize);
 
-    return ResponseEntity.ok().body(electricQuantitiesMinMaxMeanResponseDto);
+    return okWithFailedQuantities(result.failedQuantities())
+        .body(electricQuantitiesMinMaxMeanResponseDto);
+  }
+
+  private ResponseEntity<ElectricQuantitiesColumnarResponseDto>
+      createElectricQuantitiesColumnarResponseDto(
+          ElectricQuantitiesResult<
+                  List<GroupedSeriesDto>, List<GroupedSeriesDto>, List<GroupedSeriesDto>>
+              result) {
+    ElectricQuantitiesColumnarResponseDto electricQuantitiesColumnarResponseDto =
+        ElectricQuantitiesColumnarResponseDto.builder()
+            .currents(orEmpty(result.currents()))
+            .gridFrequencies(orEmpty(result.gridFrequencies()))
+            .voltages(orEmpty(result.voltages()))
+            .build();
+
+    log.info(
+        "Returned {} currents, {} voltages, {} grid frequencies in columnar format",
+        countWindows(electricQuantitiesColumnarResponseDto.getCurrents()),
+        countWindows(electricQuantitiesColumnarResponseDto.getVoltages()),
+        countWindows(electricQuantitiesColumnarResponseDto.getGridFrequencies()));
+
+    return okWithFailedQuantities(result.failedQuantities())
+        .body(electricQuantitiesColumnarResponseDto);
   }
 
-  private void processElectricQuantities(
+  /**
+   * Returns time of the oldest late value of requested quantities of device saved since
+   * invalidation sequence, null if there is none
+   */
+  private Long findLateValuesSince(
+      List<ElectricQuantities> electricQuantities, String device, long invalidationSequence) {
+    Long oldestMillis = null;
+    for (ElectricQuantities quantity : electricQuantities) {
+      Long lateMillis =
+          switch (quantity) {
+            case CURRENT -> currentService.findLateValuesSince(device, invalidationSequence);
+            case GRID_FREQUENCY -> gridFrequencyService.findLateValuesSince(
+                device, invalidationSequence);
+            case VOLTAGE -> voltageService.findLateValuesSince(device, invalidationSequence);
+          };
+      if (lateMillis != null && (oldestMillis == null || lateMillis < oldestMillis)) {
+        oldestMillis = lateMillis;
+      }
+    }
+
+    return oldestMillis;
+  }
+
+  private static int countWindows(List<GroupedSeriesDto> series) {
+    int count = 0;
+    for (GroupedSeriesDto phaseSeries : series) {
+      count += phaseSeries.size();
+    }
+    return count;
+  }
+
+  /**
+   * Writes requested electric quantities in the same shape as {@link ElectricQuantitiesDto} while
+   * they are read from storage. Quantities are streamed one after another, values are never
+   * collected in memory. Failure after the first byte was sent can not change response status, so
+   * response is closed with incomplete JSON.
+   */
+  private ResponseEntity<StreamingResponseBody> streamElectricQuantities(
+      List<ElectricQuantities> electricQuantities,
+      Consumer<Consumer<Current>> currentStream,
+      Consumer<Consumer<GridFrequency>> gridFrequencyStream,
+      Consumer<Consumer<Voltage>> voltageStream) {
+    Set<ElectricQuantities> requestedQuantities =
+        electricQuantities.isEmpty()
+            ? EnumSet.noneOf(ElectricQuantities.class)
+            : EnumSet.copyOf(electricQuantities);
+
+    StreamingResponseBody body =
+        outputStream -> {
+          try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+            generator.writeStartObject();
+            writeStreamedArray(
+                generator,
+                "currents",
+                Current.class,
+                requestedQuantities.contains(ElectricQuantities.CURRENT) ? currentStream : null);
+            writeStreamedArray(
+                generator,
+                "gridFrequencies",
+                GridFrequency.class,
+                requestedQuantities.contains(ElectricQuantities.GRID_FREQUENCY)
+                    ? gridFrequencyStream
+                    : null);
+            writeStreamedArray(
+                generator,
+                "voltages",
+                Voltage.class,
+                requestedQuantities.contains(ElectricQuantities.VOLTAGE) ? voltageStream : null);
+            generator.writeEndObject();
+          } catch (RuntimeException e) {
+            log.error("Streaming of {} failed: {}", requestedQuantities, e.toString());
+            throw e;
+          }
+        };
+
+    return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+  }
+
+  private <E> void writeStreamedArray(
+      JsonGenerator generator, String fieldName, Class<E> type, Consumer<Consumer<E>> stream)
+      throws IOException {
+    generator.writeArrayFieldStart(fieldName);
+
+    if (stream != null) {
+      // flushing after every value would send each of them in separate chunk
+      ObjectWriter writer =
+          objectMapper.writerFor(type).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+      try {
+        stream.accept(
+            value -> {
+              try {
+                writer.writeValue(generator, value);
+              } catch (IOException e) {
+                throw new UncheckedIOException(e);
+              }
+            });
+      } catch (UncheckedIOException e) {
+        throw e.getCause();
+      }
+    }
+
+    generator.writeEndArray();
+  }
+
+  /**
+   * Queries requested electric quantities in parallel and waits for them until query timeout
+   * elapses since they were submitted. Quantities whose query was rejected by saturated executor,
+   * failed or timed out are returned as failed and their results are null.
+   *
+   * @throws ElectricQuantityQueryException if queries of all requested quantities failed
+   */
+  private <C, G, V> ElectricQuantitiesResult<C, G, V> processElectricQuantities(
       List<ElectricQuantities> electricQuantities,
       List<ElectricPhase> currentPhaseFilters,
       List<ElectricPhase> voltagePhaseFilters,
-      BiConsumer<ElectricQuantities, List<ElectricPhase>> currentConsumer,
-      Consumer<ElectricQuantities> gridFrequencyConsumer,
-      BiConsumer<ElectricQuantities, List<ElectricPhase>> voltageConsumer)
+      PhaseFilteredQuery<C> currentQuery,
+      Query<G> gridFrequencyQuery,
+      PhaseFilteredQuery<V> voltageQuery)
+      throws InvalidElectricQuantityException, ElectricQuantityQueryException {
+    if (electricQuantities.isEmpty()) {
+      return new ElectricQuantitiesResult<>(null, null, null, List.of());
+    }
+
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(queryTimeoutMillis);
+    Set<ElectricQuantities> requestedQuantities = EnumSet.copyOf(electricQuantities);
+    Map<ElectricQuantities, Future<?>> futures = new EnumMap<>(ElectricQuantities.class);
+    List<ElectricQuantities> failedQuantities = new ArrayList<>();
+    for (ElectricQuantities quantity : requestedQuantities) {
+      Query<?> query =
+          switch (quantity) {
+            case CURRENT -> () -> currentQuery.query(currentPhaseFilters);
+            case GRID_FREQUENCY -> gridFrequencyQuery;
+            case VOLTAGE -> () -> voltageQuery.query(voltagePhaseFilters);
+            default -> throw new InvalidElectricQuantityException(
+                "Invalid electric quantity type: " + quantity);
+          };
+      try {
+        futures.put(quantity, electricQueryExecutor.submit(() -> runQuery(query)));
+      } catch (TaskRejectedException e) {
+        failedQuantities.add(quantity);
+        log.error("Query of {} was rejected, query executor is saturated", quantity);
+      }
+    }
+
+    Map<ElectricQuantities, Object> results = new EnumMap<>(ElectricQuantities.class);
+
+    for (Map.Entry<ElectricQuantities, Future<?>> entry : futures.entrySet()) {
+      ElectricQuantities quantity = entry.getKey();
+      Future<?> future = entry.getValue();
+      try {
+        results.put(quantity, future.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS));
+      } catch (TimeoutException e) {
+        future.cancel(true);
+        failedQuantities.add(quantity);
+        log.error("Query of {} timed out after {} ms", quantity, queryTimeoutMillis);
+      } catch (ExecutionException e) {
+        failedQuantities.add(quantity);
+        log.error("Query of {} failed: {}", quantity, e.getCause().toString());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        future.cancel(true);
+        failedQuantities.add(quantity);
+        log.error("Query of {} was interrupted", quantity);
+      }
+    }
+
+    if (failedQuantities.size() == requestedQuantities.size()) {
+      throw new ElectricQuantityQueryException(
+          "Queries of all requested electric quantities failed: " + failedQuantities);
+    }
+
+    @SuppressWarnings("unchecked")
+    ElectricQuantitiesResult<C, G, V> result =
+        new ElectricQuantitiesResult<>(
+            (C) results.get(ElectricQuantities.CURRENT),
+            (G) results.get(ElectricQuantities.GRID_FREQUENCY),
+            (V) results.get(ElectricQuantities.VOLTAGE),
+            failedQuantities.stream().sorted().toList());
+
+    return result;
+  }
+
+  private static Object runQuery(Query<?> query) throws Exception {
+    try {
+      return query.query();
+    } catch (Exception | Error e) {
+      throw e;
+    } catch (Throwable e) {
+      // checked exceptions of services extend Throwable
+      throw new ExecutionException(e.toString(), e);
+    }
+  }
+
+  private <E> void registerDevices(List<E> values, Function<E, String> deviceGetter)
       throws InvalidElectricQuantityException {
-    for (ElectricQuantities quantity : electricQuantities) {
-      switch (quantity) {
-        case CURRENT -> currentConsumer.accept(quantity, currentPhaseFilters);
-        case GRID_FREQUENCY -> gridFrequencyConsumer.accept(quantity);
-        case VOLTAGE -> voltageConsumer.accept(quantity, voltagePhaseFilters);
-        default -> throw new InvalidElectricQuantityException(
-            "Invalid electric quantity type: " + quantity);
+    for (E value : values) {
+      deviceRegistry.register(deviceGetter.apply(value));
+    }
+  }
+
+  private ResponseEntity.BodyBuilder okWithFailedQuantities(
+      List<ElectricQuantities> failedQuantities) {
+    ResponseEntity.BodyBuilder responseBuilder = ResponseEntity.ok();
+
+    if (!failedQuantities.isEmpty()) {
+      responseBuilder.header(
+          FAILED_QUANTITIES_HEADER,
+          failedQuantities.stream().map(Enum::name).collect(Collectors.joining(",")));
+    }
+
+    return responseBuilder;
+  }
+
+  private static <E> List<E> orEmpty(List<E> list) {
+    return list == null ? List.of() : list;
+  }
+
+  private static <E> List<E> singletonOrEmpty(E element) {
+    return element == null ? List.of() : List.of(element);
+  }
+
+  @FunctionalInterface
+  private interface PhaseFilteredQuery<R> {
+    R query(List<ElectricPhase> phaseFilters) throws Throwable;
+  }
+
+  @FunctionalInterface
+  private interface Query<R> {
+    R query() throws Throwable;
+  }
+
+  /**
+   * Position of incremental poll, duration of its windows, end of the last settled window returned
+   * to client and invalidation sequence read before its windows were loaded
+   */
+  private record IncrementalCursor(
+      long windowDurationMillis, long settledEndMillis, long invalidationSequence) {
+
+    static IncrementalCursor parse(String cursor) throws InvalidElectricQuantityException {
+      if (cursor == null || cursor.isBlank()) {
+        return null;
       }
+
+      String[] parts = cursor.split("-", 3);
+      try {
+        IncrementalCursor incrementalCursor =
+            new IncrementalCursor(
+                Long.parseLong(parts[0]), Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+        if (WindowPlanner.isPlanned(incrementalCursor.windowDurationMillis())
+            && incrementalCursor.settledEndMillis() % incrementalCursor.windowDurationMillis()
+                == 0) {
+          return incrementalCursor;
+        }
+      } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+        // reported below
+      }
+
+      throw new InvalidElectricQuantityException("Invalid cursor " + cursor);
+    }
+
+    @Override
+    public String toString() {
+      return windowDurationMillis + "-" + settledEndMillis + "-" + invalidationSequence;
     }
   }
+
+  /** Results of queried electric quantities, null for quantities not requested or failed */
+  private record ElectricQuantitiesResult<C, G, V>(
+      C currents, G gridFrequencies, V voltages, List<ElectricQuantities> failedQuantities) {}
 }
@@ -0,0 +1,255 @@
+package szathmary.peter.bakalarka.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import szathmary.peter.bakalarka.constant.ElectricPhase;
+import szathmary.peter.bakalarka.dto.electric.GroupedSeriesDto;
+import szathmary.peter.bakalarka.dto.electric.ValueSeriesDto;
+import szathmary.peter.bakalarka.exception.InvalidElectricQuantityException;
+import szathmary.peter.bakalarka.exception.WriteBatchTooLargeException;
+import szathmary.peter.bakalarka.exception.WriteQueueFullException;
+import szathmary.peter.bakalarka.repository.quantity.DeviceRegistry;
+import szathmary.peter.bakalarka.repository.quantity.QuantityDefinition;
+import szathmary.peter.bakalarka.repository.storage.SampleBatch;
+import szathmary.peter.bakalarka.service.quantity.QuantitySeriesRegistry;
+import szathmary.peter.bakalarka.service.quantity.QuantitySeriesService;
+import szathmary.peter.bakalarka.util.QueryParameterUtil;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Serves every quantity of {@link QuantitySeriesRegistry} by its name as primitive series, so
+ * quantity added to configuration is available without new endpoint or entity.
+ */
+@Slf4j
+@RestController
+@RequestMapping("api/electric-quantities/series")
+public class QuantitySeriesController {
+
+  /** maximal number of values of one phase written as one series while values are streamed */
+  static final int STREAMED_SERIES_SIZE = 8192;
+
+  private final QuantitySeriesRegistry seriesRegistry;
+
+  private final DeviceRegistry deviceRegistry;
+
+  private final ObjectMapper objectMapper;
+
+  public QuantitySeriesController(
+      QuantitySeriesRegistry seriesRegistry,
+      DeviceRegistry deviceRegistry,
+      ObjectMapper objectMapper) {
+    this.seriesRegistry = seriesRegistry;
+    this.deviceRegistry = deviceRegistry;
+    this.objectMapper = objectMapper;
+  }
+
+  @GetMapping
+  public ResponseEntity<List<QuantityDefinition>> getQuantities() {
+    return ResponseEntity.ok(seriesRegistry.getDefinitions());
+  }
+
+  @GetMapping("/{quantity}/between/{startDate}/{endDate}")
+  public ResponseEntity<List<ValueSeriesDto>> getValuesBetweenDates(
+      @PathVariable String quantity,
+      @PathVariable @NotNull Instant startDate,
+      @PathVariable @NotNull Instant endDate,
+      @RequestParam(required = false) String device,
+      @RequestParam(required = false) List<ElectricPhase> phases,
+      @RequestParam(required = false) Integer maxPoints)
+      throws InvalidElectricQuantityException {
+    QueryParameterUtil.validateDevice(device);
+    QueryParameterUtil.validateMaxPoints(maxPoints);
+    log.info(
+        "{} of device {} with phases {} requested between dates {} and {}",
+        quantity,
+        device,
+        phases,
+        startDate,
+        endDate);
+
+    return ResponseEntity.ok(
+        seriesRegistry.get(quantity).getValues(device, startDate, endDate, phases, maxPoints));
+  }
+
+  /**
+   * Writes values of range while they are read from storage, so values are never collected in
+   * memory. Values of one phase are split into consecutive series of at most {@link
+   * #STREAMED_SERIES_SIZE} values. Failure after the first byte was sent can not change response
+   * status, so response is closed with incomplete JSON.
+   */
+  @GetMapping(value = "/{quantity}/between/{startDate}/{endDate}", params = "stream=true")
+  public ResponseEntity<StreamingResponseBody> streamValuesBetweenDates(
+      @PathVariable String quantity,
+      @PathVariable @NotNull Instant startDate,
+      @PathVariable @NotNull Instant endDate,
+      @RequestParam(required = false) String device,
+      @RequestParam(required = false) List<ElectricPhase> phases,
+      @RequestParam(required = false) Integer maxPoints)
+      throws InvalidElectricQuantityException {
+    QueryParameterUtil.validateDevice(device);
+    QueryParameterUtil.validateMaxPoints(maxPoints);
+    QuantitySeriesService service = seriesRegistry.get(quantity);
+    log.info(
+        "Streaming of {} of device {} with phases {} requested between dates {} and {}",
+        quantity,
+        device,
+        phases,
+        startDate,
+        endDate);
+
+    StreamingResponseBody body =
+        outputStream -> {
+          try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+            // flushing after every series would send each of them in separate chunk
+            ObjectWriter writer =
+                objectMapper
+                    .writerFor(ValueSeriesDto.class)
+                    .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+            generator.writeStartArray();
+            try {
+              service.streamValues(
+                  device,
+                  startDate,
+                  endDate,
+                  phases,
+                  maxPoints,
+                  STREAMED_SERIES_SIZE,
+                  series -> {
+                    try {
+                      writer.writeValue(generator, series);
+                    } catch (IOException e) {
+                      throw new UncheckedIOException(e);
+                    }
+                  });
+            } catch (UncheckedIOException e) {
+              throw e.getCause();
+            }
+            generator.writeEndArray();
+          } catch (RuntimeException e) {
+            log.error("Streaming of {} failed: {}", quantity, e.toString());
+            throw e;
+          }
+        };
+
+    return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+  }
+
+  @GetMapping("/{quantity}/last/{count}")
+  public ResponseEntity<List<ValueSeriesDto>> getLastNValues(
+      @PathVariable String quantity,
+      @PathVariable Integer count,
+      @RequestParam(required = false) String device,
+      @RequestParam(required = false) List<ElectricPhase> phases)
+      throws InvalidElectricQuantityException {
+    QueryParameterUtil.validateDevice(device);
+    log.info("{} last {} of device {} with phases {} requested", count, quantity, device, phases);
+
+    return ResponseEntity.ok(seriesRegistry.get(quantity).getLastNValues(device, count, phases));
+  }
+
+  @GetMapping("/{quantity}/grouped/between/{startDate}/{endDate}")
+  public ResponseEntity<List<GroupedSeriesDto>> getGroupedSeriesBetweenDates(
+      @PathVariable String quantity,
+      @PathVariable @NotNull Instant startDate,
+      @PathVariable @NotNull Instant endDate,
+      @RequestParam(required = false) String device,
+      @RequestParam(required = false) List<ElectricPhase> phases,
+      @RequestParam(required = false) Integer maxPoints)
+      throws InvalidElectricQuantityException {
+    QueryParameterUtil.validateDevice(device);
+    QueryParameterUtil.validateMaxWindows(maxPoints);
+    log.info(
+        "Grouped {} of device {} with phases {} requested between dates {} and {}",
+        quantity,
+        device,
+        phases,
+        startDate,
+        endDate);
+
+    return ResponseEntity.ok(
+        orEmpty(
+            seriesRegistry
+                .get(quantity)
+                .getGroupedSeries(device, startDate, endDate, phases, maxPoints)));
+  }
+
+  @GetMapping("/{quantity}/since/{timestamp}")
+  public ResponseEntity<List<GroupedSeriesDto>> getGroupedSeriesSince(
+      @PathVariable String quantity,
+      @PathVariable @NotNull Instant timestamp,
+      @RequestParam(required = false) String device,
+      @RequestParam(required = false) List<ElectricPhase> phases)
+      throws InvalidElectricQuantityException {
+    QueryParameterUtil.validateDevice(device);
+    log.info(
+        "Grouped {} of device {} with phases {} requested since {}",
+        quantity,
+        device,
+        phases,
+        timestamp);
+
+    return ResponseEntity.ok(
+        orEmpty(seriesRegistry.get(quantity).getSeriesSince(device, timestamp, phases)));
+  }
+
+  /**
+   * Saves series of values of quantity. Values are copied straight into batch written to storage,
+   * series of quantity without phases must have null phase.
+   */
+  @PostMapping("/{quantity}")
+  public ResponseEntity<Void> addValues(
+      @PathVariable String quantity,
+      @RequestParam(required = false) String device,
+      @RequestBody List<ValueSeriesDto> series)
+      throws InvalidElectricQuantityException,
+          WriteQueueFullException,
+          WriteBatchTooLargeException {
+    QueryParameterUtil.validateDevice(device);
+    QuantitySeriesService service = seriesRegistry.get(quantity);
+    boolean hasPhases = service.getRepository().getDefinition().hasPhases();
+
+    int size = 0;
+    for (ValueSeriesDto phaseSeries : series) {
+      if (phaseSeries.time() == null
+          || phaseSeries.value() == null
+          || phaseSeries.time().length != phaseSeries.value().length) {
+        throw new InvalidElectricQuantityException(
+            "Time and value of " + quantity + " series must have the same length");
+      }
+      if (hasPhases != (phaseSeries.phase() != null)) {
+        throw new InvalidElectricQuantityException(
+            "Invalid phase of " + quantity + " series: " + phaseSeries.phase());
+      }
+      size += phaseSeries.size();
+    }
+
+    deviceRegistry.register(device);
+    SampleBatch batch = new SampleBatch(size);
+    for (ValueSeriesDto phaseSeries : series) {
+      for (int i = 0; i < phaseSeries.size(); i++) {
+        batch.add(phaseSeries.phase(), phaseSeries.time()[i], phaseSeries.value()[i]);
+      }
+    }
+
+    log.info("Adding {} values of {} of device {}", size, quantity, device);
+    service.saveBatch(device, batch);
+
+    return ResponseEntity.accepted().build();
+  }
+
+  private static <E> List<E> orEmpty(List<E> list) {
+    return list == null ? List.of() : list;
+  }
+}
@@ -0,0 +1,18 @@
+package szathmary.peter.bakalarka.dto.electric;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ElectricQuantitiesColumnarResponseDto {
+  private List<GroupedSeriesDto> currents;
+  private List<GroupedSeriesDto> gridFrequencies;
+  private List<GroupedSeriesDto> voltages;
+}
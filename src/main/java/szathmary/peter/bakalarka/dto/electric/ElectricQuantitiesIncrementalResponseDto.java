@@ -0,0 +1,26 @@
+package szathmary.peter.bakalarka.dto.electric;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Windows since start, which is cursor of previous poll unless late values changed older windows.
+ * Client replaces all windows it has ending after start with returned ones and passes returned
+ * cursor to the next poll.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ElectricQuantitiesIncrementalResponseDto {
+  private String cursor;
+  /** start of the first returned window in epoch milliseconds */
+  private long start;
+  private List<GroupedSeriesDto> currents;
+  private List<GroupedSeriesDto> gridFrequencies;
+  private List<GroupedSeriesDto> voltages;
+}
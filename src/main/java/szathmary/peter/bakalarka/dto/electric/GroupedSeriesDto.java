@@ -0,0 +1,50 @@
+package szathmary.peter.bakalarka.dto.electric;
+
+import szathmary.peter.bakalarka.constant.ElectricPhase;
+
+import java.util.Arrays;
+
+/**
+ * Grouped min, mean and max values of one phase in columnar form. Value at the same index of
+ * every array belongs to the same window.
+ *
+ * @param phase phase of values, null if quantity has no phases
+ * @param time end of every window in epoch milliseconds
+ * @param min minimal value of every window
+ * @param mean mean value of every window
+ * @param max maximal value of every window
+ */
+public record GroupedSeriesDto(
+    ElectricPhase phase, long[] time, double[] min, double[] mean, double[] max) {
+
+  public int size() {
+    return time.length;
+  }
+
+  /** Series are equal when their arrays have equal content */
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof GroupedSeriesDto other)) {
+      return false;
+    }
+    return phase == other.phase
+        && Arrays.equals(time, other.time)
+        && Arrays.equals(min, other.min)
+        && Arrays.equals(mean, other.mean)
+        && Arrays.equals(max, other.max);
+  }
+
+  @Override
+  public int hashCode() {
+    // name is hashed, because hash of enum differs between runs
+    int result = phase == null ? 0 : phase.name().hashCode();
+    result = 31 * result + Arrays.hashCode(time);
+    result = 31 * result + Arrays.hashCode(min);
+    result = 31 * result + Arrays.hashCode(mean);
+    result = 31 * result + Arrays.hashCode(max);
+    return result;
+  }
+}
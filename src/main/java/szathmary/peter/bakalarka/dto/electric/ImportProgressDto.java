@@ -0,0 +1,24 @@
+package szathmary.peter.bakalarka.dto.electric;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import szathmary.peter.bakalarka.constant.ImportStatus;
+
+import java.time.Instant;
+
+@Data
+@AllArgsConstructor
+@Builder
+public class ImportProgressDto {
+  private String importId;
+  private ImportStatus status;
+  private Instant startedAt;
+  private Instant finishedAt;
+  /** records of chunks already written to storage, resumed import skips them */
+  private long committedRecords;
+  private long writtenValues;
+  private long rejectedRecords;
+  private String lastRejection;
+  private String failure;
+}
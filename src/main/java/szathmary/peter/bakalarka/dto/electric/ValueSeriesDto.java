@@ -0,0 +1,43 @@
+package szathmary.peter.bakalarka.dto.electric;
+
+import szathmary.peter.bakalarka.constant.ElectricPhase;
+
+import java.util.Arrays;
+
+/**
+ * Values of one phase in columnar form. Value at the same index of both arrays belongs to the
+ * same sample.
+ *
+ * @param phase phase of values, null if quantity has no phases
+ * @param time time of every value in epoch milliseconds
+ * @param value every value
+ */
+public record ValueSeriesDto(ElectricPhase phase, long[] time, double[] value) {
+
+  public int size() {
+    return time.length;
+  }
+
+  /** Series are equal when their arrays have equal content */
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof ValueSeriesDto other)) {
+      return false;
+    }
+    return phase == other.phase
+        && Arrays.equals(time, other.time)
+        && Arrays.equals(value, other.value);
+  }
+
+  @Override
+  public int hashCode() {
+    // name is hashed, because hash of enum differs between runs
+    int result = phase == null ? 0 : phase.name().hashCode();
+    result = 31 * result + Arrays.hashCode(time);
+    result = 31 * result + Arrays.hashCode(value);
+    return result;
+  }
+}
@@ -1,5 +1,6 @@
 package szathmary.peter.bakalarka.entity;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.influxdb.annotations.Column;
 import com.influxdb.annotations.Measurement;
 import lombok.AllArgsConstructor;
@@ -19,4 +20,13 @@ public class GridFrequency {
 
   @Column(name = "_time", timestamp = true)
   private Instant time;
+
+  /** device which measured value, null for the default device */
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  @Column(name = "device", tag = true)
+  private String device;
+
+  public GridFrequency(double frequency, Instant time) {
+    this(frequency, time, null);
+  }
 }
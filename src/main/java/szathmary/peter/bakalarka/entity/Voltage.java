@@ -1,5 +1,6 @@
 package szathmary.peter.bakalarka.entity;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.influxdb.annotations.Column;
 import com.influxdb.annotations.Measurement;
 import lombok.AllArgsConstructor;
@@ -22,4 +23,13 @@ public class Voltage {
 
   @Column(name = "phase", tag = true)
   private ElectricPhase phase;
+
+  /** device which measured value, null for the default device */
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  @Column(name = "device", tag = true)
+  private String device;
+
+  public Voltage(double voltage, Instant time, ElectricPhase phase) {
+    this(voltage, time, phase, null);
+  }
 }
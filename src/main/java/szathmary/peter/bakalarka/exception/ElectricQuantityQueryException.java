@@ -0,0 +1,8 @@
+package szathmary.peter.bakalarka.exception;
+
+public class ElectricQuantityQueryException extends Throwable {
+
+  public ElectricQuantityQueryException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,8 @@
+package szathmary.peter.bakalarka.exception;
+
+public class ImportAlreadyRunningException extends Throwable {
+
+  public ImportAlreadyRunningException(String message) {
+    super(message);
+  }
+}
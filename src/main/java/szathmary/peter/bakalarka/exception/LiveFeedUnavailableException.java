@@ -0,0 +1,8 @@
+package szathmary.peter.bakalarka.exception;
+
+public class LiveFeedUnavailableException extends Throwable {
+
+  public LiveFeedUnavailableException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,8 @@
+package szathmary.peter.bakalarka.exception;
+
+public class WriteBatchTooLargeException extends Throwable {
+
+  public WriteBatchTooLargeException(String message) {
+    super(message);
+  }
+}
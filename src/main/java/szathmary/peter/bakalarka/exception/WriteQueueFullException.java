@@ -0,0 +1,8 @@
+package szathmary.peter.bakalarka.exception;
+
+public class WriteQueueFullException extends Throwable {
+
+  public WriteQueueFullException(String message) {
+    super(message);
+  }
+}
@@ -1,12 +1,20 @@
 package szathmary.peter.bakalarka.exceptionHandler;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
+import szathmary.peter.bakalarka.exception.ElectricQuantityQueryException;
+import szathmary.peter.bakalarka.exception.ImportAlreadyRunningException;
 import szathmary.peter.bakalarka.exception.InvalidElectricQuantityException;
+import szathmary.peter.bakalarka.exception.LiveFeedUnavailableException;
 import szathmary.peter.bakalarka.exception.NoDataFound;
 import szathmary.peter.bakalarka.exception.UserAlreadyRegisteredException;
+import szathmary.peter.bakalarka.exception.WriteBatchTooLargeException;
+import szathmary.peter.bakalarka.exception.WriteQueueFullException;
+
+import java.io.UncheckedIOException;
 
 @ControllerAdvice
 public class GlobalExceptionHandler {
@@ -27,4 +35,41 @@ public class GlobalExceptionHandler {
       InvalidElectricQuantityException ex) {
     return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(ex.getMessage());
   }
+
+  @ExceptionHandler(ElectricQuantityQueryException.class)
+  public ResponseEntity<String> handleElectricQuantityQueryException(
+      ElectricQuantityQueryException ex) {
+    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(ex.getMessage());
+  }
+
+  @ExceptionHandler(WriteQueueFullException.class)
+  public ResponseEntity<String> handleWriteQueueFullException(WriteQueueFullException ex) {
+    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+        .header(HttpHeaders.RETRY_AFTER, "1")
+        .body(ex.getMessage());
+  }
+
+  @ExceptionHandler(WriteBatchTooLargeException.class)
+  public ResponseEntity<String> handleWriteBatchTooLargeException(WriteBatchTooLargeException ex) {
+    return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(ex.getMessage());
+  }
+
+  /** Storage can not be read or written, it is expected to recover */
+  @ExceptionHandler(UncheckedIOException.class)
+  public ResponseEntity<String> handleUncheckedIOException(UncheckedIOException ex) {
+    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+        .body("Storage is not available: " + ex.getMessage());
+  }
+
+  @ExceptionHandler(LiveFeedUnavailableException.class)
+  public ResponseEntity<String> handleLiveFeedUnavailableException(
+      LiveFeedUnavailableException ex) {
+    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(ex.getMessage());
+  }
+
+  @ExceptionHandler(ImportAlreadyRunningException.class)
+  public ResponseEntity<String> handleImportAlreadyRunningException(
+      ImportAlreadyRunningException ex) {
+    return ResponseEntity.status(HttpStatus.CONFLICT).body(ex.getMessage());
+  }
 }
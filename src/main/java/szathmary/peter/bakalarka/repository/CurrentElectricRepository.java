@@ -1,46 +1,47 @@
 package szathmary.peter.bakalarka.repository;
 
-import com.influxdb.client.InfluxDBClient;
-import com.influxdb.client.domain.WritePrecision;
-import com.influxdb.client.write.Point;
-import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
+import szathmary.peter.bakalarka.constant.ElectricPhase;
 import szathmary.peter.bakalarka.entity.Current;
-import szathmary.peter.bakalarka.repository.abstractInfluxDbRepository.BaseInfluxDbElectricRepository;
+import szathmary.peter.bakalarka.repository.abstractElectricRepository.BaseElectricRepository;
+import szathmary.peter.bakalarka.repository.quantity.ElectricQuantityRegistry;
 
 import java.time.Instant;
 
-@Slf4j
 @Repository
-public class CurrentElectricRepository extends BaseInfluxDbElectricRepository<Current> {
+public class CurrentElectricRepository extends BaseElectricRepository<Current> {
 
-  public CurrentElectricRepository(
-      InfluxDBClient influxDBClient,
-      @Value("${influxdb.bucket.electric}") String bucketName,
-      @Value("${influxdb.org}") String organization) {
-    super(influxDBClient, "current", bucketName, organization);
+  public CurrentElectricRepository(ElectricQuantityRegistry registry) {
+    super(registry, "current");
   }
 
   @Override
-  protected Point generatePointToSave(Instant currentUtcTime, Current current) {
-    if (current.getTime().isAfter(currentUtcTime)) {
-      log.info(
-          "{} is after now ({} in UTC) timestamp, replacing it with {}",
-          current.getTime(),
-          currentUtcTime,
-          currentUtcTime);
-      current.setTime(currentUtcTime);
-    }
-
-    return Point.measurement(QUANTITY_NAME)
-        .addTag("phase", current.getPhase().toString())
-        .addField("value", current.getCurrent())
-        .time(current.getTime().getEpochSecond(), WritePrecision.S);
+  protected Current createEntity(Instant time, double value, ElectricPhase phase, String device) {
+    return new Current(value, time, phase, device);
   }
 
   @Override
-  protected Class<Current> getEntityClass() {
-    return Current.class;
+  protected Instant getTime(Current current) {
+    return current.getTime();
+  }
+
+  @Override
+  protected void setTime(Current current, Instant time) {
+    current.setTime(time);
+  }
+
+  @Override
+  protected double getValue(Current current) {
+    return current.getCurrent();
+  }
+
+  @Override
+  protected ElectricPhase getPhase(Current current) {
+    return current.getPhase();
+  }
+
+  @Override
+  protected String getDevice(Current current) {
+    return current.getDevice();
   }
 }
@@ -1,45 +1,48 @@
 package szathmary.peter.bakalarka.repository;
 
-import com.influxdb.client.InfluxDBClient;
-import com.influxdb.client.domain.WritePrecision;
-import com.influxdb.client.write.Point;
-import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
+import szathmary.peter.bakalarka.constant.ElectricPhase;
 import szathmary.peter.bakalarka.entity.GridFrequency;
-import szathmary.peter.bakalarka.repository.abstractInfluxDbRepository.BaseInfluxDbElectricRepository;
+import szathmary.peter.bakalarka.repository.abstractElectricRepository.BaseElectricRepository;
+import szathmary.peter.bakalarka.repository.quantity.ElectricQuantityRegistry;
 
 import java.time.Instant;
 
-@Slf4j
 @Repository
-public class GridFrequencyElectricRepository extends BaseInfluxDbElectricRepository<GridFrequency> {
+public class GridFrequencyElectricRepository extends BaseElectricRepository<GridFrequency> {
 
-  public GridFrequencyElectricRepository(
-      InfluxDBClient influxDBClient,
-      @Value("${influxdb.bucket.electric}") String bucketName,
-      @Value("${influxdb.org}") String organization) {
-    super(influxDBClient, "gridFrequency", bucketName, organization);
+  public GridFrequencyElectricRepository(ElectricQuantityRegistry registry) {
+    super(registry, "gridFrequency");
   }
 
   @Override
-  protected Class<GridFrequency> getEntityClass() {
-    return GridFrequency.class;
+  protected GridFrequency createEntity(
+      Instant time, double value, ElectricPhase phase, String device) {
+    return new GridFrequency(value, time, device);
   }
 
   @Override
-  protected Point generatePointToSave(Instant currentUtcTime, GridFrequency gridFrequency) {
-    if (gridFrequency.getTime().isAfter(currentUtcTime)) {
-      log.info(
-          "{} is after now ({} in UTC) timestamp, replacing it with {}",
-          gridFrequency.getTime(),
-          currentUtcTime,
-          currentUtcTime);
-      gridFrequency.setTime(currentUtcTime);
-    }
-
-    return Point.measurement(QUANTITY_NAME)
-        .addField("value", gridFrequency.getFrequency())
-        .time(gridFrequency.getTime().getEpochSecond(), WritePrecision.S);
+  protected Instant getTime(GridFrequency gridFrequency) {
+    return gridFrequency.getTime();
+  }
+
+  @Override
+  protected void setTime(GridFrequency gridFrequency, Instant time) {
+    gridFrequency.setTime(time);
+  }
+
+  @Override
+  protected double getValue(GridFrequency gridFrequency) {
+    return gridFrequency.getFrequency();
+  }
+
+  @Override
+  protected ElectricPhase getPhase(GridFrequency gridFrequency) {
+    return null;
+  }
+
+  @Override
+  protected String getDevice(GridFrequency gridFrequency) {
+    return gridFrequency.getDevice();
   }
 }
@@ -1,51 +1,49 @@
 package szathmary.peter.bakalarka.repository;
 
-import com.influxdb.client.InfluxDBClient;
-import com.influxdb.client.domain.WritePrecision;
-import com.influxdb.client.write.Point;
-import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
+import szathmary.peter.bakalarka.constant.ElectricPhase;
 import szathmary.peter.bakalarka.entity.Voltage;
-import szathmary.peter.bakalarka.repository.abstractInfluxDbRepository.BaseInfluxDbElectricRepository;
+import szathmary.peter.bakalarka.repository.abstractElectricRepository.BaseElectricRepository;
+import szathmary.peter.bakalarka.repository.quantity.ElectricQuantityRegistry;
 
 import java.time.Instant;
 
-@Slf4j
 @Repository
-public class VoltageElectricRepository extends BaseInfluxDbElectricRepository<Voltage> {
-
-  @Value("${influxdb.org}")
-  private String ORGANIZATION;
+public class VoltageElectricRepository extends BaseElectricRepository<Voltage> {
 
   @Autowired
-  public VoltageElectricRepository(
-      InfluxDBClient influxDBClient,
-      @Value("${influxdb.bucket.electric}") String bucketName,
-      @Value("${influxdb.org}") String organization) {
-    super(influxDBClient, "voltage", bucketName, organization);
+  public VoltageElectricRepository(ElectricQuantityRegistry registry) {
+    super(registry, "voltage");
+  }
+
+  @Override
+  protected Voltage createEntity(Instant time, double value, ElectricPhase phase, String device) {
+    return new Voltage(value, time, phase, device);
+  }
+
+  @Override
+  protected Instant getTime(Voltage voltage) {
+    return voltage.getTime();
+  }
+
+  @Override
+  protected void setTime(Voltage voltage, Instant time) {
+    voltage.setTime(time);
+  }
+
+  @Override
+  protected double getValue(Voltage voltage) {
+    return voltage.getVoltage();
   }
 
   @Override
-  protected Class<Voltage> getEntityClass() {
-    return Voltage.class;
+  protected ElectricPhase getPhase(Voltage voltage) {
+    return voltage.getPhase();
   }
 
   @Override
-  protected Point generatePointToSave(Instant currentUtcTime, Voltage voltage) {
-    if (voltage.getTime().isAfter(currentUtcTime)) {
-      log.info(
-          "{} is after now ({} in UTC) timestamp, replacing it with {}",
-          voltage.getTime(),
-          currentUtcTime,
-          currentUtcTime);
-      voltage.setTime(currentUtcTime);
-    }
-
-    return Point.measurement(QUANTITY_NAME)
-        .addTag("phase", voltage.getPhase().toString())
-        .addField("value", voltage.getVoltage())
-        .time(voltage.getTime().getEpochSecond(), WritePrecision.S);
+  protected String getDevice(Voltage voltage) {
+    return voltage.getDevice();
   }
 }
@@ -0,0 +1,341 @@
+package szathmary.peter.bakalarka.repository.abstractElectricRepository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.repository.NoRepositoryBean;
+import szathmary.peter.bakalarka.constant.ElectricPhase;
+import szathmary.peter.bakalarka.dto.electric.GroupedSeriesDto;
+import szathmary.peter.bakalarka.exception.NoDataFound;
+import szathmary.peter.bakalarka.exception.WriteBatchTooLargeException;
+import szathmary.peter.bakalarka.exception.WriteQueueFullException;
+import szathmary.peter.bakalarka.repository.quantity.ElectricQuantityRegistry;
+import szathmary.peter.bakalarka.repository.quantity.QuantityRepository;
+import szathmary.peter.bakalarka.repository.quantity.StoredValue;
+import szathmary.peter.bakalarka.repository.storage.SampleBatch;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * Maps values of one electric quantity to entities. Values are stored and cached by {@link
+ * QuantityRepository} of quantity from {@link ElectricQuantityRegistry}, this repository only
+ * creates entities of values read from it and splits saved entities into batches.
+ *
+ * @param <T> type of entity
+ */
+@Slf4j
+@NoRepositoryBean
+public abstract class BaseElectricRepository<T> {
+
+  protected final String QUANTITY_NAME;
+
+  private final QuantityRepository quantityRepository;
+
+  public BaseElectricRepository(ElectricQuantityRegistry registry, String quantityName) {
+    this.QUANTITY_NAME = quantityName;
+    this.quantityRepository = registry.getRequired(quantityName);
+  }
+
+  public List<T> findAll(String device, List<ElectricPhase> phases) {
+    List<T> values = new ArrayList<>();
+    streamAll(device, phases, values::add);
+
+    return values;
+  }
+
+  /**
+   * Passes all values of provided phases ordered by time to consumer as they are read from
+   * storage, without collecting them in memory
+   *
+   * @param device name of device, null for the default device
+   * @param phases phases to stream, all phases if null or empty
+   * @param consumer receives streamed values
+   */
+  public void streamAll(String device, List<ElectricPhase> phases, Consumer<T> consumer) {
+    streamAllBetweenDates(device, null, null, phases, consumer);
+  }
+
+  public List<T> findAllBetweenDates(
+      String device, Instant startDate, Instant endDate, List<ElectricPhase> phases) {
+    List<T> values = new ArrayList<>();
+    streamAllBetweenDates(device, startDate, endDate, phases, values::add);
+
+    return values;
+  }
+
+  /**
+   * Passes values of provided phases between dates ordered by time to consumer as they are read
+   * from storage, without collecting them in memory
+   *
+   * @param device name of device, null for the default device
+   * @param startDate start of range
+   * @param endDate end of range
+   * @param phases phases to stream, all phases if null or empty
+   * @param consumer receives streamed values
+   */
+  public void streamAllBetweenDates(
+      String device,
+      Instant startDate,
+      Instant endDate,
+      List<ElectricPhase> phases,
+      Consumer<T> consumer) {
+    quantityRepository.scan(
+        device,
+        startDate,
+        endDate,
+        phases,
+        (phase, epochMillis, value) ->
+            consumer.accept(createEntity(Instant.ofEpochMilli(epochMillis), value, phase, device)));
+  }
+
+  /**
+   * Passes all values of provided phases downsampled to at most provided number of points per
+   * phase to consumer
+   *
+   * @param device name of device, null for the default device
+   * @param phases phases to stream, all phases if null or empty
+   * @param maxPoints maximal number of points of every phase
+   * @param consumer receives downsampled values ordered by time within phase
+   */
+  public void streamAllDownsampled(
+      String device, List<ElectricPhase> phases, int maxPoints, Consumer<T> consumer) {
+    streamAllBetweenDatesDownsampled(device, null, null, phases, maxPoints, consumer);
+  }
+
+  /**
+   * Passes values of provided phases between dates downsampled to at most provided number of
+   * points per phase to consumer
+   *
+   * @param device name of device, null for the default device
+   * @param startDate start of range
+   * @param endDate end of range
+   * @param phases phases to stream, all phases if null or empty
+   * @param maxPoints maximal number of points of every phase
+   * @param consumer receives downsampled values ordered by time within phase
+   */
+  public void streamAllBetweenDatesDownsampled(
+      String device,
+      Instant startDate,
+      Instant endDate,
+      List<ElectricPhase> phases,
+      int maxPoints,
+      Consumer<T> consumer) {
+    quantityRepository.scanDownsampled(
+        device,
+        startDate,
+        endDate,
+        phases,
+        maxPoints,
+        (phase, epochMillis, value) ->
+            consumer.accept(createEntity(Instant.ofEpochMilli(epochMillis), value, phase, device)));
+  }
+
+  public List<T> getValueSince(String device, Instant since, List<ElectricPhase> phases) {
+    return findAllBetweenDates(device, since, null, phases);
+  }
+
+  /**
+   * Returns latest value of first of provided phases that has any value
+   *
+   * @param device name of device, null for the default device
+   * @param phases phases to look up, all phases if null or empty
+   * @return latest value
+   * @throws NoDataFound if there is no value of any of provided phases
+   */
+  public T getLastValue(String device, List<ElectricPhase> phases) throws NoDataFound {
+    StoredValue lastValue = quantityRepository.getLastValue(device, phases);
+    if (lastValue == null) {
+      throw new NoDataFound(
+          String.format(
+              "No %s value of device %s was found for phases %s", QUANTITY_NAME, device, phases));
+    }
+
+    return createEntity(
+        Instant.ofEpochMilli(lastValue.epochMillis()),
+        lastValue.value(),
+        lastValue.phase(),
+        device);
+  }
+
+  /**
+   * Aggregates values into windows and computes min, max and mean of every window in a single
+   * scan. Result is returned as list of min, max and mean lists in this order.
+   *
+   * @param device name of device, null for the default device
+   * @param startDate start of aggregated range
+   * @param endDate end of aggregated range
+   * @param phases phases to aggregate
+   * @return list containing min, max and mean lists or null if there is no data to aggregate
+   */
+  public List<List<T>> getGroupedMinMaxMean(
+      String device, Instant startDate, Instant endDate, List<ElectricPhase> phases) {
+    return toMinMaxMean(
+        device, quantityRepository.getGroupedSeries(device, startDate, endDate, phases));
+  }
+
+  /**
+   * Creates entities of grouped series
+   *
+   * @param device name of device of series, null for the default device
+   * @param series grouped series, may be null
+   * @return list containing min, max and mean lists or null if series are null
+   */
+  public List<List<T>> toMinMaxMean(String device, List<GroupedSeriesDto> series) {
+    if (series == null) {
+      return null;
+    }
+
+    int size = 0;
+    for (GroupedSeriesDto phaseSeries : series) {
+      size += phaseSeries.size();
+    }
+
+    List<T> minTemperatureList = new ArrayList<>(size);
+    List<T> maxTemperatureList = new ArrayList<>(size);
+    List<T> meanTemperatureList = new ArrayList<>(size);
+
+    for (GroupedSeriesDto phaseSeries : series) {
+      for (int i = 0; i < phaseSeries.size(); i++) {
+        Instant time = Instant.ofEpochMilli(phaseSeries.time()[i]);
+        ElectricPhase phase = phaseSeries.phase();
+        minTemperatureList.add(createEntity(time, phaseSeries.min()[i], phase, device));
+        maxTemperatureList.add(createEntity(time, phaseSeries.max()[i], phase, device));
+        meanTemperatureList.add(createEntity(time, phaseSeries.mean()[i], phase, device));
+      }
+    }
+
+    List<List<T>> listOfLists = new ArrayList<>();
+    listOfLists.add(minTemperatureList);
+    listOfLists.add(maxTemperatureList);
+    listOfLists.add(meanTemperatureList);
+
+    return listOfLists;
+  }
+
+  public List<T> getLastNValues(String device, List<ElectricPhase> phases, int count) {
+    List<T> lastValues = new ArrayList<>();
+    quantityRepository.scanLast(
+        device,
+        phases,
+        count,
+        (phase, epochMillis, value) ->
+            lastValues.add(createEntity(Instant.ofEpochMilli(epochMillis), value, phase, device)));
+
+    return lastValues;
+  }
+
+  public void save(T t) throws WriteQueueFullException, WriteBatchTooLargeException {
+    saveAll(List.of(t));
+  }
+
+  /**
+   * Saves values of every device to storage of its device. Values of one device are either all
+   * accepted or none of them, values of devices written before failed device stay accepted.
+   *
+   * @param tList values to save
+   */
+  public void saveAll(List<T> tList) throws WriteQueueFullException, WriteBatchTooLargeException {
+    if (tList.isEmpty()) {
+      return;
+    }
+
+    String firstDevice = getDevice(tList.get(0));
+    boolean singleDevice = true;
+    for (T t : tList) {
+      singleDevice &= Objects.equals(getDevice(t), firstDevice);
+    }
+    if (singleDevice) {
+      saveDeviceValues(firstDevice, tList);
+      return;
+    }
+
+    // default device has null name, which is permitted as key of hash map
+    Map<String, List<T>> valuesByDevice = new HashMap<>();
+    for (T t : tList) {
+      valuesByDevice.computeIfAbsent(getDevice(t), device -> new ArrayList<>()).add(t);
+    }
+    for (Map.Entry<String, List<T>> entry : valuesByDevice.entrySet()) {
+      saveDeviceValues(entry.getKey(), entry.getValue());
+    }
+  }
+
+  private void saveDeviceValues(String device, List<T> tList)
+      throws WriteQueueFullException, WriteBatchTooLargeException {
+    SampleBatch batch = new SampleBatch(tList.size());
+    // time cannot be in future
+    Instant currentUtcTime = Instant.now();
+
+    for (T t : tList) {
+      if (getTime(t).isAfter(currentUtcTime)) {
+        log.info(
+            "{} is after now ({} in UTC) timestamp, replacing it with {}",
+            getTime(t),
+            currentUtcTime,
+            currentUtcTime);
+        setTime(t, currentUtcTime);
+      }
+
+      batch.add(getPhase(t), getTime(t).toEpochMilli(), getValue(t));
+    }
+
+    quantityRepository.saveBatch(device, batch);
+  }
+
+  /**
+   * Saves values decoded without entities. Times in future are replaced with current time and
+   * all times are truncated to seconds in provided batch.
+   *
+   * @param device name of device which measured values, null for the default device
+   * @param batch values to save
+   */
+  public void saveBatch(String device, SampleBatch batch)
+      throws WriteQueueFullException, WriteBatchTooLargeException {
+    quantityRepository.saveBatch(device, batch);
+  }
+
+  /**
+   * @return name of quantity in {@link ElectricQuantityRegistry}
+   */
+  public String getQuantityName() {
+    return QUANTITY_NAME;
+  }
+
+  /**
+   * @return repository of primitive values of quantity
+   */
+  public QuantityRepository getQuantityRepository() {
+    return quantityRepository;
+  }
+
+  /**
+   * Creates entity from value read from storage
+   *
+   * @param time time of value
+   * @param value value
+   * @param phase phase of value, null if quantity has no phases
+   * @param device name of device which measured value, null for the default device
+   * @return created entity
+   */
+  protected abstract T createEntity(
+      Instant time, double value, ElectricPhase phase, String device);
+
+  protected abstract Instant getTime(T t);
+
+  protected abstract void setTime(T t, Instant time);
+
+  protected abstract double getValue(T t);
+
+  /**
+   * @return phase of entity, null if quantity has no phases
+   */
+  protected abstract ElectricPhase getPhase(T t);
+
+  /**
+   * @return name of device which measured entity, null for the default device
+   */
+  protected abstract String getDevice(T t);
+}
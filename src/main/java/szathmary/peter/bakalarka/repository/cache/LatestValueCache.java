@@ -0,0 +1,94 @@
+package szathmary.peter.bakalarka.repository.cache;
+
+import szathmary.peter.bakalarka.constant.ElectricPhase;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Holds the latest value of one electric quantity for every phase. Values are updated when they
+ * are saved, storage is asked only the first time a phase is read.
+ *
+ * @param <T> type of cached entity
+ */
+public class LatestValueCache<T> {
+
+  private final AtomicReferenceArray<Entry<T>> entries =
+      new AtomicReferenceArray<>(ElectricPhase.values().length + 1);
+
+  private final Function<T, Instant> timeGetter;
+
+  public LatestValueCache(Function<T, Instant> timeGetter) {
+    this.timeGetter = timeGetter;
+  }
+
+  /**
+   * Returns latest value of phase, loads it from storage if it was not loaded yet
+   *
+   * @param phase phase of value, null if quantity has no phases
+   * @param loader loads latest value from storage, returns null if there is no value
+   * @return latest value or null if there is no value of phase
+   */
+  public T get(ElectricPhase phase, Supplier<T> loader) {
+    int index = indexOf(phase);
+    Entry<T> entry = entries.get(index);
+    if (entry != null && entry.loaded()) {
+      return entry.value();
+    }
+
+    T loadedValue = loader.get();
+    while (true) {
+      Entry<T> currentEntry = entries.get(index);
+      T currentValue = currentEntry == null ? null : currentEntry.value();
+      Entry<T> loadedEntry = new Entry<>(newer(currentValue, loadedValue), true);
+
+      if (entries.compareAndSet(index, currentEntry, loadedEntry)) {
+        return loadedEntry.value();
+      }
+    }
+  }
+
+  /**
+   * Replaces cached value of phase if provided value is not older
+   *
+   * @param phase phase of value, null if quantity has no phases
+   * @param value saved value
+   */
+  public void update(ElectricPhase phase, T value) {
+    int index = indexOf(phase);
+    while (true) {
+      Entry<T> currentEntry = entries.get(index);
+      if (currentEntry != null && newer(currentEntry.value(), value) != value) {
+        return;
+      }
+
+      boolean loaded = currentEntry != null && currentEntry.loaded();
+      if (entries.compareAndSet(index, currentEntry, new Entry<>(value, loaded))) {
+        return;
+      }
+    }
+  }
+
+  private T newer(T first, T second) {
+    if (first == null) {
+      return second;
+    }
+    if (second == null) {
+      return first;
+    }
+
+    return timeGetter.apply(first).isAfter(timeGetter.apply(second)) ? first : second;
+  }
+
+  private static int indexOf(ElectricPhase phase) {
+    return phase == null ? 0 : phase.ordinal() + 1;
+  }
+
+  /**
+   * @param value latest known value
+   * @param loaded whether storage was already asked for the latest value
+   */
+  private record Entry<T>(T value, boolean loaded) {}
+}
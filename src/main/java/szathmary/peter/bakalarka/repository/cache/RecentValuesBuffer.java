@@ -0,0 +1,110 @@
+package szathmary.peter.bakalarka.repository.cache;
+
+/**
+ * Ring buffer of the most recent values of one series kept in primitive arrays ordered by time.
+ * Buffer can answer requests for last values only after it was loaded from storage.
+ */
+public class RecentValuesBuffer {
+
+  private final long[] epochMillis;
+
+  private final double[] values;
+
+  private int head;
+
+  private int size;
+
+  private boolean loaded;
+
+  public RecentValuesBuffer(int capacity) {
+    this.epochMillis = new long[capacity];
+    this.values = new double[capacity];
+  }
+
+  public int capacity() {
+    return values.length;
+  }
+
+  public synchronized boolean isLoaded() {
+    return loaded;
+  }
+
+  /**
+   * Marks buffer as loaded with last values from storage. Since then buffer holds either the whole
+   * capacity of last values or all values of series.
+   */
+  public synchronized void markLoaded() {
+    loaded = true;
+  }
+
+  /**
+   * Adds value keeping buffer ordered by time. Value with the same time as already buffered one
+   * replaces it, value older than all buffered values is ignored when buffer is full.
+   */
+  public synchronized void add(long time, double value) {
+    int capacity = capacity();
+
+    if (size == 0 || time > epochMillis[physicalIndex(size - 1)]) {
+      if (size == capacity) {
+        head = (head + 1) % capacity;
+        size--;
+      }
+      epochMillis[physicalIndex(size)] = time;
+      values[physicalIndex(size)] = value;
+      size++;
+      return;
+    }
+
+    int position = size;
+    while (position > 0 && epochMillis[physicalIndex(position - 1)] > time) {
+      position--;
+    }
+
+    if (position > 0 && epochMillis[physicalIndex(position - 1)] == time) {
+      values[physicalIndex(position - 1)] = value;
+      return;
+    }
+
+    if (size == capacity) {
+      if (position == 0) {
+        return;
+      }
+      // drop the oldest value to make room
+      head = (head + 1) % capacity;
+      size--;
+      position--;
+    }
+
+    for (int i = size; i > position; i--) {
+      epochMillis[physicalIndex(i)] = epochMillis[physicalIndex(i - 1)];
+      values[physicalIndex(i)] = values[physicalIndex(i - 1)];
+    }
+    epochMillis[physicalIndex(position)] = time;
+    values[physicalIndex(position)] = value;
+    size++;
+  }
+
+  /**
+   * Copies last values ordered from the oldest one
+   *
+   * @param count maximum number of values to copy
+   * @param timesOut array receiving epoch milliseconds of values
+   * @param valuesOut array receiving values
+   * @return number of copied values
+   */
+  public synchronized int copyLast(int count, long[] timesOut, double[] valuesOut) {
+    int copied = Math.min(count, size);
+    int first = size - copied;
+
+    for (int i = 0; i < copied; i++) {
+      timesOut[i] = epochMillis[physicalIndex(first + i)];
+      valuesOut[i] = values[physicalIndex(first + i)];
+    }
+
+    return copied;
+  }
+
+  private int physicalIndex(int logicalIndex) {
+    return (head + logicalIndex) % capacity();
+  }
+}
@@ -0,0 +1,40 @@
+package szathmary.peter.bakalarka.repository.cache;
+
+import szathmary.peter.bakalarka.constant.ElectricPhase;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Holds buffers of recent values of one electric quantity for every phase. Buffer is allocated
+ * when its phase is used for the first time.
+ */
+public class RecentValuesCache {
+
+  private final int capacity;
+
+  private final AtomicReferenceArray<RecentValuesBuffer> buffers =
+      new AtomicReferenceArray<>(ElectricPhase.values().length + 1);
+
+  public RecentValuesCache(int capacity) {
+    this.capacity = capacity;
+  }
+
+  /**
+   * @param phase phase of values, null if quantity has no phases
+   * @return buffer of phase
+   */
+  public RecentValuesBuffer getBuffer(ElectricPhase phase) {
+    int index = phase == null ? 0 : phase.ordinal() + 1;
+    RecentValuesBuffer buffer = buffers.get(index);
+    if (buffer == null) {
+      buffers.compareAndSet(index, null, new RecentValuesBuffer(capacity));
+      buffer = buffers.get(index);
+    }
+
+    return buffer;
+  }
+
+  public int capacity() {
+    return capacity;
+  }
+}
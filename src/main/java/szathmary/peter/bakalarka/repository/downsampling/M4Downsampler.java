@@ -0,0 +1,138 @@
+package szathmary.peter.bakalarka.repository.downsampling;
+
+import szathmary.peter.bakalarka.constant.ElectricPhase;
+
+import java.util.Arrays;
+
+/**
+ * Downsamples values of every phase to the first, minimal, maximal and last value of each of
+ * equally wide time buckets (M4 aggregation). Unlike averaging, it keeps spikes and the shape of
+ * line drawn with one bucket per pixel.
+ *
+ * <p>Values of every phase have to be added ordered by time, phases may be interleaved. State is
+ * kept in primitive arrays, bucket is passed to consumer as soon as value of the next bucket of
+ * the same phase arrives.
+ */
+public class M4Downsampler {
+
+  private static final int SLOTS = ElectricPhase.values().length + 1;
+
+  private final long startMillis;
+
+  private final long rangeMillis;
+
+  private final int buckets;
+
+  private final PointConsumer consumer;
+
+  private final long[] bucketIndexes = new long[SLOTS];
+
+  private final long[] firstTimes = new long[SLOTS];
+  private final double[] firstValues = new double[SLOTS];
+
+  private final long[] minTimes = new long[SLOTS];
+  private final double[] minValues = new double[SLOTS];
+
+  private final long[] maxTimes = new long[SLOTS];
+  private final double[] maxValues = new double[SLOTS];
+
+  private final long[] lastTimes = new long[SLOTS];
+  private final double[] lastValues = new double[SLOTS];
+
+  private final long[] emittedTimes = new long[4];
+  private final double[] emittedValues = new double[4];
+
+  /**
+   * @param startMillis start of downsampled range
+   * @param endMillis end of downsampled range, exclusive
+   * @param maxPoints maximal number of points of every phase, at least 4 points are returned
+   * @param consumer receives downsampled points ordered by time within phase
+   */
+  public M4Downsampler(long startMillis, long endMillis, int maxPoints, PointConsumer consumer) {
+    this.startMillis = startMillis;
+    this.rangeMillis = Math.max(1, endMillis - startMillis);
+    this.buckets = Math.max(1, maxPoints / 4);
+    this.consumer = consumer;
+    Arrays.fill(bucketIndexes, -1);
+  }
+
+  public void add(ElectricPhase phase, long epochMillis, double value) {
+    int slot = phase == null ? 0 : phase.ordinal() + 1;
+    long bucketIndex = bucketOf(epochMillis);
+
+    if (bucketIndexes[slot] != bucketIndex) {
+      emit(slot);
+      bucketIndexes[slot] = bucketIndex;
+      firstTimes[slot] = minTimes[slot] = maxTimes[slot] = lastTimes[slot] = epochMillis;
+      firstValues[slot] = minValues[slot] = maxValues[slot] = lastValues[slot] = value;
+      return;
+    }
+
+    if (value < minValues[slot]) {
+      minTimes[slot] = epochMillis;
+      minValues[slot] = value;
+    }
+    if (value > maxValues[slot]) {
+      maxTimes[slot] = epochMillis;
+      maxValues[slot] = value;
+    }
+    lastTimes[slot] = epochMillis;
+    lastValues[slot] = value;
+  }
+
+  /** Passes buckets still being aggregated to consumer */
+  public void finish() {
+    for (int slot = 0; slot < SLOTS; slot++) {
+      emit(slot);
+      bucketIndexes[slot] = -1;
+    }
+  }
+
+  private long bucketOf(long epochMillis) {
+    long offset = Math.min(Math.max(epochMillis - startMillis, 0), rangeMillis - 1);
+    // offset * buckets fits into long for any realistic range and point count
+    return offset * buckets / rangeMillis;
+  }
+
+  private void emit(int slot) {
+    if (bucketIndexes[slot] < 0) {
+      return;
+    }
+
+    int count = 0;
+    count = addEmitted(count, firstTimes[slot], firstValues[slot]);
+    count = addEmitted(count, minTimes[slot], minValues[slot]);
+    count = addEmitted(count, maxTimes[slot], maxValues[slot]);
+    count = addEmitted(count, lastTimes[slot], lastValues[slot]);
+
+    ElectricPhase phase = slot == 0 ? null : ElectricPhase.values()[slot - 1];
+    for (int i = 0; i < count; i++) {
+      consumer.accept(phase, emittedTimes[i], emittedValues[i]);
+    }
+  }
+
+  /** Inserts point keeping emitted points ordered by time, the same point is added only once */
+  private int addEmitted(int count, long time, double value) {
+    int position = count;
+    while (position > 0 && emittedTimes[position - 1] > time) {
+      position--;
+    }
+    if (position > 0 && emittedTimes[position - 1] == time) {
+      return count;
+    }
+
+    for (int i = count; i > position; i--) {
+      emittedTimes[i] = emittedTimes[i - 1];
+      emittedValues[i] = emittedValues[i - 1];
+    }
+    emittedTimes[position] = time;
+    emittedValues[position] = value;
+
+    return count + 1;
+  }
+
+  @FunctionalInterface
+  public interface PointConsumer {
+    void accept(ElectricPhase phase, long epochMillis, double value);
+  }
+}
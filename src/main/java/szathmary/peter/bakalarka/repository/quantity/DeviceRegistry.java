@@ -0,0 +1,91 @@
+package szathmary.peter.bakalarka.repository.quantity;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import szathmary.peter.bakalarka.exception.InvalidElectricQuantityException;
+import szathmary.peter.bakalarka.repository.storage.ElectricStorageFactory;
+import szathmary.peter.bakalarka.util.DeviceUtil;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Names of devices whose values can be stored and read. Devices with stored values are loaded
+ * from storage when registry is used for the first time, new device is registered before its
+ * first values are saved. Number of devices is limited, so clients can not make application open
+ * storage for every name they send.
+ */
+@Component
+public class DeviceRegistry {
+
+  private final ElectricStorageFactory storageFactory;
+
+  private final int maxDevices;
+
+  private final Set<String> devices = ConcurrentHashMap.newKeySet();
+
+  private volatile boolean loaded;
+
+  public DeviceRegistry(
+      ElectricStorageFactory storageFactory,
+      @Value("${electric-quantities.devices.max-devices}") int maxDevices) {
+    this.storageFactory = storageFactory;
+    this.maxDevices = maxDevices;
+  }
+
+  /**
+   * @param device name of device, null for the default device
+   * @return whether values of device can be stored and read
+   */
+  public boolean isRegistered(String device) {
+    if (device == null) {
+      return true;
+    }
+
+    load();
+    return devices.contains(device);
+  }
+
+  /**
+   * Registers device unless it is already registered
+   *
+   * @param device name of device, null for the default device
+   * @throws InvalidElectricQuantityException if name is not valid or limit of devices was reached
+   */
+  public void register(String device) throws InvalidElectricQuantityException {
+    if (!DeviceUtil.isValid(device)) {
+      throw new InvalidElectricQuantityException("Invalid device: " + device);
+    }
+    if (isRegistered(device)) {
+      return;
+    }
+
+    synchronized (this) {
+      if (!devices.contains(device) && devices.size() >= maxDevices) {
+        throw new InvalidElectricQuantityException(
+            String.format(
+                "Device %s can not be added, limit of %d devices was reached", device, maxDevices));
+      }
+      devices.add(device);
+    }
+  }
+
+  private void load() {
+    if (loaded) {
+      return;
+    }
+
+    synchronized (this) {
+      if (loaded) {
+        return;
+      }
+
+      for (String device : storageFactory.findDevices()) {
+        if (device != null && DeviceUtil.isValid(device)) {
+          devices.add(device);
+        }
+      }
+      loaded = true;
+    }
+  }
+}
@@ -0,0 +1,124 @@
+package szathmary.peter.bakalarka.repository.quantity;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import szathmary.peter.bakalarka.exception.InvalidElectricQuantityException;
+import szathmary.peter.bakalarka.repository.storage.ElectricStorageFactory;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Repositories of all electric quantities listed in {@code electric-quantities.registry}
+ * properties. New quantity is added by appending its name to one of the lists, it is then
+ * ingested, queried and aggregated by the same code as every other quantity.
+ */
+@Component
+public class ElectricQuantityRegistry {
+
+  private final Map<String, QuantityRepository> repositories = new LinkedHashMap<>();
+
+  private final long deviceIdleTimeoutMillis;
+
+  public ElectricQuantityRegistry(
+      ElectricStorageFactory storageFactory,
+      DeviceRegistry deviceRegistry,
+      MeterRegistry meterRegistry,
+      @Value("${electric-quantities.registry.phase-quantities}") List<String> phaseQuantities,
+      @Value("${electric-quantities.registry.single-quantities}") List<String> singleQuantities,
+      @Value("${electric-quantities.cache.recent-values-capacity}") int recentValuesCapacity,
+      @Value("${electric-quantities.cache.cached-devices}") int maxCachedDevices,
+      @Value("${electric-quantities.devices.idle-timeout-ms}") long deviceIdleTimeoutMillis) {
+    this.deviceIdleTimeoutMillis = deviceIdleTimeoutMillis;
+    for (String name : phaseQuantities) {
+      register(
+          new QuantityDefinition(name, true),
+          storageFactory,
+          deviceRegistry,
+          meterRegistry,
+          recentValuesCapacity,
+          maxCachedDevices);
+    }
+    for (String name : singleQuantities) {
+      register(
+          new QuantityDefinition(name, false),
+          storageFactory,
+          deviceRegistry,
+          meterRegistry,
+          recentValuesCapacity,
+          maxCachedDevices);
+    }
+  }
+
+  private void register(
+      QuantityDefinition definition,
+      ElectricStorageFactory storageFactory,
+      DeviceRegistry deviceRegistry,
+      MeterRegistry meterRegistry,
+      int recentValuesCapacity,
+      int maxCachedDevices) {
+    if (repositories.containsKey(definition.name())) {
+      throw new IllegalArgumentException(
+          "Electric quantity " + definition.name() + " is registered twice");
+    }
+
+    repositories.put(
+        definition.name(),
+        new QuantityRepository(
+            definition,
+            storageFactory,
+            deviceRegistry,
+            meterRegistry,
+            recentValuesCapacity,
+            maxCachedDevices));
+  }
+
+  /** Closes storages of devices which were not used for longer than idle timeout */
+  @Scheduled(fixedDelayString = "${electric-quantities.devices.idle-timeout-ms}")
+  public void closeIdleDevices() {
+    long idleSinceMillis = System.currentTimeMillis() - deviceIdleTimeoutMillis;
+    for (QuantityRepository repository : repositories.values()) {
+      repository.closeIdleDevices(idleSinceMillis);
+    }
+  }
+
+  /**
+   * @param name name of quantity
+   * @return repository of quantity
+   * @throws InvalidElectricQuantityException if quantity is not registered
+   */
+  public QuantityRepository get(String name) throws InvalidElectricQuantityException {
+    QuantityRepository repository = repositories.get(name);
+    if (repository == null) {
+      throw new InvalidElectricQuantityException("Unknown electric quantity: " + name);
+    }
+
+    return repository;
+  }
+
+  /**
+   * Returns repository of quantity required by application code
+   *
+   * @throws IllegalStateException if quantity is missing in configuration
+   */
+  public QuantityRepository getRequired(String name) {
+    QuantityRepository repository = repositories.get(name);
+    if (repository == null) {
+      throw new IllegalStateException("Electric quantity " + name + " is not registered");
+    }
+
+    return repository;
+  }
+
+  /**
+   * @return repositories of all quantities in order they were registered
+   */
+  public Collection<QuantityRepository> getAll() {
+    return Collections.unmodifiableCollection(repositories.values());
+  }
+}
@@ -0,0 +1,21 @@
+package szathmary.peter.bakalarka.repository.quantity;
+
+import java.util.regex.Pattern;
+
+/**
+ * Metadata of electric quantity registered in {@link ElectricQuantityRegistry}
+ *
+ * @param name name of quantity, used as storage measurement and in URLs
+ * @param hasPhases whether values of quantity are stored per phase
+ */
+public record QuantityDefinition(String name, boolean hasPhases) {
+
+  /** names are used as InfluxDB measurements, in Flux queries and as directory names */
+  private static final Pattern NAME_PATTERN = Pattern.compile("[A-Za-z][A-Za-z0-9]{0,63}");
+
+  public QuantityDefinition {
+    if (name == null || !NAME_PATTERN.matcher(name).matches()) {
+      throw new IllegalArgumentException("Invalid name of electric quantity " + name);
+    }
+  }
+}
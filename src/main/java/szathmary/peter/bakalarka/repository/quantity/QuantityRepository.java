@@ -0,0 +1,606 @@
+package szathmary.peter.bakalarka.repository.quantity;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import szathmary.peter.bakalarka.constant.ElectricPhase;
+import szathmary.peter.bakalarka.dto.electric.GroupedSeriesDto;
+import szathmary.peter.bakalarka.exception.WriteBatchTooLargeException;
+import szathmary.peter.bakalarka.exception.WriteQueueFullException;
+import szathmary.peter.bakalarka.repository.cache.LatestValueCache;
+import szathmary.peter.bakalarka.repository.cache.RecentValuesBuffer;
+import szathmary.peter.bakalarka.repository.cache.RecentValuesCache;
+import szathmary.peter.bakalarka.repository.downsampling.M4Downsampler;
+import szathmary.peter.bakalarka.repository.rollup.AggregatedWindow;
+import szathmary.peter.bakalarka.repository.rollup.WindowPlanner;
+import szathmary.peter.bakalarka.repository.storage.ElectricStorage;
+import szathmary.peter.bakalarka.repository.storage.ElectricStorageFactory;
+import szathmary.peter.bakalarka.repository.storage.MeteredElectricStorage;
+import szathmary.peter.bakalarka.repository.storage.SampleBatch;
+import szathmary.peter.bakalarka.repository.storage.SampleConsumer;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Values of one electric quantity described by {@link QuantityDefinition}. Values are read and
+ * written as primitive time and value pairs, so the same code serves every quantity and no entity
+ * is created unless caller maps values to it.
+ *
+ * <p>Every device registered in {@link DeviceRegistry} has its own storage and caches, opened when
+ * device is used for the first time, so cost of query of one device does not depend on number of
+ * devices. Storages and caches are kept open only for recently used devices and are closed when
+ * device is not used for a while, storage of the default device is never closed. Device which is
+ * not registered has no values.
+ */
+@Slf4j
+public class QuantityRepository {
+
+  private final QuantityDefinition definition;
+
+  private final ElectricStorageFactory storageFactory;
+
+  private final DeviceRegistry deviceRegistry;
+
+  private final MeterRegistry meterRegistry;
+
+  private final int recentValuesCapacity;
+
+  private final int maxOpenDevices;
+
+  private final DeviceStorage defaultDevice;
+
+  /** storages and caches of open devices except the default one, the least recently used first */
+  private final LinkedHashMap<String, DeviceStorage> openDevices =
+      new LinkedHashMap<>(16, 0.75f, true);
+
+  /**
+   * @param definition metadata of quantity
+   * @param storageFactory creates storage of every device
+   * @param deviceRegistry devices whose values can be stored
+   * @param meterRegistry registry of storage metrics
+   * @param recentValuesCapacity number of recent values of every phase kept in memory
+   * @param maxOpenDevices number of devices whose storages and caches are kept open
+   */
+  public QuantityRepository(
+      QuantityDefinition definition,
+      ElectricStorageFactory storageFactory,
+      DeviceRegistry deviceRegistry,
+      MeterRegistry meterRegistry,
+      int recentValuesCapacity,
+      int maxOpenDevices) {
+    this.definition = definition;
+    this.storageFactory = storageFactory;
+    this.deviceRegistry = deviceRegistry;
+    this.meterRegistry = meterRegistry;
+    this.recentValuesCapacity = recentValuesCapacity;
+    this.maxOpenDevices = maxOpenDevices;
+    this.defaultDevice = new DeviceStorage(recentValuesCapacity);
+    open(null, defaultDevice);
+  }
+
+  public QuantityDefinition getDefinition() {
+    return definition;
+  }
+
+  /**
+   * Passes values of provided phases between dates ordered by phase and time to consumer as they
+   * are read from storage
+   *
+   * @param device name of device, null for the default device
+   * @param startDate start of range, null to read from the first value
+   * @param endDate end of range, null to read until the last value
+   * @param phases phases to read, all phases if null or empty
+   * @param consumer receives values
+   */
+  public void scan(
+      String device,
+      Instant startDate,
+      Instant endDate,
+      List<ElectricPhase> phases,
+      SampleConsumer consumer) {
+    DeviceStorage deviceStorage = acquire(device);
+    if (deviceStorage == null) {
+      return;
+    }
+
+    try {
+      deviceStorage.storage.scan(phases, startDate, endDate, consumer);
+    } finally {
+      release(deviceStorage);
+    }
+  }
+
+  /**
+   * Passes values of provided phases downsampled to at most provided number of points per phase
+   * to consumer
+   *
+   * @param device name of device, null for the default device
+   * @param startDate start of range, null to read from the first value
+   * @param endDate end of range, null to read until the last value
+   * @param phases phases to read, all phases if null or empty
+   * @param maxPoints maximal number of points of every phase
+   * @param consumer receives downsampled values ordered by time within phase
+   */
+  public void scanDownsampled(
+      String device,
+      Instant startDate,
+      Instant endDate,
+      List<ElectricPhase> phases,
+      int maxPoints,
+      SampleConsumer consumer) {
+    DeviceStorage deviceStorage = acquire(device);
+    if (deviceStorage == null) {
+      return;
+    }
+
+    try {
+      ElectricStorage storage = deviceStorage.storage;
+      if (startDate == null || endDate == null) {
+        Instant[] bounds = storage.findTimeBounds(phases);
+        if (bounds == null) {
+          return;
+        }
+
+        startDate = startDate == null ? bounds[0] : startDate;
+        // end is exclusive, the last value has to fall into the last bucket
+        endDate = endDate == null ? bounds[1].plusMillis(1) : endDate;
+      }
+
+      M4Downsampler downsampler =
+          new M4Downsampler(
+              startDate.toEpochMilli(), endDate.toEpochMilli(), maxPoints, consumer::accept);
+      storage.scan(phases, startDate, endDate, downsampler::add);
+      downsampler.finish();
+    } finally {
+      release(deviceStorage);
+    }
+  }
+
+  /**
+   * Returns latest value of first of provided phases that has any value. Latest values are
+   * cached, storage is asked only when phase is read for the first time.
+   *
+   * @param device name of device, null for the default device
+   * @param phases phases to look up, all phases if null or empty
+   * @return latest value or null if there is no value of any of provided phases
+   */
+  public StoredValue getLastValue(String device, List<ElectricPhase> phases) {
+    DeviceStorage deviceStorage = acquire(device);
+    if (deviceStorage == null) {
+      return null;
+    }
+
+    try {
+      for (ElectricPhase phase : getPhasesToLookUp(phases)) {
+        StoredValue latestValue =
+            deviceStorage.latestValueCache.get(
+                phase, () -> queryLastValue(deviceStorage.storage, phase));
+        if (latestValue != null) {
+          return latestValue;
+        }
+      }
+
+      return null;
+    } finally {
+      release(deviceStorage);
+    }
+  }
+
+  private static StoredValue queryLastValue(ElectricStorage storage, ElectricPhase phase) {
+    StoredValue[] lastValue = new StoredValue[1];
+    storage.scanLast(
+        phase == null ? null : List.of(phase),
+        1,
+        (storedPhase, epochMillis, value) ->
+            lastValue[0] = new StoredValue(storedPhase, epochMillis, value));
+
+    return lastValue[0];
+  }
+
+  /**
+   * Passes last count values of every provided phase to consumer ordered by phase and time. Recent
+   * values are served from memory when count fits into recent values buffer.
+   *
+   * @param device name of device, null for the default device
+   * @param phases phases to read, all phases if null or empty
+   * @param count number of values of every phase
+   * @param consumer receives values
+   */
+  public void scanLast(
+      String device, List<ElectricPhase> phases, int count, SampleConsumer consumer) {
+    DeviceStorage deviceStorage = acquire(device);
+    if (deviceStorage == null) {
+      return;
+    }
+
+    try {
+      if (count > recentValuesCapacity) {
+        deviceStorage.storage.scanLast(phases, count, consumer);
+        return;
+      }
+
+      long[] times = new long[Math.max(count, 0)];
+      double[] values = new double[times.length];
+
+      for (ElectricPhase phase : getPhasesToLookUp(phases)) {
+        RecentValuesBuffer buffer = deviceStorage.recentValuesCache.getBuffer(phase);
+        if (!buffer.isLoaded()) {
+          loadRecentValues(deviceStorage.storage, phase, buffer);
+        }
+
+        int copied = buffer.copyLast(times.length, times, values);
+        for (int i = 0; i < copied; i++) {
+          consumer.accept(phase, times[i], values[i]);
+        }
+      }
+    } finally {
+      release(deviceStorage);
+    }
+  }
+
+  private static void loadRecentValues(
+      ElectricStorage storage, ElectricPhase phase, RecentValuesBuffer buffer) {
+    storage.scanLast(
+        phase == null ? null : List.of(phase),
+        buffer.capacity(),
+        (storedPhase, epochMillis, value) -> buffer.add(epochMillis, value));
+    buffer.markLoaded();
+  }
+
+  /**
+   * Aggregates values into at most {@link WindowPlanner#DEFAULT_MAX_WINDOWS} windows planned by
+   * {@link WindowPlanner} and computes min, max and mean of every window in a single scan. Range
+   * is widened to bounds of its first and last window.
+   *
+   * @param device name of device, null for the default device
+   * @param startDate start of aggregated range
+   * @param endDate end of aggregated range
+   * @param phases phases to aggregate
+   * @return series of every phase with data or null if there is no data to aggregate
+   */
+  public List<GroupedSeriesDto> getGroupedSeries(
+      String device, Instant startDate, Instant endDate, List<ElectricPhase> phases) {
+    long windowDurationMillis =
+        WindowPlanner.planWindowMillis(endDate.toEpochMilli() - startDate.toEpochMilli(), null);
+
+    return getGroupedSeries(
+        device,
+        WindowPlanner.alignStart(startDate, windowDurationMillis),
+        WindowPlanner.alignEnd(endDate, windowDurationMillis),
+        phases,
+        windowDurationMillis);
+  }
+
+  /**
+   * Aggregates values into windows of provided duration aligned to epoch
+   *
+   * @param device name of device, null for the default device
+   * @param startDate start of aggregated range
+   * @param endDate end of aggregated range
+   * @param phases phases to aggregate
+   * @param windowDurationMillis duration of window
+   * @return series of every phase with data or null if there is no data to aggregate
+   */
+  public List<GroupedSeriesDto> getGroupedSeries(
+      String device,
+      Instant startDate,
+      Instant endDate,
+      List<ElectricPhase> phases,
+      long windowDurationMillis) {
+    DeviceStorage deviceStorage = acquire(device);
+    if (deviceStorage == null) {
+      return null;
+    }
+
+    List<AggregatedWindow> aggregatedWindows;
+    try {
+      aggregatedWindows =
+          deviceStorage.storage.aggregate(phases, startDate, endDate, windowDurationMillis);
+    } finally {
+      release(deviceStorage);
+    }
+    if (aggregatedWindows == null) {
+      return null;
+    }
+
+    List<GroupedSeriesDto> series = new ArrayList<>();
+    // windows are ordered by phase, so windows of one phase are next to each other
+    int phaseStart = 0;
+    for (int i = 1; i <= aggregatedWindows.size(); i++) {
+      if (i == aggregatedWindows.size()
+          || aggregatedWindows.get(i).phase() != aggregatedWindows.get(phaseStart).phase()) {
+        series.add(createSeries(aggregatedWindows.subList(phaseStart, i)));
+        phaseStart = i;
+      }
+    }
+
+    return series;
+  }
+
+  private static GroupedSeriesDto createSeries(List<AggregatedWindow> windows) {
+    long[] time = new long[windows.size()];
+    double[] min = new double[windows.size()];
+    double[] mean = new double[windows.size()];
+    double[] max = new double[windows.size()];
+
+    for (int i = 0; i < windows.size(); i++) {
+      AggregatedWindow window = windows.get(i);
+      time[i] = window.time().toEpochMilli();
+      min[i] = window.min();
+      mean[i] = window.mean();
+      max[i] = window.max();
+    }
+
+    return new GroupedSeriesDto(windows.get(0).phase(), time, min, mean, max);
+  }
+
+  /**
+   * Saves values of one device. Times in future are replaced with current time and all times are
+   * truncated to seconds in provided batch.
+   *
+   * @param device name of device which measured values, null for the default device
+   * @param batch values to save
+   * @throws IllegalArgumentException if device is not registered
+   */
+  public void saveBatch(String device, SampleBatch batch)
+      throws WriteQueueFullException, WriteBatchTooLargeException {
+    DeviceStorage deviceStorage = acquire(device);
+    if (deviceStorage == null) {
+      throw new IllegalArgumentException("Device " + device + " is not registered");
+    }
+
+    try {
+      saveBatch(deviceStorage, batch);
+    } finally {
+      release(deviceStorage);
+    }
+  }
+
+  private void saveBatch(DeviceStorage deviceStorage, SampleBatch batch)
+      throws WriteQueueFullException, WriteBatchTooLargeException {
+    long currentEpochMillis = System.currentTimeMillis();
+    int futureValues = 0;
+    int[] latestIndexes = new int[ElectricPhase.values().length + 1];
+    Arrays.fill(latestIndexes, -1);
+
+    for (int i = 0; i < batch.size(); i++) {
+      long epochMillis = batch.getEpochMillis(i);
+      if (epochMillis > currentEpochMillis) {
+        epochMillis = currentEpochMillis;
+        futureValues++;
+      }
+      // values are stored with second precision
+      batch.setEpochMillis(i, Math.floorDiv(epochMillis, 1000) * 1000);
+
+      int slot = batch.getPhase(i) == null ? 0 : batch.getPhase(i).ordinal() + 1;
+      if (latestIndexes[slot] < 0
+          || batch.getEpochMillis(i) >= batch.getEpochMillis(latestIndexes[slot])) {
+        latestIndexes[slot] = i;
+      }
+    }
+
+    if (futureValues > 0) {
+      log.info(
+          "{} {} values were after now ({} in UTC), replacing their time with it",
+          futureValues,
+          definition.name(),
+          Instant.ofEpochMilli(currentEpochMillis));
+    }
+
+    deviceStorage.storage.write(batch);
+
+    for (int i = 0; i < batch.size(); i++) {
+      RecentValuesBuffer buffer = deviceStorage.recentValuesCache.getBuffer(batch.getPhase(i));
+      buffer.add(batch.getEpochMillis(i), batch.getValue(i));
+    }
+    for (int latestIndex : latestIndexes) {
+      if (latestIndex >= 0) {
+        ElectricPhase phase = batch.getPhase(latestIndex);
+        deviceStorage.latestValueCache.update(
+            phase,
+            new StoredValue(
+                phase, batch.getEpochMillis(latestIndex), batch.getValue(latestIndex)));
+      }
+    }
+  }
+
+  /**
+   * Returns phases to look up ordered the same way as storage returns them
+   *
+   * @param phases requested phases, all phases if null or empty
+   * @return ordered phases or list containing only null if quantity has no phases
+   */
+  public List<ElectricPhase> getPhasesToLookUp(List<ElectricPhase> phases) {
+    if (!definition.hasPhases()) {
+      return Collections.singletonList(null);
+    }
+
+    if (phases == null || phases.isEmpty()) {
+      return List.of(ElectricPhase.values());
+    }
+
+    return new ArrayList<>(EnumSet.copyOf(phases));
+  }
+
+  /**
+   * Closes storages and caches of devices which were not used since provided time
+   *
+   * @param idleSinceMillis time of the last use of closed devices
+   */
+  public void closeIdleDevices(long idleSinceMillis) {
+    List<Map.Entry<String, DeviceStorage>> idleDevices = new ArrayList<>();
+    synchronized (openDevices) {
+      for (Map.Entry<String, DeviceStorage> openDevice : openDevices.entrySet()) {
+        if (openDevice.getValue().lastUsedMillis < idleSinceMillis) {
+          idleDevices.add(Map.entry(openDevice.getKey(), openDevice.getValue()));
+        }
+      }
+    }
+
+    for (Map.Entry<String, DeviceStorage> idleDevice : idleDevices) {
+      close(idleDevice.getKey(), idleDevice.getValue());
+    }
+  }
+
+  /**
+   * Returns storage and caches of device held open until they are released. They are opened when
+   * device is used for the first time or after they were closed. Storage is opened outside of lock
+   * of open devices, so opening storage of one device does not block other devices.
+   *
+   * @param device name of device, null for the default device
+   * @return storage and caches of device or null if device is not registered
+   */
+  private DeviceStorage acquire(String device) {
+    if (device == null) {
+      return defaultDevice;
+    }
+    if (!deviceRegistry.isRegistered(device)) {
+      return null;
+    }
+
+    while (true) {
+      DeviceStorage deviceStorage;
+      boolean created = false;
+      synchronized (openDevices) {
+        deviceStorage = openDevices.get(device);
+        if (deviceStorage == null) {
+          deviceStorage = new DeviceStorage(recentValuesCapacity);
+          // nobody can use storage until it is opened by this thread
+          deviceStorage.lock.writeLock().lock();
+          openDevices.put(device, deviceStorage);
+          created = true;
+        }
+      }
+
+      if (created) {
+        open(device, deviceStorage);
+        closeExcessDevices();
+        return deviceStorage;
+      }
+
+      deviceStorage.lock.readLock().lock();
+      if (!deviceStorage.closed) {
+        deviceStorage.lastUsedMillis = System.currentTimeMillis();
+        return deviceStorage;
+      }
+      // storage was closed meanwhile, it is opened again
+      deviceStorage.lock.readLock().unlock();
+    }
+  }
+
+  private void release(DeviceStorage deviceStorage) {
+    if (deviceStorage != defaultDevice) {
+      deviceStorage.lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Opens storage of device whose write lock is held by current thread, lock is downgraded to
+   * read lock when storage is opened and released if storage can not be opened
+   */
+  private void open(String device, DeviceStorage deviceStorage) {
+    try {
+      deviceStorage.factoryStorage =
+          storageFactory.create(definition.name(), device, definition.hasPhases());
+      deviceStorage.storage =
+          new MeteredElectricStorage(
+              deviceStorage.factoryStorage, meterRegistry, definition.name());
+      deviceStorage.lastUsedMillis = System.currentTimeMillis();
+      if (device != null) {
+        deviceStorage.lock.readLock().lock();
+      }
+    } catch (RuntimeException e) {
+      deviceStorage.closed = true;
+      synchronized (openDevices) {
+        openDevices.remove(device, deviceStorage);
+      }
+      throw e;
+    } finally {
+      if (device != null) {
+        deviceStorage.lock.writeLock().unlock();
+      }
+    }
+  }
+
+  /** Closes the least recently used devices which are not used over limit of open devices */
+  private void closeExcessDevices() {
+    List<Map.Entry<String, DeviceStorage>> excessDevices = new ArrayList<>();
+    synchronized (openDevices) {
+      int excess = openDevices.size() - maxOpenDevices;
+      for (Map.Entry<String, DeviceStorage> openDevice : openDevices.entrySet()) {
+        if (excessDevices.size() >= excess) {
+          break;
+        }
+        ReentrantReadWriteLock lock = openDevice.getValue().lock;
+        if (!lock.isWriteLocked() && lock.getReadLockCount() == 0) {
+          excessDevices.add(Map.entry(openDevice.getKey(), openDevice.getValue()));
+        }
+      }
+    }
+
+    for (Map.Entry<String, DeviceStorage> excessDevice : excessDevices) {
+      close(excessDevice.getKey(), excessDevice.getValue());
+    }
+  }
+
+  /** Closes storage of device unless it is used or has work to finish, then it is kept open */
+  private void close(String device, DeviceStorage deviceStorage) {
+    if (!deviceStorage.lock.writeLock().tryLock()) {
+      return;
+    }
+
+    try {
+      if (deviceStorage.closed || !storageFactory.close(deviceStorage.factoryStorage)) {
+        return;
+      }
+
+      deviceStorage.closed = true;
+      synchronized (openDevices) {
+        openDevices.remove(device, deviceStorage);
+      }
+    } catch (IOException | RuntimeException e) {
+      log.warn(
+          "Storage of {} of device {} could not be closed: {}",
+          definition.name(),
+          device,
+          e.toString());
+    } finally {
+      deviceStorage.lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Storage and caches of values of one device. They are used only while read lock is held and
+   * are closed only while write lock is held.
+   */
+  private static final class DeviceStorage {
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final LatestValueCache<StoredValue> latestValueCache =
+        new LatestValueCache<>(value -> Instant.ofEpochMilli(value.epochMillis()));
+
+    private final RecentValuesCache recentValuesCache;
+
+    /** storage created by factory, which closes it */
+    private ElectricStorage factoryStorage;
+
+    private ElectricStorage storage;
+
+    private volatile long lastUsedMillis;
+
+    private boolean closed;
+
+    private DeviceStorage(int recentValuesCapacity) {
+      this.recentValuesCache = new RecentValuesCache(recentValuesCapacity);
+    }
+  }
+}
@@ -0,0 +1,12 @@
+package szathmary.peter.bakalarka.repository.quantity;
+
+import szathmary.peter.bakalarka.constant.ElectricPhase;
+
+/**
+ * Value of electric quantity as it is stored
+ *
+ * @param phase phase of value, null if quantity has no phases
+ * @param epochMillis time of value truncated to seconds
+ * @param value value
+ */
+public record StoredValue(ElectricPhase phase, long epochMillis, double value) {}
@@ -0,0 +1,23 @@
+package szathmary.peter.bakalarka.repository.rollup;
+
+import szathmary.peter.bakalarka.constant.ElectricPhase;
+
+import java.time.Instant;
+
+/**
+ * Values of one phase aggregated over time window
+ *
+ * @param time end of window
+ * @param phase phase of values, null if quantity has no phases
+ * @param count number of aggregated values
+ * @param sum sum of aggregated values
+ * @param min minimal value
+ * @param max maximal value
+ */
+public record AggregatedWindow(
+    Instant time, ElectricPhase phase, long count, double sum, double min, double max) {
+
+  public double mean() {
+    return sum / count;
+  }
+}
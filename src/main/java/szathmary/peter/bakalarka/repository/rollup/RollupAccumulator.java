@@ -0,0 +1,183 @@
+package szathmary.peter.bakalarka.repository.rollup;
+
+import szathmary.peter.bakalarka.constant.ElectricPhase;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Aggregates saved values of one electric quantity into windows of all rollup tiers.
+ *
+ * <p>Window is aggregated in memory only when all of its values went through this accumulator,
+ * which holds for windows starting after accumulator was created and not yet evicted. Values
+ * falling into any other window mark it to be recomputed from raw values. Windows are recomputed
+ * one drain later than they were marked, so their raw values have time to be written.
+ */
+public class RollupAccumulator {
+
+  private final long trackingStartMillis;
+
+  private final int evictAfterWindows;
+
+  private final TierSeries[][] series;
+
+  /** windows marked for recomputation since last drain */
+  private Set<RollupWindow> pendingRecomputations = new LinkedHashSet<>();
+
+  /** windows marked for recomputation before last drain */
+  private Set<RollupWindow> readyRecomputations = new LinkedHashSet<>();
+
+  /**
+   * @param trackingStartMillis time since which all saved values go through accumulator
+   * @param evictAfterWindows number of windows after which closed window is evicted from memory
+   */
+  public RollupAccumulator(long trackingStartMillis, int evictAfterWindows) {
+    this.trackingStartMillis = trackingStartMillis;
+    this.evictAfterWindows = evictAfterWindows;
+    this.series = new TierSeries[RollupTier.values().length][ElectricPhase.values().length + 1];
+    for (TierSeries[] tierSeries : series) {
+      for (int i = 0; i < tierSeries.length; i++) {
+        tierSeries[i] = new TierSeries();
+      }
+    }
+  }
+
+  /**
+   * Marks window containing tracking start for recomputation in all tiers, because its values
+   * saved before tracking started are not known
+   *
+   * @param phases phases of quantity
+   */
+  public synchronized void markTrackingStartForRecomputation(List<ElectricPhase> phases) {
+    for (RollupTier tier : RollupTier.values()) {
+      long windowStart = tier.getWindowStart(trackingStartMillis);
+      for (ElectricPhase phase : phases) {
+        pendingRecomputations.add(new RollupWindow(tier, phase, windowStart));
+      }
+    }
+  }
+
+  public synchronized void add(ElectricPhase phase, long epochMillis, double value) {
+    for (RollupTier tier : RollupTier.values()) {
+      long windowStart = tier.getWindowStart(epochMillis);
+      TierSeries tierSeries = getSeries(tier, phase);
+
+      if (windowStart < Math.max(trackingStartMillis, tierSeries.evictedBefore)) {
+        pendingRecomputations.add(new RollupWindow(tier, phase, windowStart));
+        continue;
+      }
+
+      tierSeries.windows.computeIfAbsent(windowStart, start -> new RollupAggregate()).add(value);
+      tierSeries.dirtyWindows.add(windowStart);
+    }
+  }
+
+  /**
+   * Returns snapshots of windows changed since last drain and evicts closed windows
+   *
+   * @param nowMillis current time
+   * @return snapshots of changed windows
+   */
+  public synchronized List<RollupSnapshot> drainChangedWindows(long nowMillis) {
+    List<RollupSnapshot> snapshots = new ArrayList<>();
+
+    for (RollupTier tier : RollupTier.values()) {
+      for (int phaseIndex = 0; phaseIndex < series[tier.ordinal()].length; phaseIndex++) {
+        TierSeries tierSeries = series[tier.ordinal()][phaseIndex];
+        ElectricPhase phase = phaseIndex == 0 ? null : ElectricPhase.values()[phaseIndex - 1];
+
+        for (long windowStart : tierSeries.dirtyWindows) {
+          RollupAggregate aggregate = tierSeries.windows.get(windowStart);
+          snapshots.add(
+              new RollupSnapshot(
+                  new RollupWindow(tier, phase, windowStart),
+                  aggregate.getCount(),
+                  aggregate.getSum(),
+                  aggregate.getMin(),
+                  aggregate.getMax()));
+        }
+        tierSeries.dirtyWindows.clear();
+
+        long evictBefore =
+            tier.getWindowStart(nowMillis) - evictAfterWindows * tier.getDurationMillis();
+        Map<Long, RollupAggregate> evictedWindows = tierSeries.windows.headMap(evictBefore);
+        if (!evictedWindows.isEmpty()) {
+          evictedWindows.clear();
+          tierSeries.evictedBefore = Math.max(tierSeries.evictedBefore, evictBefore);
+        }
+      }
+    }
+
+    return snapshots;
+  }
+
+  /**
+   * Returns windows marked for recomputation before previous drain
+   *
+   * @return windows to be recomputed from raw values
+   */
+  public synchronized List<RollupWindow> drainRecomputations() {
+    List<RollupWindow> windowsToRecompute = new ArrayList<>(readyRecomputations);
+
+    readyRecomputations = pendingRecomputations;
+    pendingRecomputations = new LinkedHashSet<>();
+
+    return windowsToRecompute;
+  }
+
+  /**
+   * @return whether no changed window waits to be drained and no window waits to be recomputed
+   */
+  public synchronized boolean isDrained() {
+    if (!pendingRecomputations.isEmpty() || !readyRecomputations.isEmpty()) {
+      return false;
+    }
+
+    for (TierSeries[] tierSeries : series) {
+      for (TierSeries phaseSeries : tierSeries) {
+        if (!phaseSeries.dirtyWindows.isEmpty()) {
+          return false;
+        }
+      }
+    }
+
+    return true;
+  }
+
+  /** Marks windows that could not be stored to be stored again by next drain */
+  public synchronized void restore(List<RollupSnapshot> snapshots) {
+    for (RollupSnapshot snapshot : snapshots) {
+      RollupWindow window = snapshot.window();
+      TierSeries tierSeries = getSeries(window.tier(), window.phase());
+      if (tierSeries.windows.containsKey(window.windowStart())) {
+        tierSeries.dirtyWindows.add(window.windowStart());
+      } else {
+        pendingRecomputations.add(window);
+      }
+    }
+  }
+
+  /** Marks windows whose recomputation failed to be recomputed again */
+  public synchronized void restoreRecomputations(List<RollupWindow> windows) {
+    pendingRecomputations.addAll(windows);
+  }
+
+  private TierSeries getSeries(RollupTier tier, ElectricPhase phase) {
+    return series[tier.ordinal()][phase == null ? 0 : phase.ordinal() + 1];
+  }
+
+  private static class TierSeries {
+
+    private final TreeMap<Long, RollupAggregate> windows = new TreeMap<>();
+
+    private final Set<Long> dirtyWindows = new TreeSet<>();
+
+    /** windows starting before this time are no longer complete in memory */
+    private long evictedBefore = Long.MIN_VALUE;
+  }
+}
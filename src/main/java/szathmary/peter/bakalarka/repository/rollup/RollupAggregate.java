@@ -0,0 +1,40 @@
+package szathmary.peter.bakalarka.repository.rollup;
+
+/** Running aggregate of values in one rollup window. */
+public class RollupAggregate {
+
+  private long count;
+
+  private double sum;
+
+  private double min;
+
+  private double max;
+
+  public void add(double value) {
+    if (count == 0 || value < min) {
+      min = value;
+    }
+    if (count == 0 || value > max) {
+      max = value;
+    }
+    sum += value;
+    count++;
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  public double getSum() {
+    return sum;
+  }
+
+  public double getMin() {
+    return min;
+  }
+
+  public double getMax() {
+    return max;
+  }
+}
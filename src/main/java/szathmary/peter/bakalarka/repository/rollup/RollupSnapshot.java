@@ -0,0 +1,12 @@
+package szathmary.peter.bakalarka.repository.rollup;
+
+/**
+ * Aggregated values of rollup window ready to be stored
+ *
+ * @param window rollup window
+ * @param count number of aggregated values
+ * @param sum sum of aggregated values
+ * @param min minimal value
+ * @param max maximal value
+ */
+public record RollupSnapshot(RollupWindow window, long count, double sum, double min, double max) {}
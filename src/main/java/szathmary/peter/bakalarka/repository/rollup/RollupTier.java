@@ -0,0 +1,43 @@
+package szathmary.peter.bakalarka.repository.rollup;
+
+import java.time.Duration;
+
+/** Resolutions in which aggregated values of electric quantities are kept. */
+public enum RollupTier {
+  ONE_MINUTE(Duration.ofMinutes(1), "1m"),
+  FIFTEEN_MINUTES(Duration.ofMinutes(15), "15m"),
+  ONE_HOUR(Duration.ofHours(1), "1h"),
+  ONE_DAY(Duration.ofDays(1), "1d");
+
+  private final Duration duration;
+
+  private final String suffix;
+
+  RollupTier(Duration duration, String suffix) {
+    this.duration = duration;
+    this.suffix = suffix;
+  }
+
+  public Duration getDuration() {
+    return duration;
+  }
+
+  public long getDurationMillis() {
+    return duration.toMillis();
+  }
+
+  /**
+   * @param quantityName measurement of raw values
+   * @return measurement in which rollups of quantity in this tier are stored
+   */
+  public String getMeasurement(String quantityName) {
+    return quantityName + "_rollup_" + suffix;
+  }
+
+  /**
+   * @return start of window of this tier containing provided time
+   */
+  public long getWindowStart(long epochMillis) {
+    return Math.floorDiv(epochMillis, getDurationMillis()) * getDurationMillis();
+  }
+}
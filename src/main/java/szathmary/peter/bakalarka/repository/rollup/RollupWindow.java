@@ -0,0 +1,17 @@
+package szathmary.peter.bakalarka.repository.rollup;
+
+import szathmary.peter.bakalarka.constant.ElectricPhase;
+
+/**
+ * Identifies one window of rollup tier
+ *
+ * @param tier rollup tier
+ * @param phase phase of values, null if quantity has no phases
+ * @param windowStart start of window in epoch milliseconds
+ */
+public record RollupWindow(RollupTier tier, ElectricPhase phase, long windowStart) {
+
+  public long windowEnd() {
+    return windowStart + tier.getDurationMillis();
+  }
+}
@@ -0,0 +1,100 @@
+package szathmary.peter.bakalarka.repository.rollup;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Selects duration of aggregated windows from fixed ladder of durations and aligns ranges to
+ * windows. Windows are aligned to epoch, so overlapping ranges aggregated with the same duration
+ * share windows, and every duration of at least one minute is multiple of a {@link RollupTier}, so
+ * its windows are aggregated from rollups.
+ */
+public final class WindowPlanner {
+
+  /** number of windows of range when client does not request resolution */
+  public static final int DEFAULT_MAX_WINDOWS = 400;
+
+  /** the largest number of windows aggregated for one range */
+  public static final int MAX_WINDOWS = 10_000;
+
+  private static final long[] WINDOW_DURATIONS_MILLIS = {
+    Duration.ofSeconds(1).toMillis(),
+    Duration.ofSeconds(5).toMillis(),
+    Duration.ofSeconds(10).toMillis(),
+    Duration.ofSeconds(30).toMillis(),
+    Duration.ofMinutes(1).toMillis(),
+    Duration.ofMinutes(5).toMillis(),
+    Duration.ofMinutes(15).toMillis(),
+    Duration.ofMinutes(30).toMillis(),
+    Duration.ofHours(1).toMillis(),
+    Duration.ofHours(3).toMillis(),
+    Duration.ofHours(6).toMillis(),
+    Duration.ofHours(12).toMillis(),
+    Duration.ofDays(1).toMillis(),
+    Duration.ofDays(7).toMillis()
+  };
+
+  private WindowPlanner() {}
+
+  /**
+   * Returns the shortest duration of ladder whose aligned windows cover range in at most maximal
+   * number of windows. Ranges longer than the longest duration of ladder allows are split into
+   * windows of its multiple.
+   *
+   * @param rangeMillis duration of range
+   * @param maxWindows maximal number of windows, null for {@link #DEFAULT_MAX_WINDOWS}, at most
+   *     {@link #MAX_WINDOWS} windows are planned
+   * @return duration of window in milliseconds
+   */
+  public static long planWindowMillis(long rangeMillis, Integer maxWindows) {
+    int windows = maxWindows == null ? DEFAULT_MAX_WINDOWS : Math.min(maxWindows, MAX_WINDOWS);
+    // range which is not aligned to windows is covered by one more window
+    long maxFullWindows = Math.max(1, windows - 1);
+
+    for (long windowMillis : WINDOW_DURATIONS_MILLIS) {
+      if (ceilDiv(rangeMillis, windowMillis) <= maxFullWindows) {
+        return windowMillis;
+      }
+    }
+
+    long longestMillis = WINDOW_DURATIONS_MILLIS[WINDOW_DURATIONS_MILLIS.length - 1];
+    return ceilDiv(ceilDiv(rangeMillis, maxFullWindows), longestMillis) * longestMillis;
+  }
+
+  /**
+   * @param windowMillis duration of window
+   * @return whether duration can be returned by {@link #planWindowMillis(long, Integer)}
+   */
+  public static boolean isPlanned(long windowMillis) {
+    long longestMillis = WINDOW_DURATIONS_MILLIS[WINDOW_DURATIONS_MILLIS.length - 1];
+    if (windowMillis > 0 && windowMillis % longestMillis == 0) {
+      return true;
+    }
+
+    for (long plannedMillis : WINDOW_DURATIONS_MILLIS) {
+      if (plannedMillis == windowMillis) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return start of window containing provided time
+   */
+  public static Instant alignStart(Instant time, long windowMillis) {
+    return Instant.ofEpochMilli(Math.floorDiv(time.toEpochMilli(), windowMillis) * windowMillis);
+  }
+
+  /**
+   * @return end of window containing provided time, provided time if it is end of window
+   */
+  public static Instant alignEnd(Instant time, long windowMillis) {
+    return Instant.ofEpochMilli(
+        Math.floorDiv(time.toEpochMilli() + windowMillis - 1, windowMillis) * windowMillis);
+  }
+
+  private static long ceilDiv(long dividend, long divisor) {
+    return -Math.floorDiv(-dividend, divisor);
+  }
+}
@@ -0,0 +1,62 @@
+package szathmary.peter.bakalarka.repository.storage;
+
+import szathmary.peter.bakalarka.constant.ElectricPhase;
+import szathmary.peter.bakalarka.exception.WriteBatchTooLargeException;
+import szathmary.peter.bakalarka.exception.WriteQueueFullException;
+import szathmary.peter.bakalarka.repository.rollup.AggregatedWindow;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Storage of values of one electric quantity. Phases passed to storage select all phases when
+ * they are null or empty, quantity without phases stores its values with null phase.
+ */
+public interface ElectricStorage {
+
+  /**
+   * Writes values, either all of them are accepted or none of them
+   *
+   * @throws WriteQueueFullException if storage can not accept values now
+   * @throws WriteBatchTooLargeException if storage can never accept so many values at once
+   */
+  void write(SampleBatch batch) throws WriteQueueFullException, WriteBatchTooLargeException;
+
+  /**
+   * Passes values of provided phases in range to consumer ordered by phase and time
+   *
+   * @param phases phases to read
+   * @param startDate start of range, inclusive, null to read from the first value
+   * @param endDate end of range, exclusive, null to read until the last value
+   * @param consumer receives values
+   */
+  void scan(List<ElectricPhase> phases, Instant startDate, Instant endDate, SampleConsumer consumer);
+
+  /**
+   * Passes last count values of every provided phase to consumer ordered by phase and time
+   *
+   * @param phases phases to read
+   * @param count number of values of every phase
+   * @param consumer receives values
+   */
+  void scanLast(List<ElectricPhase> phases, int count, SampleConsumer consumer);
+
+  /**
+   * Aggregates values into windows aligned to epoch, every window is stamped with its end
+   * truncated to end of range
+   *
+   * @param phases phases to aggregate
+   * @param startDate start of range
+   * @param endDate end of range
+   * @param windowDurationMillis duration of window
+   * @return aggregated windows ordered by phase and time or null if there is nothing to aggregate
+   */
+  List<AggregatedWindow> aggregate(
+      List<ElectricPhase> phases, Instant startDate, Instant endDate, long windowDurationMillis);
+
+  /**
+   * @param phases phases to look up
+   * @return time of the first and the last value of provided phases or null if there are no values
+   */
+  Instant[] findTimeBounds(List<ElectricPhase> phases);
+}
@@ -0,0 +1,39 @@
+package szathmary.peter.bakalarka.repository.storage;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Creates storages of electric quantities. Implementation is selected by {@code
+ * electric-quantities.storage.type} property. Every device has its own storage, so queries of one
+ * device never read values of other devices. Storages of devices which are not used are closed and
+ * created again when device is used again.
+ */
+public interface ElectricStorageFactory {
+
+  /**
+   * @param quantityName name of stored quantity
+   * @param device name of device, null for the default device
+   * @param hasPhases whether values of quantity are stored per phase
+   * @return storage of quantity measured by device
+   */
+  ElectricStorage create(String quantityName, String device, boolean hasPhases);
+
+  /**
+   * Closes storage created by this factory, storage is not used after it was closed
+   *
+   * @param storage closed storage
+   * @return false if storage has work to finish and has to be closed later, it stays usable
+   * @throws IOException if storage could not be closed, it stays usable
+   */
+  default boolean close(ElectricStorage storage) throws IOException {
+    return true;
+  }
+
+  /**
+   * @return names of devices other than the default one which have stored values
+   */
+  default List<String> findDevices() {
+    return List.of();
+  }
+}
@@ -0,0 +1,149 @@
+package szathmary.peter.bakalarka.repository.storage;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import szathmary.peter.bakalarka.constant.ElectricPhase;
+import szathmary.peter.bakalarka.exception.WriteBatchTooLargeException;
+import szathmary.peter.bakalarka.exception.WriteQueueFullException;
+import szathmary.peter.bakalarka.repository.rollup.AggregatedWindow;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Storage recording latency and number of values of every operation of wrapped storage. Meters
+ * are tagged by quantity and operation and registered once, not on every operation.
+ */
+public class MeteredElectricStorage implements ElectricStorage {
+
+  private final ElectricStorage storage;
+
+  private final Timer writeTimer;
+
+  private final Timer scanTimer;
+
+  private final Timer scanLastTimer;
+
+  private final Timer aggregateTimer;
+
+  private final Timer findTimeBoundsTimer;
+
+  private final DistributionSummary writtenValues;
+
+  private final DistributionSummary scannedValues;
+
+  private final DistributionSummary scannedLastValues;
+
+  private final DistributionSummary aggregatedWindows;
+
+  public MeteredElectricStorage(
+      ElectricStorage storage, MeterRegistry meterRegistry, String quantityName) {
+    this.storage = storage;
+    this.writeTimer = operationTimer(meterRegistry, quantityName, "write");
+    this.scanTimer = operationTimer(meterRegistry, quantityName, "scan");
+    this.scanLastTimer = operationTimer(meterRegistry, quantityName, "scanLast");
+    this.aggregateTimer = operationTimer(meterRegistry, quantityName, "aggregate");
+    this.findTimeBoundsTimer = operationTimer(meterRegistry, quantityName, "findTimeBounds");
+    this.writtenValues = operationValues(meterRegistry, quantityName, "write");
+    this.scannedValues = operationValues(meterRegistry, quantityName, "scan");
+    this.scannedLastValues = operationValues(meterRegistry, quantityName, "scanLast");
+    this.aggregatedWindows = operationValues(meterRegistry, quantityName, "aggregate");
+  }
+
+  @Override
+  public void write(SampleBatch batch) throws WriteQueueFullException, WriteBatchTooLargeException {
+    long start = System.nanoTime();
+    try {
+      storage.write(batch);
+      writtenValues.record(batch.size());
+    } finally {
+      writeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  @Override
+  public void scan(
+      List<ElectricPhase> phases, Instant startDate, Instant endDate, SampleConsumer consumer) {
+    CountingConsumer countingConsumer = new CountingConsumer(consumer);
+    long start = System.nanoTime();
+    try {
+      storage.scan(phases, startDate, endDate, countingConsumer);
+    } finally {
+      scanTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+      scannedValues.record(countingConsumer.count);
+    }
+  }
+
+  @Override
+  public void scanLast(List<ElectricPhase> phases, int count, SampleConsumer consumer) {
+    CountingConsumer countingConsumer = new CountingConsumer(consumer);
+    long start = System.nanoTime();
+    try {
+      storage.scanLast(phases, count, countingConsumer);
+    } finally {
+      scanLastTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+      scannedLastValues.record(countingConsumer.count);
+    }
+  }
+
+  @Override
+  public List<AggregatedWindow> aggregate(
+      List<ElectricPhase> phases, Instant startDate, Instant endDate, long windowDurationMillis) {
+    long start = System.nanoTime();
+    List<AggregatedWindow> windows = null;
+    try {
+      windows = storage.aggregate(phases, startDate, endDate, windowDurationMillis);
+      return windows;
+    } finally {
+      aggregateTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+      aggregatedWindows.record(windows == null ? 0 : windows.size());
+    }
+  }
+
+  @Override
+  public Instant[] findTimeBounds(List<ElectricPhase> phases) {
+    long start = System.nanoTime();
+    try {
+      return storage.findTimeBounds(phases);
+    } finally {
+      findTimeBoundsTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  private static Timer operationTimer(
+      MeterRegistry meterRegistry, String quantityName, String operation) {
+    return Timer.builder("electric.storage.operation")
+        .description("Latency of storage operations")
+        .tag("quantity", quantityName)
+        .tag("operation", operation)
+        .register(meterRegistry);
+  }
+
+  private static DistributionSummary operationValues(
+      MeterRegistry meterRegistry, String quantityName, String operation) {
+    return DistributionSummary.builder("electric.storage.values")
+        .description("Number of values written or returned by storage operations")
+        .tag("quantity", quantityName)
+        .tag("operation", operation)
+        .register(meterRegistry);
+  }
+
+  private static class CountingConsumer implements SampleConsumer {
+
+    private final SampleConsumer consumer;
+
+    private long count;
+
+    private CountingConsumer(SampleConsumer consumer) {
+      this.consumer = consumer;
+    }
+
+    @Override
+    public void accept(ElectricPhase phase, long epochMillis, double value) {
+      count++;
+      consumer.accept(phase, epochMillis, value);
+    }
+  }
+}
@@ -0,0 +1,80 @@
+package szathmary.peter.bakalarka.repository.storage;
+
+import szathmary.peter.bakalarka.constant.ElectricPhase;
+
+/** Values of one electric quantity to be written, kept in columns instead of entities. */
+public class SampleBatch {
+
+  private final ElectricPhase[] phases;
+
+  private final long[] epochMillis;
+
+  private final double[] values;
+
+  private int size;
+
+  public SampleBatch(int capacity) {
+    this.phases = new ElectricPhase[capacity];
+    this.epochMillis = new long[capacity];
+    this.values = new double[capacity];
+  }
+
+  /**
+   * @param phase phase of value, null if quantity has no phases
+   * @param epochMillis time of value
+   * @param value value
+   */
+  public void add(ElectricPhase phase, long epochMillis, double value) {
+    this.phases[size] = phase;
+    this.epochMillis[size] = epochMillis;
+    this.values[size] = value;
+    size++;
+  }
+
+  /** Removes all values, so batch can be filled again */
+  public void clear() {
+    size = 0;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public ElectricPhase getPhase(int index) {
+    return phases[index];
+  }
+
+  public long getEpochMillis(int index) {
+    return epochMillis[index];
+  }
+
+  public void setEpochMillis(int index, long epochMillis) {
+    this.epochMillis[index] = epochMillis;
+  }
+
+  public double getValue(int index) {
+    return values[index];
+  }
+
+  public long getMinEpochMillis() {
+    long min = Long.MAX_VALUE;
+    for (int i = 0; i < size; i++) {
+      min = Math.min(min, epochMillis[i]);
+    }
+    return min;
+  }
+
+  public long getMaxEpochMillis() {
+    long max = Long.MIN_VALUE;
+    for (int i = 0; i < size; i++) {
+      max = Math.max(max, epochMillis[i]);
+    }
+    return max;
+  }
+
+  public void forEach(SampleConsumer consumer) {
+    for (int i = 0; i < size; i++) {
+      consumer.accept(phases[i], epochMillis[i], values[i]);
+    }
+  }
+}
@@ -0,0 +1,15 @@
+package szathmary.peter.bakalarka.repository.storage;
+
+import szathmary.peter.bakalarka.constant.ElectricPhase;
+
+/** Receives stored values of electric quantity without creating entity for every value. */
+@FunctionalInterface
+public interface SampleConsumer {
+
+  /**
+   * @param phase phase of value, null if quantity has no phases
+   * @param epochMillis time of value
+   * @param value value
+   */
+  void accept(ElectricPhase phase, long epochMillis, double value);
+}
@@ -0,0 +1,38 @@
+package szathmary.peter.bakalarka.repository.storage.embedded;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reads bits written by {@link BitWriter} using only absolute reads, so one buffer can be read
+ * by more readers at once.
+ */
+class BitReader {
+
+  private final ByteBuffer buffer;
+
+  private long bitPosition;
+
+  /**
+   * @param buffer buffer containing bits
+   * @param offset offset of the first byte of bits in buffer
+   */
+  BitReader(ByteBuffer buffer, int offset) {
+    this.buffer = buffer;
+    this.bitPosition = (long) offset << 3;
+  }
+
+  boolean readBit() {
+    int currentByte = buffer.get((int) (bitPosition >>> 3));
+    boolean bit = ((currentByte >>> (7 - (bitPosition & 7))) & 1) != 0;
+    bitPosition++;
+    return bit;
+  }
+
+  long readBits(int bitCount) {
+    long value = 0;
+    for (int i = 0; i < bitCount; i++) {
+      value = (value << 1) | (readBit() ? 1 : 0);
+    }
+    return value;
+  }
+}
@@ -0,0 +1,36 @@
+package szathmary.peter.bakalarka.repository.storage.embedded;
+
+import java.util.Arrays;
+
+/** Growable sequence of bits written from the most significant bit of every byte. */
+class BitWriter {
+
+  private byte[] bytes = new byte[256];
+
+  private long bitLength;
+
+  void writeBit(boolean bit) {
+    int byteIndex = (int) (bitLength >>> 3);
+    if (byteIndex == bytes.length) {
+      bytes = Arrays.copyOf(bytes, bytes.length * 2);
+    }
+    if (bit) {
+      bytes[byteIndex] |= (byte) (0x80 >>> (bitLength & 7));
+    }
+    bitLength++;
+  }
+
+  /**
+   * @param value value whose lowest bits are written
+   * @param bitCount number of written bits, the most significant one first
+   */
+  void writeBits(long value, int bitCount) {
+    for (int i = bitCount - 1; i >= 0; i--) {
+      writeBit(((value >>> i) & 1) != 0);
+    }
+  }
+
+  byte[] toByteArray() {
+    return Arrays.copyOf(bytes, (int) ((bitLength + 7) >>> 3));
+  }
+}
@@ -0,0 +1,269 @@
+package szathmary.peter.bakalarka.repository.storage.embedded;
+
+import szathmary.peter.bakalarka.constant.ElectricPhase;
+import szathmary.peter.bakalarka.repository.rollup.AggregatedWindow;
+import szathmary.peter.bakalarka.repository.storage.ElectricStorage;
+import szathmary.peter.bakalarka.repository.storage.SampleBatch;
+import szathmary.peter.bakalarka.repository.storage.SampleConsumer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * Stores values of one electric quantity in local files, one {@link SeriesStore} per phase.
+ * Queries are answered in process by decoding memory mapped segment files.
+ */
+public class EmbeddedElectricStorage implements ElectricStorage, Closeable {
+
+  private final boolean hasPhases;
+
+  private final SeriesStore[] series;
+
+  /**
+   * @param directory directory of quantity
+   * @param hasPhases whether values of quantity are stored per phase
+   * @param blockSize number of values of one series compressed into one block
+   * @param partitionMillis time range of one segment file
+   */
+  public EmbeddedElectricStorage(
+      Path directory, boolean hasPhases, int blockSize, long partitionMillis) throws IOException {
+    this.hasPhases = hasPhases;
+    this.series = new SeriesStore[ElectricPhase.values().length + 1];
+
+    if (hasPhases) {
+      for (ElectricPhase phase : ElectricPhase.values()) {
+        series[phase.ordinal() + 1] =
+            new SeriesStore(directory.resolve(phase.name()), blockSize, partitionMillis);
+      }
+    } else {
+      series[0] = new SeriesStore(directory, blockSize, partitionMillis);
+    }
+  }
+
+  /**
+   * Values are appended to series only after all of them are ready to accept them, so either all
+   * values of batch are stored or none of them
+   *
+   * @throws UncheckedIOException if full head of series can not be sealed
+   */
+  @Override
+  public synchronized void write(SampleBatch batch) {
+    int[] counts = new int[series.length];
+    for (int i = 0; i < batch.size(); i++) {
+      counts[getSeriesIndex(batch.getPhase(i))]++;
+    }
+
+    long[][] times = new long[series.length][];
+    double[][] values = new double[series.length][];
+    for (int s = 0; s < series.length; s++) {
+      times[s] = new long[counts[s]];
+      values[s] = new double[counts[s]];
+      counts[s] = 0;
+    }
+    for (int i = 0; i < batch.size(); i++) {
+      int s = getSeriesIndex(batch.getPhase(i));
+      times[s][counts[s]] = batch.getEpochMillis(i);
+      values[s][counts[s]] = batch.getValue(i);
+      counts[s]++;
+    }
+
+    try {
+      for (int s = 0; s < series.length; s++) {
+        if (counts[s] > 0) {
+          series[s].prepareAppend();
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("No value of batch was written", e);
+    }
+
+    for (int s = 0; s < series.length; s++) {
+      if (counts[s] > 0) {
+        series[s].append(times[s], values[s], 0, counts[s]);
+      }
+    }
+  }
+
+  @Override
+  public void scan(
+      List<ElectricPhase> phases, Instant startDate, Instant endDate, SampleConsumer consumer) {
+    long startMillis = startDate == null ? Long.MIN_VALUE : startDate.toEpochMilli();
+    long endMillis = endDate == null ? Long.MAX_VALUE : endDate.toEpochMilli();
+
+    try {
+      for (ElectricPhase phase : getPhasesToLookUp(phases)) {
+        getSeries(phase)
+            .scan(
+                startMillis,
+                endMillis,
+                (epochMillis, value) -> consumer.accept(phase, epochMillis, value));
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public void scanLast(List<ElectricPhase> phases, int count, SampleConsumer consumer) {
+    try {
+      for (ElectricPhase phase : getPhasesToLookUp(phases)) {
+        getSeries(phase)
+            .scanLast(count, (epochMillis, value) -> consumer.accept(phase, epochMillis, value));
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /** Aggregates values into windows aligned to epoch the same way as Flux window function */
+  @Override
+  public List<AggregatedWindow> aggregate(
+      List<ElectricPhase> phases, Instant startDate, Instant endDate, long windowDurationMillis) {
+    if (windowDurationMillis <= 0) {
+      return null;
+    }
+
+    long endMillis = endDate.toEpochMilli();
+    List<AggregatedWindow> aggregatedWindows = new ArrayList<>();
+
+    for (ElectricPhase phase : getPhasesToLookUp(phases)) {
+      WindowAggregator aggregator =
+          new WindowAggregator(phase, windowDurationMillis, endMillis, aggregatedWindows);
+      try {
+        getSeries(phase).scan(startDate.toEpochMilli(), endMillis, aggregator::add);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      aggregator.finish();
+    }
+
+    return aggregatedWindows;
+  }
+
+  @Override
+  public Instant[] findTimeBounds(List<ElectricPhase> phases) {
+    long first = Long.MAX_VALUE;
+    long last = Long.MIN_VALUE;
+
+    try {
+      for (ElectricPhase phase : getPhasesToLookUp(phases)) {
+        long[] bounds = getSeries(phase).findTimeBounds();
+        if (bounds != null) {
+          first = Math.min(first, bounds[0]);
+          last = Math.max(last, bounds[1]);
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+
+    return first == Long.MAX_VALUE
+        ? null
+        : new Instant[] {Instant.ofEpochMilli(first), Instant.ofEpochMilli(last)};
+  }
+
+  /** Persists written values not sealed into blocks yet */
+  public void flush() throws IOException {
+    for (SeriesStore seriesStore : series) {
+      if (seriesStore != null) {
+        seriesStore.flush();
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    for (SeriesStore seriesStore : series) {
+      if (seriesStore != null) {
+        seriesStore.close();
+      }
+    }
+  }
+
+  private SeriesStore getSeries(ElectricPhase phase) {
+    return series[getSeriesIndex(phase)];
+  }
+
+  private int getSeriesIndex(ElectricPhase phase) {
+    return hasPhases && phase != null ? phase.ordinal() + 1 : 0;
+  }
+
+  private List<ElectricPhase> getPhasesToLookUp(List<ElectricPhase> phases) {
+    if (!hasPhases) {
+      return Collections.singletonList(null);
+    }
+
+    if (phases == null || phases.isEmpty()) {
+      return List.of(ElectricPhase.values());
+    }
+
+    return new ArrayList<>(EnumSet.copyOf(phases));
+  }
+
+  /** Aggregates values of one phase ordered by time into windows */
+  private static class WindowAggregator {
+
+    private final ElectricPhase phase;
+
+    private final long windowDurationMillis;
+
+    private final long endMillis;
+
+    private final List<AggregatedWindow> aggregatedWindows;
+
+    private long windowStart = Long.MIN_VALUE;
+
+    private long count;
+
+    private double sum;
+
+    private double min;
+
+    private double max;
+
+    WindowAggregator(
+        ElectricPhase phase,
+        long windowDurationMillis,
+        long endMillis,
+        List<AggregatedWindow> aggregatedWindows) {
+      this.phase = phase;
+      this.windowDurationMillis = windowDurationMillis;
+      this.endMillis = endMillis;
+      this.aggregatedWindows = aggregatedWindows;
+    }
+
+    void add(long epochMillis, double value) {
+      long valueWindowStart =
+          Math.floorDiv(epochMillis, windowDurationMillis) * windowDurationMillis;
+      if (valueWindowStart != windowStart) {
+        finish();
+        windowStart = valueWindowStart;
+      }
+
+      min = count == 0 || value < min ? value : min;
+      max = count == 0 || value > max ? value : max;
+      sum += value;
+      count++;
+    }
+
+    void finish() {
+      if (count == 0) {
+        return;
+      }
+
+      // window is stamped with its end truncated to end of range as in Flux
+      long windowEnd = Math.min(windowStart + windowDurationMillis, endMillis);
+      aggregatedWindows.add(
+          new AggregatedWindow(Instant.ofEpochMilli(windowEnd), phase, count, sum, min, max));
+      count = 0;
+      sum = 0;
+    }
+  }
+}
@@ -0,0 +1,122 @@
+package szathmary.peter.bakalarka.repository.storage.embedded;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import szathmary.peter.bakalarka.repository.storage.ElectricStorage;
+import szathmary.peter.bakalarka.repository.storage.ElectricStorageFactory;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "electric-quantities.storage.type", havingValue = "embedded")
+public class EmbeddedElectricStorageFactory implements ElectricStorageFactory {
+
+  private final Path dataDirectory;
+
+  private final int blockSize;
+
+  private final long partitionMillis;
+
+  private final Timer flushTimer;
+
+  private final List<EmbeddedElectricStorage> storages = new CopyOnWriteArrayList<>();
+
+  public EmbeddedElectricStorageFactory(
+      @Value("${electric-quantities.storage.embedded.data-dir}") String dataDirectory,
+      @Value("${electric-quantities.storage.embedded.block-size}") int blockSize,
+      @Value("${electric-quantities.storage.embedded.partition-duration-ms}")
+          long partitionMillis,
+      MeterRegistry meterRegistry) {
+    this.dataDirectory = Path.of(dataDirectory);
+    this.blockSize = blockSize;
+    this.partitionMillis = partitionMillis;
+    this.flushTimer =
+        Timer.builder("electric.storage.flush")
+            .description("Latency of persisting values written since last flush")
+            .tag("storage", "embedded")
+            .register(meterRegistry);
+  }
+
+  /** Values of the default device are kept in directory of quantity, other devices in their own */
+  @Override
+  public ElectricStorage create(String quantityName, String device, boolean hasPhases) {
+    Path deviceDirectory =
+        device == null ? dataDirectory : dataDirectory.resolve("devices").resolve(device);
+    try {
+      EmbeddedElectricStorage storage =
+          new EmbeddedElectricStorage(
+              deviceDirectory.resolve(quantityName), hasPhases, blockSize, partitionMillis);
+      storages.add(storage);
+      return storage;
+    } catch (IOException e) {
+      throw new UncheckedIOException("Storage of " + quantityName + " can not be opened", e);
+    }
+  }
+
+  /** Values which were not persisted yet are kept in storage if they can not be flushed */
+  @Override
+  public boolean close(ElectricStorage storage) throws IOException {
+    EmbeddedElectricStorage embeddedStorage = (EmbeddedElectricStorage) storage;
+    embeddedStorage.flush();
+    storages.remove(embeddedStorage);
+    embeddedStorage.close();
+
+    return true;
+  }
+
+  @Override
+  public List<String> findDevices() {
+    Path devicesDirectory = dataDirectory.resolve("devices");
+    if (!Files.isDirectory(devicesDirectory)) {
+      return List.of();
+    }
+
+    List<String> devices = new ArrayList<>();
+    try (DirectoryStream<Path> deviceDirectories =
+        Files.newDirectoryStream(devicesDirectory, Files::isDirectory)) {
+      for (Path deviceDirectory : deviceDirectories) {
+        devices.add(deviceDirectory.getFileName().toString());
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Devices of embedded storage can not be listed", e);
+    }
+
+    return devices;
+  }
+
+  /** Persists written values, at most values written since last flush are lost on crash */
+  @Scheduled(fixedDelayString = "${electric-quantities.storage.embedded.flush-interval-ms}")
+  public void flush() {
+    flushTimer.record(
+        () -> {
+          for (EmbeddedElectricStorage storage : storages) {
+            try {
+              storage.flush();
+            } catch (IOException e) {
+              log.error("Flush of embedded storage failed: {}", e.toString());
+            }
+          }
+        });
+  }
+
+  @PreDestroy
+  public void close() throws IOException {
+    for (EmbeddedElectricStorage storage : storages) {
+      storage.close();
+    }
+  }
+}
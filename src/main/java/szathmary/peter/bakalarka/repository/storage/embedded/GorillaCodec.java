@@ -0,0 +1,142 @@
+package szathmary.peter.bakalarka.repository.storage.embedded;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Compresses block of values ordered by time as in Facebook Gorilla. Timestamps are stored as
+ * delta of deltas, which is a single bit for regularly sampled values. Values are stored as XOR
+ * with previous value, which is a single bit for repeated value and only its meaningful bits
+ * otherwise.
+ */
+final class GorillaCodec {
+
+  private GorillaCodec() {}
+
+  /**
+   * @param times epoch milliseconds ordered by time
+   * @param values values
+   * @param from index of the first encoded value
+   * @param to index after the last encoded value, at least one value is encoded
+   * @return encoded values
+   */
+  static byte[] encode(long[] times, double[] values, int from, int to) {
+    BitWriter writer = new BitWriter();
+
+    long previousTime = times[from];
+    long previousDelta = 0;
+    long previousBits = Double.doubleToRawLongBits(values[from]);
+    int previousLeading = -1;
+    int previousTrailing = 0;
+
+    writer.writeBits(previousTime, 64);
+    writer.writeBits(previousBits, 64);
+
+    for (int i = from + 1; i < to; i++) {
+      long delta = times[i] - previousTime;
+      writeDeltaOfDelta(writer, delta - previousDelta);
+      previousTime = times[i];
+      previousDelta = delta;
+
+      long bits = Double.doubleToRawLongBits(values[i]);
+      long xor = bits ^ previousBits;
+      previousBits = bits;
+
+      if (xor == 0) {
+        writer.writeBit(false);
+        continue;
+      }
+      writer.writeBit(true);
+
+      int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+      int trailing = Long.numberOfTrailingZeros(xor);
+      if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+        // meaningful bits fit into window of previous value
+        writer.writeBit(false);
+        writer.writeBits(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+      } else {
+        int meaningfulBits = 64 - leading - trailing;
+        writer.writeBit(true);
+        writer.writeBits(leading, 5);
+        writer.writeBits(meaningfulBits - 1, 6);
+        writer.writeBits(xor >>> trailing, meaningfulBits);
+        previousLeading = leading;
+        previousTrailing = trailing;
+      }
+    }
+
+    return writer.toByteArray();
+  }
+
+  /**
+   * @param buffer buffer containing encoded values
+   * @param offset offset of encoded values in buffer
+   * @param count number of encoded values
+   * @param times receives epoch milliseconds starting at output offset
+   * @param values receives values starting at output offset
+   * @param outputOffset index of the first decoded value in output arrays
+   */
+  static void decode(
+      ByteBuffer buffer, int offset, int count, long[] times, double[] values, int outputOffset) {
+    BitReader reader = new BitReader(buffer, offset);
+
+    long time = reader.readBits(64);
+    long bits = reader.readBits(64);
+    long delta = 0;
+    int leading = 0;
+    int trailing = 0;
+
+    times[outputOffset] = time;
+    values[outputOffset] = Double.longBitsToDouble(bits);
+
+    for (int i = 1; i < count; i++) {
+      delta += readDeltaOfDelta(reader);
+      time += delta;
+
+      if (reader.readBit()) {
+        if (reader.readBit()) {
+          leading = (int) reader.readBits(5);
+          int meaningfulBits = (int) reader.readBits(6) + 1;
+          trailing = 64 - leading - meaningfulBits;
+        }
+        bits ^= reader.readBits(64 - leading - trailing) << trailing;
+      }
+
+      times[outputOffset + i] = time;
+      values[outputOffset + i] = Double.longBitsToDouble(bits);
+    }
+  }
+
+  private static void writeDeltaOfDelta(BitWriter writer, long deltaOfDelta) {
+    if (deltaOfDelta == 0) {
+      writer.writeBit(false);
+    } else if (deltaOfDelta >= -63 && deltaOfDelta <= 64) {
+      writer.writeBits(0b10, 2);
+      writer.writeBits(deltaOfDelta + 63, 7);
+    } else if (deltaOfDelta >= -255 && deltaOfDelta <= 256) {
+      writer.writeBits(0b110, 3);
+      writer.writeBits(deltaOfDelta + 255, 9);
+    } else if (deltaOfDelta >= -2047 && deltaOfDelta <= 2048) {
+      writer.writeBits(0b1110, 4);
+      writer.writeBits(deltaOfDelta + 2047, 12);
+    } else {
+      writer.writeBits(0b1111, 4);
+      writer.writeBits(deltaOfDelta, 64);
+    }
+  }
+
+  private static long readDeltaOfDelta(BitReader reader) {
+    if (!reader.readBit()) {
+      return 0;
+    }
+    if (!reader.readBit()) {
+      return reader.readBits(7) - 63;
+    }
+    if (!reader.readBit()) {
+      return reader.readBits(9) - 255;
+    }
+    if (!reader.readBit()) {
+      return reader.readBits(12) - 2047;
+    }
+    return reader.readBits(64);
+  }
+}
@@ -0,0 +1,186 @@
+package szathmary.peter.bakalarka.repository.storage.embedded;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only file of compressed blocks of one series and one time partition. File starts with
+ * magic number followed by blocks, every block has header with number of values, time range and
+ * length of values encoded by {@link GorillaCodec}. Blocks are read from memory mapped file.
+ *
+ * <p>Blocks are never rewritten, so blocks of late values may overlap blocks written before.
+ * Values of later block replace values with the same time in earlier blocks.
+ */
+@Slf4j
+class SegmentFile implements Closeable {
+
+  private static final int MAGIC = 0x45534731; // "ESG1"
+
+  private static final int FILE_HEADER_BYTES = 4;
+
+  static final int BLOCK_HEADER_BYTES = 24;
+
+  private final Path path;
+
+  private final FileChannel channel;
+
+  private final List<Block> blocks = new ArrayList<>();
+
+  private long size;
+
+  private MappedByteBuffer mapping;
+
+  private SegmentFile(Path path, FileChannel channel) {
+    this.path = path;
+    this.channel = channel;
+  }
+
+  /**
+   * Opens segment file, creates it if it does not exist. Block that was not written completely
+   * is cut off.
+   */
+  static SegmentFile open(Path path) throws IOException {
+    FileChannel channel =
+        FileChannel.open(
+            path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    SegmentFile segmentFile = new SegmentFile(path, channel);
+    try {
+      segmentFile.load();
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+    return segmentFile;
+  }
+
+  private void load() throws IOException {
+    long fileSize = channel.size();
+    if (fileSize < FILE_HEADER_BYTES) {
+      ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+      header.putInt(MAGIC).flip();
+      channel.truncate(0);
+      channel.write(header, 0);
+      size = FILE_HEADER_BYTES;
+      return;
+    }
+
+    ByteBuffer content =
+        channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize).order(ByteOrder.LITTLE_ENDIAN);
+    if (content.getInt(0) != MAGIC) {
+      throw new IOException("File " + path + " is not a segment file");
+    }
+
+    long offset = FILE_HEADER_BYTES;
+    while (offset + BLOCK_HEADER_BYTES <= fileSize) {
+      int payloadBytes = content.getInt((int) offset);
+      int count = content.getInt((int) offset + 4);
+      long blockEnd = offset + BLOCK_HEADER_BYTES + payloadBytes;
+      if (payloadBytes <= 0 || count <= 0 || blockEnd > fileSize) {
+        break;
+      }
+
+      blocks.add(
+          new Block(
+              offset,
+              count,
+              content.getLong((int) offset + 8),
+              content.getLong((int) offset + 16)));
+      offset = blockEnd;
+    }
+
+    if (offset < fileSize) {
+      log.warn("Cutting off incomplete block at {} of {}", offset, path);
+      channel.truncate(offset);
+    }
+    size = offset;
+  }
+
+  /**
+   * Appends block of values ordered by time
+   *
+   * @param times epoch milliseconds
+   * @param values values
+   * @param from index of the first appended value
+   * @param to index after the last appended value
+   */
+  synchronized void append(long[] times, double[] values, int from, int to) throws IOException {
+    byte[] payload = GorillaCodec.encode(times, values, from, to);
+
+    ByteBuffer block =
+        ByteBuffer.allocate(BLOCK_HEADER_BYTES + payload.length).order(ByteOrder.LITTLE_ENDIAN);
+    block
+        .putInt(payload.length)
+        .putInt(to - from)
+        .putLong(times[from])
+        .putLong(times[to - 1])
+        .put(payload)
+        .flip();
+
+    long position = size;
+    while (block.hasRemaining()) {
+      position += channel.write(block, position);
+    }
+    channel.force(false);
+
+    blocks.add(new Block(size, to - from, times[from], times[to - 1]));
+    size = position;
+  }
+
+  /**
+   * Returns blocks written so far together with mapping of file containing all of them
+   *
+   * @return readable view of file
+   */
+  synchronized View view() throws IOException {
+    if (blocks.isEmpty()) {
+      return new View(List.of(), null);
+    }
+
+    if (mapping == null || mapping.capacity() < size) {
+      mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    }
+
+    return new View(List.copyOf(blocks), mapping);
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    channel.close();
+  }
+
+  /**
+   * @param offset offset of block header in file
+   * @param count number of values in block
+   * @param minTime time of the first value
+   * @param maxTime time of the last value
+   */
+  record Block(long offset, int count, long minTime, long maxTime) {
+
+    boolean overlaps(long startMillis, long endMillis) {
+      return minTime < endMillis && maxTime >= startMillis;
+    }
+  }
+
+  /**
+   * @param blocks blocks in order they were written
+   * @param mapping mapping of file containing all blocks, null if there are no blocks
+   */
+  record View(List<Block> blocks, ByteBuffer mapping) {
+
+    /** Decodes values of block into arrays starting at offset */
+    void decode(Block block, long[] times, double[] values, int offset) {
+      GorillaCodec.decode(
+          mapping, (int) block.offset() + BLOCK_HEADER_BYTES, block.count(), times, values, offset);
+    }
+  }
+}
@@ -0,0 +1,461 @@
+package szathmary.peter.bakalarka.repository.storage.embedded;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Values of one phase of electric quantity stored in directory with one segment file per time
+ * partition. Written values are collected in head, which is persisted to head file on flush and
+ * sealed into compressed blocks of segment files when it reaches block size.
+ */
+@Slf4j
+class SeriesStore implements Closeable {
+
+  private static final String SEGMENT_SUFFIX = ".seg";
+
+  private static final String HEAD_FILE = "head.dat";
+
+  private final Path directory;
+
+  private final int blockSize;
+
+  private final long partitionMillis;
+
+  private final TreeMap<Long, SegmentFile> segments = new TreeMap<>();
+
+  /** values not sealed into blocks yet, in order they were written */
+  private long[] headTimes;
+
+  private double[] headValues;
+
+  private int headSize;
+
+  private boolean headDirty;
+
+  SeriesStore(Path directory, int blockSize, long partitionMillis) throws IOException {
+    this.directory = directory;
+    this.blockSize = blockSize;
+    this.partitionMillis = partitionMillis;
+    this.headTimes = new long[blockSize];
+    this.headValues = new double[blockSize];
+
+    Files.createDirectories(directory);
+    try (DirectoryStream<Path> segmentFiles =
+        Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+      for (Path segmentFile : segmentFiles) {
+        String fileName = segmentFile.getFileName().toString();
+        long partitionStart =
+            Long.parseLong(fileName.substring(0, fileName.length() - SEGMENT_SUFFIX.length()));
+        segments.put(partitionStart, SegmentFile.open(segmentFile));
+      }
+    }
+    loadHead();
+  }
+
+  /**
+   * Seals head if it is full, so values appended next are not appended to head which could not be
+   * sealed
+   *
+   * @throws IOException if head can not be sealed, values stay in head then
+   */
+  synchronized void prepareAppend() throws IOException {
+    if (headSize >= blockSize) {
+      seal();
+    }
+  }
+
+  /**
+   * Appends values to head, head grows if they do not fit into it. Head is sealed when it is full,
+   * if seal fails values stay in head and seal is repeated before next append.
+   *
+   * @param from index of the first appended value
+   * @param to index after the last appended value
+   */
+  synchronized void append(long[] times, double[] values, int from, int to) {
+    int count = to - from;
+    if (headSize + count > headTimes.length) {
+      headTimes = Arrays.copyOf(headTimes, headSize + count);
+      headValues = Arrays.copyOf(headValues, headSize + count);
+    }
+    System.arraycopy(times, from, headTimes, headSize, count);
+    System.arraycopy(values, from, headValues, headSize, count);
+    headSize += count;
+    headDirty = true;
+
+    if (headSize >= blockSize) {
+      try {
+        seal();
+      } catch (IOException e) {
+        log.warn("Head of {} could not be sealed: {}", directory, e.toString());
+      }
+    }
+  }
+
+  /** Persists values not sealed into blocks yet */
+  synchronized void flush() throws IOException {
+    if (!headDirty) {
+      return;
+    }
+
+    ByteBuffer content = ByteBuffer.allocate(4 + headSize * 16).order(ByteOrder.LITTLE_ENDIAN);
+    content.putInt(headSize);
+    for (int i = 0; i < headSize; i++) {
+      content.putLong(headTimes[i]).putDouble(headValues[i]);
+    }
+    content.flip();
+
+    Path temporaryFile = directory.resolve(HEAD_FILE + ".tmp");
+    try (FileChannel channel =
+        FileChannel.open(
+            temporaryFile,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+      while (content.hasRemaining()) {
+        channel.write(content);
+      }
+      channel.force(false);
+    }
+    Files.move(
+        temporaryFile,
+        directory.resolve(HEAD_FILE),
+        StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+
+    headDirty = false;
+  }
+
+  /**
+   * Passes values in range ordered by time to consumer. Only one partition is held in memory at
+   * a time.
+   *
+   * @param startMillis start of range, inclusive
+   * @param endMillis end of range, exclusive
+   */
+  void scan(long startMillis, long endMillis, ValueConsumer consumer) throws IOException {
+    Snapshot snapshot = snapshot();
+
+    for (long partitionStart : snapshot.partitionStarts()) {
+      if (partitionStart >= endMillis || partitionStart + partitionMillis <= startMillis) {
+        continue;
+      }
+
+      Partition partition = snapshot.readPartition(partitionStart, startMillis, endMillis);
+      for (int i = 0; i < partition.size(); i++) {
+        long time = partition.times()[i];
+        if (time >= startMillis && time < endMillis) {
+          consumer.accept(time, partition.values()[i]);
+        }
+      }
+    }
+  }
+
+  /** Passes last count values ordered by time to consumer */
+  void scanLast(int count, ValueConsumer consumer) throws IOException {
+    Snapshot snapshot = snapshot();
+
+    List<Partition> partitions = new ArrayList<>();
+    int collected = 0;
+    for (long partitionStart : snapshot.partitionStarts().descendingSet()) {
+      if (collected >= count) {
+        break;
+      }
+      Partition partition =
+          snapshot.readPartition(partitionStart, Long.MIN_VALUE, Long.MAX_VALUE);
+      partitions.add(partition);
+      collected += partition.size();
+    }
+
+    int skipped = Math.max(collected - count, 0);
+    for (int p = partitions.size() - 1; p >= 0; p--) {
+      Partition partition = partitions.get(p);
+      int first = Math.min(skipped, partition.size());
+      skipped -= first;
+      for (int i = first; i < partition.size(); i++) {
+        consumer.accept(partition.times()[i], partition.values()[i]);
+      }
+    }
+  }
+
+  /**
+   * @return time of the first and the last value or null if series has no values
+   */
+  long[] findTimeBounds() throws IOException {
+    Snapshot snapshot = snapshot();
+
+    long first = Long.MAX_VALUE;
+    long last = Long.MIN_VALUE;
+    for (SegmentFile.View view : snapshot.views().values()) {
+      for (SegmentFile.Block block : view.blocks()) {
+        first = Math.min(first, block.minTime());
+        last = Math.max(last, block.maxTime());
+      }
+    }
+    for (long headTime : snapshot.headTimes()) {
+      first = Math.min(first, headTime);
+      last = Math.max(last, headTime);
+    }
+
+    return first == Long.MAX_VALUE ? null : new long[] {first, last};
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    flush();
+    for (SegmentFile segmentFile : segments.values()) {
+      segmentFile.close();
+    }
+  }
+
+  /**
+   * Writes head values into blocks of their partitions and empties head. If writing of partition
+   * fails, only values of partitions which were not written yet are kept in head.
+   */
+  private void seal() throws IOException {
+    long[] times = Arrays.copyOf(headTimes, headSize);
+    double[] values = Arrays.copyOf(headValues, headSize);
+    int size = sortAndDeduplicate(times, values, headSize);
+
+    int from = 0;
+    try {
+      while (from < size) {
+        long partitionStart = partitionOf(times[from]);
+        int to = from;
+        while (to < size && partitionOf(times[to]) == partitionStart) {
+          to++;
+        }
+        getOrCreateSegment(partitionStart).append(times, values, from, to);
+        from = to;
+      }
+    } catch (IOException | RuntimeException e) {
+      System.arraycopy(times, from, headTimes, 0, size - from);
+      System.arraycopy(values, from, headValues, 0, size - from);
+      headSize = size - from;
+      headDirty = true;
+      throw e;
+    }
+
+    if (headTimes.length > blockSize) {
+      // head grown by large append is not kept
+      headTimes = new long[blockSize];
+      headValues = new double[blockSize];
+    }
+    headSize = 0;
+    headDirty = true;
+    flush();
+  }
+
+  private SegmentFile getOrCreateSegment(long partitionStart) throws IOException {
+    SegmentFile segmentFile = segments.get(partitionStart);
+    if (segmentFile == null) {
+      segmentFile = SegmentFile.open(directory.resolve(partitionStart + SEGMENT_SUFFIX));
+      segments.put(partitionStart, segmentFile);
+    }
+    return segmentFile;
+  }
+
+  private long partitionOf(long epochMillis) {
+    return Math.floorDiv(epochMillis, partitionMillis) * partitionMillis;
+  }
+
+  private synchronized Snapshot snapshot() throws IOException {
+    TreeMap<Long, SegmentFile.View> views = new TreeMap<>();
+    for (Map.Entry<Long, SegmentFile> segment : segments.entrySet()) {
+      views.put(segment.getKey(), segment.getValue().view());
+    }
+
+    return new Snapshot(
+        views,
+        Arrays.copyOf(headTimes, headSize),
+        Arrays.copyOf(headValues, headSize),
+        partitionMillis);
+  }
+
+  private void loadHead() throws IOException {
+    Path headFile = directory.resolve(HEAD_FILE);
+    if (!Files.exists(headFile)) {
+      return;
+    }
+
+    ByteBuffer content =
+        ByteBuffer.wrap(Files.readAllBytes(headFile)).order(ByteOrder.LITTLE_ENDIAN);
+    int storedValues = content.getInt();
+    if (storedValues > headTimes.length) {
+      // head was written with larger block size
+      headTimes = new long[storedValues];
+      headValues = new double[storedValues];
+    }
+    for (int i = 0; i < storedValues; i++) {
+      headTimes[headSize] = content.getLong();
+      headValues[headSize] = content.getDouble();
+      headSize++;
+    }
+
+    if (headSize >= blockSize) {
+      seal();
+    }
+  }
+
+  /**
+   * Sorts values by time keeping order of values with the same time and keeps only the last
+   * written of them
+   *
+   * @return number of values left
+   */
+  static int sortAndDeduplicate(long[] times, double[] values, int size) {
+    boolean sorted = true;
+    for (int i = 1; i < size && sorted; i++) {
+      sorted = times[i - 1] < times[i];
+    }
+    if (sorted) {
+      return size;
+    }
+
+    mergeSort(times, values, new long[size], new double[size], 0, size);
+
+    int kept = 0;
+    for (int i = 0; i < size; i++) {
+      if (i + 1 < size && times[i + 1] == times[i]) {
+        continue;
+      }
+      times[kept] = times[i];
+      values[kept] = values[i];
+      kept++;
+    }
+    return kept;
+  }
+
+  private static void mergeSort(
+      long[] times, double[] values, long[] timesBuffer, double[] valuesBuffer, int from, int to) {
+    if (to - from < 2) {
+      return;
+    }
+
+    int middle = (from + to) >>> 1;
+    mergeSort(times, values, timesBuffer, valuesBuffer, from, middle);
+    mergeSort(times, values, timesBuffer, valuesBuffer, middle, to);
+    if (times[middle - 1] <= times[middle]) {
+      return;
+    }
+
+    System.arraycopy(times, from, timesBuffer, from, to - from);
+    System.arraycopy(values, from, valuesBuffer, from, to - from);
+    int left = from;
+    int right = middle;
+    for (int i = from; i < to; i++) {
+      if (right >= to || (left < middle && timesBuffer[left] <= timesBuffer[right])) {
+        times[i] = timesBuffer[left];
+        values[i] = valuesBuffer[left++];
+      } else {
+        times[i] = timesBuffer[right];
+        values[i] = valuesBuffer[right++];
+      }
+    }
+  }
+
+  @FunctionalInterface
+  interface ValueConsumer {
+    void accept(long epochMillis, double value);
+  }
+
+  private record Partition(long[] times, double[] values, int size) {}
+
+  /** Blocks and head values of series at one moment, read without holding lock of series */
+  private static class Snapshot {
+
+    private final TreeMap<Long, SegmentFile.View> views;
+
+    private final long[] headTimes;
+
+    private final double[] headValues;
+
+    private final long partitionMillis;
+
+    Snapshot(
+        TreeMap<Long, SegmentFile.View> views,
+        long[] headTimes,
+        double[] headValues,
+        long partitionMillis) {
+      this.views = views;
+      this.headTimes = headTimes;
+      this.headValues = headValues;
+      this.partitionMillis = partitionMillis;
+    }
+
+    TreeSet<Long> partitionStarts() {
+      TreeSet<Long> partitionStarts = new TreeSet<>(views.keySet());
+      for (long headTime : headTimes) {
+        partitionStarts.add(Math.floorDiv(headTime, partitionMillis) * partitionMillis);
+      }
+      return partitionStarts;
+    }
+
+    /**
+     * Reads values of blocks of partition overlapping range and head values of partition. Values
+     * are sorted by time, later written value replaces earlier one with the same time.
+     */
+    Partition readPartition(long partitionStart, long startMillis, long endMillis) {
+      SegmentFile.View view = views.get(partitionStart);
+      long partitionEnd = partitionStart + partitionMillis;
+
+      int total = 0;
+      if (view != null) {
+        for (SegmentFile.Block block : view.blocks()) {
+          if (block.overlaps(startMillis, endMillis)) {
+            total += block.count();
+          }
+        }
+      }
+      for (long headTime : headTimes) {
+        if (headTime >= partitionStart && headTime < partitionEnd) {
+          total++;
+        }
+      }
+
+      long[] times = new long[total];
+      double[] values = new double[total];
+      int size = 0;
+      if (view != null) {
+        for (SegmentFile.Block block : view.blocks()) {
+          if (block.overlaps(startMillis, endMillis)) {
+            view.decode(block, times, values, size);
+            size += block.count();
+          }
+        }
+      }
+      for (int i = 0; i < headTimes.length; i++) {
+        if (headTimes[i] >= partitionStart && headTimes[i] < partitionEnd) {
+          times[size] = headTimes[i];
+          values[size] = headValues[i];
+          size++;
+        }
+      }
+
+      return new Partition(times, values, sortAndDeduplicate(times, values, size));
+    }
+
+    long[] headTimes() {
+      return headTimes;
+    }
+
+    TreeMap<Long, SegmentFile.View> views() {
+      return views;
+    }
+  }
+}
@@ -0,0 +1,220 @@
+package szathmary.peter.bakalarka.repository.storage.influxdb;
+
+import szathmary.peter.bakalarka.constant.ElectricPhase;
+import szathmary.peter.bakalarka.repository.storage.SampleConsumer;
+
+import java.time.Instant;
+import java.time.LocalDate;
+
+/**
+ * Decodes lines of CSV response of raw value query without annotations and passes time, value and
+ * phase of every row to consumer. Only columns of time, value and phase are read from row, no
+ * record or map is created for it, so memory used by query does not depend on number of rows.
+ *
+ * <p>Every table whose columns differ from previous table starts with empty line followed by
+ * header, so header is read after every empty line. Error of query which fails after response was
+ * started is returned as table with error column.
+ */
+class FluxCsvValueDecoder {
+
+  private static final ElectricPhase[] PHASES = ElectricPhase.values();
+
+  private static final int DATE_LENGTH = "2023-05-01".length();
+
+  private final SampleConsumer consumer;
+
+  private boolean headerExpected = true;
+
+  private int timeColumn;
+
+  private int valueColumn;
+
+  private int phaseColumn;
+
+  private boolean errorTable;
+
+  private int lastColumn;
+
+  /** columns are found by single pass through row, bounds are reused by every row */
+  private final int[] columnStarts = new int[3];
+
+  private final int[] columnEnds = new int[3];
+
+  private String lastDate;
+
+  private long lastEpochDay;
+
+  FluxCsvValueDecoder(SampleConsumer consumer) {
+    this.consumer = consumer;
+  }
+
+  /**
+   * @param line line of response without line separator
+   * @throws IllegalStateException if response contains error or row cannot be decoded
+   */
+  void accept(String line) {
+    if (line.isEmpty()) {
+      headerExpected = true;
+      return;
+    }
+    if (headerExpected) {
+      readHeader(line);
+      headerExpected = false;
+      return;
+    }
+
+    if (errorTable) {
+      throw new IllegalStateException("Query failed: " + line);
+    }
+
+    findColumns(line);
+    ElectricPhase phase;
+    long epochMillis;
+    double value;
+    try {
+      phase =
+          columnStarts[2] == columnEnds[2]
+              ? null
+              : parsePhase(line, columnStarts[2], columnEnds[2]);
+      epochMillis = parseEpochMillis(line, columnStarts[0], columnEnds[0]);
+      value = Double.parseDouble(line.substring(columnStarts[1], columnEnds[1]));
+    } catch (RuntimeException e) {
+      throw new IllegalStateException("Invalid row of query response: " + line, e);
+    }
+
+    consumer.accept(phase, epochMillis, value);
+  }
+
+  private void readHeader(String line) {
+    timeColumn = -1;
+    valueColumn = -1;
+    phaseColumn = -1;
+    errorTable = false;
+
+    String[] columns = line.split(",", -1);
+    for (int i = 0; i < columns.length; i++) {
+      switch (columns[i]) {
+        case "_time" -> timeColumn = i;
+        case "_value" -> valueColumn = i;
+        case "phase" -> phaseColumn = i;
+        case "error" -> errorTable = true;
+        default -> {}
+      }
+    }
+
+    if (!errorTable && (timeColumn < 0 || valueColumn < 0)) {
+      throw new IllegalStateException("Query response has no time or value column: " + line);
+    }
+    lastColumn = Math.max(timeColumn, Math.max(valueColumn, phaseColumn));
+  }
+
+  /** Stores bounds of time, value and phase column of row, phase is empty if it has no column */
+  private void findColumns(String line) {
+    columnStarts[2] = 0;
+    columnEnds[2] = 0;
+
+    int column = 0;
+    int start = 0;
+    while (column <= lastColumn) {
+      int end;
+      if (start < line.length() && line.charAt(start) == '"') {
+        // values of read columns never contain quote, so quoted value ends with the next quote
+        int closingQuote = line.indexOf('"', start + 1);
+        if (closingQuote < 0) {
+          throw new IllegalStateException("Row of query response has unclosed quote: " + line);
+        }
+        storeColumn(column, start + 1, closingQuote);
+        end = closingQuote + 1;
+      } else {
+        end = line.indexOf(',', start);
+        if (end < 0) {
+          end = line.length();
+        }
+        storeColumn(column, start, end);
+      }
+
+      column++;
+      start = end + 1;
+      if (end >= line.length() && column <= lastColumn) {
+        throw new IllegalStateException("Row of query response has missing columns: " + line);
+      }
+    }
+  }
+
+  private void storeColumn(int column, int start, int end) {
+    int index;
+    if (column == timeColumn) {
+      index = 0;
+    } else if (column == valueColumn) {
+      index = 1;
+    } else if (column == phaseColumn) {
+      index = 2;
+    } else {
+      return;
+    }
+
+    columnStarts[index] = start;
+    columnEnds[index] = end;
+  }
+
+  /**
+   * Parses time written as {@code 2023-05-01T00:00:00.123456789Z}. Rows of one response mostly
+   * share date, so epoch day of the last date is reused.
+   */
+  private long parseEpochMillis(String line, int start, int end) {
+    if (end - start < 20 || line.charAt(end - 1) != 'Z' || line.charAt(start + 10) != 'T') {
+      return Instant.parse(line.substring(start, end)).toEpochMilli();
+    }
+
+    if (lastDate == null || !line.regionMatches(start, lastDate, 0, DATE_LENGTH)) {
+      lastEpochDay =
+          LocalDate.of(
+                  parseDigits(line, start, 4),
+                  parseDigits(line, start + 5, 2),
+                  parseDigits(line, start + 8, 2))
+              .toEpochDay();
+      lastDate = line.substring(start, start + DATE_LENGTH);
+    }
+
+    long secondOfDay =
+        parseDigits(line, start + 11, 2) * 3600L
+            + parseDigits(line, start + 14, 2) * 60L
+            + parseDigits(line, start + 17, 2);
+
+    int millis = 0;
+    int fractionDigits = end - 1 - (start + 20);
+    if (line.charAt(start + 19) == '.' && fractionDigits > 0) {
+      int digits = Math.min(fractionDigits, 3);
+      millis = parseDigits(line, start + 20, digits);
+      for (int i = digits; i < 3; i++) {
+        millis *= 10;
+      }
+    }
+
+    return (lastEpochDay * 86_400L + secondOfDay) * 1000L + millis;
+  }
+
+  private static int parseDigits(String line, int start, int count) {
+    int number = 0;
+    for (int i = start; i < start + count; i++) {
+      int digit = line.charAt(i) - '0';
+      if (digit < 0 || digit > 9) {
+        throw new IllegalArgumentException("Invalid digit at " + i);
+      }
+      number = number * 10 + digit;
+    }
+
+    return number;
+  }
+
+  private static ElectricPhase parsePhase(String line, int start, int end) {
+    for (ElectricPhase phase : PHASES) {
+      String code = phase.toString();
+      if (code.length() == end - start && line.regionMatches(start, code, 0, code.length())) {
+        return phase;
+      }
+    }
+
+    throw new IllegalArgumentException("Unknown phase " + line.substring(start, end));
+  }
+}
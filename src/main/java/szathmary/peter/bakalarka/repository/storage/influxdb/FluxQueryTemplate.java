@@ -0,0 +1,162 @@
+package szathmary.peter.bakalarka.repository.storage.influxdb;
+
+import szathmary.peter.bakalarka.constant.ElectricPhase;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Flux query split once into constant text and parameters written as {@code ${name}}. Query is
+ * created by appending arguments between constant parts, so its text is not parsed again.
+ *
+ * <p>Only times, numbers and fragments created by this class are accepted as arguments, so text
+ * of request cannot change structure of query. String literals are escaped before they become
+ * part of constant text.
+ */
+class FluxQueryTemplate {
+
+  private static final Fragment[] PHASE_FILTERS = createPhaseFilters();
+
+  private final String[] parts;
+
+  private final int constantLength;
+
+  private FluxQueryTemplate(String[] parts) {
+    this.parts = parts;
+
+    int length = 0;
+    for (String part : parts) {
+      length += part.length();
+    }
+    this.constantLength = length;
+  }
+
+  /**
+   * @param text query with parameters written as {@code ${name}}
+   * @return compiled query
+   */
+  static FluxQueryTemplate compile(String text) {
+    List<String> parts = new ArrayList<>();
+    int partStart = 0;
+    int parameterStart = findParameter(text, 0);
+    while (parameterStart >= 0) {
+      int parameterEnd = text.indexOf('}', parameterStart);
+      if (parameterEnd < 0) {
+        throw new IllegalArgumentException("Unterminated parameter of query: " + text);
+      }
+      parts.add(text.substring(partStart, parameterStart));
+      partStart = parameterEnd + 1;
+      parameterStart = findParameter(text, partStart);
+    }
+    parts.add(text.substring(partStart));
+
+    return new FluxQueryTemplate(parts.toArray(String[]::new));
+  }
+
+  /** Escaped {@code \$} is a part of string literal, not a parameter */
+  private static int findParameter(String text, int fromIndex) {
+    int parameterStart = text.indexOf("${", fromIndex);
+    while (parameterStart > 0 && text.charAt(parameterStart - 1) == '\\') {
+      parameterStart = text.indexOf("${", parameterStart + 2);
+    }
+
+    return parameterStart;
+  }
+
+  /**
+   * Creates query with arguments in order of parameters
+   *
+   * @param arguments {@link Instant}, {@link Integer}, {@link Long} or {@link Fragment}
+   * @return query text
+   */
+  String bind(Object... arguments) {
+    if (arguments.length != parts.length - 1) {
+      throw new IllegalArgumentException(
+          "Query has " + (parts.length - 1) + " parameters, got " + arguments.length);
+    }
+
+    // instant is the longest argument, 24 characters with milliseconds
+    StringBuilder query = new StringBuilder(constantLength + 32 * arguments.length);
+    for (int i = 0; i < arguments.length; i++) {
+      query.append(parts[i]);
+      appendArgument(query, arguments[i]);
+    }
+    query.append(parts[arguments.length]);
+
+    return query.toString();
+  }
+
+  private static void appendArgument(StringBuilder query, Object argument) {
+    if (argument instanceof Instant instant) {
+      query.append(instant);
+    } else if (argument instanceof Integer || argument instanceof Long) {
+      query.append(((Number) argument).longValue());
+    } else if (argument instanceof Fragment fragment) {
+      query.append(fragment.text());
+    } else {
+      throw new IllegalArgumentException("Unsupported argument of query: " + argument);
+    }
+  }
+
+  /**
+   * @param value text of string literal
+   * @return quoted Flux string literal of value
+   */
+  static String quote(String value) {
+    StringBuilder literal = new StringBuilder(value.length() + 2).append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char character = value.charAt(i);
+      if (character == '"' || character == '\\' || character == '$') {
+        literal.append('\\');
+      }
+      literal.append(character);
+    }
+
+    return literal.append('"').toString();
+  }
+
+  /**
+   * Returns filter of phases, created once for every combination of phases. Order and
+   * duplicates of phases do not change the filter.
+   *
+   * @param phases phases to filter, no filter if null or empty
+   * @return fragment appended to filter function
+   */
+  static Fragment phaseFilter(List<ElectricPhase> phases) {
+    if (phases == null || phases.isEmpty()) {
+      return PHASE_FILTERS[0];
+    }
+
+    int mask = 0;
+    for (ElectricPhase phase : phases) {
+      mask |= 1 << phase.ordinal();
+    }
+
+    return PHASE_FILTERS[mask];
+  }
+
+  private static Fragment[] createPhaseFilters() {
+    ElectricPhase[] phases = ElectricPhase.values();
+    Fragment[] filters = new Fragment[1 << phases.length];
+    filters[0] = new Fragment("");
+
+    for (int mask = 1; mask < filters.length; mask++) {
+      StringBuilder filter = new StringBuilder(" and (");
+      for (ElectricPhase phase : phases) {
+        if ((mask & 1 << phase.ordinal()) != 0) {
+          if (filter.length() > " and (".length()) {
+            filter.append(" or ");
+          }
+          filter.append("r.phase == ").append(quote(phase.toString()));
+        }
+      }
+      filters[mask] = new Fragment(filter.append(")").toString());
+    }
+
+    return filters;
+  }
+
+  /** Trusted part of query created by this class */
+  record Fragment(String text) {}
+}
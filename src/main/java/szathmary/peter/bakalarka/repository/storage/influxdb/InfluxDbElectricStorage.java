@@ -0,0 +1,791 @@
+package szathmary.peter.bakalarka.repository.storage.influxdb;
+
+import com.influxdb.Cancellable;
+import com.influxdb.client.InfluxDBClient;
+import com.influxdb.client.domain.Dialect;
+import com.influxdb.client.domain.WritePrecision;
+import com.influxdb.client.write.Point;
+import com.influxdb.exceptions.BadRequestException;
+import com.influxdb.query.FluxRecord;
+import com.influxdb.query.FluxTable;
+import lombok.extern.slf4j.Slf4j;
+import szathmary.peter.bakalarka.constant.ElectricPhase;
+import szathmary.peter.bakalarka.exception.WriteBatchTooLargeException;
+import szathmary.peter.bakalarka.exception.WriteQueueFullException;
+import szathmary.peter.bakalarka.repository.rollup.AggregatedWindow;
+import szathmary.peter.bakalarka.repository.rollup.RollupAccumulator;
+import szathmary.peter.bakalarka.repository.rollup.RollupSnapshot;
+import szathmary.peter.bakalarka.repository.rollup.RollupTier;
+import szathmary.peter.bakalarka.repository.rollup.RollupWindow;
+import szathmary.peter.bakalarka.repository.storage.ElectricStorage;
+import szathmary.peter.bakalarka.repository.storage.SampleBatch;
+import szathmary.peter.bakalarka.repository.storage.SampleConsumer;
+import szathmary.peter.bakalarka.repository.writer.InfluxDbBatchWriter;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Stores values of one electric quantity in InfluxDB measurement named after the quantity. Values
+ * are written through shared batch writer with second precision. Windows of rollup tiers are
+ * aggregated from written values and stored in their own measurements, so long ranges are
+ * aggregated from rollups instead of raw values. Every instance records time since which it
+ * tracks written values in rollup meta measurement, rollups are used only since the earliest
+ * recorded time.
+ *
+ * <p>Values of every device except the default one are tagged by device name and every query is
+ * filtered by the tag, so InfluxDB reads only series of one device. Values of the default device
+ * have no device tag, so values written before devices were introduced belong to it.
+ *
+ * <p>Time bounds of every phase are kept in {@link TimeBoundsIndex}, so queries without start
+ * read only range containing values and queries of the last values read only range expected to
+ * contain them. Rows of every series are returned by InfluxDB ordered by time, so they are not
+ * sorted.
+ *
+ * <p>Raw values are read from CSV response line by line by {@link FluxCsvValueDecoder}, so no
+ * record is created for them.
+ */
+@Slf4j
+public class InfluxDbElectricStorage implements ElectricStorage {
+
+  /** raw values are read from CSV with header and without annotations */
+  private static final Dialect CSV_DIALECT =
+      new Dialect().header(true).delimiter(",").annotations(List.of());
+
+  private final InfluxDBClient influxDBClient;
+
+  private final InfluxDbBatchWriter batchWriter;
+
+  private final String QUANTITY_NAME;
+
+  private final String DEVICE;
+
+  private final String BUCKET_NAME;
+
+  private final String ORGANIZATION;
+
+  private final String deviceFilter;
+
+  private final FluxQueryTemplate scanQuery;
+
+  private final FluxQueryTemplate scanBetweenQuery;
+
+  private final FluxQueryTemplate scanLastQuery;
+
+  private final FluxQueryTemplate rawAggregationQuery;
+
+  private final Map<RollupTier, FluxQueryTemplate> rollupAggregationQueries =
+      new EnumMap<>(RollupTier.class);
+
+  private final List<ElectricPhase> storedPhases;
+
+  private final TimeBoundsIndex timeBoundsIndex = new TimeBoundsIndex();
+
+  private final boolean rollupEnabled;
+
+  private final Instant rollupTrackingStart;
+
+  private final RollupAccumulator rollupAccumulator;
+
+  /** whether tracking start of this instance was enqueued to rollup meta measurement */
+  private volatile boolean trackingStartStored;
+
+  private final Map<RollupTier, Instant> rollupCoverageStarts = new ConcurrentHashMap<>();
+
+  public InfluxDbElectricStorage(
+      InfluxDBClient influxDBClient,
+      InfluxDbBatchWriter batchWriter,
+      String quantityName,
+      String device,
+      boolean hasPhases,
+      String bucketName,
+      String organization,
+      boolean rollupEnabled,
+      int rollupEvictAfterWindows) {
+    this.influxDBClient = influxDBClient;
+    this.batchWriter = batchWriter;
+    this.QUANTITY_NAME = quantityName;
+    DEVICE = device;
+    BUCKET_NAME = bucketName;
+    ORGANIZATION = organization;
+    this.deviceFilter =
+        device == null
+            ? " and not exists r.device"
+            : " and r.device == " + FluxQueryTemplate.quote(device);
+    this.scanQuery =
+        compileQuery(
+            """
+                from(bucket: %s)
+                  |> range(start: ${start})
+                  |> filter(fn: (r) => r._measurement == %s%s${phases})""",
+            quantityName);
+    this.scanBetweenQuery =
+        compileQuery(
+            """
+                from(bucket: %s)
+                  |> range(start: ${start}, stop: ${stop})
+                  |> filter(fn: (r) => r._measurement == %s%s${phases})""",
+            quantityName);
+    this.scanLastQuery =
+        compileQuery(
+            """
+                from(bucket: %s)
+                   |> range(start: ${start})
+                   |> filter(fn: (r) => r._measurement == %s%s${phases})
+                   |> tail(n: ${count})""",
+            quantityName);
+    this.rawAggregationQuery =
+        compileQuery(
+            """
+                from(bucket: %s)
+                  |> range(start: ${start}, stop: ${stop})
+                  |> filter(fn: (r) => r._measurement == %s%s${phases})
+                  |> window(every: ${window}ms, createEmpty: false)
+                  |> reduce(
+                      identity: {count: 0, sum: 0.0, min: 0.0, max: 0.0},
+                      fn: (r, accumulator) => ({
+                        count: accumulator.count + 1,
+                        sum: accumulator.sum + r._value,
+                        min: if accumulator.count == 0 or r._value < accumulator.min then r._value else accumulator.min,
+                        max: if accumulator.count == 0 or r._value > accumulator.max then r._value else accumulator.max
+                      }))
+                  |> duplicate(column: "_stop", as: "_time")
+                  |> window(every: inf)
+                  |> sort(columns:["_time"])""",
+            quantityName);
+    for (RollupTier rollupTier : RollupTier.values()) {
+      rollupAggregationQueries.put(
+          rollupTier,
+          compileQuery(
+              """
+                  from(bucket: %s)
+                    |> range(start: ${start}, stop: ${stop})
+                    |> filter(fn: (r) => r._measurement == %s%s${phases})
+                    |> pivot(rowKey: ["_time"], columnKey: ["_field"], valueColumn: "_value")
+                    |> window(every: ${window}ms, createEmpty: false)
+                    |> reduce(
+                        identity: {count: 0, sum: 0.0, min: 0.0, max: 0.0},
+                        fn: (r, accumulator) => ({
+                          count: accumulator.count + r.count,
+                          sum: accumulator.sum + r.sum,
+                          min: if accumulator.count == 0 or r.min < accumulator.min then r.min else accumulator.min,
+                          max: if accumulator.count == 0 or r.max > accumulator.max then r.max else accumulator.max
+                        }))
+                    |> duplicate(column: "_stop", as: "_time")
+                    |> window(every: inf)
+                    |> sort(columns:["_time"])""",
+              rollupTier.getMeasurement(quantityName)));
+    }
+    this.storedPhases =
+        hasPhases ? List.of(ElectricPhase.values()) : Collections.singletonList(null);
+    this.rollupEnabled = rollupEnabled;
+
+    this.rollupTrackingStart = Instant.now();
+    this.rollupAccumulator =
+        new RollupAccumulator(rollupTrackingStart.toEpochMilli(), rollupEvictAfterWindows);
+    this.rollupAccumulator.markTrackingStartForRecomputation(storedPhases);
+  }
+
+  /**
+   * Compiles query of measurement of this storage
+   *
+   * @param text query with placeholders of bucket, measurement and device filter in this order
+   * @param measurement name of queried measurement
+   */
+  private FluxQueryTemplate compileQuery(String text, String measurement) {
+    return FluxQueryTemplate.compile(
+        String.format(
+            text,
+            FluxQueryTemplate.quote(BUCKET_NAME),
+            FluxQueryTemplate.quote(measurement),
+            deviceFilter));
+  }
+
+  @Override
+  public void write(SampleBatch batch)
+      throws WriteQueueFullException, WriteBatchTooLargeException {
+    List<String> records = new ArrayList<>(batch.size());
+    for (int i = 0; i < batch.size(); i++) {
+      Point point =
+          Point.measurement(QUANTITY_NAME)
+              .addField("value", batch.getValue(i))
+              .time(batch.getEpochMillis(i) / 1000, WritePrecision.S);
+      if (DEVICE != null) {
+        point.addTag("device", DEVICE);
+      }
+      if (batch.getPhase(i) != null) {
+        point.addTag("phase", batch.getPhase(i).toString());
+      }
+      records.add(point.toLineProtocol());
+    }
+
+    this.batchWriter.enqueue(DEVICE, records);
+    timeBoundsIndex.addWritten(batch);
+
+    if (rollupEnabled) {
+      batch.forEach(rollupAccumulator::add);
+    }
+  }
+
+  @Override
+  public void scan(
+      List<ElectricPhase> phases, Instant startDate, Instant endDate, SampleConsumer consumer) {
+    if (startDate == null) {
+      Instant[] bounds = findTimeBounds(phases);
+      startDate = bounds == null ? null : bounds[0];
+    }
+
+    streamValues(buildScanQuery(phases, startDate, endDate), consumer);
+  }
+
+  /**
+   * Reads range that would contain last count values of every phase with density of values
+   * written by this instance. Range is widened until it contains count values of every phase or
+   * all of its values.
+   */
+  @Override
+  public void scanLast(List<ElectricPhase> phases, int count, SampleConsumer consumer) {
+    if (count <= 0) {
+      return;
+    }
+
+    loadTimeBounds();
+    List<ElectricPhase> lookedUpPhases = getPhasesToLookUp(phases);
+    double valuesPerSecond = TimeBoundsIndex.MAX_VALUES_PER_SECOND;
+    for (ElectricPhase phase : lookedUpPhases) {
+      valuesPerSecond = Math.min(valuesPerSecond, timeBoundsIndex.getValuesPerSecond(phase));
+    }
+    long spanMillis = (long) Math.ceil(count / valuesPerSecond) * 1000;
+
+    while (true) {
+      Long startMillis = null;
+      boolean coversAllValues = true;
+      for (ElectricPhase phase : lookedUpPhases) {
+        Long lastMillis = timeBoundsIndex.getLastMillis(phase);
+        if (lastMillis != null) {
+          // the last value is at the end of span, not after it
+          long phaseStartMillis = lastMillis - spanMillis + 1000;
+          startMillis =
+              startMillis == null ? phaseStartMillis : Math.min(startMillis, phaseStartMillis);
+          coversAllValues &= phaseStartMillis <= timeBoundsIndex.getFirstMillis(phase);
+        }
+      }
+
+      if (startMillis == null || coversAllValues) {
+        // range is not widened anymore, so values do not have to be counted
+        streamValues(
+            buildScanLastQuery(
+                phases, count, startMillis == null ? null : Instant.ofEpochMilli(startMillis)),
+            consumer);
+        return;
+      }
+
+      SampleBatch lastValues = new SampleBatch(count * lookedUpPhases.size());
+      streamValues(
+          buildScanLastQuery(phases, count, Instant.ofEpochMilli(startMillis)), lastValues::add);
+      if (containsCountValues(lastValues, lookedUpPhases, count, startMillis)) {
+        lastValues.forEach(consumer);
+        return;
+      }
+
+      spanMillis *= 4;
+    }
+  }
+
+  /**
+   * @return whether values contain count values of every phase or all values of phase stored
+   *     since start
+   */
+  private boolean containsCountValues(
+      SampleBatch values, List<ElectricPhase> phases, int count, long startMillis) {
+    int[] phaseCounts = new int[ElectricPhase.values().length + 1];
+    for (int i = 0; i < values.size(); i++) {
+      ElectricPhase phase = values.getPhase(i);
+      phaseCounts[phase == null ? 0 : phase.ordinal() + 1]++;
+    }
+
+    for (ElectricPhase phase : phases) {
+      Long firstMillis = timeBoundsIndex.getFirstMillis(phase);
+      if (firstMillis != null
+          && firstMillis < startMillis
+          && phaseCounts[phase == null ? 0 : phase.ordinal() + 1] < count) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  String buildScanQuery(List<ElectricPhase> phases, Instant startDate, Instant endDate) {
+    Object start = startDate == null ? 0 : startDate;
+
+    return endDate == null
+        ? scanQuery.bind(start, FluxQueryTemplate.phaseFilter(phases))
+        : scanBetweenQuery.bind(start, endDate, FluxQueryTemplate.phaseFilter(phases));
+  }
+
+  String buildScanLastQuery(List<ElectricPhase> phases, int count, Instant startDate) {
+    return scanLastQuery.bind(
+        startDate == null ? 0 : startDate, FluxQueryTemplate.phaseFilter(phases), count);
+  }
+
+  /**
+   * Aggregates values in a single scan, from the coarsest rollup tier that is finer than window
+   * duration and covers the whole range, from raw values otherwise
+   */
+  @Override
+  public List<AggregatedWindow> aggregate(
+      List<ElectricPhase> phases, Instant startDate, Instant endDate, long windowDurationMillis) {
+    try {
+      RollupTier rollupTier = selectRollupTier(startDate, windowDurationMillis);
+      return rollupTier == null
+          ? aggregateRawValues(startDate, endDate, phases, windowDurationMillis)
+          : aggregateRollups(rollupTier, startDate, endDate, phases, windowDurationMillis);
+    } catch (BadRequestException e) {
+      log.error(
+          "No data found to aggregate in findGroupedMinMaxMean between {} and {}\n Error message: {}",
+          startDate,
+          endDate,
+          e.getMessage());
+      return null;
+    }
+  }
+
+  @Override
+  public Instant[] findTimeBounds(List<ElectricPhase> phases) {
+    loadTimeBounds();
+
+    Long first = null;
+    Long last = null;
+    for (ElectricPhase phase : getPhasesToLookUp(phases)) {
+      Long phaseFirst = timeBoundsIndex.getFirstMillis(phase);
+      Long phaseLast = timeBoundsIndex.getLastMillis(phase);
+      if (phaseFirst != null) {
+        first = first == null ? phaseFirst : Math.min(first, phaseFirst);
+        last = last == null ? phaseLast : Math.max(last, phaseLast);
+      }
+    }
+
+    return first == null
+        ? null
+        : new Instant[] {Instant.ofEpochMilli(first), Instant.ofEpochMilli(last)};
+  }
+
+  /**
+   * Loads time of the first and the last stored value of every phase into index by one query
+   * when it is used for the first time
+   */
+  private void loadTimeBounds() {
+    if (timeBoundsIndex.isLoaded()) {
+      return;
+    }
+
+    synchronized (timeBoundsIndex) {
+      if (timeBoundsIndex.isLoaded()) {
+        return;
+      }
+
+      String query =
+          compileQuery(
+                  """
+                      data = from(bucket: %s)
+                        |> range(start: 0)
+                        |> filter(fn: (r) => r._measurement == %s%s)
+
+                      union(tables: [data |> first(), data |> last()])
+                        |> keep(columns: ["_time", "phase"])""",
+                  QUANTITY_NAME)
+              .bind();
+
+      for (FluxTable fluxTable : this.influxDBClient.getQueryApi().query(query, ORGANIZATION)) {
+        for (FluxRecord fluxRecord : fluxTable.getRecords()) {
+          if (fluxRecord.getTime() != null) {
+            timeBoundsIndex.addStored(
+                parsePhase(fluxRecord.getValueByKey("phase")),
+                fluxRecord.getTime().toEpochMilli());
+          }
+        }
+      }
+      timeBoundsIndex.markLoaded();
+    }
+  }
+
+  /** Returns requested phases, all stored phases if none is requested or quantity has no phases */
+  private List<ElectricPhase> getPhasesToLookUp(List<ElectricPhase> phases) {
+    if (phases == null || phases.isEmpty() || storedPhases.get(0) == null) {
+      return storedPhases;
+    }
+
+    return phases;
+  }
+
+  /**
+   * Runs query of raw values and passes values to consumer as lines of CSV response arrive.
+   * Returns when query completes, consumer is called from thread of influx client, so slow
+   * consumer slows down reading of response instead of buffering it.
+   *
+   * @throws RuntimeException thrown by consumer or failure of query
+   */
+  private void streamValues(String query, SampleConsumer consumer) {
+    FluxCsvValueDecoder decoder = new FluxCsvValueDecoder(consumer);
+    CountDownLatch finished = new CountDownLatch(1);
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    AtomicReference<Cancellable> runningQuery = new AtomicReference<>();
+
+    this.influxDBClient
+        .getQueryApi()
+        .queryRaw(
+            query,
+            CSV_DIALECT,
+            ORGANIZATION,
+            (cancellable, line) -> {
+              runningQuery.set(cancellable);
+              try {
+                decoder.accept(line);
+              } catch (RuntimeException e) {
+                failure.compareAndSet(null, e);
+                cancellable.cancel();
+                finished.countDown();
+              }
+            },
+            error -> {
+              failure.compareAndSet(null, error);
+              finished.countDown();
+            },
+            finished::countDown);
+
+    try {
+      finished.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      Cancellable cancellable = runningQuery.get();
+      if (cancellable != null) {
+        cancellable.cancel();
+      }
+      throw new IllegalStateException("Streaming of " + QUANTITY_NAME + " was interrupted", e);
+    }
+
+    Throwable error = failure.get();
+    if (error instanceof RuntimeException runtimeException) {
+      throw runtimeException;
+    }
+    if (error != null) {
+      throw new IllegalStateException("Streaming of " + QUANTITY_NAME + " failed", error);
+    }
+  }
+
+  private List<AggregatedWindow> aggregateRawValues(
+      Instant startDate, Instant endDate, List<ElectricPhase> phases, long windowDurationMillis) {
+    return queryAggregatedWindows(
+        buildRawAggregationQuery(startDate, endDate, phases, windowDurationMillis));
+  }
+
+  String buildRawAggregationQuery(
+      Instant startDate, Instant endDate, List<ElectricPhase> phases, long windowDurationMillis) {
+    return rawAggregationQuery.bind(
+        startDate, endDate, FluxQueryTemplate.phaseFilter(phases), windowDurationMillis);
+  }
+
+  private List<AggregatedWindow> aggregateRollups(
+      RollupTier rollupTier,
+      Instant startDate,
+      Instant endDate,
+      List<ElectricPhase> phases,
+      long windowDurationMillis) {
+    String query =
+        rollupAggregationQueries
+            .get(rollupTier)
+            .bind(startDate, endDate, FluxQueryTemplate.phaseFilter(phases), windowDurationMillis);
+
+    return queryAggregatedWindows(query);
+  }
+
+  private List<AggregatedWindow> queryAggregatedWindows(String query) {
+    List<AggregatedWindow> aggregatedWindows = new ArrayList<>();
+    for (FluxTable table : this.influxDBClient.getQueryApi().query(query, ORGANIZATION)) {
+      for (FluxRecord fluxRecord : table.getRecords()) {
+        aggregatedWindows.add(
+            new AggregatedWindow(
+                fluxRecord.getTime(),
+                parsePhase(fluxRecord.getValueByKey("phase")),
+                toNumber(fluxRecord, "count").longValue(),
+                toNumber(fluxRecord, "sum").doubleValue(),
+                toNumber(fluxRecord, "min").doubleValue(),
+                toNumber(fluxRecord, "max").doubleValue()));
+      }
+    }
+
+    return aggregatedWindows;
+  }
+
+  /**
+   * Selects the coarsest rollup tier whose windows are not longer than requested window and whose
+   * rollups cover requested range
+   *
+   * @return selected tier or null if values have to be aggregated from raw values
+   */
+  private RollupTier selectRollupTier(Instant startDate, long windowDurationMillis) {
+    if (!rollupEnabled) {
+      return null;
+    }
+
+    RollupTier[] rollupTiers = RollupTier.values();
+    for (int i = rollupTiers.length - 1; i >= 0; i--) {
+      RollupTier rollupTier = rollupTiers[i];
+      if (rollupTier.getDurationMillis() <= windowDurationMillis
+          && !getRollupCoverageStart(rollupTier).isAfter(startDate)) {
+        return rollupTier;
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Returns time since which rollups of tier are complete. Rollups are kept since the earliest
+   * recorded tracking start, or since this instance started if there is none. Stored rollups can
+   * not be used, because windows before tracking start are recomputed when late values are saved
+   * into them, while windows between them were never rolled up.
+   */
+  private Instant getRollupCoverageStart(RollupTier rollupTier) {
+    return rollupCoverageStarts.computeIfAbsent(
+        rollupTier,
+        tier -> {
+          String query =
+              compileQuery(
+                      """
+                          from(bucket: %s)
+                            |> range(start: 0)
+                            |> filter(fn: (r) => r._measurement == %s%s)
+                            |> filter(fn: (r) => r._field == "tracking_start")
+                            |> first()""",
+                      getRollupMetaMeasurement())
+                  .bind();
+
+          Instant coverageStart =
+              Instant.ofEpochMilli(tier.getWindowStart(rollupTrackingStart.toEpochMilli()));
+          for (FluxTable table : this.influxDBClient.getQueryApi().query(query, ORGANIZATION)) {
+            for (FluxRecord fluxRecord : table.getRecords()) {
+              // window containing tracking start is recomputed
+              Instant trackingStartWindow =
+                  Instant.ofEpochMilli(tier.getWindowStart(fluxRecord.getTime().toEpochMilli()));
+              if (trackingStartWindow.isBefore(coverageStart)) {
+                coverageStart = trackingStartWindow;
+              }
+            }
+          }
+
+          return coverageStart;
+        });
+  }
+
+  /**
+   * Stores rollup windows changed since last run and recomputes rollup windows that received
+   * values which were not aggregated in memory.
+   */
+  public void flushRollups() {
+    if (!rollupEnabled) {
+      return;
+    }
+
+    List<RollupSnapshot> snapshots =
+        rollupAccumulator.drainChangedWindows(System.currentTimeMillis());
+    try {
+      List<String> records = new ArrayList<>(snapshots.size() + 1);
+      if (!trackingStartStored) {
+        records.add(generateTrackingStartRecord());
+      }
+      for (RollupSnapshot snapshot : snapshots) {
+        RollupWindow window = snapshot.window();
+        records.add(
+            generateRollupRecord(
+                window.tier(),
+                window.phase(),
+                window.windowStart(),
+                snapshot.count(),
+                snapshot.sum(),
+                snapshot.min(),
+                snapshot.max()));
+      }
+      enqueueRollupRecords(records);
+      trackingStartStored = true;
+    } catch (WriteQueueFullException e) {
+      log.warn("{} {} rollups were not stored: {}", snapshots.size(), QUANTITY_NAME, e.getMessage());
+      rollupAccumulator.restore(snapshots);
+    }
+
+    for (List<RollupWindow> adjacentWindows :
+        groupAdjacentWindows(rollupAccumulator.drainRecomputations())) {
+      try {
+        recomputeRollups(adjacentWindows);
+      } catch (WriteQueueFullException | RuntimeException e) {
+        log.warn(
+            "{} {} rollups were not recomputed: {}",
+            adjacentWindows.size(),
+            QUANTITY_NAME,
+            e.getMessage());
+        rollupAccumulator.restoreRecomputations(adjacentWindows);
+      }
+    }
+  }
+
+  /**
+   * @return whether all rollups were stored and no rollup waits to be recomputed
+   */
+  public boolean isRollupDrained() {
+    return !rollupEnabled || rollupAccumulator.isDrained();
+  }
+
+  /**
+   * Recomputes adjacent windows of one tier and phase from raw values by single query
+   *
+   * @param adjacentWindows windows ordered by time
+   */
+  private void recomputeRollups(List<RollupWindow> adjacentWindows)
+      throws WriteQueueFullException {
+    RollupWindow firstWindow = adjacentWindows.get(0);
+    RollupTier rollupTier = firstWindow.tier();
+    ElectricPhase phase = firstWindow.phase();
+
+    List<AggregatedWindow> aggregatedWindows =
+        aggregateRawValues(
+            Instant.ofEpochMilli(firstWindow.windowStart()),
+            Instant.ofEpochMilli(adjacentWindows.get(adjacentWindows.size() - 1).windowEnd()),
+            phase == null ? null : List.of(phase),
+            rollupTier.getDurationMillis());
+
+    List<String> records = new ArrayList<>(aggregatedWindows.size());
+    for (AggregatedWindow window : aggregatedWindows) {
+      // aggregated window is stamped with its end
+      long windowStart = window.time().toEpochMilli() - rollupTier.getDurationMillis();
+      records.add(
+          generateRollupRecord(
+              rollupTier,
+              phase,
+              windowStart,
+              window.count(),
+              window.sum(),
+              window.min(),
+              window.max()));
+    }
+
+    enqueueRollupRecords(records);
+  }
+
+  /**
+   * Enqueues rollup records in parts accepted by batch writer. Stored rollup is replaced by rollup
+   * of the same window, so parts enqueued before failure are written again without harm.
+   */
+  private void enqueueRollupRecords(List<String> records) throws WriteQueueFullException {
+    int maxBatchRecords = batchWriter.getMaxBatchRecords();
+    for (int start = 0; start < records.size(); start += maxBatchRecords) {
+      try {
+        batchWriter.enqueue(
+            DEVICE, records.subList(start, Math.min(records.size(), start + maxBatchRecords)));
+      } catch (WriteBatchTooLargeException e) {
+        throw new IllegalStateException("Part of rollup records is larger than write queue", e);
+      }
+    }
+  }
+
+  private static List<List<RollupWindow>> groupAdjacentWindows(List<RollupWindow> windows) {
+    List<RollupWindow> sortedWindows = new ArrayList<>(windows);
+    sortedWindows.sort(
+        Comparator.comparing(RollupWindow::tier)
+            .thenComparing(window -> window.phase() == null ? -1 : window.phase().ordinal())
+            .thenComparingLong(RollupWindow::windowStart));
+
+    List<List<RollupWindow>> groups = new ArrayList<>();
+    List<RollupWindow> group = new ArrayList<>();
+    for (RollupWindow window : sortedWindows) {
+      if (!group.isEmpty()) {
+        RollupWindow previousWindow = group.get(group.size() - 1);
+        if (previousWindow.tier() != window.tier()
+            || previousWindow.phase() != window.phase()
+            || previousWindow.windowEnd() != window.windowStart()) {
+          groups.add(group);
+          group = new ArrayList<>();
+        }
+      }
+      group.add(window);
+    }
+    if (!group.isEmpty()) {
+      groups.add(group);
+    }
+
+    return groups;
+  }
+
+  private String getRollupMetaMeasurement() {
+    return QUANTITY_NAME + "_rollup_meta";
+  }
+
+  private String generateTrackingStartRecord() {
+    Point point =
+        Point.measurement(getRollupMetaMeasurement())
+            .addField("tracking_start", true)
+            .time(rollupTrackingStart.getEpochSecond(), WritePrecision.S);
+
+    if (DEVICE != null) {
+      point.addTag("device", DEVICE);
+    }
+
+    return point.toLineProtocol();
+  }
+
+  private String generateRollupRecord(
+      RollupTier rollupTier,
+      ElectricPhase phase,
+      long windowStartMillis,
+      long count,
+      double sum,
+      double min,
+      double max) {
+    Point point =
+        Point.measurement(rollupTier.getMeasurement(QUANTITY_NAME))
+            .addField("count", count)
+            .addField("sum", sum)
+            .addField("min", min)
+            .addField("max", max)
+            .time(windowStartMillis / 1000, WritePrecision.S);
+
+    if (DEVICE != null) {
+      point.addTag("device", DEVICE);
+    }
+    if (phase != null) {
+      point.addTag("phase", phase.toString());
+    }
+
+    return point.toLineProtocol();
+  }
+
+  private ElectricPhase parsePhase(Object phase) {
+    if (phase == null) {
+      return null;
+    }
+
+    return ElectricPhase.valueOf(phase.toString());
+  }
+
+  private Number toNumber(FluxRecord fluxRecord, String column) {
+    return (Number) fluxRecord.getValueByKey(column);
+  }
+
+  /**
+   * Returns cached filter of provided phases
+   *
+   * @param phases phases to filter, no filter if null or empty
+   * @return phase statements appended to filter function of queries
+   */
+  String generatePhaseFilter(List<ElectricPhase> phases) {
+    return FluxQueryTemplate.phaseFilter(phases).text();
+  }
+}
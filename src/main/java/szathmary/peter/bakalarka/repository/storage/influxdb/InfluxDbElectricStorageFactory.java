@@ -0,0 +1,145 @@
+package szathmary.peter.bakalarka.repository.storage.influxdb;
+
+import com.influxdb.LogLevel;
+import com.influxdb.client.InfluxDBClient;
+import com.influxdb.query.FluxRecord;
+import com.influxdb.query.FluxTable;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import szathmary.peter.bakalarka.repository.storage.ElectricStorage;
+import szathmary.peter.bakalarka.repository.storage.ElectricStorageFactory;
+import szathmary.peter.bakalarka.repository.writer.InfluxDbBatchWriter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+@Component
+@ConditionalOnProperty(
+    name = "electric-quantities.storage.type",
+    havingValue = "influxdb",
+    matchIfMissing = true)
+public class InfluxDbElectricStorageFactory implements ElectricStorageFactory {
+
+  private final InfluxDBClient influxDBClient;
+
+  private final InfluxDbBatchWriter batchWriter;
+
+  private final String BUCKET_NAME;
+
+  private final String ORGANIZATION;
+
+  private final Timer rollupFlushTimer;
+
+  @Value("${influxdb.logging.enabled}")
+  private boolean influxLoggingEnabled;
+
+  @Value("${electric-quantities.rollup.enabled}")
+  private boolean rollupEnabled;
+
+  @Value("${electric-quantities.rollup.evict-after-windows}")
+  private int rollupEvictAfterWindows;
+
+  private final List<InfluxDbElectricStorage> storages = new CopyOnWriteArrayList<>();
+
+  public InfluxDbElectricStorageFactory(
+      InfluxDBClient influxDBClient,
+      InfluxDbBatchWriter batchWriter,
+      @Value("${influxdb.bucket.electric}") String bucketName,
+      @Value("${influxdb.org}") String organization,
+      MeterRegistry meterRegistry) {
+    this.influxDBClient = influxDBClient;
+    this.batchWriter = batchWriter;
+    BUCKET_NAME = bucketName;
+    ORGANIZATION = organization;
+    this.rollupFlushTimer =
+        Timer.builder("electric.storage.flush")
+            .description("Latency of persisting values written since last flush")
+            .tag("storage", "influxdb-rollups")
+            .register(meterRegistry);
+  }
+
+  @PostConstruct
+  public void init() {
+    if (this.influxLoggingEnabled) {
+      this.influxDBClient.setLogLevel(LogLevel.BASIC);
+    }
+  }
+
+  @Override
+  public ElectricStorage create(String quantityName, String device, boolean hasPhases) {
+    InfluxDbElectricStorage storage =
+        new InfluxDbElectricStorage(
+            influxDBClient,
+            batchWriter,
+            quantityName,
+            device,
+            hasPhases,
+            BUCKET_NAME,
+            ORGANIZATION,
+            rollupEnabled,
+            rollupEvictAfterWindows);
+    storages.add(storage);
+
+    return storage;
+  }
+
+  /**
+   * Stores rollups of storage before it is closed. Storage is closed only when no rollup waits to
+   * be stored or recomputed, otherwise rollups of its windows would be lost.
+   */
+  @Override
+  public boolean close(ElectricStorage storage) {
+    InfluxDbElectricStorage influxDbStorage = (InfluxDbElectricStorage) storage;
+    influxDbStorage.flushRollups();
+    if (!influxDbStorage.isRollupDrained()) {
+      return false;
+    }
+
+    storages.remove(influxDbStorage);
+    return true;
+  }
+
+  @Override
+  public List<String> findDevices() {
+    String query =
+        FluxQueryTemplate.compile(
+                String.format(
+                    """
+                        import "influxdata/influxdb/schema"
+
+                        schema.tagValues(bucket: %s, tag: "device")""",
+                    FluxQueryTemplate.quote(BUCKET_NAME)))
+            .bind();
+
+    List<String> devices = new ArrayList<>();
+    for (FluxTable table : influxDBClient.getQueryApi().query(query, ORGANIZATION)) {
+      for (FluxRecord fluxRecord : table.getRecords()) {
+        devices.add(String.valueOf(fluxRecord.getValue()));
+      }
+    }
+
+    return devices;
+  }
+
+  @Scheduled(fixedDelayString = "${electric-quantities.rollup.flush-interval-ms}")
+  public void flushRollups() {
+    rollupFlushTimer.record(
+        () -> {
+          for (InfluxDbElectricStorage storage : storages) {
+            storage.flushRollups();
+          }
+        });
+  }
+
+  @PreDestroy
+  public void destroy() {
+    flushRollups();
+  }
+}
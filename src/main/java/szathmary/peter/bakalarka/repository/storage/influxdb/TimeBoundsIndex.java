@@ -0,0 +1,112 @@
+package szathmary.peter.bakalarka.repository.storage.influxdb;
+
+import szathmary.peter.bakalarka.constant.ElectricPhase;
+import szathmary.peter.bakalarka.repository.storage.SampleBatch;
+
+import java.util.Arrays;
+
+/**
+ * Time of the first and the last value and density of values of every phase of one measurement.
+ * Bounds of stored values are loaded once, written values keep them up to date, so queries can be
+ * bounded to range containing values instead of whole history.
+ */
+class TimeBoundsIndex {
+
+  /** values are stored with second precision, so there is at most one value per second */
+  static final double MAX_VALUES_PER_SECOND = 1.0;
+
+  private final long[] firstMillis = new long[ElectricPhase.values().length + 1];
+
+  private final long[] lastMillis = new long[firstMillis.length];
+
+  private final long[] writtenValues = new long[firstMillis.length];
+
+  private final long[] firstWrittenMillis = new long[firstMillis.length];
+
+  private final long[] lastWrittenMillis = new long[firstMillis.length];
+
+  private boolean loaded;
+
+  TimeBoundsIndex() {
+    Arrays.fill(firstMillis, Long.MAX_VALUE);
+    Arrays.fill(lastMillis, Long.MIN_VALUE);
+    Arrays.fill(firstWrittenMillis, Long.MAX_VALUE);
+    Arrays.fill(lastWrittenMillis, Long.MIN_VALUE);
+  }
+
+  synchronized boolean isLoaded() {
+    return loaded;
+  }
+
+  /**
+   * Merges time of stored value into bounds
+   *
+   * @param phase phase of value
+   * @param epochMillis time of value
+   */
+  synchronized void addStored(ElectricPhase phase, long epochMillis) {
+    int slot = slot(phase);
+    firstMillis[slot] = Math.min(firstMillis[slot], epochMillis);
+    lastMillis[slot] = Math.max(lastMillis[slot], epochMillis);
+  }
+
+  /** Marks bounds of stored values as loaded, phases without stored value are empty */
+  synchronized void markLoaded() {
+    loaded = true;
+  }
+
+  /**
+   * Merges times of written values into bounds and density
+   *
+   * @param batch written values
+   */
+  synchronized void addWritten(SampleBatch batch) {
+    for (int i = 0; i < batch.size(); i++) {
+      // values are stored with second precision
+      long epochMillis = batch.getEpochMillis(i) / 1000 * 1000;
+      int slot = slot(batch.getPhase(i));
+      firstMillis[slot] = Math.min(firstMillis[slot], epochMillis);
+      lastMillis[slot] = Math.max(lastMillis[slot], epochMillis);
+      writtenValues[slot]++;
+      firstWrittenMillis[slot] = Math.min(firstWrittenMillis[slot], epochMillis);
+      lastWrittenMillis[slot] = Math.max(lastWrittenMillis[slot], epochMillis);
+    }
+  }
+
+  /**
+   * @return time of the first value of phase or null if phase has no value
+   */
+  synchronized Long getFirstMillis(ElectricPhase phase) {
+    int slot = slot(phase);
+    return firstMillis[slot] == Long.MAX_VALUE ? null : firstMillis[slot];
+  }
+
+  /**
+   * @return time of the last value of phase or null if phase has no value
+   */
+  synchronized Long getLastMillis(ElectricPhase phase) {
+    int slot = slot(phase);
+    return lastMillis[slot] == Long.MIN_VALUE ? null : lastMillis[slot];
+  }
+
+  /**
+   * Returns density of values written by this instance, the maximal density if too few values
+   * were written to measure it
+   *
+   * @param phase phase of values
+   * @return number of values per second
+   */
+  synchronized double getValuesPerSecond(ElectricPhase phase) {
+    int slot = slot(phase);
+    if (writtenValues[slot] < 2) {
+      return MAX_VALUES_PER_SECOND;
+    }
+
+    double seconds = (lastWrittenMillis[slot] - firstWrittenMillis[slot]) / 1000.0 + 1;
+    return Math.min(MAX_VALUES_PER_SECOND, writtenValues[slot] / seconds);
+  }
+
+  private static int slot(ElectricPhase phase) {
+    return phase == null ? 0 : phase.ordinal() + 1;
+  }
+}
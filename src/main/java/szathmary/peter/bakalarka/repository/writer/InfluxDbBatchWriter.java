@@ -0,0 +1,356 @@
+package szathmary.peter.bakalarka.repository.writer;
+
+import com.influxdb.client.InfluxDBClient;
+import com.influxdb.client.WriteApiBlocking;
+import com.influxdb.client.domain.WritePrecision;
+import com.influxdb.exceptions.InfluxException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import szathmary.peter.bakalarka.exception.WriteBatchTooLargeException;
+import szathmary.peter.bakalarka.exception.WriteQueueFullException;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Collects line protocol records of all electric quantities into bounded queues partitioned by
+ * device and writes them to InfluxDB in batches, every partition from its own background thread.
+ * Records of one device always go through the same partition, so they are written in order they
+ * were enqueued, and devices of other partitions are not held back by slow or failing writes.
+ * Batch is written when it reaches configured size or when its oldest record waits longer than
+ * flush interval. Batch that failed for transient reason is written again, batch rejected by
+ * InfluxDB as invalid is dropped, so it does not hold back its partition for ever.
+ *
+ * <p>Records of one call are accepted by one partition at once, so no call may enqueue more records
+ * than capacity of partition.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(
+    name = "electric-quantities.storage.type",
+    havingValue = "influxdb",
+    matchIfMissing = true)
+public class InfluxDbBatchWriter {
+
+  private static final long SHUTDOWN_TIMEOUT_MILLIS = 30_000;
+
+  private final WriteApiBlocking writeApi;
+
+  private final String BUCKET_NAME;
+
+  private final String ORGANIZATION;
+
+  private final int batchSize;
+
+  private final long flushIntervalMillis;
+
+  private final int partitionCapacity;
+
+  private final Partition[] partitions;
+
+  private final Timer flushTimer;
+
+  private final DistributionSummary flushedBatchSize;
+
+  private final Counter droppedRecords;
+
+  public InfluxDbBatchWriter(
+      InfluxDBClient influxDBClient,
+      @Value("${influxdb.bucket.electric}") String bucketName,
+      @Value("${influxdb.org}") String organization,
+      @Value("${influxdb.write.queue-capacity}") int queueCapacity,
+      @Value("${influxdb.write.batch-size}") int batchSize,
+      @Value("${influxdb.write.flush-interval-ms}") long flushIntervalMillis,
+      @Value("${influxdb.write.partitions}") int partitionCount,
+      @Value("${electric-quantities.import.chunk-size}") int importChunkSize,
+      MeterRegistry meterRegistry) {
+    this.writeApi = influxDBClient.getWriteApiBlocking();
+    BUCKET_NAME = bucketName;
+    ORGANIZATION = organization;
+    this.batchSize = batchSize;
+    this.flushIntervalMillis = flushIntervalMillis;
+    this.partitions = new Partition[Math.max(1, partitionCount)];
+    // queue capacity is shared by all partitions
+    this.partitionCapacity = Math.max(1, queueCapacity / partitions.length);
+    // every imported record is one value, chunk of one quantity is written by one call
+    if (importChunkSize > partitionCapacity) {
+      throw new IllegalArgumentException(
+          String.format(
+              "Import chunk size %d does not fit into write partition of %d records, "
+                  + "increase influxdb.write.queue-capacity or decrease "
+                  + "electric-quantities.import.chunk-size",
+              importChunkSize, partitionCapacity));
+    }
+    for (int i = 0; i < partitions.length; i++) {
+      partitions[i] = new Partition(i, partitionCapacity);
+    }
+    this.flushTimer =
+        Timer.builder("influxdb.write.flush")
+            .description("Latency of writing one batch to InfluxDB")
+            .register(meterRegistry);
+    this.flushedBatchSize =
+        DistributionSummary.builder("influxdb.write.batch.size")
+            .description("Number of records in batch written to InfluxDB")
+            .register(meterRegistry);
+    this.droppedRecords =
+        Counter.builder("influxdb.write.dropped")
+            .description("Number of records rejected by InfluxDB and dropped")
+            .register(meterRegistry);
+    Gauge.builder("influxdb.write.queue.size", this, InfluxDbBatchWriter::getQueueSize)
+        .description("Number of records waiting to be written to InfluxDB")
+        .register(meterRegistry);
+  }
+
+  @PostConstruct
+  public void start() {
+    for (Partition partition : partitions) {
+      partition.start();
+    }
+  }
+
+  /**
+   * Enqueues records of device to be written. Either all records are accepted or none of them.
+   *
+   * @param device name of device which measured values, null for the default device
+   * @param records line protocol records with second precision
+   * @throws WriteQueueFullException if queue of device partition has no room for all records or
+   *     writer is closed
+   * @throws WriteBatchTooLargeException if records do not fit into partition even when it is empty
+   */
+  public void enqueue(String device, List<String> records)
+      throws WriteQueueFullException, WriteBatchTooLargeException {
+    if (records.isEmpty()) {
+      return;
+    }
+    if (records.size() > partitionCapacity) {
+      throw new WriteBatchTooLargeException(
+          String.format(
+              "Batch of %d records is larger than write queue of %d records, split it into "
+                  + "smaller batches",
+              records.size(), partitionCapacity));
+    }
+
+    int partition = device == null ? 0 : Math.floorMod(device.hashCode(), partitions.length);
+    partitions[partition].enqueue(records);
+  }
+
+  /**
+   * @return the largest number of records accepted by one call of {@link #enqueue}
+   */
+  public int getMaxBatchRecords() {
+    return partitionCapacity;
+  }
+
+  /** Stops accepting new records and writes everything that is still queued. */
+  @PreDestroy
+  public void shutdown() throws InterruptedException {
+    for (Partition partition : partitions) {
+      partition.close();
+    }
+
+    long deadline = System.currentTimeMillis() + SHUTDOWN_TIMEOUT_MILLIS;
+    for (Partition partition : partitions) {
+      partition.join(Math.max(1, deadline - System.currentTimeMillis()));
+    }
+  }
+
+  private double getQueueSize() {
+    int queueSize = 0;
+    for (Partition partition : partitions) {
+      queueSize += partition.getQueueSize();
+    }
+    return queueSize;
+  }
+
+  /**
+   * @return whether write may succeed when it is repeated, failure without status was not
+   *     answered by InfluxDB
+   */
+  private static boolean isTransient(InfluxException e) {
+    return e.status() == 0 || e.status() == 429 || e.status() >= 500;
+  }
+
+  /** Bounded queue of records written by its own thread */
+  private class Partition {
+
+    private final int index;
+
+    private final int queueCapacity;
+
+    private final ArrayDeque<String> queue = new ArrayDeque<>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition recordsAvailable = lock.newCondition();
+
+    private boolean closed;
+
+    private Thread writerThread;
+
+    Partition(int index, int queueCapacity) {
+      this.index = index;
+      this.queueCapacity = queueCapacity;
+    }
+
+    void start() {
+      writerThread = new Thread(this::writeLoop, "influxdb-batch-writer-" + index);
+      writerThread.start();
+    }
+
+    void enqueue(List<String> records) throws WriteQueueFullException {
+      lock.lock();
+      try {
+        if (closed) {
+          throw new WriteQueueFullException("Writer is shutting down, records were not accepted");
+        }
+
+        if (queue.size() + records.size() > queueCapacity) {
+          throw new WriteQueueFullException(
+              String.format(
+                  "Write queue %d is full (%d of %d records), %d records were not accepted",
+                  index, queue.size(), queueCapacity, records.size()));
+        }
+
+        boolean wasEmpty = queue.isEmpty();
+        queue.addAll(records);
+
+        if (wasEmpty || queue.size() >= batchSize) {
+          recordsAvailable.signal();
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    void close() {
+      lock.lock();
+      try {
+        closed = true;
+        recordsAvailable.signal();
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    void join(long timeoutMillis) throws InterruptedException {
+      writerThread.join(timeoutMillis);
+      if (writerThread.isAlive()) {
+        log.error("Batch writer {} did not drain queue in {} ms", index, SHUTDOWN_TIMEOUT_MILLIS);
+      }
+    }
+
+    private void writeLoop() {
+      try {
+        List<String> batch;
+        while ((batch = takeBatch()) != null) {
+          writeWithRetry(batch);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        log.error("Batch writer {} was interrupted, queued records were not written", index);
+      }
+    }
+
+    /**
+     * Waits until batch is full, flush interval elapses or writer is closed
+     *
+     * @return records to be written, null if writer is closed and queue is drained
+     */
+    private List<String> takeBatch() throws InterruptedException {
+      lock.lock();
+      try {
+        while (queue.isEmpty()) {
+          if (closed) {
+            return null;
+          }
+          recordsAvailable.await();
+        }
+
+        long remainingNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        while (queue.size() < batchSize && !closed && remainingNanos > 0) {
+          remainingNanos = recordsAvailable.awaitNanos(remainingNanos);
+        }
+
+        int size = Math.min(batchSize, queue.size());
+        List<String> batch = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+          batch.add(queue.poll());
+        }
+
+        return batch;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    /**
+     * Writes batch until it succeeds. Queue keeps accepting records meanwhile until it is full,
+     * so clients get back pressure instead of losing data. Batch rejected as invalid would fail
+     * every time, so it is dropped. After shutdown the batch is written only once.
+     */
+    private void writeWithRetry(List<String> batch) throws InterruptedException {
+      while (true) {
+        try {
+          long start = System.nanoTime();
+          writeApi.writeRecords(BUCKET_NAME, ORGANIZATION, WritePrecision.S, batch);
+          flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+          flushedBatchSize.record(batch.size());
+          return;
+        } catch (InfluxException e) {
+          if (!isTransient(e)) {
+            droppedRecords.increment(batch.size());
+            log.error(
+                "Writing of {} records was rejected with status {}, records were dropped: {}",
+                batch.size(),
+                e.status(),
+                e.getMessage());
+            return;
+          }
+          if (isClosed()) {
+            log.error(
+                "Writing of {} records failed during shutdown: {}", batch.size(), e.getMessage());
+            return;
+          }
+
+          log.error(
+              "Writing of {} records failed, retrying in {} ms: {}",
+              batch.size(),
+              flushIntervalMillis,
+              e.getMessage());
+          Thread.sleep(flushIntervalMillis);
+        }
+      }
+    }
+
+    private int getQueueSize() {
+      lock.lock();
+      try {
+        return queue.size();
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    private boolean isClosed() {
+      lock.lock();
+      try {
+        return closed;
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+}
@@ -2,30 +2,123 @@ package szathmary.peter.bakalarka.service;
 
 import org.springframework.data.repository.NoRepositoryBean;
 import szathmary.peter.bakalarka.constant.ElectricPhase;
+import szathmary.peter.bakalarka.dto.electric.GroupedSeriesDto;
 import szathmary.peter.bakalarka.exception.NoDataFound;
+import szathmary.peter.bakalarka.exception.WriteBatchTooLargeException;
+import szathmary.peter.bakalarka.exception.WriteQueueFullException;
+import szathmary.peter.bakalarka.repository.storage.SampleBatch;
 
 import java.time.Instant;
 import java.util.List;
+import java.util.function.Consumer;
 
+/**
+ * Service of one electric quantity. Every query reads values of one device, device is null for the
+ * default device.
+ *
+ * @param <T> type of entity
+ */
 @NoRepositoryBean
 public interface BaseInfluxdbElectricService<T> {
 
-  List<T> findAll(List<ElectricPhase> phases);
+  List<T> findAll(String device, List<ElectricPhase> phases);
 
-  List<T> findAllBetweenDate(Instant startDate, Instant endDate, List<ElectricPhase> phases);
+  List<T> findAllDownsampled(String device, List<ElectricPhase> phases, int maxPoints);
 
-  List<List<T>> getValueSince(Instant since, List<ElectricPhase> phases);
+  void streamAll(
+      String device, List<ElectricPhase> phases, Integer maxPoints, Consumer<T> consumer);
 
-  T getLastValue(List<ElectricPhase> phases) throws NoDataFound;
+  List<T> findAllBetweenDate(
+      String device, Instant startDate, Instant endDate, List<ElectricPhase> phases);
+
+  List<T> findAllBetweenDateDownsampled(
+      String device,
+      Instant startDate,
+      Instant endDate,
+      List<ElectricPhase> phases,
+      int maxPoints);
+
+  void streamAllBetweenDate(
+      String device,
+      Instant startDate,
+      Instant endDate,
+      List<ElectricPhase> phases,
+      Integer maxPoints,
+      Consumer<T> consumer);
+
+  List<List<T>> getValueSince(String device, Instant since, List<ElectricPhase> phases);
+
+  T getLastValue(String device, List<ElectricPhase> phases) throws NoDataFound;
 
   List<List<T>> getGroupedMinMaxMean(
-      Instant startDate, Instant endDate, List<ElectricPhase> phases);
+      String device,
+      Instant startDate,
+      Instant endDate,
+      List<ElectricPhase> phases,
+      Integer maxWindows);
+
+  List<List<T>> getAllValuesFromDate(
+      String device, Instant startDate, List<ElectricPhase> phases);
+
+  List<GroupedSeriesDto> getSeriesSince(
+      String device, Instant since, List<ElectricPhase> phases);
+
+  /**
+   * Returns windows of duration selected from fixed ladder of durations aligned to epoch
+   *
+   * @param device name of device, null for the default device
+   * @param startDate start of grouped range
+   * @param endDate end of grouped range
+   * @param phases grouped phases
+   * @param maxWindows maximal number of windows, null for default resolution
+   * @return series of every phase with windows in range
+   */
+  List<GroupedSeriesDto> getGroupedSeries(
+      String device,
+      Instant startDate,
+      Instant endDate,
+      List<ElectricPhase> phases,
+      Integer maxWindows);
+
+  List<GroupedSeriesDto> getAllSeriesFromDate(
+      String device, Instant startDate, List<ElectricPhase> phases);
+
+  /**
+   * Returns windows aligned to epoch from start until now. Windows before settled end are served
+   * from cache, only windows after it are aggregated from storage.
+   *
+   * @param device name of device, null for the default device
+   * @param startDate start of range aligned to window duration
+   * @param settledEndDate end of windows that are not written to anymore
+   * @param windowDurationMillis duration of window
+   * @param phases grouped phases
+   * @return series of every phase with windows in range
+   */
+  List<GroupedSeriesDto> getIncrementalSeries(
+      String device,
+      Instant startDate,
+      Instant settledEndDate,
+      long windowDurationMillis,
+      List<ElectricPhase> phases);
+
+  /**
+   * Returns time of the oldest value of device saved late since previous incremental poll
+   *
+   * @param device name of device, null for the default device
+   * @param invalidationSequence invalidation sequence of previous poll
+   * @return time of the oldest late value, null if there is none, {@link Long#MIN_VALUE} if late
+   *     values since sequence are not known anymore
+   */
+  Long findLateValuesSince(String device, long invalidationSequence);
 
-  List<List<T>> getAllValuesFromDate(Instant startDate, List<ElectricPhase> phases);
+  List<T> getLastNData(String device, int count, List<ElectricPhase> phases);
 
-  List<T> getLastNData(int count, List<ElectricPhase> phases);
+  /** Saves value to storage of its device */
+  void saveValue(T valueToSave) throws WriteQueueFullException, WriteBatchTooLargeException;
 
-  void saveValue(T valueToSave);
+  /** Saves values to storages of their devices */
+  void saveValues(List<T> valuesToSave) throws WriteQueueFullException, WriteBatchTooLargeException;
 
-  void saveValues(List<T> valuesToSave);
+  void saveBatch(String device, SampleBatch batch)
+      throws WriteQueueFullException, WriteBatchTooLargeException;
 }
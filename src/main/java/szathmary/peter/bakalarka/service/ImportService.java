@@ -0,0 +1,46 @@
+package szathmary.peter.bakalarka.service;
+
+import szathmary.peter.bakalarka.dto.electric.ImportProgressDto;
+import szathmary.peter.bakalarka.exception.ImportAlreadyRunningException;
+import szathmary.peter.bakalarka.exception.InvalidElectricQuantityException;
+import szathmary.peter.bakalarka.exception.NoDataFound;
+import szathmary.peter.bakalarka.exception.WriteBatchTooLargeException;
+import szathmary.peter.bakalarka.exception.WriteQueueFullException;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+public interface ImportService {
+
+  /**
+   * Imports newline delimited JSON records of device, see {@link
+   * szathmary.peter.bakalarka.service.ingest.NdjsonRecordReader}. Import with id of failed import
+   * skips records that were already written.
+   *
+   * @throws InvalidElectricQuantityException if import with the same id was started for other
+   *     device or format
+   */
+  ImportProgressDto importNdjson(String importId, String device, InputStream input)
+      throws ImportAlreadyRunningException,
+          InvalidElectricQuantityException,
+          WriteQueueFullException,
+          WriteBatchTooLargeException,
+          IOException;
+
+  /**
+   * Imports CSV records of device, see {@link
+   * szathmary.peter.bakalarka.service.ingest.CsvRecordReader}. Import with id of failed import
+   * skips records that were already written.
+   *
+   * @throws InvalidElectricQuantityException if import with the same id was started for other
+   *     device or format
+   */
+  ImportProgressDto importCsv(String importId, String device, InputStream input)
+      throws ImportAlreadyRunningException,
+          InvalidElectricQuantityException,
+          WriteQueueFullException,
+          WriteBatchTooLargeException,
+          IOException;
+
+  ImportProgressDto getProgress(String importId) throws NoDataFound;
+}
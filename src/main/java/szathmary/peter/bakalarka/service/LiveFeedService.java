@@ -0,0 +1,26 @@
+package szathmary.peter.bakalarka.service;
+
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import szathmary.peter.bakalarka.constant.ElectricPhase;
+import szathmary.peter.bakalarka.constant.ElectricQuantities;
+import szathmary.peter.bakalarka.constant.LiveFeedOverflowPolicy;
+import szathmary.peter.bakalarka.dto.electric.ElectricQuantitiesDto;
+import szathmary.peter.bakalarka.exception.LiveFeedUnavailableException;
+import szathmary.peter.bakalarka.service.ingest.ColumnarElectricQuantities;
+
+import java.util.List;
+
+public interface LiveFeedService {
+
+  SseEmitter subscribe(
+      String device,
+      List<ElectricQuantities> electricQuantities,
+      List<ElectricPhase> currentPhases,
+      List<ElectricPhase> voltagePhases,
+      LiveFeedOverflowPolicy overflowPolicy)
+      throws LiveFeedUnavailableException;
+
+  void publish(ElectricQuantitiesDto ingested);
+
+  void publish(String device, ColumnarElectricQuantities ingested);
+}
@@ -0,0 +1,190 @@
+package szathmary.peter.bakalarka.service.cache;
+
+import szathmary.peter.bakalarka.constant.ElectricPhase;
+import szathmary.peter.bakalarka.dto.electric.GroupedSeriesDto;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Least recently used cache of grouped min, max and mean values of one electric quantity.
+ *
+ * <p>Only ranges that ended at least settle time ago are cached, because values of more recent
+ * ranges are still being written. Such ranges are immutable, cached result is dropped only when
+ * late values falling into its range are saved or when cache exceeds maximal number of cached
+ * values. Results are kept as primitive series, every window counts as three cached values.
+ * Results are cached per device, late values drop overlapping results of all devices.
+ *
+ * <p>Cached result is shared by all callers, so it is returned as unmodifiable list and arrays of
+ * its series must not be modified.
+ */
+public class GroupedResultCache {
+
+  private final long maxCachedValues;
+
+  private final long settleMillis;
+
+  private final LinkedHashMap<Key, List<GroupedSeriesDto>> entries =
+      new LinkedHashMap<>(16, 0.75f, true);
+
+  /** recently saved late values, results overlapping them may miss values not written yet */
+  private final ArrayDeque<Invalidation> recentInvalidations = new ArrayDeque<>();
+
+  private long cachedValues;
+
+  private long maxCachedEndMillis = Long.MIN_VALUE;
+
+  /**
+   * @param maxCachedValues maximal number of values in all cached results
+   * @param settleMillis time after which values of range are considered to be written
+   */
+  public GroupedResultCache(long maxCachedValues, long settleMillis) {
+    this.maxCachedValues = maxCachedValues;
+    this.settleMillis = settleMillis;
+  }
+
+  /**
+   * Returns cached result of range or loads it and caches it if range is settled
+   *
+   * @param device name of device, null for the default device
+   * @param startDate start of grouped range
+   * @param endDate end of grouped range
+   * @param windowDurationMillis duration of grouped windows
+   * @param phases grouped phases
+   * @param loader loads grouped values, may return null if there are no values
+   * @return grouped min, mean and max series, unmodifiable list if range is settled
+   */
+  public List<GroupedSeriesDto> get(
+      String device,
+      Instant startDate,
+      Instant endDate,
+      long windowDurationMillis,
+      List<ElectricPhase> phases,
+      Supplier<List<GroupedSeriesDto>> loader) {
+    long settledBefore = System.currentTimeMillis() - settleMillis;
+    if (endDate.toEpochMilli() > settledBefore) {
+      return loader.get();
+    }
+
+    Key key =
+        new Key(
+            device,
+            startDate.toEpochMilli(),
+            endDate.toEpochMilli(),
+            windowDurationMillis,
+            normalize(phases));
+    synchronized (this) {
+      List<GroupedSeriesDto> cachedResult = entries.get(key);
+      if (cachedResult != null) {
+        return cachedResult;
+      }
+    }
+
+    List<GroupedSeriesDto> result = loader.get();
+    if (result == null) {
+      return null;
+    }
+
+    List<GroupedSeriesDto> cachedResult = List.copyOf(result);
+    put(key, cachedResult);
+    return cachedResult;
+  }
+
+  /**
+   * Drops cached results whose range overlaps range of saved values
+   *
+   * @param minMillis time of the oldest saved value
+   * @param maxMillis time of the newest saved value
+   */
+  public void invalidate(long minMillis, long maxMillis) {
+    long nowMillis = System.currentTimeMillis();
+    if (minMillis > nowMillis - settleMillis) {
+      // values of unsettled ranges are never cached
+      return;
+    }
+
+    synchronized (this) {
+      recentInvalidations.addLast(new Invalidation(minMillis, maxMillis, nowMillis));
+      if (minMillis > maxCachedEndMillis) {
+        return;
+      }
+
+      Iterator<Map.Entry<Key, List<GroupedSeriesDto>>> iterator = entries.entrySet().iterator();
+      while (iterator.hasNext()) {
+        Map.Entry<Key, List<GroupedSeriesDto>> entry = iterator.next();
+        if (entry.getKey().overlaps(minMillis, maxMillis)) {
+          cachedValues -= countValues(entry.getValue());
+          iterator.remove();
+        }
+      }
+    }
+  }
+
+  private synchronized void put(Key key, List<GroupedSeriesDto> result) {
+    long nowMillis = System.currentTimeMillis();
+    while (!recentInvalidations.isEmpty()
+        && recentInvalidations.peekFirst().invalidatedAtMillis() < nowMillis - settleMillis) {
+      recentInvalidations.removeFirst();
+    }
+    for (Invalidation invalidation : recentInvalidations) {
+      if (key.overlaps(invalidation.minMillis(), invalidation.maxMillis())) {
+        return;
+      }
+    }
+
+    long resultValues = countValues(result);
+    if (resultValues > maxCachedValues) {
+      return;
+    }
+
+    List<GroupedSeriesDto> previousResult = entries.put(key, result);
+    if (previousResult != null) {
+      cachedValues -= countValues(previousResult);
+    }
+    cachedValues += resultValues;
+    maxCachedEndMillis = Math.max(maxCachedEndMillis, key.endMillis());
+
+    Iterator<List<GroupedSeriesDto>> leastRecentlyUsed = entries.values().iterator();
+    while (cachedValues > maxCachedValues) {
+      cachedValues -= countValues(leastRecentlyUsed.next());
+      leastRecentlyUsed.remove();
+    }
+  }
+
+  private static long countValues(List<GroupedSeriesDto> result) {
+    long count = 0;
+    for (GroupedSeriesDto series : result) {
+      // min, mean and max of every window
+      count += 3L * series.size();
+    }
+    return count;
+  }
+
+  private static Set<ElectricPhase> normalize(List<ElectricPhase> phases) {
+    // missing phase filter selects all phases
+    return phases == null || phases.isEmpty()
+        ? EnumSet.allOf(ElectricPhase.class)
+        : EnumSet.copyOf(phases);
+  }
+
+  private record Key(
+      String device,
+      long startMillis,
+      long endMillis,
+      long windowDurationMillis,
+      Set<ElectricPhase> phases) {
+
+    boolean overlaps(long minMillis, long maxMillis) {
+      return startMillis <= maxMillis && minMillis <= endMillis;
+    }
+  }
+
+  private record Invalidation(long minMillis, long maxMillis, long invalidatedAtMillis) {}
+}
@@ -0,0 +1,424 @@
+package szathmary.peter.bakalarka.service.cache;
+
+import szathmary.peter.bakalarka.constant.ElectricPhase;
+import szathmary.peter.bakalarka.dto.electric.GroupedSeriesDto;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+/**
+ * Cache of grouped min, mean and max windows of one electric quantity aligned to epoch, used by
+ * incremental polling.
+ *
+ * <p>Every cached range only grows at its end, so polling client reads from storage only windows
+ * settled since its previous poll and the open windows after them. Late values truncate cached
+ * range to the window they fall into. Least recently used ranges are dropped when cache exceeds
+ * maximal number of cached values, every window counts as three values. Ranges are cached per
+ * device, late values truncate ranges of all devices.
+ *
+ * <p>Recent late values of every device are remembered with their invalidation sequence, which is
+ * shared by caches of all quantities. Polling client keeps sequence of its previous poll, so
+ * windows it already received are returned again when late values changed them.
+ */
+public class IncrementalWindowCache {
+
+  /** sequence of invalidations of caches of all quantities, so one cursor covers every quantity */
+  private static final AtomicLong INVALIDATION_SEQUENCE = new AtomicLong();
+
+  /** number of remembered invalidations, older invalidations are reported as unknown */
+  private static final int MAX_RECENT_INVALIDATIONS = 1024;
+
+  private final long maxCachedValues;
+
+  private final long settleMillis;
+
+  private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+  private long cachedValues;
+
+  /** number of invalidations, ranges loaded while it changed may miss late values */
+  private long invalidations;
+
+  private final ArrayDeque<Invalidation> recentInvalidations = new ArrayDeque<>();
+
+  /** sequence of the newest invalidation which is not remembered anymore */
+  private long forgottenSequence;
+
+  /**
+   * @param maxCachedValues maximal number of values in all cached ranges
+   * @param settleMillis time after which values of window are considered to be written
+   */
+  public IncrementalWindowCache(long maxCachedValues, long settleMillis) {
+    this.maxCachedValues = maxCachedValues;
+    this.settleMillis = settleMillis;
+  }
+
+  /**
+   * Returns windows of range. Settled part of range is served from cache and extended by loading
+   * only its missing end, the rest of range is always loaded.
+   *
+   * @param device name of device, null for the default device
+   * @param startDate start of range aligned to window duration
+   * @param settledEndDate end of settled part of range aligned to window duration, at least settle
+   *     time ago
+   * @param endDate end of range
+   * @param windowDurationMillis duration of window
+   * @param phases grouped phases
+   * @param loader loads windows between dates, may return null if there are no values
+   * @return series of every phase with windows in range
+   */
+  public List<GroupedSeriesDto> get(
+      String device,
+      Instant startDate,
+      Instant settledEndDate,
+      Instant endDate,
+      long windowDurationMillis,
+      List<ElectricPhase> phases,
+      BiFunction<Instant, Instant, List<GroupedSeriesDto>> loader) {
+    long startMillis = startDate.toEpochMilli();
+    long settledEndMillis = settledEndDate.toEpochMilli();
+
+    List<GroupedSeriesDto> settled =
+        settledEndMillis > startMillis
+            ? getSettled(
+                device, startMillis, settledEndMillis, windowDurationMillis, phases, loader)
+            : List.of();
+    List<GroupedSeriesDto> open =
+        endDate.isAfter(settledEndDate) ? loader.apply(settledEndDate, endDate) : null;
+
+    return concat(settled, open);
+  }
+
+  private List<GroupedSeriesDto> getSettled(
+      String device,
+      long startMillis,
+      long endMillis,
+      long windowDurationMillis,
+      List<ElectricPhase> phases,
+      BiFunction<Instant, Instant, List<GroupedSeriesDto>> loader) {
+    Key key = new Key(device, windowDurationMillis, normalize(phases));
+    Entry entry;
+    long loadStartMillis;
+    long loadedInvalidations;
+    synchronized (this) {
+      entry = entries.get(key);
+      if (entry != null && entry.startMillis <= startMillis && entry.endMillis >= endMillis) {
+        return entry.copy(startMillis, endMillis);
+      }
+
+      if (entry != null && entry.startMillis <= startMillis && entry.endMillis >= startMillis) {
+        loadStartMillis = entry.endMillis;
+      } else {
+        entry = null;
+        loadStartMillis = startMillis;
+      }
+      loadedInvalidations = invalidations;
+    }
+
+    List<GroupedSeriesDto> loaded =
+        loader.apply(Instant.ofEpochMilli(loadStartMillis), Instant.ofEpochMilli(endMillis));
+
+    synchronized (this) {
+      if (invalidations == loadedInvalidations) {
+        if (entry == null) {
+          entry = new Entry(startMillis, windowDurationMillis);
+          Entry previousEntry = entries.put(key, entry);
+          if (previousEntry != null) {
+            cachedValues -= previousEntry.countValues();
+          }
+        } else if (entries.get(key) != entry || entry.endMillis != loadStartMillis) {
+          // entry was extended or dropped meanwhile, its windows are still valid
+          return concat(entry.copy(startMillis, loadStartMillis), loaded);
+        }
+
+        cachedValues += entry.append(loaded, endMillis);
+        List<GroupedSeriesDto> result = entry.copy(startMillis, endMillis);
+        evict();
+
+        return result;
+      }
+    }
+
+    // loaded windows may miss late values and cached windows they extend may be dropped
+    if (entry == null) {
+      return orEmpty(loaded);
+    }
+    return orEmpty(
+        loader.apply(Instant.ofEpochMilli(startMillis), Instant.ofEpochMilli(endMillis)));
+  }
+
+  /**
+   * @return sequence of the latest invalidation of any quantity
+   */
+  public static long getInvalidationSequence() {
+    return INVALIDATION_SEQUENCE.get();
+  }
+
+  /**
+   * Truncates cached ranges to window containing the oldest saved value and remembers it
+   *
+   * @param device name of device which measured values, null for the default device
+   * @param minMillis time of the oldest saved value
+   */
+  public void invalidate(String device, long minMillis) {
+    if (minMillis > System.currentTimeMillis() - settleMillis) {
+      // windows that are not settled are never cached nor settled for polling clients
+      return;
+    }
+
+    synchronized (this) {
+      truncate(minMillis);
+      recentInvalidations.addLast(
+          new Invalidation(INVALIDATION_SEQUENCE.incrementAndGet(), device, minMillis));
+      if (recentInvalidations.size() > MAX_RECENT_INVALIDATIONS) {
+        forgottenSequence = recentInvalidations.removeFirst().sequence();
+      }
+    }
+  }
+
+  /**
+   * Returns time of the oldest late value of device saved after invalidation sequence
+   *
+   * @param device name of device, null for the default device
+   * @param sequence invalidation sequence of previous poll
+   * @return time of the oldest late value, null if there is none, {@link Long#MIN_VALUE} if late
+   *     values since sequence are not remembered anymore
+   */
+  public synchronized Long findInvalidatedSince(String device, long sequence) {
+    if (sequence < forgottenSequence) {
+      return Long.MIN_VALUE;
+    }
+
+    Long oldestMillis = null;
+    Iterator<Invalidation> newestFirst = recentInvalidations.descendingIterator();
+    while (newestFirst.hasNext()) {
+      Invalidation invalidation = newestFirst.next();
+      if (invalidation.sequence() <= sequence) {
+        break;
+      }
+      if (Objects.equals(invalidation.device(), device)
+          && (oldestMillis == null || invalidation.minMillis() < oldestMillis)) {
+        oldestMillis = invalidation.minMillis();
+      }
+    }
+
+    return oldestMillis;
+  }
+
+  private void truncate(long minMillis) {
+    invalidations++;
+    Iterator<Entry> iterator = entries.values().iterator();
+    while (iterator.hasNext()) {
+      Entry entry = iterator.next();
+      long windowStartMillis =
+          Math.floorDiv(minMillis, entry.windowDurationMillis) * entry.windowDurationMillis;
+      if (windowStartMillis <= entry.startMillis) {
+        cachedValues -= entry.countValues();
+        iterator.remove();
+      } else if (windowStartMillis < entry.endMillis) {
+        cachedValues -= entry.truncate(windowStartMillis);
+      }
+    }
+  }
+
+  private void evict() {
+    Iterator<Entry> leastRecentlyUsed = entries.values().iterator();
+    while (cachedValues > maxCachedValues && leastRecentlyUsed.hasNext()) {
+      cachedValues -= leastRecentlyUsed.next().countValues();
+      leastRecentlyUsed.remove();
+    }
+  }
+
+  /**
+   * Appends windows of second series to windows of the same phase of first series
+   *
+   * @param first earlier windows
+   * @param second later windows, may be null
+   * @return series ordered by phase
+   */
+  private static List<GroupedSeriesDto> concat(
+      List<GroupedSeriesDto> first, List<GroupedSeriesDto> second) {
+    if (second == null || second.isEmpty()) {
+      return first;
+    }
+
+    WindowSeries[] slots = new WindowSeries[ElectricPhase.values().length + 1];
+    for (GroupedSeriesDto series : first) {
+      getSlot(slots, series.phase()).append(series, Long.MAX_VALUE);
+    }
+    for (GroupedSeriesDto series : second) {
+      getSlot(slots, series.phase()).append(series, Long.MAX_VALUE);
+    }
+
+    return toSeries(slots, Long.MIN_VALUE, Long.MAX_VALUE);
+  }
+
+  private static WindowSeries getSlot(WindowSeries[] slots, ElectricPhase phase) {
+    int slot = phase == null ? 0 : phase.ordinal() + 1;
+    if (slots[slot] == null) {
+      slots[slot] = new WindowSeries(phase);
+    }
+    return slots[slot];
+  }
+
+  private static List<GroupedSeriesDto> toSeries(
+      WindowSeries[] slots, long afterMillis, long untilMillis) {
+    List<GroupedSeriesDto> result = new ArrayList<>();
+    for (WindowSeries series : slots) {
+      if (series != null) {
+        GroupedSeriesDto copy = series.copy(afterMillis, untilMillis);
+        if (copy.size() > 0) {
+          result.add(copy);
+        }
+      }
+    }
+    return result;
+  }
+
+  private static List<GroupedSeriesDto> orEmpty(List<GroupedSeriesDto> series) {
+    return series == null ? List.of() : series;
+  }
+
+  private static Set<ElectricPhase> normalize(List<ElectricPhase> phases) {
+    // missing phase filter selects all phases
+    return phases == null || phases.isEmpty()
+        ? EnumSet.allOf(ElectricPhase.class)
+        : EnumSet.copyOf(phases);
+  }
+
+  private record Key(String device, long windowDurationMillis, Set<ElectricPhase> phases) {}
+
+  private record Invalidation(long sequence, String device, long minMillis) {}
+
+  /** Cached windows of range from start to end */
+  private static class Entry {
+
+    private final long startMillis;
+
+    private long endMillis;
+
+    private final long windowDurationMillis;
+
+    private final WindowSeries[] slots = new WindowSeries[ElectricPhase.values().length + 1];
+
+    Entry(long startMillis, long windowDurationMillis) {
+      this.startMillis = startMillis;
+      this.endMillis = startMillis;
+      this.windowDurationMillis = windowDurationMillis;
+    }
+
+    /**
+     * @return number of appended values
+     */
+    long append(List<GroupedSeriesDto> loaded, long newEndMillis) {
+      long before = countValues();
+      for (GroupedSeriesDto series : orEmpty(loaded)) {
+        getSlot(slots, series.phase()).append(series, newEndMillis);
+      }
+      endMillis = newEndMillis;
+      return countValues() - before;
+    }
+
+    /**
+     * @return number of dropped values
+     */
+    long truncate(long newEndMillis) {
+      long before = countValues();
+      for (WindowSeries series : slots) {
+        if (series != null) {
+          series.truncate(newEndMillis);
+        }
+      }
+      endMillis = newEndMillis;
+      return before - countValues();
+    }
+
+    /** windows are stamped with their end, so windows of range end after its start */
+    List<GroupedSeriesDto> copy(long fromMillis, long toMillis) {
+      return toSeries(slots, fromMillis, toMillis);
+    }
+
+    long countValues() {
+      long count = 0;
+      for (WindowSeries series : slots) {
+        if (series != null) {
+          // min, mean and max of every window
+          count += 3L * series.size;
+        }
+      }
+      return count;
+    }
+  }
+
+  /** Growable windows of one phase ordered by time */
+  private static class WindowSeries {
+
+    private final ElectricPhase phase;
+
+    private long[] time = new long[16];
+
+    private double[] min = new double[16];
+
+    private double[] mean = new double[16];
+
+    private double[] max = new double[16];
+
+    private int size;
+
+    WindowSeries(ElectricPhase phase) {
+      this.phase = phase;
+    }
+
+    void append(GroupedSeriesDto series, long untilMillis) {
+      for (int i = 0; i < series.size() && series.time()[i] <= untilMillis; i++) {
+        if (size == time.length) {
+          int capacity = size * 2;
+          time = Arrays.copyOf(time, capacity);
+          min = Arrays.copyOf(min, capacity);
+          mean = Arrays.copyOf(mean, capacity);
+          max = Arrays.copyOf(max, capacity);
+        }
+        time[size] = series.time()[i];
+        min[size] = series.min()[i];
+        mean[size] = series.mean()[i];
+        max[size] = series.max()[i];
+        size++;
+      }
+    }
+
+    void truncate(long untilMillis) {
+      while (size > 0 && time[size - 1] > untilMillis) {
+        size--;
+      }
+    }
+
+    /** Copies windows ending after first time and at or before second time */
+    GroupedSeriesDto copy(long afterMillis, long untilMillis) {
+      int from = 0;
+      while (from < size && time[from] <= afterMillis) {
+        from++;
+      }
+      int to = from;
+      while (to < size && time[to] <= untilMillis) {
+        to++;
+      }
+
+      return new GroupedSeriesDto(
+          phase,
+          Arrays.copyOfRange(time, from, to),
+          Arrays.copyOfRange(min, from, to),
+          Arrays.copyOfRange(mean, from, to),
+          Arrays.copyOfRange(max, from, to));
+    }
+  }
+}
@@ -2,80 +2,181 @@ package szathmary.peter.bakalarka.service.implementation;
 
 import org.springframework.stereotype.Service;
 import szathmary.peter.bakalarka.constant.ElectricPhase;
+import szathmary.peter.bakalarka.dto.electric.GroupedSeriesDto;
 import szathmary.peter.bakalarka.entity.Current;
 import szathmary.peter.bakalarka.exception.NoDataFound;
+import szathmary.peter.bakalarka.exception.WriteBatchTooLargeException;
+import szathmary.peter.bakalarka.exception.WriteQueueFullException;
 import szathmary.peter.bakalarka.repository.CurrentElectricRepository;
+import szathmary.peter.bakalarka.repository.storage.SampleBatch;
 import szathmary.peter.bakalarka.service.CurrentElectricService;
+import szathmary.peter.bakalarka.service.quantity.QuantitySeriesRegistry;
+import szathmary.peter.bakalarka.service.quantity.QuantitySeriesService;
 
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 @Service
 public class CurrentElectricServiceImpl implements CurrentElectricService {
 
   private final CurrentElectricRepository currentRepository;
 
-  public CurrentElectricServiceImpl(CurrentElectricRepository currentRepository) {
+  private final QuantitySeriesService seriesService;
+
+  public CurrentElectricServiceImpl(
+      CurrentElectricRepository currentRepository, QuantitySeriesRegistry seriesRegistry) {
     this.currentRepository = currentRepository;
+    this.seriesService = seriesRegistry.getRequired(currentRepository.getQuantityName());
   }
 
   @Override
-  public List<Current> findAll(List<ElectricPhase> phases) {
-    return this.currentRepository.findAll(phases);
+  public List<Current> findAll(String device, List<ElectricPhase> phases) {
+    return this.currentRepository.findAll(device, phases);
   }
 
   @Override
-  public List<Current> findAllBetweenDate(Instant startDate, Instant endDate,
-      List<ElectricPhase> phases) {
-    return this.currentRepository.findAllBetweenDates(startDate, endDate, phases);
+  public List<Current> findAllDownsampled(
+      String device, List<ElectricPhase> phases, int maxPoints) {
+    List<Current> values = new ArrayList<>();
+    this.currentRepository.streamAllDownsampled(device, phases, maxPoints, values::add);
+    return values;
   }
 
   @Override
-  public List<List<Current>> getValueSince(Instant since, List<ElectricPhase> phases) {
-    Instant endDate = Instant.now();
-
-    if (since.equals(endDate)) {
-      return getAllValuesFromDate(since, phases);
+  public void streamAll(
+      String device, List<ElectricPhase> phases, Integer maxPoints, Consumer<Current> consumer) {
+    if (maxPoints == null) {
+      this.currentRepository.streamAll(device, phases, consumer);
+    } else {
+      this.currentRepository.streamAllDownsampled(device, phases, maxPoints, consumer);
     }
+  }
 
-    return currentRepository.getGroupedMinMaxMean(since, endDate, phases);
+  @Override
+  public List<Current> findAllBetweenDate(
+      String device, Instant startDate, Instant endDate, List<ElectricPhase> phases) {
+    return this.currentRepository.findAllBetweenDates(device, startDate, endDate, phases);
   }
 
   @Override
-  public Current getLastValue(List<ElectricPhase> phases) throws NoDataFound {
-    return this.currentRepository.getLastValue(phases);
+  public List<Current> findAllBetweenDateDownsampled(
+      String device,
+      Instant startDate,
+      Instant endDate,
+      List<ElectricPhase> phases,
+      int maxPoints) {
+    List<Current> values = new ArrayList<>();
+    this.currentRepository.streamAllBetweenDatesDownsampled(
+        device, startDate, endDate, phases, maxPoints, values::add);
+    return values;
   }
 
   @Override
-  public List<List<Current>> getGroupedMinMaxMean(Instant startDate, Instant endDate,
-      List<ElectricPhase> phases) {
-    if (startDate.equals(endDate)) {
-      return this.getAllValuesFromDate(startDate, phases);
+  public void streamAllBetweenDate(
+      String device,
+      Instant startDate,
+      Instant endDate,
+      List<ElectricPhase> phases,
+      Integer maxPoints,
+      Consumer<Current> consumer) {
+    if (maxPoints == null) {
+      this.currentRepository.streamAllBetweenDates(device, startDate, endDate, phases, consumer);
+    } else {
+      this.currentRepository.streamAllBetweenDatesDownsampled(
+          device, startDate, endDate, phases, maxPoints, consumer);
     }
+  }
+
+  @Override
+  public List<List<Current>> getValueSince(
+      String device, Instant since, List<ElectricPhase> phases) {
+    return this.currentRepository.toMinMaxMean(device, getSeriesSince(device, since, phases));
+  }
 
-    return this.currentRepository.getGroupedMinMaxMean(startDate, endDate, phases);
+  @Override
+  public List<GroupedSeriesDto> getSeriesSince(
+      String device, Instant since, List<ElectricPhase> phases) {
+    return this.seriesService.getSeriesSince(device, since, phases);
   }
 
   @Override
-  public List<List<Current>> getAllValuesFromDate(Instant startDate, List<ElectricPhase> phases) {
-    Instant startOfDay = startDate.truncatedTo(java.time.temporal.ChronoUnit.DAYS);
-    Instant endOfDate = startOfDay.plus(java.time.Duration.ofDays(1));
+  public Current getLastValue(String device, List<ElectricPhase> phases) throws NoDataFound {
+    return this.currentRepository.getLastValue(device, phases);
+  }
 
-    return this.currentRepository.getGroupedMinMaxMean(startOfDay, endOfDate, phases);
+  @Override
+  public List<List<Current>> getGroupedMinMaxMean(
+      String device,
+      Instant startDate,
+      Instant endDate,
+      List<ElectricPhase> phases,
+      Integer maxWindows) {
+    return this.currentRepository.toMinMaxMean(
+        device, getGroupedSeries(device, startDate, endDate, phases, maxWindows));
   }
 
-    @Override
-    public List<Current> getLastNData(int count, List<ElectricPhase> phases) {
-        return this.currentRepository.getLastNValues(phases, count);
-    }
+  @Override
+  public List<GroupedSeriesDto> getGroupedSeries(
+      String device,
+      Instant startDate,
+      Instant endDate,
+      List<ElectricPhase> phases,
+      Integer maxWindows) {
+    return this.seriesService.getGroupedSeries(device, startDate, endDate, phases, maxWindows);
+  }
+
+  @Override
+  public List<List<Current>> getAllValuesFromDate(
+      String device, Instant startDate, List<ElectricPhase> phases) {
+    return this.currentRepository.toMinMaxMean(
+        device, getAllSeriesFromDate(device, startDate, phases));
+  }
+
+  @Override
+  public List<GroupedSeriesDto> getAllSeriesFromDate(
+      String device, Instant startDate, List<ElectricPhase> phases) {
+    return this.seriesService.getAllSeriesFromDate(device, startDate, phases);
+  }
+
+  @Override
+  public List<GroupedSeriesDto> getIncrementalSeries(
+      String device,
+      Instant startDate,
+      Instant settledEndDate,
+      long windowDurationMillis,
+      List<ElectricPhase> phases) {
+    return this.seriesService.getIncrementalSeries(
+        device, startDate, settledEndDate, windowDurationMillis, phases);
+  }
+
+  @Override
+  public Long findLateValuesSince(String device, long invalidationSequence) {
+    return this.seriesService.findLateValuesSince(device, invalidationSequence);
+  }
 
-    @Override
-  public void saveValue(Current valueToSave) {
-    this.currentRepository.save(valueToSave);
+  @Override
+  public List<Current> getLastNData(String device, int count, List<ElectricPhase> phases) {
+    return this.currentRepository.getLastNValues(device, phases, count);
   }
 
   @Override
-  public void saveValues(List<Current> valuesToSave) {
+  public void saveValue(Current valueToSave)
+      throws WriteQueueFullException, WriteBatchTooLargeException {
+    saveValues(List.of(valueToSave));
+  }
+
+  @Override
+  public void saveValues(List<Current> valuesToSave)
+      throws WriteQueueFullException, WriteBatchTooLargeException {
     this.currentRepository.saveAll(valuesToSave);
+    this.seriesService.invalidate(valuesToSave, Current::getDevice, Current::getTime);
+  }
+
+  @Override
+  public void saveBatch(String device, SampleBatch batch)
+      throws WriteQueueFullException, WriteBatchTooLargeException {
+    this.seriesService.saveBatch(device, batch);
   }
 }
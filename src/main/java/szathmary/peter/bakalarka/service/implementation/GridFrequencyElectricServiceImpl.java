@@ -2,81 +2,186 @@ package szathmary.peter.bakalarka.service.implementation;
 
 import org.springframework.stereotype.Service;
 import szathmary.peter.bakalarka.constant.ElectricPhase;
+import szathmary.peter.bakalarka.dto.electric.GroupedSeriesDto;
 import szathmary.peter.bakalarka.entity.GridFrequency;
 import szathmary.peter.bakalarka.exception.NoDataFound;
+import szathmary.peter.bakalarka.exception.WriteBatchTooLargeException;
+import szathmary.peter.bakalarka.exception.WriteQueueFullException;
 import szathmary.peter.bakalarka.repository.GridFrequencyElectricRepository;
+import szathmary.peter.bakalarka.repository.storage.SampleBatch;
 import szathmary.peter.bakalarka.service.GridFrequencyElectricService;
+import szathmary.peter.bakalarka.service.quantity.QuantitySeriesRegistry;
+import szathmary.peter.bakalarka.service.quantity.QuantitySeriesService;
 
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 @Service
 public class GridFrequencyElectricServiceImpl implements GridFrequencyElectricService {
 
   private final GridFrequencyElectricRepository gridFrequencyRepository;
 
-  public GridFrequencyElectricServiceImpl(GridFrequencyElectricRepository gridFrequencyRepository) {
+  private final QuantitySeriesService seriesService;
+
+  public GridFrequencyElectricServiceImpl(
+      GridFrequencyElectricRepository gridFrequencyRepository,
+      QuantitySeriesRegistry seriesRegistry) {
     this.gridFrequencyRepository = gridFrequencyRepository;
+    this.seriesService = seriesRegistry.getRequired(gridFrequencyRepository.getQuantityName());
+  }
+
+  @Override
+  public List<GridFrequency> findAll(String device, List<ElectricPhase> phases) {
+    return this.gridFrequencyRepository.findAll(device, phases);
   }
 
   @Override
-  public List<GridFrequency> findAll(List<ElectricPhase> phases) {
-    return this.gridFrequencyRepository.findAll(phases);
+  public List<GridFrequency> findAllDownsampled(
+      String device, List<ElectricPhase> phases, int maxPoints) {
+    List<GridFrequency> values = new ArrayList<>();
+    this.gridFrequencyRepository.streamAllDownsampled(device, phases, maxPoints, values::add);
+    return values;
+  }
+
+  @Override
+  public void streamAll(
+      String device,
+      List<ElectricPhase> phases,
+      Integer maxPoints,
+      Consumer<GridFrequency> consumer) {
+    if (maxPoints == null) {
+      this.gridFrequencyRepository.streamAll(device, phases, consumer);
+    } else {
+      this.gridFrequencyRepository.streamAllDownsampled(device, phases, maxPoints, consumer);
+    }
   }
 
   @Override
   public List<GridFrequency> findAllBetweenDate(
-      Instant startDate, Instant endDate, List<ElectricPhase> phases) {
-    return this.gridFrequencyRepository.findAllBetweenDates(startDate, endDate, phases);
+      String device, Instant startDate, Instant endDate, List<ElectricPhase> phases) {
+    return this.gridFrequencyRepository.findAllBetweenDates(device, startDate, endDate, phases);
   }
 
   @Override
-  public List<List<GridFrequency>> getValueSince(Instant since, List<ElectricPhase> phases) {
-    Instant endDate = Instant.now();
+  public List<GridFrequency> findAllBetweenDateDownsampled(
+      String device,
+      Instant startDate,
+      Instant endDate,
+      List<ElectricPhase> phases,
+      int maxPoints) {
+    List<GridFrequency> values = new ArrayList<>();
+    this.gridFrequencyRepository.streamAllBetweenDatesDownsampled(
+        device, startDate, endDate, phases, maxPoints, values::add);
+    return values;
+  }
 
-    if (since.equals(endDate)) {
-      return getAllValuesFromDate(since, phases);
+  @Override
+  public void streamAllBetweenDate(
+      String device,
+      Instant startDate,
+      Instant endDate,
+      List<ElectricPhase> phases,
+      Integer maxPoints,
+      Consumer<GridFrequency> consumer) {
+    if (maxPoints == null) {
+      this.gridFrequencyRepository.streamAllBetweenDates(
+          device, startDate, endDate, phases, consumer);
+    } else {
+      this.gridFrequencyRepository.streamAllBetweenDatesDownsampled(
+          device, startDate, endDate, phases, maxPoints, consumer);
     }
+  }
 
-    return gridFrequencyRepository.getGroupedMinMaxMean(since, endDate, phases);
+  @Override
+  public List<List<GridFrequency>> getValueSince(
+      String device, Instant since, List<ElectricPhase> phases) {
+    return this.gridFrequencyRepository.toMinMaxMean(device, getSeriesSince(device, since, phases));
+  }
+
+  @Override
+  public List<GroupedSeriesDto> getSeriesSince(
+      String device, Instant since, List<ElectricPhase> phases) {
+    return this.seriesService.getSeriesSince(device, since, phases);
   }
 
   @Override
-  public GridFrequency getLastValue(List<ElectricPhase> phases) throws NoDataFound {
-    return this.gridFrequencyRepository.getLastValue(phases);
+  public GridFrequency getLastValue(String device, List<ElectricPhase> phases) throws NoDataFound {
+    return this.gridFrequencyRepository.getLastValue(device, phases);
   }
 
   @Override
   public List<List<GridFrequency>> getGroupedMinMaxMean(
-      Instant startDate, Instant endDate, List<ElectricPhase> phases) {
-    if (startDate.equals(endDate)) {
-      return this.getAllValuesFromDate(startDate, phases);
-    }
+      String device,
+      Instant startDate,
+      Instant endDate,
+      List<ElectricPhase> phases,
+      Integer maxWindows) {
+    return this.gridFrequencyRepository.toMinMaxMean(
+        device, getGroupedSeries(device, startDate, endDate, phases, maxWindows));
+  }
 
-    return this.gridFrequencyRepository.getGroupedMinMaxMean(startDate, endDate, phases);
+  @Override
+  public List<GroupedSeriesDto> getGroupedSeries(
+      String device,
+      Instant startDate,
+      Instant endDate,
+      List<ElectricPhase> phases,
+      Integer maxWindows) {
+    return this.seriesService.getGroupedSeries(device, startDate, endDate, phases, maxWindows);
   }
 
   @Override
   public List<List<GridFrequency>> getAllValuesFromDate(
-      Instant startDate, List<ElectricPhase> phases) {
-    Instant startOfDay = startDate.truncatedTo(java.time.temporal.ChronoUnit.DAYS);
-    Instant endOfDate = startOfDay.plus(java.time.Duration.ofDays(1));
+      String device, Instant startDate, List<ElectricPhase> phases) {
+    return this.gridFrequencyRepository.toMinMaxMean(
+        device, getAllSeriesFromDate(device, startDate, phases));
+  }
+
+  @Override
+  public List<GroupedSeriesDto> getAllSeriesFromDate(
+      String device, Instant startDate, List<ElectricPhase> phases) {
+    return this.seriesService.getAllSeriesFromDate(device, startDate, phases);
+  }
 
-    return this.gridFrequencyRepository.getGroupedMinMaxMean(startOfDay, endOfDate, phases);
+  @Override
+  public List<GroupedSeriesDto> getIncrementalSeries(
+      String device,
+      Instant startDate,
+      Instant settledEndDate,
+      long windowDurationMillis,
+      List<ElectricPhase> phases) {
+    return this.seriesService.getIncrementalSeries(
+        device, startDate, settledEndDate, windowDurationMillis, phases);
+  }
+
+  @Override
+  public Long findLateValuesSince(String device, long invalidationSequence) {
+    return this.seriesService.findLateValuesSince(device, invalidationSequence);
   }
 
   @Override
-  public List<GridFrequency> getLastNData(int count, List<ElectricPhase> phases) {
-    return this.gridFrequencyRepository.getLastNValues(null, count);
+  public List<GridFrequency> getLastNData(String device, int count, List<ElectricPhase> phases) {
+    return this.gridFrequencyRepository.getLastNValues(device, null, count);
   }
 
   @Override
-  public void saveValue(GridFrequency valueToSave) {
-    this.gridFrequencyRepository.save(valueToSave);
+  public void saveValue(GridFrequency valueToSave)
+      throws WriteQueueFullException, WriteBatchTooLargeException {
+    saveValues(List.of(valueToSave));
   }
 
   @Override
-  public void saveValues(List<GridFrequency> valuesToSave) {
+  public void saveValues(List<GridFrequency> valuesToSave)
+      throws WriteQueueFullException, WriteBatchTooLargeException {
     this.gridFrequencyRepository.saveAll(valuesToSave);
+    this.seriesService.invalidate(valuesToSave, GridFrequency::getDevice, GridFrequency::getTime);
+  }
+
+  @Override
+  public void saveBatch(String device, SampleBatch batch)
+      throws WriteQueueFullException, WriteBatchTooLargeException {
+    this.seriesService.saveBatch(device, batch);
   }
 }
@@ -0,0 +1,276 @@
+package szathmary.peter.bakalarka.service.implementation;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import szathmary.peter.bakalarka.dto.electric.ImportProgressDto;
+import szathmary.peter.bakalarka.exception.ImportAlreadyRunningException;
+import szathmary.peter.bakalarka.exception.InvalidElectricQuantityException;
+import szathmary.peter.bakalarka.exception.NoDataFound;
+import szathmary.peter.bakalarka.exception.WriteBatchTooLargeException;
+import szathmary.peter.bakalarka.exception.WriteQueueFullException;
+import szathmary.peter.bakalarka.repository.storage.SampleBatch;
+import szathmary.peter.bakalarka.service.BaseInfluxdbElectricService;
+import szathmary.peter.bakalarka.service.CurrentElectricService;
+import szathmary.peter.bakalarka.service.GridFrequencyElectricService;
+import szathmary.peter.bakalarka.service.ImportService;
+import szathmary.peter.bakalarka.service.VoltageElectricService;
+import szathmary.peter.bakalarka.service.ingest.CsvRecordReader;
+import szathmary.peter.bakalarka.service.ingest.ImportProgress;
+import szathmary.peter.bakalarka.service.ingest.ImportRecord;
+import szathmary.peter.bakalarka.service.ingest.ImportRecordReader;
+import szathmary.peter.bakalarka.service.ingest.NdjsonRecordReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Imports records read incrementally from request body in chunks of fixed size, so memory used by
+ * import does not depend on its size. Progress is committed after every written chunk and resumed
+ * import skips committed records. Values are keyed by quantity, phase and time in storage, so
+ * writing records of uncommitted chunk again does not duplicate them.
+ */
+@Slf4j
+@Service
+public class ImportServiceImpl implements ImportService {
+
+  private final CurrentElectricService currentService;
+
+  private final GridFrequencyElectricService gridFrequencyService;
+
+  private final VoltageElectricService voltageService;
+
+  private final JsonFactory jsonFactory;
+
+  private final int chunkSize;
+
+  private final int maxTrackedImports;
+
+  private final long writeRetryTimeoutMillis;
+
+  private final long writeRetryDelayMillis;
+
+  private static final String NDJSON_FORMAT = "NDJSON";
+
+  private static final String CSV_FORMAT = "CSV";
+
+  /** progress of imports in order they were started */
+  private final Map<String, ImportProgress> imports = new LinkedHashMap<>();
+
+  public ImportServiceImpl(
+      CurrentElectricService currentService,
+      GridFrequencyElectricService gridFrequencyService,
+      VoltageElectricService voltageService,
+      ObjectMapper objectMapper,
+      @Value("${electric-quantities.import.chunk-size}") int chunkSize,
+      @Value("${electric-quantities.import.max-tracked-imports}") int maxTrackedImports,
+      @Value("${electric-quantities.import.write-retry-timeout-ms}") long writeRetryTimeoutMillis,
+      @Value("${electric-quantities.import.write-retry-delay-ms}") long writeRetryDelayMillis) {
+    this.currentService = currentService;
+    this.gridFrequencyService = gridFrequencyService;
+    this.voltageService = voltageService;
+    this.jsonFactory = objectMapper.getFactory();
+    this.chunkSize = chunkSize;
+    this.maxTrackedImports = maxTrackedImports;
+    this.writeRetryTimeoutMillis = writeRetryTimeoutMillis;
+    this.writeRetryDelayMillis = writeRetryDelayMillis;
+  }
+
+  @Override
+  public ImportProgressDto importNdjson(String importId, String device, InputStream input)
+      throws ImportAlreadyRunningException,
+          InvalidElectricQuantityException,
+          WriteQueueFullException,
+          WriteBatchTooLargeException,
+          IOException {
+    return importRecords(
+        importId, device, NDJSON_FORMAT, new NdjsonRecordReader(jsonFactory, input));
+  }
+
+  @Override
+  public ImportProgressDto importCsv(String importId, String device, InputStream input)
+      throws ImportAlreadyRunningException,
+          InvalidElectricQuantityException,
+          WriteQueueFullException,
+          WriteBatchTooLargeException,
+          IOException {
+    return importRecords(importId, device, CSV_FORMAT, new CsvRecordReader(input));
+  }
+
+  @Override
+  public synchronized ImportProgressDto getProgress(String importId) throws NoDataFound {
+    ImportProgress progress = imports.get(importId);
+    if (progress == null) {
+      throw new NoDataFound("No import with id " + importId + " was found");
+    }
+
+    return progress.toDto();
+  }
+
+  private ImportProgressDto importRecords(
+      String importId, String device, String format, ImportRecordReader reader)
+      throws ImportAlreadyRunningException,
+          InvalidElectricQuantityException,
+          WriteQueueFullException,
+          WriteBatchTooLargeException,
+          IOException {
+    ImportProgress progress = startImport(importId, device, format);
+    long committedRecords = progress.getCommittedRecords();
+
+    SampleBatch currents = new SampleBatch(chunkSize);
+    SampleBatch gridFrequencies = new SampleBatch(chunkSize);
+    SampleBatch voltages = new SampleBatch(chunkSize);
+    ImportRecord record = new ImportRecord();
+
+    long readRecords = 0;
+    int chunkRecords = 0;
+    int rejectedRecords = 0;
+    String lastRejection = null;
+
+    try {
+      while (true) {
+        boolean valid = true;
+        try {
+          if (!reader.next(record)) {
+            break;
+          }
+        } catch (InvalidElectricQuantityException e) {
+          valid = false;
+          lastRejection = String.format("Record %d: %s", readRecords + 1, e.getMessage());
+        }
+
+        readRecords++;
+        if (readRecords <= committedRecords) {
+          // written by previous attempt of import
+          lastRejection = null;
+          continue;
+        }
+
+        if (valid) {
+          SampleBatch batch =
+              switch (record.getQuantity()) {
+                case CURRENT -> currents;
+                case GRID_FREQUENCY -> gridFrequencies;
+                case VOLTAGE -> voltages;
+              };
+          batch.add(record.getPhase(), record.getEpochMillis(), record.getValue());
+        } else {
+          rejectedRecords++;
+        }
+
+        chunkRecords++;
+        if (chunkRecords == chunkSize) {
+          writeChunk(device, currents, gridFrequencies, voltages);
+          progress.commit(
+              readRecords, chunkRecords - rejectedRecords, rejectedRecords, lastRejection);
+          chunkRecords = 0;
+          rejectedRecords = 0;
+          lastRejection = null;
+        }
+      }
+
+      writeChunk(device, currents, gridFrequencies, voltages);
+      progress.commit(
+          Math.max(readRecords, committedRecords),
+          chunkRecords - rejectedRecords,
+          rejectedRecords,
+          lastRejection);
+      progress.complete();
+    } catch (WriteQueueFullException
+        | WriteBatchTooLargeException
+        | IOException
+        | RuntimeException e) {
+      progress.fail(e.getMessage());
+      log.warn(
+          "Import {} failed after {} committed records: {}",
+          importId,
+          progress.getCommittedRecords(),
+          e.toString());
+      throw e;
+    }
+
+    ImportProgressDto result = progress.toDto();
+    log.info(
+        "Import {} completed, {} values written, {} records rejected",
+        importId,
+        result.getWrittenValues(),
+        result.getRejectedRecords());
+
+    return result;
+  }
+
+  /**
+   * Starts new import or resumes failed import with the same id, committed records are skipped
+   * only when resumed import reads the same records, so it must be of the same device and format
+   */
+  private synchronized ImportProgress startImport(String importId, String device, String format)
+      throws ImportAlreadyRunningException, InvalidElectricQuantityException {
+    ImportProgress progress =
+        imports.computeIfAbsent(importId, id -> new ImportProgress(id, device, format));
+    if (!progress.isImportOf(device, format)) {
+      throw new InvalidElectricQuantityException(
+          String.format(
+              "Import %s was started for device %s in %s format, it can not be resumed for device"
+                  + " %s in %s format",
+              importId,
+              progress.getDevice(),
+              progress.getFormat(),
+              device,
+              format));
+    }
+    if (!progress.start()) {
+      throw new ImportAlreadyRunningException("Import " + importId + " is already running");
+    }
+
+    // forget the oldest finished imports
+    Iterator<ImportProgress> iterator = imports.values().iterator();
+    while (imports.size() > maxTrackedImports && iterator.hasNext()) {
+      if (!iterator.next().isRunning()) {
+        iterator.remove();
+      }
+    }
+
+    return progress;
+  }
+
+  private void writeChunk(
+      String device, SampleBatch currents, SampleBatch gridFrequencies, SampleBatch voltages)
+      throws WriteQueueFullException, WriteBatchTooLargeException {
+    saveWithRetry(currentService, device, currents);
+    saveWithRetry(gridFrequencyService, device, gridFrequencies);
+    saveWithRetry(voltageService, device, voltages);
+  }
+
+  /** Waits for storage to accept values instead of failing import when write queue is full */
+  private void saveWithRetry(
+      BaseInfluxdbElectricService<?> service, String device, SampleBatch batch)
+      throws WriteQueueFullException, WriteBatchTooLargeException {
+    if (batch.size() == 0) {
+      return;
+    }
+
+    long deadline = System.currentTimeMillis() + writeRetryTimeoutMillis;
+    while (true) {
+      try {
+        service.saveBatch(device, batch);
+        batch.clear();
+        return;
+      } catch (WriteQueueFullException e) {
+        if (System.currentTimeMillis() >= deadline) {
+          throw e;
+        }
+        try {
+          Thread.sleep(writeRetryDelayMillis);
+        } catch (InterruptedException interruptedException) {
+          Thread.currentThread().interrupt();
+          throw e;
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,195 @@
+package szathmary.peter.bakalarka.service.implementation;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import szathmary.peter.bakalarka.constant.ElectricPhase;
+import szathmary.peter.bakalarka.constant.ElectricQuantities;
+import szathmary.peter.bakalarka.constant.LiveFeedOverflowPolicy;
+import szathmary.peter.bakalarka.dto.electric.ElectricQuantitiesDto;
+import szathmary.peter.bakalarka.entity.Current;
+import szathmary.peter.bakalarka.entity.GridFrequency;
+import szathmary.peter.bakalarka.entity.Voltage;
+import szathmary.peter.bakalarka.exception.LiveFeedUnavailableException;
+import szathmary.peter.bakalarka.service.LiveFeedService;
+import szathmary.peter.bakalarka.service.ingest.ColumnarElectricQuantities;
+import szathmary.peter.bakalarka.service.live.LiveFeedSubscriber;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+
+@Slf4j
+@Service
+public class LiveFeedServiceImpl implements LiveFeedService {
+
+  public static final String VALUES_EVENT = "electric-quantities";
+
+  public static final String DROPPED_EVENT = "dropped";
+
+  private final List<LiveFeedSubscriber> subscribers = new CopyOnWriteArrayList<>();
+
+  private final TaskExecutor liveFeedExecutor;
+
+  private final int bufferCapacity;
+
+  private final int maxSubscribers;
+
+  private final long timeoutMillis;
+
+  public LiveFeedServiceImpl(
+      @Qualifier("liveFeedExecutor") TaskExecutor liveFeedExecutor,
+      @Value("${electric-quantities.live-feed.buffer-capacity}") int bufferCapacity,
+      @Value("${electric-quantities.live-feed.max-subscribers}") int maxSubscribers,
+      @Value("${electric-quantities.live-feed.timeout-ms}") long timeoutMillis) {
+    this.liveFeedExecutor = liveFeedExecutor;
+    this.bufferCapacity = bufferCapacity;
+    this.maxSubscribers = maxSubscribers;
+    this.timeoutMillis = timeoutMillis;
+  }
+
+  @Override
+  public SseEmitter subscribe(
+      String device,
+      List<ElectricQuantities> electricQuantities,
+      List<ElectricPhase> currentPhases,
+      List<ElectricPhase> voltagePhases,
+      LiveFeedOverflowPolicy overflowPolicy)
+      throws LiveFeedUnavailableException {
+    if (subscribers.size() >= maxSubscribers) {
+      throw new LiveFeedUnavailableException(
+          "Live feed has reached maximum of " + maxSubscribers + " subscribers");
+    }
+
+    SseEmitter emitter = new SseEmitter(timeoutMillis);
+    LiveFeedSubscriber subscriber =
+        new LiveFeedSubscriber(
+            emitter,
+            device,
+            electricQuantities,
+            currentPhases,
+            voltagePhases,
+            overflowPolicy,
+            bufferCapacity);
+
+    emitter.onCompletion(() -> subscribers.remove(subscriber));
+    emitter.onTimeout(() -> subscribers.remove(subscriber));
+    emitter.onError(error -> subscribers.remove(subscriber));
+    subscribers.add(subscriber);
+
+    log.info("Live feed subscriber added, {} subscribers connected", subscribers.size());
+
+    return emitter;
+  }
+
+  /** Buffers ingested values for all subscribers, sending happens in live feed executor */
+  @Override
+  public void publish(ElectricQuantitiesDto ingested) {
+    for (LiveFeedSubscriber subscriber : subscribers) {
+      if (subscriber.offer(ingested)) {
+        scheduleSending(subscriber);
+      }
+    }
+  }
+
+  /** Creates entities of ingested values only when there is anybody to send them to */
+  @Override
+  public void publish(String device, ColumnarElectricQuantities ingested) {
+    if (subscribers.isEmpty()) {
+      return;
+    }
+
+    List<Current> currents = new ArrayList<>(ingested.currents().size());
+    ingested
+        .currents()
+        .forEach(
+            (phase, epochMillis, value) ->
+                currents.add(new Current(value, Instant.ofEpochMilli(epochMillis), phase, device)));
+
+    List<GridFrequency> gridFrequencies = new ArrayList<>(ingested.gridFrequencies().size());
+    ingested
+        .gridFrequencies()
+        .forEach(
+            (phase, epochMillis, value) ->
+                gridFrequencies.add(
+                    new GridFrequency(value, Instant.ofEpochMilli(epochMillis), device)));
+
+    List<Voltage> voltages = new ArrayList<>(ingested.voltages().size());
+    ingested
+        .voltages()
+        .forEach(
+            (phase, epochMillis, value) ->
+                voltages.add(new Voltage(value, Instant.ofEpochMilli(epochMillis), phase, device)));
+
+    publish(new ElectricQuantitiesDto(currents, gridFrequencies, voltages));
+  }
+
+  /** Keeps idle connections open and detects closed ones */
+  @Scheduled(fixedDelayString = "${electric-quantities.live-feed.heartbeat-ms}")
+  public void sendHeartbeats() {
+    for (LiveFeedSubscriber subscriber : subscribers) {
+      subscriber.requestHeartbeat();
+      scheduleSending(subscriber);
+    }
+  }
+
+  private void scheduleSending(LiveFeedSubscriber subscriber) {
+    if (!subscriber.startSending()) {
+      // values are picked up by running sending
+      return;
+    }
+
+    try {
+      liveFeedExecutor.execute(() -> send(subscriber));
+    } catch (RejectedExecutionException e) {
+      subscriber.stopSending();
+      log.warn("Sending of live feed was rejected: {}", e.toString());
+    }
+  }
+
+  private void send(LiveFeedSubscriber subscriber) {
+    try {
+      while (true) {
+        LiveFeedSubscriber.Batch batch = subscriber.drain();
+        if (batch == null) {
+          subscriber.stopSending();
+          // value offered after drain but before sending stopped would wait for next publish
+          if (!subscriber.hasPendingMessage() || !subscriber.startSending()) {
+            return;
+          }
+          continue;
+        }
+
+        SseEmitter emitter = subscriber.getEmitter();
+        if (batch.droppedValues() > 0) {
+          emitter.send(SseEmitter.event().name(DROPPED_EVENT).data(batch.droppedValues()));
+        }
+        if (batch.values() != null) {
+          emitter.send(
+              SseEmitter.event()
+                  .name(VALUES_EVENT)
+                  .data(batch.values(), MediaType.APPLICATION_JSON));
+        } else {
+          emitter.send(SseEmitter.event().comment("heartbeat"));
+        }
+      }
+    } catch (IOException | IllegalStateException e) {
+      // connection was closed by client or emitter already completed
+      subscribers.remove(subscriber);
+      subscriber.stopSending();
+      subscriber.getEmitter().completeWithError(e);
+      log.info("Live feed subscriber removed: {}", e.toString());
+    } catch (RuntimeException e) {
+      subscriber.stopSending();
+      throw e;
+    }
+  }
+}
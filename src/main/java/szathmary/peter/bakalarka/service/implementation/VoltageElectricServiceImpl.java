@@ -2,80 +2,181 @@ package szathmary.peter.bakalarka.service.implementation;
 
 import org.springframework.stereotype.Service;
 import szathmary.peter.bakalarka.constant.ElectricPhase;
+import szathmary.peter.bakalarka.dto.electric.GroupedSeriesDto;
 import szathmary.peter.bakalarka.entity.Voltage;
 import szathmary.peter.bakalarka.exception.NoDataFound;
+import szathmary.peter.bakalarka.exception.WriteBatchTooLargeException;
+import szathmary.peter.bakalarka.exception.WriteQueueFullException;
 import szathmary.peter.bakalarka.repository.VoltageElectricRepository;
+import szathmary.peter.bakalarka.repository.storage.SampleBatch;
 import szathmary.peter.bakalarka.service.VoltageElectricService;
+import szathmary.peter.bakalarka.service.quantity.QuantitySeriesRegistry;
+import szathmary.peter.bakalarka.service.quantity.QuantitySeriesService;
 
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 @Service
 public class VoltageElectricServiceImpl implements VoltageElectricService {
 
   private final VoltageElectricRepository voltageRepository;
 
-  public VoltageElectricServiceImpl(VoltageElectricRepository voltageRepository) {
+  private final QuantitySeriesService seriesService;
+
+  public VoltageElectricServiceImpl(
+      VoltageElectricRepository voltageRepository, QuantitySeriesRegistry seriesRegistry) {
     this.voltageRepository = voltageRepository;
+    this.seriesService = seriesRegistry.getRequired(voltageRepository.getQuantityName());
+  }
+
+  @Override
+  public List<Voltage> findAll(String device, List<ElectricPhase> phases) {
+    return this.voltageRepository.findAll(device, phases);
   }
 
   @Override
-  public List<Voltage> findAll(List<ElectricPhase> phases) {
-    return this.voltageRepository.findAll(phases);
+  public List<Voltage> findAllDownsampled(
+      String device, List<ElectricPhase> phases, int maxPoints) {
+    List<Voltage> values = new ArrayList<>();
+    this.voltageRepository.streamAllDownsampled(device, phases, maxPoints, values::add);
+    return values;
+  }
+
+  @Override
+  public void streamAll(
+      String device, List<ElectricPhase> phases, Integer maxPoints, Consumer<Voltage> consumer) {
+    if (maxPoints == null) {
+      this.voltageRepository.streamAll(device, phases, consumer);
+    } else {
+      this.voltageRepository.streamAllDownsampled(device, phases, maxPoints, consumer);
+    }
   }
 
   @Override
   public List<Voltage> findAllBetweenDate(
-      Instant startDate, Instant endDate, List<ElectricPhase> phases) {
-    return this.voltageRepository.findAllBetweenDates(startDate, endDate, phases);
+      String device, Instant startDate, Instant endDate, List<ElectricPhase> phases) {
+    return this.voltageRepository.findAllBetweenDates(device, startDate, endDate, phases);
   }
 
   @Override
-  public List<List<Voltage>> getValueSince(Instant since, List<ElectricPhase> phases) {
-    Instant endDate = Instant.now();
+  public List<Voltage> findAllBetweenDateDownsampled(
+      String device,
+      Instant startDate,
+      Instant endDate,
+      List<ElectricPhase> phases,
+      int maxPoints) {
+    List<Voltage> values = new ArrayList<>();
+    this.voltageRepository.streamAllBetweenDatesDownsampled(
+        device, startDate, endDate, phases, maxPoints, values::add);
+    return values;
+  }
 
-    if (since.equals(endDate)) {
-      return getAllValuesFromDate(since, phases);
+  @Override
+  public void streamAllBetweenDate(
+      String device,
+      Instant startDate,
+      Instant endDate,
+      List<ElectricPhase> phases,
+      Integer maxPoints,
+      Consumer<Voltage> consumer) {
+    if (maxPoints == null) {
+      this.voltageRepository.streamAllBetweenDates(device, startDate, endDate, phases, consumer);
+    } else {
+      this.voltageRepository.streamAllBetweenDatesDownsampled(
+          device, startDate, endDate, phases, maxPoints, consumer);
     }
+  }
 
-    return voltageRepository.getGroupedMinMaxMean(since, endDate, phases);
+  @Override
+  public List<List<Voltage>> getValueSince(
+      String device, Instant since, List<ElectricPhase> phases) {
+    return this.voltageRepository.toMinMaxMean(device, getSeriesSince(device, since, phases));
+  }
+
+  @Override
+  public List<GroupedSeriesDto> getSeriesSince(
+      String device, Instant since, List<ElectricPhase> phases) {
+    return this.seriesService.getSeriesSince(device, since, phases);
   }
 
   @Override
-  public Voltage getLastValue(List<ElectricPhase> phases) throws NoDataFound {
-    return this.voltageRepository.getLastValue(phases);
+  public Voltage getLastValue(String device, List<ElectricPhase> phases) throws NoDataFound {
+    return this.voltageRepository.getLastValue(device, phases);
   }
 
   @Override
   public List<List<Voltage>> getGroupedMinMaxMean(
-      Instant startDate, Instant endDate, List<ElectricPhase> phases) {
-    if (startDate.equals(endDate)) {
-      return this.getAllValuesFromDate(startDate, phases);
-    }
+      String device,
+      Instant startDate,
+      Instant endDate,
+      List<ElectricPhase> phases,
+      Integer maxWindows) {
+    return this.voltageRepository.toMinMaxMean(
+        device, getGroupedSeries(device, startDate, endDate, phases, maxWindows));
+  }
+
+  @Override
+  public List<GroupedSeriesDto> getGroupedSeries(
+      String device,
+      Instant startDate,
+      Instant endDate,
+      List<ElectricPhase> phases,
+      Integer maxWindows) {
+    return this.seriesService.getGroupedSeries(device, startDate, endDate, phases, maxWindows);
+  }
+
+  @Override
+  public List<List<Voltage>> getAllValuesFromDate(
+      String device, Instant startDate, List<ElectricPhase> phases) {
+    return this.voltageRepository.toMinMaxMean(
+        device, getAllSeriesFromDate(device, startDate, phases));
+  }
 
-    return this.voltageRepository.getGroupedMinMaxMean(startDate, endDate, phases);
+  @Override
+  public List<GroupedSeriesDto> getAllSeriesFromDate(
+      String device, Instant startDate, List<ElectricPhase> phases) {
+    return this.seriesService.getAllSeriesFromDate(device, startDate, phases);
   }
 
   @Override
-  public List<List<Voltage>> getAllValuesFromDate(Instant startDate, List<ElectricPhase> phases) {
-    Instant startOfDay = startDate.truncatedTo(java.time.temporal.ChronoUnit.DAYS);
-    Instant endOfDate = startOfDay.plus(java.time.Duration.ofDays(1));
+  public List<GroupedSeriesDto> getIncrementalSeries(
+      String device,
+      Instant startDate,
+      Instant settledEndDate,
+      long windowDurationMillis,
+      List<ElectricPhase> phases) {
+    return this.seriesService.getIncrementalSeries(
+        device, startDate, settledEndDate, windowDurationMillis, phases);
+  }
 
-    return this.voltageRepository.getGroupedMinMaxMean(startOfDay, endOfDate, phases);
+  @Override
+  public Long findLateValuesSince(String device, long invalidationSequence) {
+    return this.seriesService.findLateValuesSince(device, invalidationSequence);
   }
 
   @Override
-  public List<Voltage> getLastNData(int count, List<ElectricPhase> phases) {
-    return this.voltageRepository.getLastNValues(phases, count);
+  public List<Voltage> getLastNData(String device, int count, List<ElectricPhase> phases) {
+    return this.voltageRepository.getLastNValues(device, phases, count);
   }
 
   @Override
-  public void saveValue(Voltage valueToSave) {
-    this.voltageRepository.save(valueToSave);
+  public void saveValue(Voltage valueToSave)
+      throws WriteQueueFullException, WriteBatchTooLargeException {
+    saveValues(List.of(valueToSave));
   }
 
   @Override
-  public void saveValues(List<Voltage> valuesToSave) {
+  public void saveValues(List<Voltage> valuesToSave)
+      throws WriteQueueFullException, WriteBatchTooLargeException {
     this.voltageRepository.saveAll(valuesToSave);
+    this.seriesService.invalidate(valuesToSave, Voltage::getDevice, Voltage::getTime);
+  }
+
+  @Override
+  public void saveBatch(String device, SampleBatch batch)
+      throws WriteQueueFullException, WriteBatchTooLargeException {
+    this.seriesService.saveBatch(device, batch);
   }
 }
@@ -0,0 +1,13 @@
+package szathmary.peter.bakalarka.service.ingest;
+
+import szathmary.peter.bakalarka.repository.storage.SampleBatch;
+
+/**
+ * Values of decoded columnar payload split by electric quantity
+ *
+ * @param currents values of current phases
+ * @param gridFrequencies values of grid frequency
+ * @param voltages values of voltage phases
+ */
+public record ColumnarElectricQuantities(
+    SampleBatch currents, SampleBatch gridFrequencies, SampleBatch voltages) {}
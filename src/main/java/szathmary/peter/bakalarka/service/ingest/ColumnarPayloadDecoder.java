@@ -0,0 +1,103 @@
+package szathmary.peter.bakalarka.service.ingest;
+
+import szathmary.peter.bakalarka.constant.ColumnarChannel;
+import szathmary.peter.bakalarka.exception.InvalidElectricQuantityException;
+import szathmary.peter.bakalarka.repository.storage.SampleBatch;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Decodes columnar electric quantities payload straight into sample batches, without creating
+ * object for every value. Payload is little endian:
+ *
+ * <pre>
+ * int        magic "EQC1"
+ * int        number of samples n
+ * int        number of channels c
+ * long[n]    epoch milliseconds of samples
+ * c times:
+ *   byte     ordinal of {@link ColumnarChannel}
+ *   double[n] values of channel, NaN if channel was not read in sample
+ * </pre>
+ */
+public final class ColumnarPayloadDecoder {
+
+  public static final String MEDIA_TYPE = "application/vnd.electric-quantities.columnar";
+
+  /** "EQC1" read as little endian int */
+  public static final int MAGIC = 0x31435145;
+
+  private static final int HEADER_BYTES = 3 * Integer.BYTES;
+
+  private ColumnarPayloadDecoder() {}
+
+  public static ColumnarElectricQuantities decode(ByteBuffer payload)
+      throws InvalidElectricQuantityException {
+    ByteBuffer buffer = payload.slice().order(ByteOrder.LITTLE_ENDIAN);
+    if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC) {
+      throw new InvalidElectricQuantityException("Payload is not columnar electric quantities");
+    }
+
+    int sampleCount = buffer.getInt();
+    int channelCount = buffer.getInt();
+    if (sampleCount < 0
+        || channelCount < 0
+        || channelCount > ColumnarChannel.values().length
+        || buffer.remaining()
+            != (long) sampleCount * Long.BYTES
+                + channelCount * (1 + (long) sampleCount * Double.BYTES)) {
+      // sizes are validated before anything is allocated
+      throw new InvalidElectricQuantityException(
+          String.format(
+              "Payload of %d samples and %d channels has unexpected length %d",
+              sampleCount, channelCount, payload.remaining()));
+    }
+
+    int timesOffset = buffer.position();
+    int channelsOffset = timesOffset + sampleCount * Long.BYTES;
+    int channelBytes = 1 + sampleCount * Double.BYTES;
+
+    int[] quantityCapacities = new int[3];
+    boolean[] seenChannels = new boolean[ColumnarChannel.values().length];
+    for (int channelIndex = 0; channelIndex < channelCount; channelIndex++) {
+      int channelOrdinal = buffer.get(channelsOffset + channelIndex * channelBytes);
+      if (channelOrdinal < 0
+          || channelOrdinal >= seenChannels.length
+          || seenChannels[channelOrdinal]) {
+        throw new InvalidElectricQuantityException(
+            "Unknown or repeated channel " + channelOrdinal + " in payload");
+      }
+      seenChannels[channelOrdinal] = true;
+      quantityCapacities[ColumnarChannel.values()[channelOrdinal].getQuantity().ordinal()] +=
+          sampleCount;
+    }
+
+    SampleBatch currents = new SampleBatch(quantityCapacities[0]);
+    SampleBatch gridFrequencies = new SampleBatch(quantityCapacities[1]);
+    SampleBatch voltages = new SampleBatch(quantityCapacities[2]);
+
+    for (int channelIndex = 0; channelIndex < channelCount; channelIndex++) {
+      int channelOffset = channelsOffset + channelIndex * channelBytes;
+      ColumnarChannel channel = ColumnarChannel.values()[buffer.get(channelOffset)];
+      SampleBatch batch =
+          switch (channel.getQuantity()) {
+            case CURRENT -> currents;
+            case GRID_FREQUENCY -> gridFrequencies;
+            case VOLTAGE -> voltages;
+          };
+
+      int valuesOffset = channelOffset + 1;
+      for (int i = 0; i < sampleCount; i++) {
+        double value = buffer.getDouble(valuesOffset + i * Double.BYTES);
+        // meter failed to read channel in this sample
+        if (Double.isNaN(value)) {
+          continue;
+        }
+        batch.add(channel.getPhase(), buffer.getLong(timesOffset + i * Long.BYTES), value);
+      }
+    }
+
+    return new ColumnarElectricQuantities(currents, gridFrequencies, voltages);
+  }
+}
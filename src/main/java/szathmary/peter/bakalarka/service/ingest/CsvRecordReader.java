@@ -0,0 +1,71 @@
+package szathmary.peter.bakalarka.service.ingest;
+
+import szathmary.peter.bakalarka.constant.ElectricQuantities;
+import szathmary.peter.bakalarka.exception.InvalidElectricQuantityException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads CSV records with optional header {@code quantity,phase,time,value}. Quantity is name of
+ * {@link ElectricQuantities}, phase is empty for grid frequency:
+ *
+ * <pre>
+ * CURRENT,L1,2023-05-01T12:00:00.000Z,1.5
+ * GRID_FREQUENCY,,2023-05-01T12:00:00.000Z,50.01
+ * </pre>
+ */
+public class CsvRecordReader implements ImportRecordReader {
+
+  private static final String HEADER_START = "quantity,";
+
+  private final BufferedReader reader;
+
+  private boolean firstLine = true;
+
+  public CsvRecordReader(InputStream input) {
+    this.reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+  }
+
+  @Override
+  public boolean next(ImportRecord record) throws IOException, InvalidElectricQuantityException {
+    String line = reader.readLine();
+    while (line != null && (line.isBlank() || isHeader(line))) {
+      line = reader.readLine();
+    }
+    firstLine = false;
+    if (line == null) {
+      return false;
+    }
+
+    int phaseStart = line.indexOf(',') + 1;
+    int timeStart = line.indexOf(',', phaseStart) + 1;
+    int valueStart = line.indexOf(',', timeStart) + 1;
+    if (phaseStart == 0 || timeStart == 0 || valueStart == 0) {
+      throw new InvalidElectricQuantityException("Record has not 4 columns: " + line);
+    }
+
+    ElectricQuantities quantity;
+    double value;
+    try {
+      quantity = ElectricQuantities.valueOf(line.substring(0, phaseStart - 1).trim());
+      value = Double.parseDouble(line.substring(valueStart).trim());
+    } catch (IllegalArgumentException e) {
+      throw new InvalidElectricQuantityException("Invalid record: " + line);
+    }
+
+    record.set(
+        quantity,
+        line.substring(phaseStart, timeStart - 1).trim(),
+        line.substring(timeStart, valueStart - 1).trim(),
+        value);
+    return true;
+  }
+
+  private boolean isHeader(String line) {
+    return firstLine && line.regionMatches(true, 0, HEADER_START, 0, HEADER_START.length());
+  }
+}
@@ -0,0 +1,130 @@
+package szathmary.peter.bakalarka.service.ingest;
+
+import szathmary.peter.bakalarka.constant.ImportStatus;
+import szathmary.peter.bakalarka.dto.electric.ImportProgressDto;
+
+import java.time.Instant;
+import java.util.Objects;
+
+/** Progress of import, updated by importing thread after every written chunk. */
+public class ImportProgress {
+
+  private final String importId;
+
+  private final String device;
+
+  private final String format;
+
+  private ImportStatus status;
+
+  private Instant startedAt;
+
+  private Instant finishedAt;
+
+  private long committedRecords;
+
+  private long writtenValues;
+
+  private long rejectedRecords;
+
+  private String lastRejection;
+
+  private String failure;
+
+  /**
+   * @param importId id of import
+   * @param device device whose values are imported, null for the default device
+   * @param format format of imported records
+   */
+  public ImportProgress(String importId, String device, String format) {
+    this.importId = importId;
+    this.device = device;
+    this.format = format;
+  }
+
+  public String getDevice() {
+    return device;
+  }
+
+  public String getFormat() {
+    return format;
+  }
+
+  /**
+   * @return whether progress belongs to import of provided device and format
+   */
+  public boolean isImportOf(String device, String format) {
+    return Objects.equals(this.device, device) && this.format.equals(format);
+  }
+
+  /**
+   * Starts new attempt of import
+   *
+   * @return false if import is already running
+   */
+  public synchronized boolean start() {
+    if (status == ImportStatus.RUNNING) {
+      return false;
+    }
+
+    status = ImportStatus.RUNNING;
+    startedAt = Instant.now();
+    finishedAt = null;
+    failure = null;
+    return true;
+  }
+
+  public synchronized boolean isRunning() {
+    return status == ImportStatus.RUNNING;
+  }
+
+  /**
+   * @return number of records of already written chunks
+   */
+  public synchronized long getCommittedRecords() {
+    return committedRecords;
+  }
+
+  /**
+   * Records written chunk
+   *
+   * @param committedRecords number of records read until the end of chunk, including skipped ones
+   * @param writtenValues number of values written in chunk
+   * @param rejectedRecords number of invalid records in chunk
+   * @param lastRejection reason of the last rejection in chunk, null if there was none
+   */
+  public synchronized void commit(
+      long committedRecords, long writtenValues, long rejectedRecords, String lastRejection) {
+    this.committedRecords = committedRecords;
+    this.writtenValues += writtenValues;
+    this.rejectedRecords += rejectedRecords;
+    if (lastRejection != null) {
+      this.lastRejection = lastRejection;
+    }
+  }
+
+  public synchronized void complete() {
+    status = ImportStatus.COMPLETED;
+    finishedAt = Instant.now();
+  }
+
+  public synchronized void fail(String failure) {
+    status = ImportStatus.FAILED;
+    finishedAt = Instant.now();
+    this.failure = failure;
+  }
+
+  public synchronized ImportProgressDto toDto() {
+    return ImportProgressDto.builder()
+        .importId(importId)
+        .status(status)
+        .startedAt(startedAt)
+        .finishedAt(finishedAt)
+        .committedRecords(committedRecords)
+        .writtenValues(writtenValues)
+        .rejectedRecords(rejectedRecords)
+        .lastRejection(lastRejection)
+        .failure(failure)
+        .build();
+  }
+}
@@ -0,0 +1,79 @@
+package szathmary.peter.bakalarka.service.ingest;
+
+import szathmary.peter.bakalarka.constant.ElectricPhase;
+import szathmary.peter.bakalarka.constant.ElectricQuantities;
+import szathmary.peter.bakalarka.exception.InvalidElectricQuantityException;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+
+/** Imported value, reused for all records read by one reader. */
+public class ImportRecord {
+
+  private ElectricQuantities quantity;
+
+  private ElectricPhase phase;
+
+  private long epochMillis;
+
+  private double value;
+
+  /**
+   * Validates and sets read record
+   *
+   * @param quantity quantity of value
+   * @param phase phase name, ignored for quantity without phases
+   * @param time time in ISO-8601 format
+   * @param value value, NaN if it was not read
+   * @throws InvalidElectricQuantityException if record is not valid
+   */
+  void set(ElectricQuantities quantity, String phase, String time, double value)
+      throws InvalidElectricQuantityException {
+    if (quantity == null) {
+      throw new InvalidElectricQuantityException("Record has no current, frequency or voltage");
+    }
+    if (Double.isNaN(value)) {
+      throw new InvalidElectricQuantityException("Record has no valid " + quantity + " value");
+    }
+    if (time == null || time.isEmpty()) {
+      throw new InvalidElectricQuantityException("Record has no time");
+    }
+
+    ElectricPhase parsedPhase = null;
+    if (quantity != ElectricQuantities.GRID_FREQUENCY) {
+      if (phase == null || phase.isEmpty()) {
+        throw new InvalidElectricQuantityException(quantity + " record has no phase");
+      }
+      try {
+        parsedPhase = ElectricPhase.valueOf(phase);
+      } catch (IllegalArgumentException e) {
+        throw new InvalidElectricQuantityException("Unknown phase " + phase);
+      }
+    }
+
+    try {
+      this.epochMillis = Instant.parse(time).toEpochMilli();
+    } catch (DateTimeParseException e) {
+      throw new InvalidElectricQuantityException("Invalid time " + time);
+    }
+    this.quantity = quantity;
+    this.phase = parsedPhase;
+    this.value = value;
+  }
+
+  public ElectricQuantities getQuantity() {
+    return quantity;
+  }
+
+  public ElectricPhase getPhase() {
+    return phase;
+  }
+
+  public long getEpochMillis() {
+    return epochMillis;
+  }
+
+  public double getValue() {
+    return value;
+  }
+}
@@ -0,0 +1,19 @@
+package szathmary.peter.bakalarka.service.ingest;
+
+import szathmary.peter.bakalarka.exception.InvalidElectricQuantityException;
+
+import java.io.IOException;
+
+/** Reads imported records one by one from request body. */
+public interface ImportRecordReader {
+
+  /**
+   * Reads next record into provided record
+   *
+   * @param record receives read record
+   * @return false if there are no more records
+   * @throws InvalidElectricQuantityException if record is not valid, next call reads next record
+   * @throws IOException if input can not be read or parsed, reading can not continue
+   */
+  boolean next(ImportRecord record) throws IOException, InvalidElectricQuantityException;
+}
@@ -0,0 +1,94 @@
+package szathmary.peter.bakalarka.service.ingest;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.json.JsonReadFeature;
+import szathmary.peter.bakalarka.constant.ElectricQuantities;
+import szathmary.peter.bakalarka.exception.InvalidElectricQuantityException;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads newline delimited JSON objects in the same shape as uploader sends them, quantity is
+ * given by name of value field:
+ *
+ * <pre>
+ * {"current": 1.5, "time": "2023-05-01T12:00:00.000Z", "phase": "L1"}
+ * {"frequency": 50.01, "time": "2023-05-01T12:00:00.000Z"}
+ * {"voltage": 230.2, "time": "2023-05-01T12:00:00.000Z", "phase": "L1"}
+ * </pre>
+ */
+public class NdjsonRecordReader implements ImportRecordReader {
+
+  private final JsonParser parser;
+
+  public NdjsonRecordReader(JsonFactory jsonFactory, InputStream input) throws IOException {
+    this.parser = jsonFactory.createParser(input);
+    // uploader writes values meter failed to read as NaN
+    this.parser.enable(JsonReadFeature.ALLOW_NON_NUMERIC_NUMBERS.mappedFeature());
+  }
+
+  @Override
+  public boolean next(ImportRecord record) throws IOException, InvalidElectricQuantityException {
+    JsonToken token = parser.nextToken();
+    if (token == null) {
+      return false;
+    }
+    if (token != JsonToken.START_OBJECT) {
+      parser.skipChildren();
+      throw new InvalidElectricQuantityException("Record is not JSON object");
+    }
+
+    ElectricQuantities quantity = null;
+    double value = Double.NaN;
+    String phase = null;
+    String time = null;
+
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String fieldName = parser.getCurrentName();
+      JsonToken valueToken = parser.nextToken();
+
+      switch (fieldName) {
+        case "current" -> {
+          quantity = ElectricQuantities.CURRENT;
+          value = readValue(valueToken);
+        }
+        case "frequency" -> {
+          quantity = ElectricQuantities.GRID_FREQUENCY;
+          value = readValue(valueToken);
+        }
+        case "voltage" -> {
+          quantity = ElectricQuantities.VOLTAGE;
+          value = readValue(valueToken);
+        }
+        case "phase" -> phase = readText(valueToken);
+        case "time" -> time = readText(valueToken);
+        default -> parser.skipChildren();
+      }
+    }
+
+    record.set(quantity, phase, time, value);
+    return true;
+  }
+
+  /** Object or array in place of text is skipped, so its fields are not read as fields of record */
+  private String readText(JsonToken valueToken) throws IOException {
+    if (valueToken == JsonToken.VALUE_STRING) {
+      return parser.getText();
+    }
+
+    parser.skipChildren();
+    return null;
+  }
+
+  private double readValue(JsonToken valueToken) throws IOException {
+    if (valueToken == JsonToken.VALUE_NUMBER_INT || valueToken == JsonToken.VALUE_NUMBER_FLOAT) {
+      return parser.getDoubleValue();
+    }
+
+    parser.skipChildren();
+    return Double.NaN;
+  }
+}
@@ -0,0 +1,260 @@
+package szathmary.peter.bakalarka.service.live;
+
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import szathmary.peter.bakalarka.constant.ElectricPhase;
+import szathmary.peter.bakalarka.constant.ElectricQuantities;
+import szathmary.peter.bakalarka.constant.LiveFeedOverflowPolicy;
+import szathmary.peter.bakalarka.dto.electric.ElectricQuantitiesDto;
+import szathmary.peter.bakalarka.entity.Current;
+import szathmary.peter.bakalarka.entity.GridFrequency;
+import szathmary.peter.bakalarka.entity.Voltage;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Subscriber of live feed with bounded buffer of values waiting to be sent. Values are offered by
+ * ingesting threads and drained by single sending thread at a time, so slow subscriber only loses
+ * values according to its overflow policy and never blocks ingestion.
+ */
+public class LiveFeedSubscriber {
+
+  private final SseEmitter emitter;
+
+  /** subscribed device, null if values of all devices are subscribed */
+  private final String device;
+
+  private final Set<ElectricQuantities> quantities;
+
+  private final Set<ElectricPhase> currentPhases;
+
+  private final Set<ElectricPhase> voltagePhases;
+
+  private final LiveFeedOverflowPolicy overflowPolicy;
+
+  private final int capacity;
+
+  /** buffered currents, grid frequencies and voltages in order they were offered */
+  private final ArrayDeque<Object> buffer;
+
+  /**
+   * the latest value of every series once buffer overflowed under {@link
+   * LiveFeedOverflowPolicy#COALESCE}, values are buffered here instead of buffer until drain
+   */
+  private final LinkedHashMap<SeriesKey, Object> coalescedValues = new LinkedHashMap<>();
+
+  private final AtomicBoolean sending = new AtomicBoolean();
+
+  private long droppedValues;
+
+  private boolean heartbeatRequested;
+
+  /**
+   * @param emitter emitter of subscriber connection
+   * @param device subscribed device, all devices if null
+   * @param quantities subscribed quantities, all quantities if null or empty
+   * @param currentPhases subscribed current phases, all phases if null or empty
+   * @param voltagePhases subscribed voltage phases, all phases if null or empty
+   * @param overflowPolicy policy applied when buffer is full
+   * @param capacity maximal number of buffered values
+   */
+  public LiveFeedSubscriber(
+      SseEmitter emitter,
+      String device,
+      List<ElectricQuantities> quantities,
+      List<ElectricPhase> currentPhases,
+      List<ElectricPhase> voltagePhases,
+      LiveFeedOverflowPolicy overflowPolicy,
+      int capacity) {
+    this.emitter = emitter;
+    this.device = device;
+    this.quantities =
+        quantities == null || quantities.isEmpty()
+            ? EnumSet.allOf(ElectricQuantities.class)
+            : EnumSet.copyOf(quantities);
+    this.currentPhases = phasesOrAll(currentPhases);
+    this.voltagePhases = phasesOrAll(voltagePhases);
+    this.overflowPolicy = overflowPolicy;
+    this.capacity = capacity;
+    this.buffer = new ArrayDeque<>(Math.min(capacity, 1024));
+  }
+
+  public SseEmitter getEmitter() {
+    return emitter;
+  }
+
+  /**
+   * Buffers subscribed values of ingested batch
+   *
+   * @return true if anything was buffered
+   */
+  public synchronized boolean offer(ElectricQuantitiesDto ingested) {
+    boolean offered = false;
+
+    if (quantities.contains(ElectricQuantities.CURRENT)) {
+      for (Current current : ingested.getCurrents()) {
+        if (isSubscribed(current.getDevice()) && currentPhases.contains(current.getPhase())) {
+          add(current);
+          offered = true;
+        }
+      }
+    }
+    if (quantities.contains(ElectricQuantities.GRID_FREQUENCY)) {
+      for (GridFrequency gridFrequency : ingested.getGridFrequencies()) {
+        if (isSubscribed(gridFrequency.getDevice())) {
+          add(gridFrequency);
+          offered = true;
+        }
+      }
+    }
+    if (quantities.contains(ElectricQuantities.VOLTAGE)) {
+      for (Voltage voltage : ingested.getVoltages()) {
+        if (isSubscribed(voltage.getDevice()) && voltagePhases.contains(voltage.getPhase())) {
+          add(voltage);
+          offered = true;
+        }
+      }
+    }
+
+    return offered;
+  }
+
+  /** Requests empty message to be sent so broken connection is detected even without values */
+  public synchronized void requestHeartbeat() {
+    heartbeatRequested = true;
+  }
+
+  /**
+   * Takes all buffered values
+   *
+   * @return buffered values or null if there is nothing to send
+   */
+  public synchronized Batch drain() {
+    if (!hasPendingMessage()) {
+      return null;
+    }
+
+    boolean hasValues = !buffer.isEmpty() || !coalescedValues.isEmpty();
+
+    List<Current> currents = new ArrayList<>();
+    List<GridFrequency> gridFrequencies = new ArrayList<>();
+    List<Voltage> voltages = new ArrayList<>();
+    for (Object value : coalescedValues.isEmpty() ? buffer : coalescedValues.values()) {
+      if (value instanceof Current current) {
+        currents.add(current);
+      } else if (value instanceof GridFrequency gridFrequency) {
+        gridFrequencies.add(gridFrequency);
+      } else {
+        voltages.add((Voltage) value);
+      }
+    }
+
+    Batch batch =
+        new Batch(
+            hasValues ? new ElectricQuantitiesDto(currents, gridFrequencies, voltages) : null,
+            droppedValues);
+
+    buffer.clear();
+    coalescedValues.clear();
+    droppedValues = 0;
+    heartbeatRequested = false;
+
+    return batch;
+  }
+
+  /**
+   * Claims right to send buffered values
+   *
+   * @return true if no other thread is sending values of this subscriber
+   */
+  public boolean startSending() {
+    return sending.compareAndSet(false, true);
+  }
+
+  public void stopSending() {
+    sending.set(false);
+  }
+
+  public synchronized boolean hasPendingMessage() {
+    return !buffer.isEmpty() || !coalescedValues.isEmpty() || heartbeatRequested;
+  }
+
+  private boolean isSubscribed(String valueDevice) {
+    return device == null || device.equals(valueDevice);
+  }
+
+  private void add(Object value) {
+    if (overflowPolicy == LiveFeedOverflowPolicy.COALESCE
+        && (!coalescedValues.isEmpty() || buffer.size() >= capacity)) {
+      if (coalescedValues.isEmpty()) {
+        for (Object bufferedValue : buffer) {
+          putCoalesced(bufferedValue);
+        }
+        buffer.clear();
+      }
+      putCoalesced(value);
+      return;
+    }
+
+    if (buffer.size() >= capacity) {
+      buffer.removeFirst();
+      droppedValues++;
+    }
+
+    buffer.addLast(value);
+  }
+
+  /**
+   * Replaces buffered value of the same quantity, phase and device. The oldest series is dropped
+   * if there are more series than capacity.
+   */
+  private void putCoalesced(Object value) {
+    SeriesKey key = SeriesKey.of(value);
+    // replaced series is moved to the end, so series are ordered by their latest value
+    if (coalescedValues.remove(key) != null) {
+      droppedValues++;
+    }
+    coalescedValues.put(key, value);
+
+    if (coalescedValues.size() > capacity) {
+      Iterator<Object> oldestValue = coalescedValues.values().iterator();
+      oldestValue.next();
+      oldestValue.remove();
+      droppedValues++;
+    }
+  }
+
+  private static Set<ElectricPhase> phasesOrAll(List<ElectricPhase> phases) {
+    return phases == null || phases.isEmpty()
+        ? EnumSet.allOf(ElectricPhase.class)
+        : EnumSet.copyOf(phases);
+  }
+
+  /**
+   * Values to be sent to subscriber
+   *
+   * @param values buffered values, null if only heartbeat or dropped values are reported
+   * @param droppedValues number of values dropped since previous batch
+   */
+  public record Batch(ElectricQuantitiesDto values, long droppedValues) {}
+
+  private record SeriesKey(Class<?> type, ElectricPhase phase, String device) {
+
+    static SeriesKey of(Object value) {
+      if (value instanceof Current current) {
+        return new SeriesKey(Current.class, current.getPhase(), current.getDevice());
+      }
+      if (value instanceof Voltage voltage) {
+        return new SeriesKey(Voltage.class, voltage.getPhase(), voltage.getDevice());
+      }
+      GridFrequency gridFrequency = (GridFrequency) value;
+      return new SeriesKey(GridFrequency.class, null, gridFrequency.getDevice());
+    }
+  }
+}
@@ -0,0 +1,74 @@
+package szathmary.peter.bakalarka.service.quantity;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import szathmary.peter.bakalarka.exception.InvalidElectricQuantityException;
+import szathmary.peter.bakalarka.repository.quantity.ElectricQuantityRegistry;
+import szathmary.peter.bakalarka.repository.quantity.QuantityDefinition;
+import szathmary.peter.bakalarka.repository.quantity.QuantityRepository;
+import szathmary.peter.bakalarka.service.cache.GroupedResultCache;
+import szathmary.peter.bakalarka.service.cache.IncrementalWindowCache;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Series service with its own caches of every quantity of {@link ElectricQuantityRegistry} */
+@Service
+public class QuantitySeriesRegistry {
+
+  private final Map<String, QuantitySeriesService> services = new LinkedHashMap<>();
+
+  public QuantitySeriesRegistry(
+      ElectricQuantityRegistry quantityRegistry,
+      @Value("${electric-quantities.cache.grouped-results-max-values}") long maxCachedValues,
+      @Value("${electric-quantities.cache.grouped-results-settle-ms}") long settleMillis,
+      @Value("${electric-quantities.cache.incremental-windows-max-values}")
+          long maxIncrementalValues) {
+    for (QuantityRepository repository : quantityRegistry.getAll()) {
+      services.put(
+          repository.getDefinition().name(),
+          new QuantitySeriesService(
+              repository,
+              new GroupedResultCache(maxCachedValues, settleMillis),
+              new IncrementalWindowCache(maxIncrementalValues, settleMillis)));
+    }
+  }
+
+  /**
+   * @param quantity name of quantity
+   * @return series service of quantity
+   * @throws InvalidElectricQuantityException if quantity is not registered
+   */
+  public QuantitySeriesService get(String quantity) throws InvalidElectricQuantityException {
+    QuantitySeriesService service = services.get(quantity);
+    if (service == null) {
+      throw new InvalidElectricQuantityException("Unknown electric quantity: " + quantity);
+    }
+
+    return service;
+  }
+
+  /**
+   * Returns series service of quantity required by application code
+   *
+   * @throws IllegalStateException if quantity is missing in configuration
+   */
+  public QuantitySeriesService getRequired(String quantity) {
+    QuantitySeriesService service = services.get(quantity);
+    if (service == null) {
+      throw new IllegalStateException("Electric quantity " + quantity + " is not registered");
+    }
+
+    return service;
+  }
+
+  /**
+   * @return definitions of all quantities in order they were registered
+   */
+  public List<QuantityDefinition> getDefinitions() {
+    return services.values().stream()
+        .map(service -> service.getRepository().getDefinition())
+        .toList();
+  }
+}
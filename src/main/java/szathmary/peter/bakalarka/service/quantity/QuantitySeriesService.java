@@ -0,0 +1,342 @@
+package szathmary.peter.bakalarka.service.quantity;
+
+import szathmary.peter.bakalarka.constant.ElectricPhase;
+import szathmary.peter.bakalarka.dto.electric.GroupedSeriesDto;
+import szathmary.peter.bakalarka.dto.electric.ValueSeriesDto;
+import szathmary.peter.bakalarka.exception.WriteBatchTooLargeException;
+import szathmary.peter.bakalarka.exception.WriteQueueFullException;
+import szathmary.peter.bakalarka.repository.quantity.QuantityRepository;
+import szathmary.peter.bakalarka.repository.rollup.WindowPlanner;
+import szathmary.peter.bakalarka.repository.storage.SampleBatch;
+import szathmary.peter.bakalarka.repository.storage.SampleConsumer;
+import szathmary.peter.bakalarka.service.cache.GroupedResultCache;
+import szathmary.peter.bakalarka.service.cache.IncrementalWindowCache;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Queries and saves values of one registered electric quantity as primitive series. Grouped
+ * results of quantity are cached here, so every writer of quantity has to save values through
+ * this service or invalidate it.
+ */
+public class QuantitySeriesService {
+
+  private final QuantityRepository repository;
+
+  private final GroupedResultCache groupedResultCache;
+
+  private final IncrementalWindowCache incrementalWindowCache;
+
+  public QuantitySeriesService(
+      QuantityRepository repository,
+      GroupedResultCache groupedResultCache,
+      IncrementalWindowCache incrementalWindowCache) {
+    this.repository = repository;
+    this.groupedResultCache = groupedResultCache;
+    this.incrementalWindowCache = incrementalWindowCache;
+  }
+
+  public QuantityRepository getRepository() {
+    return repository;
+  }
+
+  /**
+   * Returns raw values of range, downsampled if maximal number of points is provided. All values
+   * are collected in memory, large ranges without maximal number of points should be streamed by
+   * {@link #streamValues}.
+   *
+   * @param device name of device, null for the default device
+   * @param startDate start of range, null to read from the first value
+   * @param endDate end of range, null to read until the last value
+   * @param phases phases to read, all phases if null or empty
+   * @param maxPoints maximal number of points of every phase, null to return all values
+   * @return series of every phase with values
+   */
+  public List<ValueSeriesDto> getValues(
+      String device,
+      Instant startDate,
+      Instant endDate,
+      List<ElectricPhase> phases,
+      Integer maxPoints) {
+    ValueSeriesCollector collector = new ValueSeriesCollector(Integer.MAX_VALUE, null);
+    scanValues(device, startDate, endDate, phases, maxPoints, collector);
+
+    return collector.toSeries();
+  }
+
+  /**
+   * Passes raw values of range to consumer while they are read, downsampled if maximal number of
+   * points is provided. Values of every phase are passed as consecutive series of limited size,
+   * so at most one series of every phase is kept in memory.
+   *
+   * @param device name of device, null for the default device
+   * @param startDate start of range, null to read from the first value
+   * @param endDate end of range, null to read until the last value
+   * @param phases phases to read, all phases if null or empty
+   * @param maxPoints maximal number of points of every phase, null to return all values
+   * @param maxSeriesSize maximal number of values of one passed series
+   * @param consumer consumer of series, series of one phase are passed in order of time
+   */
+  public void streamValues(
+      String device,
+      Instant startDate,
+      Instant endDate,
+      List<ElectricPhase> phases,
+      Integer maxPoints,
+      int maxSeriesSize,
+      Consumer<ValueSeriesDto> consumer) {
+    ValueSeriesCollector collector = new ValueSeriesCollector(maxSeriesSize, consumer);
+    scanValues(device, startDate, endDate, phases, maxPoints, collector);
+
+    collector.toSeries().forEach(consumer);
+  }
+
+  /**
+   * @param device name of device, null for the default device
+   * @param count number of values of every phase
+   * @param phases phases to read, all phases if null or empty
+   * @return series of last values of every phase with values
+   */
+  public List<ValueSeriesDto> getLastNValues(
+      String device, int count, List<ElectricPhase> phases) {
+    ValueSeriesCollector collector = new ValueSeriesCollector(Integer.MAX_VALUE, null);
+    repository.scanLast(device, phases, count, collector);
+
+    return collector.toSeries();
+  }
+
+  private void scanValues(
+      String device,
+      Instant startDate,
+      Instant endDate,
+      List<ElectricPhase> phases,
+      Integer maxPoints,
+      ValueSeriesCollector collector) {
+    if (maxPoints == null) {
+      repository.scan(device, startDate, endDate, phases, collector);
+    } else {
+      repository.scanDownsampled(device, startDate, endDate, phases, maxPoints, collector);
+    }
+  }
+
+  public List<GroupedSeriesDto> getSeriesSince(
+      String device, Instant since, List<ElectricPhase> phases) {
+    Instant endDate = Instant.now();
+
+    if (since.equals(endDate)) {
+      return getAllSeriesFromDate(device, since, phases);
+    }
+
+    return repository.getGroupedSeries(device, since, endDate, phases);
+  }
+
+  /**
+   * Returns windows planned by {@link WindowPlanner} for range and resolution. Range is widened
+   * to bounds of its first and last window, so overlapping ranges with similar duration share
+   * windows and their results are cached under the same key when their windows are the same.
+   *
+   * @param device name of device, null for the default device
+   * @param startDate start of grouped range
+   * @param endDate end of grouped range
+   * @param phases grouped phases
+   * @param maxWindows maximal number of windows, null for default resolution
+   * @return series of every phase with windows in range
+   */
+  public List<GroupedSeriesDto> getGroupedSeries(
+      String device,
+      Instant startDate,
+      Instant endDate,
+      List<ElectricPhase> phases,
+      Integer maxWindows) {
+    if (startDate.equals(endDate)) {
+      return getAllSeriesFromDate(device, startDate, phases);
+    }
+
+    return getAlignedSeries(device, startDate, endDate, phases, maxWindows);
+  }
+
+  public List<GroupedSeriesDto> getAllSeriesFromDate(
+      String device, Instant startDate, List<ElectricPhase> phases) {
+    Instant startOfDay = startDate.truncatedTo(ChronoUnit.DAYS);
+    Instant endOfDate = startOfDay.plus(Duration.ofDays(1));
+
+    return getAlignedSeries(device, startOfDay, endOfDate, phases, null);
+  }
+
+  private List<GroupedSeriesDto> getAlignedSeries(
+      String device,
+      Instant startDate,
+      Instant endDate,
+      List<ElectricPhase> phases,
+      Integer maxWindows) {
+    long windowDurationMillis =
+        WindowPlanner.planWindowMillis(
+            endDate.toEpochMilli() - startDate.toEpochMilli(), maxWindows);
+    Instant alignedStartDate = WindowPlanner.alignStart(startDate, windowDurationMillis);
+    Instant alignedEndDate = WindowPlanner.alignEnd(endDate, windowDurationMillis);
+
+    return groupedResultCache.get(
+        device,
+        alignedStartDate,
+        alignedEndDate,
+        windowDurationMillis,
+        phases,
+        () ->
+            repository.getGroupedSeries(
+                device, alignedStartDate, alignedEndDate, phases, windowDurationMillis));
+  }
+
+  /**
+   * Returns windows of provided duration between start and now, windows settled before settled
+   * end are served from cache
+   */
+  public List<GroupedSeriesDto> getIncrementalSeries(
+      String device,
+      Instant startDate,
+      Instant settledEndDate,
+      long windowDurationMillis,
+      List<ElectricPhase> phases) {
+    return incrementalWindowCache.get(
+        device,
+        startDate,
+        settledEndDate,
+        Instant.now(),
+        windowDurationMillis,
+        phases,
+        (start, end) ->
+            repository.getGroupedSeries(device, start, end, phases, windowDurationMillis));
+  }
+
+  /**
+   * Saves values and drops cached results they change
+   *
+   * @param device name of device which measured values, null for the default device
+   * @param batch values to save
+   */
+  public void saveBatch(String device, SampleBatch batch)
+      throws WriteQueueFullException, WriteBatchTooLargeException {
+    repository.saveBatch(device, batch);
+    if (batch.size() > 0) {
+      invalidate(device, batch.getMinEpochMillis(), batch.getMaxEpochMillis());
+    }
+  }
+
+  /**
+   * Drops cached results overlapping range of values saved without this service
+   *
+   * @param savedValues saved values
+   * @param deviceGetter returns device of saved value
+   * @param timeGetter returns time of saved value
+   */
+  public <E> void invalidate(
+      List<E> savedValues, Function<E, String> deviceGetter, Function<E, Instant> timeGetter) {
+    // the oldest and the newest time of values of every device
+    Map<String, long[]> deviceRanges = new HashMap<>();
+    for (E savedValue : savedValues) {
+      long millis = timeGetter.apply(savedValue).toEpochMilli();
+      long[] range =
+          deviceRanges.computeIfAbsent(
+              deviceGetter.apply(savedValue), device -> new long[] {millis, millis});
+      range[0] = Math.min(range[0], millis);
+      range[1] = Math.max(range[1], millis);
+    }
+
+    deviceRanges.forEach((device, range) -> invalidate(device, range[0], range[1]));
+  }
+
+  /**
+   * Returns time of the oldest late value of device saved after invalidation sequence of previous
+   * incremental poll
+   *
+   * @param device name of device, null for the default device
+   * @param invalidationSequence sequence returned by {@link
+   *     IncrementalWindowCache#getInvalidationSequence()} before previous poll
+   * @return time of the oldest late value, null if there is none, {@link Long#MIN_VALUE} if late
+   *     values since sequence are not known anymore
+   */
+  public Long findLateValuesSince(String device, long invalidationSequence) {
+    return incrementalWindowCache.findInvalidatedSince(device, invalidationSequence);
+  }
+
+  private void invalidate(String device, long minMillis, long maxMillis) {
+    groupedResultCache.invalidate(minMillis, maxMillis);
+    incrementalWindowCache.invalidate(device, minMillis);
+  }
+
+  /**
+   * Collects values of every phase into growable primitive arrays. Full series of phase is passed
+   * to consumer and collecting of phase starts again.
+   */
+  private static class ValueSeriesCollector implements SampleConsumer {
+
+    private final int maxSeriesSize;
+
+    private final Consumer<ValueSeriesDto> fullSeriesConsumer;
+
+    private final ElectricPhase[] phases = new ElectricPhase[ElectricPhase.values().length + 1];
+
+    private final long[][] times = new long[phases.length][];
+
+    private final double[][] values = new double[phases.length][];
+
+    private final int[] sizes = new int[phases.length];
+
+    /**
+     * @param maxSeriesSize maximal number of collected values of one phase
+     * @param fullSeriesConsumer consumer of full series, may be null if series can not be full
+     */
+    ValueSeriesCollector(int maxSeriesSize, Consumer<ValueSeriesDto> fullSeriesConsumer) {
+      this.maxSeriesSize = maxSeriesSize;
+      this.fullSeriesConsumer = fullSeriesConsumer;
+    }
+
+    @Override
+    public void accept(ElectricPhase phase, long epochMillis, double value) {
+      int slot = phase == null ? 0 : phase.ordinal() + 1;
+      if (times[slot] == null) {
+        phases[slot] = phase;
+        times[slot] = new long[Math.min(16, maxSeriesSize)];
+        values[slot] = new double[times[slot].length];
+      } else if (sizes[slot] == times[slot].length) {
+        int length = (int) Math.min((long) sizes[slot] * 2, maxSeriesSize);
+        times[slot] = Arrays.copyOf(times[slot], length);
+        values[slot] = Arrays.copyOf(values[slot], length);
+      }
+
+      times[slot][sizes[slot]] = epochMillis;
+      values[slot][sizes[slot]] = value;
+      sizes[slot]++;
+
+      if (sizes[slot] == maxSeriesSize) {
+        fullSeriesConsumer.accept(toSeries(slot));
+        sizes[slot] = 0;
+      }
+    }
+
+    List<ValueSeriesDto> toSeries() {
+      List<ValueSeriesDto> series = new ArrayList<>();
+      for (int slot = 0; slot < phases.length; slot++) {
+        if (sizes[slot] > 0) {
+          series.add(toSeries(slot));
+        }
+      }
+      return series;
+    }
+
+    private ValueSeriesDto toSeries(int slot) {
+      return new ValueSeriesDto(
+          phases[slot],
+          Arrays.copyOf(times[slot], sizes[slot]),
+          Arrays.copyOf(values[slot], sizes[slot]));
+    }
+  }
+}
@@ -0,0 +1,23 @@
+package szathmary.peter.bakalarka.util;
+
+import java.util.regex.Pattern;
+
+/**
+ * Names of devices measuring electric quantities. Values without device belong to the default
+ * device, which is the only meter of installations without device names.
+ */
+public final class DeviceUtil {
+
+  /** names are used as InfluxDB tags, in Flux filters and as directory names */
+  private static final Pattern DEVICE_PATTERN = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+  private DeviceUtil() {}
+
+  /**
+   * @param device name of device, null for the default device
+   * @return whether name can be stored
+   */
+  public static boolean isValid(String device) {
+    return device == null || DEVICE_PATTERN.matcher(device).matches();
+  }
+}
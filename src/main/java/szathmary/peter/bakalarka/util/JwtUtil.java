@@ -10,54 +10,92 @@ import org.springframework.stereotype.Component;
 
 import javax.crypto.SecretKey;
 import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Slf4j
 @Component
 public class JwtUtil {
-  @Value("${spring.security.jwt.secret}")
-  private String jwtSecret;
 
-  @Value("${spring.security.jwt.expiration}")
-  private int jwtExpirationMs;
+  private final int jwtExpirationMs;
 
-  public String generateJwt(String username) {
-    SecretKey key = getSigningKey();
+  private final int maxVerifiedTokens;
+
+  private final SecretKey signingKey;
+
+  private final JwtParser jwtParser;
+
+  /** usernames of already verified tokens, valid until expiration of token */
+  private final Map<String, VerifiedToken> verifiedTokens = new ConcurrentHashMap<>();
 
+  public JwtUtil(
+      @Value("${spring.security.jwt.secret}") String jwtSecret,
+      @Value("${spring.security.jwt.expiration}") int jwtExpirationMs,
+      @Value("${spring.security.jwt.verified-tokens-cache-size}") int maxVerifiedTokens) {
+    this.jwtExpirationMs = jwtExpirationMs;
+    this.maxVerifiedTokens = maxVerifiedTokens;
+    this.signingKey = Keys.hmacShaKeyFor(Decoders.BASE64.decode(jwtSecret));
+    this.jwtParser = Jwts.parserBuilder().setSigningKey(signingKey).build();
+  }
+
+  public String generateJwt(String username) {
     return Jwts.builder()
         .setSubject(username)
         .setIssuedAt(new Date())
         .setExpiration(new Date((new Date()).getTime() + jwtExpirationMs))
-        .signWith(key)
+        .signWith(signingKey)
         .compact();
   }
 
-  public String getUsernameFromJwt(String token) {
-    SecretKey key = getSigningKey();
-    return Jwts.parserBuilder()
-        .setSigningKey(key)
-        .build()
-        .parseClaimsJws(token)
-        .getBody()
-        .getSubject();
-  }
+  /**
+   * Verifies token and returns its subject. Token is parsed only the first time it is seen, then
+   * its subject is taken from cache until the token expires.
+   *
+   * @param token jwt token
+   * @return username from token or null if token is not valid
+   */
+  public String getUsernameFromValidJwt(String token) {
+    VerifiedToken verifiedToken = verifiedTokens.get(token);
+    if (verifiedToken != null) {
+      if (verifiedToken.expirationMillis() > System.currentTimeMillis()) {
+        return verifiedToken.username();
+      }
+      verifiedTokens.remove(token);
+    }
 
-  public boolean validateJwt(String authToken) {
+    Claims claims;
     try {
-      SecretKey key = getSigningKey();
-      Jwts.parserBuilder().setSigningKey(key).build().parseClaimsJws(authToken);
-      return true;
+      claims = jwtParser.parseClaimsJws(token).getBody();
     } catch (SignatureException
         | MalformedJwtException
         | UnsupportedJwtException
         | IllegalArgumentException
         | ExpiredJwtException e) {
       log.error("Error thrown validating jwt token: {}", e.getLocalizedMessage());
+      return null;
+    }
+
+    if (claims.getExpiration() != null) {
+      cacheVerifiedToken(
+          token, new VerifiedToken(claims.getSubject(), claims.getExpiration().getTime()));
     }
-    return false;
+
+    return claims.getSubject();
   }
 
-  private SecretKey getSigningKey() {
-    byte[] keyBytes = Decoders.BASE64.decode(jwtSecret);
-    return Keys.hmacShaKeyFor(keyBytes);
+  private void cacheVerifiedToken(String token, VerifiedToken verifiedToken) {
+    if (verifiedTokens.size() >= maxVerifiedTokens) {
+      long now = System.currentTimeMillis();
+      verifiedTokens.values().removeIf(cached -> cached.expirationMillis() <= now);
+
+      if (verifiedTokens.size() >= maxVerifiedTokens) {
+        // cache is full of valid tokens, this one is verified again on next request
+        return;
+      }
+    }
+
+    verifiedTokens.put(token, verifiedToken);
   }
+
+  private record VerifiedToken(String username, long expirationMillis) {}
 }
@@ -0,0 +1,47 @@
+package szathmary.peter.bakalarka.util;
+
+import szathmary.peter.bakalarka.exception.InvalidElectricQuantityException;
+import szathmary.peter.bakalarka.repository.rollup.WindowPlanner;
+
+/** Validation of query parameters shared by controllers of electric quantities. */
+public final class QueryParameterUtil {
+
+  private QueryParameterUtil() {}
+
+  /**
+   * Downsampling keeps the first, minimal, maximal and last value of every bucket, so at least 4
+   * points are needed
+   */
+  public static void validateMaxPoints(Integer maxPoints) throws InvalidElectricQuantityException {
+    if (maxPoints != null && maxPoints < 4) {
+      throw new InvalidElectricQuantityException("maxPoints must be at least 4: " + maxPoints);
+    }
+  }
+
+  /**
+   * Range which is not aligned to windows is covered by one more window than it fills, every
+   * window is aggregated in memory, so number of windows is limited
+   */
+  public static void validateMaxWindows(Integer maxPoints)
+      throws InvalidElectricQuantityException {
+    if (maxPoints != null && maxPoints < 2) {
+      throw new InvalidElectricQuantityException(
+          "maxPoints of grouped values must be at least 2: " + maxPoints);
+    }
+    if (maxPoints != null && maxPoints > WindowPlanner.MAX_WINDOWS) {
+      throw new InvalidElectricQuantityException(
+          String.format(
+              "maxPoints of grouped values must be at most %d: %d",
+              WindowPlanner.MAX_WINDOWS, maxPoints));
+    }
+  }
+
+  /**
+   * @param device name of device, null for the default device
+   */
+  public static void validateDevice(String device) throws InvalidElectricQuantityException {
+    if (!DeviceUtil.isValid(device)) {
+      throw new InvalidElectricQuantityException("Invalid device: " + device);
+    }
+  }
+}
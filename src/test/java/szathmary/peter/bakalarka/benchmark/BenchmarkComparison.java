@@ -0,0 +1,79 @@
+package szathmary.peter.bakalarka.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compares JMH results in JSON format with committed baseline and prints ratio of every benchmark
+ * present in both of them. Benchmark is reported as regression when it is slower than baseline
+ * by more than tolerance.
+ *
+ * <p>Arguments: baseline file, results file, tolerance as fraction (0.2 allows 20% slowdown).
+ */
+public class BenchmarkComparison {
+
+  public static void main(String[] args) throws IOException {
+    Map<String, JsonNode> baseline = readResults(Path.of(args[0]));
+    Map<String, JsonNode> results = readResults(Path.of(args[1]));
+    double tolerance = Double.parseDouble(args[2]);
+
+    int regressions = 0;
+    System.out.printf("%-100s %12s %12s %8s%n", "Benchmark", "Baseline", "Current", "Ratio");
+    for (Map.Entry<String, JsonNode> result : results.entrySet()) {
+      JsonNode baselineResult = baseline.get(result.getKey());
+      if (baselineResult == null) {
+        System.out.printf("%-100s %12s%n", result.getKey(), "new");
+        continue;
+      }
+
+      double baselineScore = baselineResult.path("primaryMetric").path("score").asDouble();
+      double score = result.getValue().path("primaryMetric").path("score").asDouble();
+      // throughput is better when higher, other modes measure time
+      boolean higherIsBetter = "thrpt".equals(result.getValue().path("mode").asText());
+      double slowdown = higherIsBetter ? baselineScore / score : score / baselineScore;
+
+      boolean regression = slowdown > 1 + tolerance;
+      if (regression) {
+        regressions++;
+      }
+      System.out.printf(
+          "%-100s %12.3f %12.3f %8.2f %s%s%n",
+          result.getKey(),
+          baselineScore,
+          score,
+          score / baselineScore,
+          result.getValue().path("primaryMetric").path("scoreUnit").asText(),
+          regression ? " REGRESSION" : "");
+    }
+
+    System.out.printf(
+        "%d of %d benchmarks are slower than baseline by more than %.0f%%%n",
+        regressions, results.size(), tolerance * 100);
+  }
+
+  /** Reads results keyed by benchmark name and its parameters */
+  private static Map<String, JsonNode> readResults(Path file) throws IOException {
+    Map<String, JsonNode> results = new LinkedHashMap<>();
+    for (JsonNode result : new ObjectMapper().readTree(Files.readString(file))) {
+      StringBuilder key = new StringBuilder(result.path("benchmark").asText());
+      result
+          .path("params")
+          .fields()
+          .forEachRemaining(
+              param ->
+                  key.append(' ')
+                      .append(param.getKey())
+                      .append('=')
+                      .append(param.getValue().asText()));
+      results.put(key.toString(), result);
+    }
+
+    return results;
+  }
+}
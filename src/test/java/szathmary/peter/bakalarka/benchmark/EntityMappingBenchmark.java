@@ -0,0 +1,156 @@
+package szathmary.peter.bakalarka.benchmark;
+
+import com.influxdb.Cancellable;
+import com.influxdb.client.InfluxDBClient;
+import com.influxdb.client.QueryApi;
+import com.influxdb.client.domain.Dialect;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import szathmary.peter.bakalarka.constant.ElectricPhase;
+import szathmary.peter.bakalarka.entity.Current;
+import szathmary.peter.bakalarka.entity.GridFrequency;
+import szathmary.peter.bakalarka.entity.Voltage;
+import szathmary.peter.bakalarka.repository.CurrentElectricRepository;
+import szathmary.peter.bakalarka.repository.GridFrequencyElectricRepository;
+import szathmary.peter.bakalarka.repository.VoltageElectricRepository;
+import szathmary.peter.bakalarka.repository.quantity.DeviceRegistry;
+import szathmary.peter.bakalarka.repository.quantity.ElectricQuantityRegistry;
+import szathmary.peter.bakalarka.repository.storage.ElectricStorageFactory;
+import szathmary.peter.bakalarka.repository.storage.influxdb.InfluxDbElectricStorage;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Measures mapping of rows of raw range query to entities. Query API passes prepared lines of CSV
+ * response to storage synchronously, so only decoding of rows, creation of entities and their
+ * collection is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntityMappingBenchmark {
+
+  private static final Instant START = Instant.parse("2023-05-01T00:00:00Z");
+
+  @Param({"10000"})
+  private int rows;
+
+  private CurrentElectricRepository currentRepository;
+
+  private VoltageElectricRepository voltageRepository;
+
+  private GridFrequencyElectricRepository gridFrequencyRepository;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    List<String> phaseRows = createRows(true);
+    List<String> rowsWithoutPhase = createRows(false);
+
+    ElectricStorageFactory phaseStorageFactory = createStorageFactory(phaseRows);
+    ElectricStorageFactory storageFactoryWithoutPhase = createStorageFactory(rowsWithoutPhase);
+    ElectricStorageFactory storageFactory =
+        (quantityName, device, hasPhases) ->
+            (hasPhases ? phaseStorageFactory : storageFactoryWithoutPhase)
+                .create(quantityName, device, hasPhases);
+    ElectricQuantityRegistry registry =
+        new ElectricQuantityRegistry(
+            storageFactory,
+            new DeviceRegistry(storageFactory, 0),
+            new SimpleMeterRegistry(),
+            List.of("current", "voltage"),
+            List.of("gridFrequency"),
+            0,
+            0,
+            0);
+
+    currentRepository = new CurrentElectricRepository(registry);
+    voltageRepository = new VoltageElectricRepository(registry);
+    gridFrequencyRepository = new GridFrequencyElectricRepository(registry);
+  }
+
+  @Benchmark
+  public List<Current> mapCurrents() {
+    return currentRepository.findAllBetweenDates(null, START, null, null);
+  }
+
+  @Benchmark
+  public List<Voltage> mapVoltages() {
+    return voltageRepository.findAllBetweenDates(null, START, null, null);
+  }
+
+  @Benchmark
+  public List<GridFrequency> mapGridFrequencies() {
+    return gridFrequencyRepository.findAllBetweenDates(null, START, null, null);
+  }
+
+  /** creates CSV response of raw value query, header of quantity without phases has no phase */
+  private List<String> createRows(boolean withPhases) {
+    ElectricPhase[] phases = ElectricPhase.values();
+    List<String> lines = new ArrayList<>(rows + 1);
+    lines.add(withPhases ? ",result,table,_time,_value,phase" : ",result,table,_time,_value");
+    for (int i = 0; i < rows; i++) {
+      String line =
+          ",_result,0," + START.plusSeconds(i / phases.length) + "," + (230.0 + (i % 100) / 10.0);
+      lines.add(withPhases ? line + "," + phases[i % phases.length] : line);
+    }
+
+    return lines;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static ElectricStorageFactory createStorageFactory(List<String> rows) {
+    // stub only mocks do not record invocations, which would keep all results in memory
+    InfluxDBClient influxDBClient = mock(InfluxDBClient.class, withSettings().stubOnly());
+    QueryApi queryApi = mock(QueryApi.class, withSettings().stubOnly());
+    when(influxDBClient.getQueryApi()).thenReturn(queryApi);
+
+    Cancellable cancellable = mock(Cancellable.class, withSettings().stubOnly());
+    doAnswer(
+            invocation -> {
+              BiConsumer<Cancellable, String> onNext = invocation.getArgument(3);
+              for (String row : rows) {
+                onNext.accept(cancellable, row);
+              }
+              ((Runnable) invocation.getArgument(5)).run();
+              return null;
+            })
+        .when(queryApi)
+        .queryRaw(
+            anyString(),
+            any(Dialect.class),
+            anyString(),
+            any(BiConsumer.class),
+            any(Consumer.class),
+            any(Runnable.class));
+
+    return (quantityName, device, hasPhases) ->
+        new InfluxDbElectricStorage(
+            influxDBClient, null, quantityName, device, hasPhases, "electric", "org", false, 0);
+  }
+}
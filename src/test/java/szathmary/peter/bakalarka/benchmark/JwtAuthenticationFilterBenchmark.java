@@ -0,0 +1,83 @@
+package szathmary.peter.bakalarka.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+import szathmary.peter.bakalarka.config.filter.JwtAuthenticationFilter;
+import szathmary.peter.bakalarka.util.JwtUtil;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures authentication of request with valid jwt token. Cache size 0 disables cache of
+ * verified tokens, so every request parses and verifies the token.
+ *
+ * <p>Run with {@code ./mvnw -P benchmark verify -Dbenchmark.include=JwtAuthenticationFilter} or
+ * from IDE.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtAuthenticationFilterBenchmark {
+
+  private static final String SECRET =
+      "c3phdGhtYXJ5LXBldGVyLWJha2FsYXJza2EtYmVuY2htYXJrLXNlY3JldC1rZXktMjU2LWJpdHM=";
+
+  private static final FilterChain NO_OP_CHAIN = (request, response) -> {};
+
+  @Param({"0", "1000"})
+  private int verifiedTokensCacheSize;
+
+  private JwtAuthenticationFilter filter;
+
+  private MockHttpServletRequest request;
+
+  private MockHttpServletResponse response;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    JwtUtil jwtUtil = new JwtUtil(SECRET, 3_600_000, verifiedTokensCacheSize);
+    filter = new JwtAuthenticationFilter(jwtUtil);
+
+    request = new MockHttpServletRequest("GET", "/api/electric-quantities/last");
+    request.addHeader("Authorization", "Bearer " + jwtUtil.generateJwt("benchmark"));
+    response = new MockHttpServletResponse();
+  }
+
+  @Benchmark
+  public Object authenticateRequest() throws ServletException, IOException {
+    filter.doFilter(request, response, NO_OP_CHAIN);
+    Object authentication = SecurityContextHolder.getContext().getAuthentication();
+    SecurityContextHolder.clearContext();
+    return authentication;
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(
+            new OptionsBuilder()
+                .include(JwtAuthenticationFilterBenchmark.class.getSimpleName())
+                .build())
+        .run();
+  }
+}
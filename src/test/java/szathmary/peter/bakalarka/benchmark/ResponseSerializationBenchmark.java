@@ -0,0 +1,157 @@
+package szathmary.peter.bakalarka.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import szathmary.peter.bakalarka.constant.ElectricPhase;
+import szathmary.peter.bakalarka.dto.electric.ElectricQuantitiesColumnarResponseDto;
+import szathmary.peter.bakalarka.dto.electric.ElectricQuantitiesDto;
+import szathmary.peter.bakalarka.dto.electric.ElectricQuantitiesMinMaxMeanResponseDto;
+import szathmary.peter.bakalarka.dto.electric.GroupedSeriesDto;
+import szathmary.peter.bakalarka.entity.Current;
+import szathmary.peter.bakalarka.entity.GridFrequency;
+import szathmary.peter.bakalarka.entity.Voltage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures serialization of response bodies by object mapper configured the same way as the one
+ * of Spring Boot. Serialized bytes are discarded, so only serialization is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseSerializationBenchmark {
+
+  private static final Instant START = Instant.parse("2023-05-01T00:00:00Z");
+
+  /** number of values of every phase of every quantity */
+  @Param({"1000", "100000"})
+  private int valuesPerPhase;
+
+  private ObjectMapper objectMapper;
+
+  private ElectricQuantitiesDto electricQuantities;
+
+  private ElectricQuantitiesMinMaxMeanResponseDto minMaxMean;
+
+  private ElectricQuantitiesColumnarResponseDto columnar;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    objectMapper =
+        Jackson2ObjectMapperBuilder.json()
+            .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .build();
+
+    electricQuantities =
+        ElectricQuantitiesDto.builder()
+            .currents(createCurrents(0))
+            .gridFrequencies(createGridFrequencies(0))
+            .voltages(createVoltages(0))
+            .build();
+
+    minMaxMean =
+        ElectricQuantitiesMinMaxMeanResponseDto.builder()
+            .minCurrents(createCurrents(-1))
+            .meanCurrents(createCurrents(0))
+            .maxCurrents(createCurrents(1))
+            .minGridFrequencies(createGridFrequencies(-1))
+            .meanGridFrequencies(createGridFrequencies(0))
+            .maxGridFrequencies(createGridFrequencies(1))
+            .minVoltages(createVoltages(-1))
+            .meanVoltages(createVoltages(0))
+            .maxVoltages(createVoltages(1))
+            .build();
+
+    columnar =
+        ElectricQuantitiesColumnarResponseDto.builder()
+            .currents(createSeries(10.0, 1.0 / 100, ElectricPhase.values()))
+            .gridFrequencies(createSeries(50.0, 1.0 / 1000, new ElectricPhase[] {null}))
+            .voltages(createSeries(230.0, 1.0 / 10, ElectricPhase.values()))
+            .build();
+  }
+
+  @Benchmark
+  public void serializeElectricQuantities() throws IOException {
+    // object mapper closes stream it wrote to
+    objectMapper.writeValue(OutputStream.nullOutputStream(), electricQuantities);
+  }
+
+  @Benchmark
+  public void serializeMinMaxMean() throws IOException {
+    objectMapper.writeValue(OutputStream.nullOutputStream(), minMaxMean);
+  }
+
+  @Benchmark
+  public void serializeColumnarMinMaxMean() throws IOException {
+    objectMapper.writeValue(OutputStream.nullOutputStream(), columnar);
+  }
+
+  private List<Current> createCurrents(double offset) {
+    List<Current> currents = new ArrayList<>(valuesPerPhase * ElectricPhase.values().length);
+    for (ElectricPhase phase : ElectricPhase.values()) {
+      for (int i = 0; i < valuesPerPhase; i++) {
+        currents.add(new Current(10.0 + offset + (i % 100) / 100.0, START.plusSeconds(i), phase));
+      }
+    }
+    return currents;
+  }
+
+  private List<GridFrequency> createGridFrequencies(double offset) {
+    List<GridFrequency> gridFrequencies = new ArrayList<>(valuesPerPhase);
+    for (int i = 0; i < valuesPerPhase; i++) {
+      gridFrequencies.add(
+          new GridFrequency(50.0 + offset / 10 + (i % 100) / 1000.0, START.plusSeconds(i)));
+    }
+    return gridFrequencies;
+  }
+
+  private List<Voltage> createVoltages(double offset) {
+    List<Voltage> voltages = new ArrayList<>(valuesPerPhase * ElectricPhase.values().length);
+    for (ElectricPhase phase : ElectricPhase.values()) {
+      for (int i = 0; i < valuesPerPhase; i++) {
+        voltages.add(new Voltage(230.0 + offset + (i % 100) / 10.0, START.plusSeconds(i), phase));
+      }
+    }
+    return voltages;
+  }
+
+  private List<GroupedSeriesDto> createSeries(double base, double step, ElectricPhase[] phases) {
+    List<GroupedSeriesDto> series = new ArrayList<>(phases.length);
+    for (ElectricPhase phase : phases) {
+      long[] time = new long[valuesPerPhase];
+      double[] min = new double[valuesPerPhase];
+      double[] mean = new double[valuesPerPhase];
+      double[] max = new double[valuesPerPhase];
+      for (int i = 0; i < valuesPerPhase; i++) {
+        time[i] = START.plusSeconds(i).toEpochMilli();
+        mean[i] = base + (i % 100) * step;
+        min[i] = mean[i] - 1;
+        max[i] = mean[i] + 1;
+      }
+      series.add(new GroupedSeriesDto(phase, time, min, mean, max));
+    }
+    return series;
+  }
+}
@@ -0,0 +1,136 @@
+package szathmary.peter.bakalarka.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import szathmary.peter.bakalarka.exceptionHandler.GlobalExceptionHandler;
+import szathmary.peter.bakalarka.repository.quantity.DeviceRegistry;
+import szathmary.peter.bakalarka.repository.rollup.WindowPlanner;
+import szathmary.peter.bakalarka.service.CurrentElectricService;
+import szathmary.peter.bakalarka.service.GridFrequencyElectricService;
+import szathmary.peter.bakalarka.service.ImportService;
+import szathmary.peter.bakalarka.service.LiveFeedService;
+import szathmary.peter.bakalarka.service.VoltageElectricService;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class ElectricQuantityControllerTest {
+
+  private CurrentElectricService currentService;
+
+  private VoltageElectricService voltageService;
+
+  @BeforeEach
+  void setUp() {
+    currentService = mock(CurrentElectricService.class);
+    voltageService = mock(VoltageElectricService.class);
+  }
+
+  @Test
+  void failedQuantitiesAreListedInHeader() throws Exception {
+    when(currentService.findAll(isNull(), any())).thenThrow(new IllegalStateException("down"));
+    when(voltageService.findAll(isNull(), any())).thenReturn(List.of());
+
+    createMockMvc(new SimpleAsyncTaskExecutor())
+        .perform(get(selected()))
+        .andExpect(status().isOk())
+        .andExpect(header().string(ElectricQuantityController.FAILED_QUANTITIES_HEADER, "CURRENT"));
+  }
+
+  @Test
+  void failureOfAllQuantitiesIsServiceUnavailable() throws Exception {
+    when(currentService.findAll(isNull(), any())).thenThrow(new IllegalStateException("down"));
+    when(voltageService.findAll(isNull(), any())).thenThrow(new IllegalStateException("down"));
+
+    createMockMvc(new SimpleAsyncTaskExecutor())
+        .perform(get(selected()))
+        .andExpect(status().isServiceUnavailable());
+  }
+
+  @Test
+  void queriesRejectedBySaturatedExecutorAreFailed() throws Exception {
+    AsyncTaskExecutor executor = mock(AsyncTaskExecutor.class);
+    when(executor.submit(any(Callable.class))).thenThrow(new TaskRejectedException("saturated"));
+
+    createMockMvc(executor).perform(get(selected())).andExpect(status().isServiceUnavailable());
+  }
+
+  @Test
+  void groupedValuesWithTooManyWindowsAreRejected() throws Exception {
+    createMockMvc(new SimpleAsyncTaskExecutor())
+        .perform(
+            get(
+                    "/api/electric-quantities/grouped/between/{startDate}/{endDate}",
+                    "2023-01-01T00:00:00Z",
+                    "2024-01-01T00:00:00Z")
+                .param("electricQuantities", "CURRENT")
+                .param("maxPoints", String.valueOf(WindowPlanner.MAX_WINDOWS + 1)))
+        .andExpect(status().isBadRequest());
+  }
+
+  @Test
+  void windowsChangedByLateValuesAreReturnedAgain() throws Exception {
+    long window = 60_000;
+    long settledEndMillis = (System.currentTimeMillis() / window - 10) * window;
+    long lateWindowStartMillis = settledEndMillis - 3 * window;
+    when(currentService.findLateValuesSince(null, 5)).thenReturn(lateWindowStartMillis + 100);
+    when(currentService.getIncrementalSeries(isNull(), any(), any(), eq(window), any()))
+        .thenReturn(List.of());
+
+    createMockMvc(new SimpleAsyncTaskExecutor())
+        .perform(
+            get(
+                    "/api/electric-quantities/since/{timestamp}",
+                    Instant.ofEpochMilli(settledEndMillis - 30 * window))
+                .param("incremental", "true")
+                .param("electricQuantities", "CURRENT")
+                .param("cursor", window + "-" + settledEndMillis + "-5"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.start").value(lateWindowStartMillis));
+
+    verify(currentService)
+        .getIncrementalSeries(
+            isNull(), eq(Instant.ofEpochMilli(lateWindowStartMillis)), any(), eq(window), any());
+  }
+
+  private MockMvc createMockMvc(AsyncTaskExecutor executor) {
+    ElectricQuantityController controller =
+        new ElectricQuantityController(
+            currentService,
+            mock(GridFrequencyElectricService.class),
+            voltageService,
+            mock(LiveFeedService.class),
+            mock(ImportService.class),
+            mock(DeviceRegistry.class),
+            executor,
+            1000,
+            0,
+            new ObjectMapper());
+
+    return MockMvcBuilders.standaloneSetup(controller)
+        .setControllerAdvice(new GlobalExceptionHandler())
+        .build();
+  }
+
+  private static String selected() {
+    return "/api/electric-quantities/selected?electricQuantities=CURRENT,VOLTAGE";
+  }
+}
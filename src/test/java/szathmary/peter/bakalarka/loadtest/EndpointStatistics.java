@@ -0,0 +1,67 @@
+package szathmary.peter.bakalarka.loadtest;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Latencies and failures of requests to one endpoint measured by load test */
+class EndpointStatistics {
+
+  private final String name;
+
+  private final Timer latency;
+
+  private final AtomicLong failures = new AtomicLong();
+
+  EndpointStatistics(String name, MeterRegistry meterRegistry, Duration runDuration) {
+    this.name = name;
+    this.latency =
+        Timer.builder("loadtest.request")
+            .tag("endpoint", name)
+            .publishPercentiles(0.5, 0.99)
+            .percentilePrecision(3)
+            // percentiles are computed from the whole run
+            .distributionStatisticExpiry(runDuration.multipliedBy(2))
+            .distributionStatisticBufferLength(1)
+            .register(meterRegistry);
+  }
+
+  String getName() {
+    return name;
+  }
+
+  void recordSuccess(long latencyNanos) {
+    latency.record(latencyNanos, TimeUnit.NANOSECONDS);
+  }
+
+  void recordFailure() {
+    failures.incrementAndGet();
+  }
+
+  long getRequests() {
+    return latency.count();
+  }
+
+  long getFailures() {
+    return failures.get();
+  }
+
+  /**
+   * @return median, 99th percentile and maximal latency in milliseconds
+   */
+  double[] getLatencyMillis() {
+    HistogramSnapshot snapshot = latency.takeSnapshot();
+    double[] latencies = new double[3];
+    for (ValueAtPercentile percentile : snapshot.percentileValues()) {
+      latencies[percentile.percentile() < 0.9 ? 0 : 1] = percentile.value(TimeUnit.MILLISECONDS);
+    }
+    latencies[2] = snapshot.max(TimeUnit.MILLISECONDS);
+
+    return latencies;
+  }
+}
@@ -0,0 +1,441 @@
+package szathmary.peter.bakalarka.loadtest;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+import szathmary.peter.bakalarka.BakalarkaApplication;
+import szathmary.peter.bakalarka.controller.ElectricQuantityController;
+import szathmary.peter.bakalarka.util.JwtUtil;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Starts the application in this JVM with embedded storage in temporary directory and in memory
+ * H2 database instead of MySQL, so no external service is needed. Meters post payloads in the
+ * same shape as the uploader script and dashboards poll last values, last n values and grouped
+ * values at fixed rates, regardless of response times. Reports throughput, latencies and
+ * allocation rate of application threads measured after warmup.
+ *
+ * <p>Run with {@code ./mvnw -P loadtest verify}, options are set by properties of the profile,
+ * e.g. {@code -Dloadtest.meters=100}. Arguments not recognized as options are passed to Spring,
+ * e.g. {@code --electric-quantities.storage.embedded.block-size=512}.
+ */
+public class LoadTestHarness {
+
+  private static final String HARNESS_THREAD_PREFIX = "load-";
+
+  private static final String[] PHASES = {"L1", "L2", "L3"};
+
+  private static final String QUANTITIES =
+      "electricQuantities=CURRENT,GRID_FREQUENCY,VOLTAGE&currentPhaseFilters=L1,L2,L3"
+          + "&voltagePhaseFilters=L1,L2,L3";
+
+  private final Options options;
+
+  private final HttpClient httpClient;
+
+  private final String baseUrl;
+
+  private final String authorization;
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  private final List<EndpointStatistics> statistics = new ArrayList<>();
+
+  private volatile boolean measuring;
+
+  private LoadTestHarness(Options options, int port, String jwt, ExecutorService httpExecutor) {
+    this.options = options;
+    this.baseUrl = "http://localhost:" + port + "/api/electric-quantities";
+    this.authorization = "Bearer " + jwt;
+    this.httpClient =
+        HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .executor(httpExecutor)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+  }
+
+  public static void main(String[] args) throws Exception {
+    List<String> springArgs = new ArrayList<>();
+    Options options = Options.parse(args, springArgs);
+
+    Path dataDirectory = Files.createTempDirectory("electric-loadtest");
+    byte[] jwtSecret = new byte[32];
+    new SecureRandom().nextBytes(jwtSecret);
+
+    springArgs.addAll(
+        0,
+        List.of(
+            "--server.port=0",
+            "--management.server.port=-1",
+            "--spring.datasource.url=jdbc:h2:mem:loadtest",
+            "--spring.datasource.username=sa",
+            "--spring.datasource.password=",
+            "--spring.jpa.hibernate.ddl-auto=none",
+            "--spring.security.jwt.secret=" + Base64.getEncoder().encodeToString(jwtSecret),
+            "--spring.security.jwt.expiration=" + TimeUnit.DAYS.toMillis(1),
+            "--electric-quantities.storage.type=embedded",
+            "--electric-quantities.storage.embedded.data-dir=" + dataDirectory,
+            "--logging.level.root=WARN",
+            // executors of application are shut down after web server reports them
+            "--logging.level.org.apache.catalina.loader.WebappClassLoaderBase=ERROR"));
+
+    ExecutorService httpExecutor =
+        Executors.newFixedThreadPool(options.httpThreads(), namedThreads("http"));
+    ScheduledExecutorService scheduler =
+        Executors.newScheduledThreadPool(2, namedThreads("scheduler"));
+
+    try (ConfigurableApplicationContext context =
+        SpringApplication.run(BakalarkaApplication.class, springArgs.toArray(String[]::new))) {
+      int port = context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+      String jwt = context.getBean(JwtUtil.class).generateJwt("loadtest");
+
+      new LoadTestHarness(options, port, jwt, httpExecutor).run(scheduler);
+    } finally {
+      scheduler.shutdownNow();
+      httpExecutor.shutdownNow();
+      FileSystemUtils.deleteRecursively(dataDirectory);
+    }
+  }
+
+  private void run(ScheduledExecutorService scheduler) throws Exception {
+    Instant start = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+    preload(start.minus(options.preloadHours(), ChronoUnit.HOURS), start);
+
+    EndpointStatistics post = createStatistics("POST /");
+    for (int i = 0; i < options.meters(); i++) {
+      schedule(scheduler, options.meterIntervalMillis(), post, this::createMeterRequest);
+    }
+
+    EndpointStatistics last = createStatistics("GET /last");
+    EndpointStatistics lastN = createStatistics("GET /last/" + options.lastCount());
+    EndpointStatistics grouped = createStatistics("GET /grouped/between");
+    for (int i = 0; i < options.dashboards(); i++) {
+      schedule(
+          scheduler,
+          options.dashboardIntervalMillis(),
+          last,
+          () -> createGetRequest("/last?" + QUANTITIES));
+      schedule(
+          scheduler,
+          options.dashboardIntervalMillis(),
+          lastN,
+          () -> createGetRequest("/last/" + options.lastCount() + "?" + QUANTITIES));
+      schedule(
+          scheduler,
+          options.dashboardIntervalMillis(),
+          grouped,
+          () -> {
+            Instant end = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+            Instant begin = end.minus(Math.max(options.preloadHours(), 1), ChronoUnit.HOURS);
+            return createGetRequest(
+                "/grouped/between/" + begin + "/" + end + "?" + QUANTITIES);
+          });
+    }
+
+    System.out.printf(
+        "Warming up for %d s with %d meters and %d dashboards%n",
+        options.warmupSeconds(), options.meters(), options.dashboards());
+    TimeUnit.SECONDS.sleep(options.warmupSeconds());
+
+    AllocationSnapshot before = AllocationSnapshot.take();
+    measuring = true;
+    long measureStart = System.nanoTime();
+    TimeUnit.SECONDS.sleep(options.durationSeconds());
+    measuring = false;
+    double elapsedSeconds = (System.nanoTime() - measureStart) / 1e9;
+    AllocationSnapshot after = AllocationSnapshot.take();
+
+    report(elapsedSeconds, before, after);
+  }
+
+  /** Imports values of preloaded range, so grouped queries have values to aggregate */
+  private void preload(Instant from, Instant to) throws IOException, InterruptedException {
+    if (!from.isBefore(to)) {
+      return;
+    }
+
+    StringBuilder ndjson = new StringBuilder();
+    for (Instant time = from; time.isBefore(to); time = time.plusSeconds(1)) {
+      for (String value : createMeasurement(time)) {
+        ndjson.append(value).append('\n');
+      }
+    }
+
+    System.out.printf("Preloading %d hours of values%n", options.preloadHours());
+    HttpResponse<String> response =
+        httpClient.send(
+            HttpRequest.newBuilder(URI.create(baseUrl + "/import?importId=loadtest-preload"))
+                .header("Authorization", authorization)
+                .header("Content-Type", ElectricQuantityController.NDJSON_MEDIA_TYPE)
+                .POST(HttpRequest.BodyPublishers.ofString(ndjson.toString()))
+                .build(),
+            HttpResponse.BodyHandlers.ofString());
+    if (response.statusCode() != 200) {
+      throw new IllegalStateException("Preload failed: " + response.body());
+    }
+  }
+
+  private HttpRequest createMeterRequest() {
+    List<String> values = createMeasurement(Instant.now().truncatedTo(ChronoUnit.MILLIS));
+    String payload =
+        "{\"currents\":["
+            + String.join(",", values.subList(0, 3))
+            + "],\"gridFrequencies\":["
+            + values.get(3)
+            + "],\"voltages\":["
+            + String.join(",", values.subList(4, 7))
+            + "]}";
+
+    return HttpRequest.newBuilder(URI.create(baseUrl))
+        .header("Authorization", authorization)
+        .header("Content-Type", "application/json")
+        .POST(HttpRequest.BodyPublishers.ofString(payload, StandardCharsets.UTF_8))
+        .build();
+  }
+
+  /**
+   * Creates values of one measurement in the shape uploader sends them
+   *
+   * @return JSON objects of currents of phases L1 to L3, grid frequency and voltages of phases L1
+   *     to L3
+   */
+  private static List<String> createMeasurement(Instant time) {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    List<String> values = new ArrayList<>(7);
+    for (String phase : PHASES) {
+      values.add(
+          String.format(
+              Locale.ROOT,
+              "{\"current\":%.3f,\"time\":\"%s\",\"phase\":\"%s\"}",
+              10 + random.nextDouble(),
+              time,
+              phase));
+    }
+    values.add(
+        String.format(
+            Locale.ROOT,
+            "{\"frequency\":%.3f,\"time\":\"%s\"}",
+            49.9 + random.nextDouble() / 5,
+            time));
+    for (String phase : PHASES) {
+      values.add(
+          String.format(
+              Locale.ROOT,
+              "{\"voltage\":%.3f,\"time\":\"%s\",\"phase\":\"%s\"}",
+              228 + random.nextDouble() * 4,
+              time,
+              phase));
+    }
+
+    return values;
+  }
+
+  private HttpRequest createGetRequest(String path) {
+    return HttpRequest.newBuilder(URI.create(baseUrl + path))
+        .header("Authorization", authorization)
+        .GET()
+        .build();
+  }
+
+  /**
+   * Sends request at fixed rate starting at random offset. Request is sent even when previous one
+   * did not complete yet, so slow responses do not lower offered load.
+   */
+  private void schedule(
+      ScheduledExecutorService scheduler,
+      long intervalMillis,
+      EndpointStatistics endpointStatistics,
+      Supplier<HttpRequest> requestSupplier) {
+    scheduler.scheduleAtFixedRate(
+        () -> {
+          // requests sent during warmup are not measured
+          boolean measured = measuring;
+          long sentAt = System.nanoTime();
+          httpClient
+              .sendAsync(requestSupplier.get(), HttpResponse.BodyHandlers.discarding())
+              .whenComplete(
+                  (response, error) -> {
+                    if (!measured) {
+                      return;
+                    }
+                    if (error != null || response.statusCode() >= 400) {
+                      endpointStatistics.recordFailure();
+                    } else {
+                      endpointStatistics.recordSuccess(System.nanoTime() - sentAt);
+                    }
+                  });
+        },
+        ThreadLocalRandom.current().nextLong(intervalMillis),
+        intervalMillis,
+        TimeUnit.MILLISECONDS);
+  }
+
+  private EndpointStatistics createStatistics(String name) {
+    EndpointStatistics endpointStatistics =
+        new EndpointStatistics(
+            name,
+            meterRegistry,
+            Duration.ofSeconds(options.warmupSeconds() + options.durationSeconds()));
+    statistics.add(endpointStatistics);
+
+    return endpointStatistics;
+  }
+
+  private void report(double elapsedSeconds, AllocationSnapshot before, AllocationSnapshot after) {
+    System.out.printf(
+        "%n%-26s %10s %8s %10s %10s %10s %10s%n",
+        "Endpoint", "Requests", "Failed", "Req/s", "p50 ms", "p99 ms", "max ms");
+
+    long requests = 0;
+    for (EndpointStatistics endpointStatistics : statistics) {
+      double[] latencies = endpointStatistics.getLatencyMillis();
+      requests += endpointStatistics.getRequests() + endpointStatistics.getFailures();
+      System.out.printf(
+          Locale.ROOT,
+          "%-26s %10d %8d %10.1f %10.2f %10.2f %10.2f%n",
+          endpointStatistics.getName(),
+          endpointStatistics.getRequests(),
+          endpointStatistics.getFailures(),
+          endpointStatistics.getRequests() / elapsedSeconds,
+          latencies[0],
+          latencies[1],
+          latencies[2]);
+    }
+
+    long allocatedBytes = after.allocatedBytes() - before.allocatedBytes();
+    System.out.printf(
+        Locale.ROOT,
+        "%nValues written: %.1f/s%n",
+        statistics.get(0).getRequests() * 7 / elapsedSeconds);
+    System.out.printf(
+        Locale.ROOT,
+        "Allocation rate of application threads: %.1f MB/s, %.1f KB per request%n",
+        allocatedBytes / elapsedSeconds / 1024 / 1024,
+        requests == 0 ? 0.0 : allocatedBytes / 1024.0 / requests);
+    System.out.printf(
+        "Garbage collections: %d, %d ms%n",
+        after.collections() - before.collections(),
+        after.collectionMillis() - before.collectionMillis());
+  }
+
+  private static ThreadFactory namedThreads(String name) {
+    AtomicInteger counter = new AtomicInteger();
+    return runnable -> {
+      Thread thread =
+          new Thread(runnable, HARNESS_THREAD_PREFIX + name + "-" + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
+  /**
+   * Bytes allocated by threads of application, excluding threads of load generator and its HTTP
+   * client, and garbage collections so far
+   */
+  private record AllocationSnapshot(long allocatedBytes, long collections, long collectionMillis) {
+
+    static AllocationSnapshot take() {
+      com.sun.management.ThreadMXBean threadMXBean =
+          (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+      long allocatedBytes = 0;
+      for (Thread thread : Thread.getAllStackTraces().keySet()) {
+        String name = thread.getName();
+        if (name.startsWith(HARNESS_THREAD_PREFIX)
+            || name.startsWith("HttpClient")
+            || name.equals("main")) {
+          continue;
+        }
+        allocatedBytes += Math.max(threadMXBean.getThreadAllocatedBytes(thread.getId()), 0);
+      }
+
+      long collections = 0;
+      long collectionMillis = 0;
+      for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+        collections += Math.max(collector.getCollectionCount(), 0);
+        collectionMillis += Math.max(collector.getCollectionTime(), 0);
+      }
+
+      return new AllocationSnapshot(allocatedBytes, collections, collectionMillis);
+    }
+  }
+
+  private record Options(
+      int meters,
+      long meterIntervalMillis,
+      int dashboards,
+      long dashboardIntervalMillis,
+      int lastCount,
+      int preloadHours,
+      long warmupSeconds,
+      long durationSeconds,
+      int httpThreads) {
+
+    /**
+     * Parses options given as {@code --name=value}, other arguments are added to Spring arguments
+     */
+    static Options parse(String[] args, List<String> springArgs) {
+      Map<String, Long> values = new LinkedHashMap<>();
+      values.put("meters", 10L);
+      values.put("meter-interval-ms", 1000L);
+      values.put("dashboards", 5L);
+      values.put("dashboard-interval-ms", 1000L);
+      values.put("last-count", 60L);
+      values.put("preload-hours", 6L);
+      values.put("warmup-s", 10L);
+      values.put("duration-s", 60L);
+      values.put("http-threads", 4L);
+
+      for (String arg : args) {
+        int separator = arg.indexOf('=');
+        String name = arg.startsWith("--") && separator > 0 ? arg.substring(2, separator) : "";
+        if (values.containsKey(name)) {
+          values.put(name, Long.parseLong(arg.substring(separator + 1)));
+        } else {
+          springArgs.add(arg);
+        }
+      }
+
+      return new Options(
+          values.get("meters").intValue(),
+          values.get("meter-interval-ms"),
+          values.get("dashboards").intValue(),
+          values.get("dashboard-interval-ms"),
+          values.get("last-count").intValue(),
+          values.get("preload-hours").intValue(),
+          values.get("warmup-s"),
+          values.get("duration-s"),
+          values.get("http-threads").intValue());
+    }
+  }
+}
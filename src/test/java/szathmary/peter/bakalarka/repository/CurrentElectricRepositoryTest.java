@@ -0,0 +1,225 @@
+package szathmary.peter.bakalarka.repository;
+
+import com.influxdb.Cancellable;
+import com.influxdb.client.InfluxDBClient;
+import com.influxdb.client.QueryApi;
+import com.influxdb.client.domain.Dialect;
+import com.influxdb.query.FluxRecord;
+import com.influxdb.query.FluxTable;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import szathmary.peter.bakalarka.constant.ElectricPhase;
+import szathmary.peter.bakalarka.dto.electric.GroupedSeriesDto;
+import szathmary.peter.bakalarka.entity.Current;
+import szathmary.peter.bakalarka.repository.quantity.DeviceRegistry;
+import szathmary.peter.bakalarka.repository.quantity.ElectricQuantityRegistry;
+import szathmary.peter.bakalarka.repository.storage.ElectricStorageFactory;
+import szathmary.peter.bakalarka.repository.storage.influxdb.InfluxDbElectricStorage;
+import szathmary.peter.bakalarka.repository.writer.InfluxDbBatchWriter;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class CurrentElectricRepositoryTest {
+
+  private static final Instant START = Instant.parse("2023-05-01T00:00:00Z");
+  private static final Instant END = Instant.parse("2023-05-02T00:00:00Z");
+
+  private static final String HEADER = ",result,table,_time,_value,phase";
+
+  private QueryApi queryApi;
+  private CurrentElectricRepository repository;
+
+  @BeforeEach
+  void setUp() {
+    InfluxDBClient influxDBClient = mock(InfluxDBClient.class);
+    queryApi = mock(QueryApi.class);
+    when(influxDBClient.getQueryApi()).thenReturn(queryApi);
+
+    ElectricStorageFactory storageFactory =
+        (quantityName, device, hasPhases) ->
+            new InfluxDbElectricStorage(
+                influxDBClient,
+                mock(InfluxDbBatchWriter.class),
+                quantityName,
+                device,
+                hasPhases,
+                "electric",
+                "org",
+                false,
+                0);
+    ElectricQuantityRegistry registry =
+        new ElectricQuantityRegistry(
+            storageFactory,
+            new DeviceRegistry(storageFactory, 10),
+            new SimpleMeterRegistry(),
+            List.of("current"),
+            List.of(),
+            0,
+            0,
+            0);
+    repository = new CurrentElectricRepository(registry);
+  }
+
+  @Test
+  void groupedMinMaxMeanScansStorageOnce() {
+    FluxTable l1Table = new FluxTable();
+    l1Table.getRecords().add(window(START.plusSeconds(216), "L1", 3, 6.0, 1.0, 3.0));
+    l1Table.getRecords().add(window(START.plusSeconds(432), "L1", 2, 10.0, 4.0, 6.0));
+    FluxTable l2Table = new FluxTable();
+    l2Table.getRecords().add(window(START.plusSeconds(216), "L2", 4, 32.0, 7.0, 9.0));
+    when(queryApi.query(anyString(), anyString())).thenReturn(List.of(l1Table, l2Table));
+
+    List<List<Current>> result =
+        repository.getGroupedMinMaxMean(
+            null, START, END, List.of(ElectricPhase.L1, ElectricPhase.L2));
+
+    verify(queryApi, times(1)).query(anyString(), anyString());
+    verifyNoMoreInteractions(queryApi);
+
+    assertEquals(3, result.size());
+    assertEquals(
+        List.of(
+            new Current(1.0, START.plusSeconds(216), ElectricPhase.L1),
+            new Current(4.0, START.plusSeconds(432), ElectricPhase.L1),
+            new Current(7.0, START.plusSeconds(216), ElectricPhase.L2)),
+        result.get(0));
+    assertEquals(
+        List.of(
+            new Current(3.0, START.plusSeconds(216), ElectricPhase.L1),
+            new Current(6.0, START.plusSeconds(432), ElectricPhase.L1),
+            new Current(9.0, START.plusSeconds(216), ElectricPhase.L2)),
+        result.get(1));
+    assertEquals(
+        List.of(
+            new Current(2.0, START.plusSeconds(216), ElectricPhase.L1),
+            new Current(5.0, START.plusSeconds(432), ElectricPhase.L1),
+            new Current(8.0, START.plusSeconds(216), ElectricPhase.L2)),
+        result.get(2));
+  }
+
+  @Test
+  void groupedSeriesSplitsWindowsByPhase() {
+    FluxTable l1Table = new FluxTable();
+    l1Table.getRecords().add(window(START.plusSeconds(216), "L1", 3, 6.0, 1.0, 3.0));
+    l1Table.getRecords().add(window(START.plusSeconds(432), "L1", 2, 10.0, 4.0, 6.0));
+    FluxTable l2Table = new FluxTable();
+    l2Table.getRecords().add(window(START.plusSeconds(216), "L2", 4, 32.0, 7.0, 9.0));
+    when(queryApi.query(anyString(), anyString())).thenReturn(List.of(l1Table, l2Table));
+
+    List<GroupedSeriesDto> result =
+        repository
+            .getQuantityRepository()
+            .getGroupedSeries(null, START, END, List.of(ElectricPhase.L1, ElectricPhase.L2));
+
+    assertEquals(2, result.size());
+    assertEquals(ElectricPhase.L1, result.get(0).phase());
+    assertArrayEquals(
+        new long[] {
+          START.plusSeconds(216).toEpochMilli(), START.plusSeconds(432).toEpochMilli()
+        },
+        result.get(0).time());
+    assertArrayEquals(new double[] {1.0, 4.0}, result.get(0).min());
+    assertArrayEquals(new double[] {2.0, 5.0}, result.get(0).mean());
+    assertArrayEquals(new double[] {3.0, 6.0}, result.get(0).max());
+    assertEquals(ElectricPhase.L2, result.get(1).phase());
+    assertArrayEquals(new long[] {START.plusSeconds(216).toEpochMilli()}, result.get(1).time());
+    assertArrayEquals(new double[] {7.0}, result.get(1).min());
+    assertArrayEquals(new double[] {8.0}, result.get(1).mean());
+    assertArrayEquals(new double[] {9.0}, result.get(1).max());
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void streamingPassesValuesToConsumerAsTheyArrive() {
+    Current first = new Current(1.0, START, ElectricPhase.L1);
+    Current second = new Current(2.0, START.plusSeconds(1), ElectricPhase.L1);
+    doAnswer(
+            invocation -> {
+              BiConsumer<Cancellable, String> onNext = invocation.getArgument(3);
+              Runnable onComplete = invocation.getArgument(5);
+              onNext.accept(mock(Cancellable.class), HEADER);
+              onNext.accept(mock(Cancellable.class), row(first));
+              onNext.accept(mock(Cancellable.class), row(second));
+              onComplete.run();
+              return null;
+            })
+        .when(queryApi)
+        .queryRaw(
+            anyString(),
+            any(Dialect.class),
+            anyString(),
+            any(BiConsumer.class),
+            any(Consumer.class),
+            any(Runnable.class));
+
+    List<Current> streamed = new ArrayList<>();
+    repository.streamAllBetweenDates(null, START, END, List.of(ElectricPhase.L1), streamed::add);
+
+    assertEquals(List.of(first, second), streamed);
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void streamingCancelsQueryWhenConsumerFails() {
+    Cancellable cancellable = mock(Cancellable.class);
+    doAnswer(
+            invocation -> {
+              BiConsumer<Cancellable, String> onNext = invocation.getArgument(3);
+              onNext.accept(cancellable, HEADER);
+              onNext.accept(cancellable, row(new Current(1.0, START, ElectricPhase.L1)));
+              return null;
+            })
+        .when(queryApi)
+        .queryRaw(
+            anyString(),
+            any(Dialect.class),
+            anyString(),
+            any(BiConsumer.class),
+            any(Consumer.class),
+            any(Runnable.class));
+
+    assertThrows(
+        IllegalArgumentException.class,
+        () ->
+            repository.streamAll(
+                null,
+                null,
+                value -> {
+                  throw new IllegalArgumentException("client disconnected");
+                }));
+    verify(cancellable).cancel();
+  }
+
+  private String row(Current current) {
+    return ",_result,0,"
+        + current.getTime()
+        + ","
+        + current.getCurrent()
+        + ","
+        + current.getPhase();
+  }
+
+  private FluxRecord window(
+      Instant time, String phase, long count, double sum, double min, double max) {
+    FluxRecord fluxRecord = new FluxRecord(0);
+    fluxRecord.getValues().put("_time", time);
+    fluxRecord.getValues().put("phase", phase);
+    fluxRecord.getValues().put("count", count);
+    fluxRecord.getValues().put("sum", sum);
+    fluxRecord.getValues().put("min", min);
+    fluxRecord.getValues().put("max", max);
+    return fluxRecord;
+  }
+}
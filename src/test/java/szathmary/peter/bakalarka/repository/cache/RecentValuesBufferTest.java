@@ -0,0 +1,43 @@
+package szathmary.peter.bakalarka.repository.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RecentValuesBufferTest {
+
+  @Test
+  void keepsNewestValuesOrderedByTime() {
+    RecentValuesBuffer buffer = new RecentValuesBuffer(3);
+    buffer.add(10, 1.0);
+    buffer.add(30, 3.0);
+    buffer.add(20, 2.0);
+    buffer.add(40, 4.0);
+    buffer.add(5, 0.5);
+    buffer.add(30, 3.5);
+
+    long[] times = new long[4];
+    double[] values = new double[4];
+    int copied = buffer.copyLast(4, times, values);
+
+    assertEquals(3, copied);
+    assertArrayEquals(new long[] {20, 30, 40, 0}, times);
+    assertArrayEquals(new double[] {2.0, 3.5, 4.0, 0.0}, values);
+  }
+
+  @Test
+  void copiesOnlyRequestedNumberOfLastValues() {
+    RecentValuesBuffer buffer = new RecentValuesBuffer(4);
+    for (int i = 1; i <= 6; i++) {
+      buffer.add(i, i);
+    }
+
+    long[] times = new long[2];
+    double[] values = new double[2];
+
+    assertEquals(2, buffer.copyLast(2, times, values));
+    assertArrayEquals(new long[] {5, 6}, times);
+    assertArrayEquals(new double[] {5.0, 6.0}, values);
+  }
+}
@@ -0,0 +1,67 @@
+package szathmary.peter.bakalarka.repository.downsampling;
+
+import org.junit.jupiter.api.Test;
+import szathmary.peter.bakalarka.constant.ElectricPhase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class M4DownsamplerTest {
+
+  @Test
+  void keepsFirstMinMaxAndLastValueOfBucket() {
+    List<Point> points = new ArrayList<>();
+    M4Downsampler downsampler = new M4Downsampler(0, 100, 4, collector(points));
+
+    downsampler.add(ElectricPhase.L1, 0, 5.0);
+    downsampler.add(ElectricPhase.L1, 10, 1.0);
+    downsampler.add(ElectricPhase.L1, 20, 3.0);
+    downsampler.add(ElectricPhase.L1, 30, 9.0);
+    downsampler.add(ElectricPhase.L1, 40, 4.0);
+    downsampler.finish();
+
+    assertEquals(
+        List.of(
+            new Point(ElectricPhase.L1, 0, 5.0),
+            new Point(ElectricPhase.L1, 10, 1.0),
+            new Point(ElectricPhase.L1, 30, 9.0),
+            new Point(ElectricPhase.L1, 40, 4.0)),
+        points);
+  }
+
+  @Test
+  void limitsPointsOfEveryPhaseAndKeepsSpikes() {
+    List<Point> points = new ArrayList<>();
+    M4Downsampler downsampler = new M4Downsampler(0, 100_000, 400, collector(points));
+
+    for (int i = 0; i < 100_000; i++) {
+      downsampler.add(ElectricPhase.L1, i, i == 54_321 ? 1000.0 : 1.0);
+      downsampler.add(ElectricPhase.L2, i, 2.0);
+    }
+    downsampler.finish();
+
+    assertTrue(points.stream().filter(point -> point.phase() == ElectricPhase.L1).count() <= 400);
+    assertTrue(points.stream().filter(point -> point.phase() == ElectricPhase.L2).count() <= 400);
+    assertTrue(points.contains(new Point(ElectricPhase.L1, 54_321, 1000.0)));
+  }
+
+  @Test
+  void emitsEqualValuesOnce() {
+    List<Point> points = new ArrayList<>();
+    M4Downsampler downsampler = new M4Downsampler(0, 100, 4, collector(points));
+
+    downsampler.add(null, 50, 50.0);
+    downsampler.finish();
+
+    assertEquals(List.of(new Point(null, 50, 50.0)), points);
+  }
+
+  private static M4Downsampler.PointConsumer collector(List<Point> points) {
+    return (phase, epochMillis, value) -> points.add(new Point(phase, epochMillis, value));
+  }
+
+  private record Point(ElectricPhase phase, long epochMillis, double value) {}
+}
@@ -0,0 +1,95 @@
+package szathmary.peter.bakalarka.repository.quantity;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import szathmary.peter.bakalarka.constant.ElectricPhase;
+import szathmary.peter.bakalarka.exception.InvalidElectricQuantityException;
+import szathmary.peter.bakalarka.repository.storage.SampleBatch;
+import szathmary.peter.bakalarka.repository.storage.embedded.EmbeddedElectricStorageFactory;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QuantityRepositoryTest {
+
+  private static final Instant START = Instant.parse("2023-05-01T00:00:00Z");
+
+  @TempDir Path directory;
+
+  private EmbeddedElectricStorageFactory storageFactory;
+
+  private DeviceRegistry deviceRegistry;
+
+  private QuantityRepository repository;
+
+  @BeforeEach
+  void setUp() {
+    storageFactory =
+        new EmbeddedElectricStorageFactory(
+            directory.toString(), 16, 86_400_000L, new SimpleMeterRegistry());
+    deviceRegistry = new DeviceRegistry(storageFactory, 2);
+    repository =
+        new QuantityRepository(
+            new QuantityDefinition("current", true),
+            storageFactory,
+            deviceRegistry,
+            new SimpleMeterRegistry(),
+            4,
+            1);
+  }
+
+  @Test
+  void unregisteredDeviceHasNoValues() {
+    assertThrows(IllegalArgumentException.class, () -> repository.saveBatch("meter", batch()));
+    assertTrue(scan("meter").isEmpty());
+  }
+
+  @Test
+  void numberOfDevicesIsLimited() throws InvalidElectricQuantityException {
+    deviceRegistry.register("meter1");
+    deviceRegistry.register("meter2");
+    deviceRegistry.register("meter1");
+
+    assertThrows(InvalidElectricQuantityException.class, () -> deviceRegistry.register("meter3"));
+    assertThrows(InvalidElectricQuantityException.class, () -> deviceRegistry.register("a/b"));
+  }
+
+  @Test
+  void closedDeviceIsOpenedAgain() throws Throwable {
+    deviceRegistry.register("meter1");
+    deviceRegistry.register("meter2");
+    repository.saveBatch("meter1", batch());
+    // storage of meter1 is closed, only one device is kept open
+    repository.saveBatch("meter2", batch());
+    repository.closeIdleDevices(Long.MAX_VALUE);
+
+    assertEquals(List.of(START.toEpochMilli()), scan("meter1"));
+    assertEquals(List.of(START.toEpochMilli()), scan("meter2"));
+    assertTrue(new DeviceRegistry(storageFactory, 2).isRegistered("meter2"));
+  }
+
+  private List<Long> scan(String device) {
+    List<Long> times = new ArrayList<>();
+    repository.scan(
+        device,
+        START,
+        START.plusSeconds(60),
+        List.of(ElectricPhase.L1),
+        (phase, epochMillis, value) -> times.add(epochMillis));
+    return times;
+  }
+
+  private static SampleBatch batch() {
+    SampleBatch batch = new SampleBatch(1);
+    batch.add(ElectricPhase.L1, START.toEpochMilli(), 1.0);
+    return batch;
+  }
+}
@@ -0,0 +1,91 @@
+package szathmary.peter.bakalarka.repository.rollup;
+
+import org.junit.jupiter.api.Test;
+import szathmary.peter.bakalarka.constant.ElectricPhase;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RollupAccumulatorTest {
+
+  private static final long START = Instant.parse("2023-05-01T00:00:00Z").toEpochMilli();
+
+  private static final long MINUTE = Duration.ofMinutes(1).toMillis();
+
+  @Test
+  void trackedValuesAreAggregatedInMemory() {
+    RollupAccumulator accumulator = new RollupAccumulator(START, 2);
+    accumulator.add(ElectricPhase.L1, START + 10_000, 2.0);
+    accumulator.add(ElectricPhase.L1, START + 20_000, 4.0);
+    assertFalse(accumulator.isDrained());
+
+    List<RollupSnapshot> snapshots = accumulator.drainChangedWindows(START + 30_000);
+
+    assertEquals(RollupTier.values().length, snapshots.size());
+    for (RollupSnapshot snapshot : snapshots) {
+      assertEquals(
+          new RollupWindow(snapshot.window().tier(), ElectricPhase.L1, START), snapshot.window());
+      assertEquals(2, snapshot.count());
+      assertEquals(6.0, snapshot.sum());
+      assertEquals(2.0, snapshot.min());
+      assertEquals(4.0, snapshot.max());
+    }
+    assertTrue(accumulator.drainChangedWindows(START + 30_000).isEmpty());
+    assertTrue(accumulator.isDrained());
+  }
+
+  @Test
+  void lateValuesAreRecomputedOneDrainLater() {
+    RollupAccumulator accumulator = new RollupAccumulator(START, 1);
+    // value before tracking start
+    accumulator.add(null, START - 1000, 1.0);
+    accumulator.add(null, START + 10_000, 1.0);
+    // evicts windows of one minute before the ninth minute
+    accumulator.drainChangedWindows(START + 10 * MINUTE);
+    // value of evicted window
+    accumulator.add(null, START + 20_000, 2.0);
+
+    assertTrue(accumulator.drainRecomputations().isEmpty());
+    List<RollupWindow> recomputations = accumulator.drainRecomputations();
+
+    assertEquals(RollupTier.values().length + 1, recomputations.size());
+    assertTrue(
+        recomputations.contains(new RollupWindow(RollupTier.ONE_MINUTE, null, START - MINUTE)));
+    assertTrue(recomputations.contains(new RollupWindow(RollupTier.ONE_MINUTE, null, START)));
+    assertTrue(
+        recomputations.contains(
+            new RollupWindow(
+                RollupTier.ONE_DAY, null, START - RollupTier.ONE_DAY.getDurationMillis())));
+    // windows of longer tiers are not evicted yet
+    List<RollupSnapshot> snapshots = accumulator.drainChangedWindows(START + 10 * MINUTE);
+    assertEquals(RollupTier.values().length - 1, snapshots.size());
+    assertEquals(2, snapshots.get(0).count());
+  }
+
+  @Test
+  void restoredWindowsAreDrainedAgain() {
+    RollupAccumulator accumulator = new RollupAccumulator(START, 1);
+    accumulator.add(ElectricPhase.L2, START + 10_000, 3.0);
+    List<RollupSnapshot> snapshots = accumulator.drainChangedWindows(START + 30_000);
+
+    accumulator.restore(snapshots);
+
+    assertEquals(snapshots, accumulator.drainChangedWindows(START + 30_000));
+
+    // window of one minute is evicted before it is restored, so it is recomputed
+    accumulator.drainChangedWindows(START + 10 * MINUTE);
+    accumulator.restore(snapshots);
+    List<RollupSnapshot> restored = accumulator.drainChangedWindows(START + 10 * MINUTE);
+    assertEquals(RollupTier.values().length - 1, restored.size());
+    accumulator.drainRecomputations();
+    assertEquals(
+        List.of(new RollupWindow(RollupTier.ONE_MINUTE, ElectricPhase.L2, START)),
+        accumulator.drainRecomputations());
+    assertTrue(accumulator.isDrained());
+  }
+}
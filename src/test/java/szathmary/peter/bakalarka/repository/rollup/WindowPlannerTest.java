@@ -0,0 +1,61 @@
+package szathmary.peter.bakalarka.repository.rollup;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WindowPlannerTest {
+
+  @Test
+  void shortestDurationOfLadderIsPlanned() {
+    long day = Duration.ofDays(1).toMillis();
+
+    assertEquals(Duration.ofMinutes(5).toMillis(), WindowPlanner.planWindowMillis(day, null));
+    assertEquals(Duration.ofHours(1).toMillis(), WindowPlanner.planWindowMillis(day, 25));
+    assertEquals(Duration.ofHours(3).toMillis(), WindowPlanner.planWindowMillis(day, 24));
+    assertEquals(Duration.ofSeconds(1).toMillis(), WindowPlanner.planWindowMillis(1, 2));
+  }
+
+  @Test
+  void longRangeIsSplitToMultipleOfLongestDuration() {
+    long week = Duration.ofDays(7).toMillis();
+
+    assertEquals(2 * week, WindowPlanner.planWindowMillis(300 * week, 200));
+  }
+
+  @Test
+  void numberOfPlannedWindowsIsLimited() {
+    long year = Duration.ofDays(365).toMillis();
+
+    assertEquals(
+        Duration.ofHours(1).toMillis(), WindowPlanner.planWindowMillis(year, Integer.MAX_VALUE));
+  }
+
+  @Test
+  void onlyDurationsOfLadderAndMultiplesOfLongestArePlanned() {
+    long week = Duration.ofDays(7).toMillis();
+
+    assertTrue(WindowPlanner.isPlanned(Duration.ofMinutes(15).toMillis()));
+    assertTrue(WindowPlanner.isPlanned(3 * week));
+    assertFalse(WindowPlanner.isPlanned(1));
+    assertFalse(WindowPlanner.isPlanned(Duration.ofMinutes(2).toMillis()));
+    assertFalse(WindowPlanner.isPlanned(0));
+  }
+
+  @Test
+  void rangeIsAlignedToWindows() {
+    long hour = Duration.ofHours(1).toMillis();
+    Instant time = Instant.parse("2023-05-01T10:20:00Z");
+    Instant boundary = Instant.parse("2023-05-01T10:00:00Z");
+
+    assertEquals(boundary, WindowPlanner.alignStart(time, hour));
+    assertEquals(Instant.parse("2023-05-01T11:00:00Z"), WindowPlanner.alignEnd(time, hour));
+    assertEquals(boundary, WindowPlanner.alignStart(boundary, hour));
+    assertEquals(boundary, WindowPlanner.alignEnd(boundary, hour));
+  }
+}
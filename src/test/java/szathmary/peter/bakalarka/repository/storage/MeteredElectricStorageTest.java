@@ -0,0 +1,67 @@
+package szathmary.peter.bakalarka.repository.storage;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import szathmary.peter.bakalarka.constant.ElectricPhase;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+class MeteredElectricStorageTest {
+
+  @Test
+  void recordsWrittenAndScannedValuesPerOperation() throws Throwable {
+    ElectricStorage storage = mock(ElectricStorage.class);
+    doAnswer(
+            invocation -> {
+              SampleConsumer consumer = invocation.getArgument(3);
+              consumer.accept(ElectricPhase.L1, 1000, 1.0);
+              consumer.accept(ElectricPhase.L1, 2000, 2.0);
+              return null;
+            })
+        .when(storage)
+        .scan(any(), any(), any(), any());
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    MeteredElectricStorage meteredStorage =
+        new MeteredElectricStorage(storage, meterRegistry, "current");
+
+    SampleBatch batch = new SampleBatch(3);
+    batch.add(ElectricPhase.L1, 1000, 1.0);
+    batch.add(ElectricPhase.L2, 1000, 2.0);
+    batch.add(ElectricPhase.L3, 1000, 3.0);
+    meteredStorage.write(batch);
+
+    List<Double> scannedValues = new ArrayList<>();
+    meteredStorage.scan(
+        null, Instant.EPOCH, null, (phase, epochMillis, value) -> scannedValues.add(value));
+
+    verify(storage).write(eq(batch));
+    assertEquals(List.of(1.0, 2.0), scannedValues);
+    assertEquals(3, values(meterRegistry, "write").totalAmount());
+    assertEquals(2, values(meterRegistry, "scan").totalAmount());
+    assertEquals(
+        1,
+        meterRegistry
+            .get("electric.storage.operation")
+            .tags("quantity", "current", "operation", "scan")
+            .timer()
+            .count());
+  }
+
+  private static DistributionSummary values(SimpleMeterRegistry meterRegistry, String operation) {
+    return meterRegistry
+        .get("electric.storage.values")
+        .tags("quantity", "current", "operation", operation)
+        .summary();
+  }
+}
@@ -0,0 +1,144 @@
+package szathmary.peter.bakalarka.repository.storage.embedded;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import szathmary.peter.bakalarka.constant.ElectricPhase;
+import szathmary.peter.bakalarka.repository.rollup.AggregatedWindow;
+import szathmary.peter.bakalarka.repository.storage.SampleBatch;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class EmbeddedElectricStorageTest {
+
+  private static final long START = Instant.parse("2023-05-01T23:59:50Z").toEpochMilli();
+
+  private static final long DAY_MILLIS = 86_400_000L;
+
+  @TempDir Path directory;
+
+  @Test
+  void scansValuesAcrossBlocksPartitionsAndReopening() throws IOException {
+    EmbeddedElectricStorage storage = new EmbeddedElectricStorage(directory, true, 4, DAY_MILLIS);
+    // values of L1 cross midnight, so they are stored in two partitions
+    storage.write(batch(ElectricPhase.L1, 0, 12));
+    storage.write(batch(ElectricPhase.L2, 0, 3));
+    storage.flush();
+    storage.close();
+
+    storage = new EmbeddedElectricStorage(directory, true, 4, DAY_MILLIS);
+    // late value overwrites already sealed one
+    SampleBatch lateValue = new SampleBatch(1);
+    lateValue.add(ElectricPhase.L1, START + 2000, 100.0);
+    storage.write(lateValue);
+
+    List<String> scanned = new ArrayList<>();
+    storage.scan(
+        List.of(ElectricPhase.L2, ElectricPhase.L1),
+        Instant.ofEpochMilli(START + 1000),
+        Instant.ofEpochMilli(START + 12_000),
+        (phase, epochMillis, value) ->
+            scanned.add(phase + "@" + (epochMillis - START) + "=" + value));
+
+    assertEquals(
+        List.of(
+            "L1@1000=1.0",
+            "L1@2000=100.0",
+            "L1@3000=3.0",
+            "L1@4000=4.0",
+            "L1@5000=5.0",
+            "L1@6000=6.0",
+            "L1@7000=7.0",
+            "L1@8000=8.0",
+            "L1@9000=9.0",
+            "L1@10000=10.0",
+            "L1@11000=11.0",
+            "L2@1000=1.0",
+            "L2@2000=2.0"),
+        scanned);
+
+    List<String> last = new ArrayList<>();
+    storage.scanLast(
+        null, 2, (phase, epochMillis, value) -> last.add(phase + "@" + (epochMillis - START)));
+    assertEquals(List.of("L1@10000", "L1@11000", "L2@1000", "L2@2000"), last);
+
+    assertArrayEquals(
+        new Instant[] {Instant.ofEpochMilli(START), Instant.ofEpochMilli(START + 11_000)},
+        storage.findTimeBounds(null));
+    assertNull(storage.findTimeBounds(List.of(ElectricPhase.L3)));
+    storage.close();
+  }
+
+  @Test
+  void aggregatesWindowsAlignedToEpoch() throws IOException {
+    EmbeddedElectricStorage storage = new EmbeddedElectricStorage(directory, false, 4, DAY_MILLIS);
+    storage.write(batch(null, 0, 10));
+
+    List<AggregatedWindow> windows =
+        storage.aggregate(
+            null, Instant.ofEpochMilli(START), Instant.ofEpochMilli(START + 10_000), 5000);
+
+    assertEquals(2, windows.size());
+    assertEquals(
+        new AggregatedWindow(Instant.ofEpochMilli(START + 5000), null, 5, 10, 0, 4),
+        windows.get(0));
+    assertEquals(
+        new AggregatedWindow(Instant.ofEpochMilli(START + 10_000), null, 5, 35, 5, 9),
+        windows.get(1));
+    storage.close();
+  }
+
+  @Test
+  void failedSealKeepsUnsealedValuesAndRejectsWholeBatch() throws IOException {
+    EmbeddedElectricStorage storage = new EmbeddedElectricStorage(directory, true, 4, DAY_MILLIS);
+    // segment of partition after midnight can not be created
+    long nextPartition = Math.floorDiv(START, DAY_MILLIS) * DAY_MILLIS + DAY_MILLIS;
+    Path blockedSegment = directory.resolve("L1").resolve(nextPartition + ".seg");
+    Files.createDirectories(blockedSegment);
+
+    // value before midnight is sealed, the other values stay in full head
+    storage.write(batch(ElectricPhase.L1, 9, 14));
+
+    SampleBatch rejected = new SampleBatch(3);
+    rejected.add(ElectricPhase.L2, START, 0.0);
+    rejected.add(ElectricPhase.L2, START + 1000, 1.0);
+    rejected.add(ElectricPhase.L1, START + 20_000, 20.0);
+    assertThrows(UncheckedIOException.class, () -> storage.write(rejected));
+    assertEquals(List.of(9L, 10L, 11L, 12L, 13L), scanSeconds(storage));
+
+    Files.delete(blockedSegment);
+    storage.write(rejected);
+    assertEquals(List.of(0L, 1L, 9L, 10L, 11L, 12L, 13L, 20L), scanSeconds(storage));
+    storage.close();
+  }
+
+  private static List<Long> scanSeconds(EmbeddedElectricStorage storage) {
+    List<Long> seconds = new ArrayList<>();
+    storage.scan(
+        null,
+        Instant.ofEpochMilli(START),
+        Instant.ofEpochMilli(START + 60_000),
+        (phase, epochMillis, value) -> seconds.add((epochMillis - START) / 1000));
+    seconds.sort(null);
+    return seconds;
+  }
+
+  private static SampleBatch batch(ElectricPhase phase, int from, int to) {
+    SampleBatch batch = new SampleBatch(to - from);
+    // values are written out of order
+    for (int i = to - 1; i >= from; i--) {
+      batch.add(phase, START + i * 1000L, i);
+    }
+    return batch;
+  }
+}
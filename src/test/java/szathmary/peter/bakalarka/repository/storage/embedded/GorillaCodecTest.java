@@ -0,0 +1,56 @@
+package szathmary.peter.bakalarka.repository.storage.embedded;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GorillaCodecTest {
+
+  @Test
+  void decodesEncodedValues() {
+    Random random = new Random(42);
+    int count = 1000;
+    long[] times = new long[count];
+    double[] values = new double[count];
+
+    long time = 1_682_899_200_000L;
+    for (int i = 0; i < count; i++) {
+      // regular interval with occasional gaps and jumps of every delta of delta bucket
+      time += i % 100 == 0 ? random.nextInt(1 << 20) : i % 7 == 0 ? 999 : 1000;
+      times[i] = time;
+      values[i] = i % 3 == 0 ? 230.0 : 230.0 + random.nextGaussian();
+    }
+    values[500] = Double.NaN;
+    values[501] = -0.0;
+    values[502] = Double.MAX_VALUE;
+
+    byte[] encoded = GorillaCodec.encode(times, values, 0, count);
+
+    long[] decodedTimes = new long[count];
+    double[] decodedValues = new double[count];
+    GorillaCodec.decode(ByteBuffer.wrap(encoded), 0, count, decodedTimes, decodedValues, 0);
+
+    assertArrayEquals(times, decodedTimes);
+    assertArrayEquals(values, decodedValues);
+  }
+
+  @Test
+  void compressesRegularSeries() {
+    int count = 1024;
+    long[] times = new long[count];
+    double[] values = new double[count];
+    for (int i = 0; i < count; i++) {
+      times[i] = 1_682_899_200_000L + i * 1000L;
+      values[i] = 50.0 + (i % 10) * 0.01;
+    }
+
+    byte[] encoded = GorillaCodec.encode(times, values, 0, count);
+
+    // raw times and values take 16 bytes per value
+    assertTrue(encoded.length < count * 16 / 2);
+  }
+}
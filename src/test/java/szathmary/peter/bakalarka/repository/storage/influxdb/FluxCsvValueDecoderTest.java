@@ -0,0 +1,82 @@
+package szathmary.peter.bakalarka.repository.storage.influxdb;
+
+import org.junit.jupiter.api.Test;
+import szathmary.peter.bakalarka.constant.ElectricPhase;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class FluxCsvValueDecoderTest {
+
+  @Test
+  void decodesRowsOfEveryTable() {
+    List<String> decoded = new ArrayList<>();
+    FluxCsvValueDecoder decoder =
+        new FluxCsvValueDecoder(
+            (phase, epochMillis, value) ->
+                decoded.add(phase + "@" + Instant.ofEpochMilli(epochMillis) + "=" + value));
+
+    decoder.accept(",result,table,_start,_stop,_time,_value,_field,_measurement,phase");
+    decoder.accept(
+        ",_result,0,2023-05-01T00:00:00Z,2023-05-02T00:00:00Z,2023-05-01T23:59:59Z,1.5,value,"
+            + "current,L1");
+    decoder.accept(
+        ",_result,0,2023-05-01T00:00:00Z,2023-05-02T00:00:00Z,2023-05-02T00:00:00.25Z,2,value,"
+            + "current,L1");
+    // table with other columns starts with new header
+    decoder.accept("");
+    decoder.accept(",result,table,_time,_value,device,phase");
+    decoder.accept(",_result,1,1969-12-31T23:59:59.123456789Z,-3.0E2,meter-1,\"L3\"");
+    decoder.accept(",_result,1,2023-05-01T12:00:00+02:00,4,meter-1,");
+    decoder.accept("");
+
+    assertEquals(
+        List.of(
+            "L1@2023-05-01T23:59:59Z=1.5",
+            "L1@2023-05-02T00:00:00.250Z=2.0",
+            "L3@1969-12-31T23:59:59.123Z=-300.0",
+            "null@2023-05-01T10:00:00Z=4.0"),
+        decoded);
+  }
+
+  @Test
+  void errorOfQueryIsThrown() {
+    FluxCsvValueDecoder decoder = new FluxCsvValueDecoder((phase, epochMillis, value) -> {});
+
+    decoder.accept(",error,reference");
+    IllegalStateException exception =
+        assertThrows(
+            IllegalStateException.class,
+            () -> decoder.accept(",\"panic: runtime error, index out of range\","));
+    assertEquals(
+        "Query failed: ,\"panic: runtime error, index out of range\",", exception.getMessage());
+  }
+
+  @Test
+  void invalidRowIsRejected() {
+    FluxCsvValueDecoder decoder = new FluxCsvValueDecoder((phase, epochMillis, value) -> {});
+    decoder.accept(",result,table,_time,_value,phase");
+
+    assertThrows(
+        IllegalStateException.class,
+        () -> decoder.accept(",_result,0,2023-05-01T00:00:00Z,1.0,L4"));
+    assertThrows(IllegalStateException.class, () -> decoder.accept(",_result,0"));
+  }
+
+  @Test
+  void everyPhaseIsParsed() {
+    List<ElectricPhase> phases = new ArrayList<>();
+    FluxCsvValueDecoder decoder =
+        new FluxCsvValueDecoder((phase, epochMillis, value) -> phases.add(phase));
+    decoder.accept(",result,table,_time,_value,phase");
+    for (ElectricPhase phase : ElectricPhase.values()) {
+      decoder.accept(",_result,0,2023-05-01T00:00:00Z,1.0," + phase);
+    }
+
+    assertEquals(List.of(ElectricPhase.values()), phases);
+  }
+}
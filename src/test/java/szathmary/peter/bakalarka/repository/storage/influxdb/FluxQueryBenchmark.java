@@ -0,0 +1,72 @@
+package szathmary.peter.bakalarka.repository.storage.influxdb;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import szathmary.peter.bakalarka.constant.ElectricPhase;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building of Flux queries and their phase filters. It is in the package of storage,
+ * because query builders are not public. Storage is not connected to InfluxDB, queries are only
+ * built.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FluxQueryBenchmark {
+
+  private static final Instant START = Instant.parse("2023-05-01T00:00:00Z");
+
+  private static final Instant END = Instant.parse("2023-05-02T00:00:00Z");
+
+  @Param({"0", "1", "3"})
+  private int phaseCount;
+
+  private InfluxDbElectricStorage storage;
+
+  private List<ElectricPhase> phases;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    storage =
+        new InfluxDbElectricStorage(
+            null, null, "current", null, true, "electric", "org", false, 0);
+    phases = List.of(ElectricPhase.values()).subList(0, phaseCount);
+  }
+
+  @Benchmark
+  public String phaseFilter() {
+    return storage.generatePhaseFilter(phases);
+  }
+
+  @Benchmark
+  public String scanQuery() {
+    return storage.buildScanQuery(phases, START, END);
+  }
+
+  @Benchmark
+  public String scanLastQuery() {
+    return storage.buildScanLastQuery(phases, 1, END);
+  }
+
+  @Benchmark
+  public String rawAggregationQuery() {
+    return storage.buildRawAggregationQuery(START, END, phases, 216_000);
+  }
+}
@@ -0,0 +1,59 @@
+package szathmary.peter.bakalarka.repository.storage.influxdb;
+
+import org.junit.jupiter.api.Test;
+import szathmary.peter.bakalarka.constant.ElectricPhase;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class FluxQueryTemplateTest {
+
+  private static final Instant START = Instant.parse("2023-05-01T00:00:00Z");
+
+  @Test
+  void argumentsAreAppendedBetweenConstantParts() {
+    FluxQueryTemplate template =
+        FluxQueryTemplate.compile(
+            "range(start: ${start}) |> filter(fn: (r) => true${phases}) |> tail(n: ${count})");
+
+    assertEquals(
+        "range(start: 2023-05-01T00:00:00Z) |> filter(fn: (r) => true and (r.phase == \"L2\"))"
+            + " |> tail(n: 5)",
+        template.bind(START, FluxQueryTemplate.phaseFilter(List.of(ElectricPhase.L2)), 5));
+    assertThrows(IllegalArgumentException.class, () -> template.bind(START, 5));
+  }
+
+  @Test
+  void onlyTypedArgumentsAreAccepted() {
+    FluxQueryTemplate template = FluxQueryTemplate.compile("range(start: ${start})");
+
+    assertThrows(
+        IllegalArgumentException.class, () -> template.bind("0) |> drop(columns: [\"_value\"]"));
+  }
+
+  @Test
+  void escapedLiteralIsNotParameter() {
+    String literal = FluxQueryTemplate.quote("a\"${b}\\");
+
+    assertEquals("\"a\\\"\\${b}\\\\\"", literal);
+    assertEquals(
+        "r.device == " + literal + " and 1",
+        FluxQueryTemplate.compile("r.device == " + literal + " and ${count}").bind(1));
+  }
+
+  @Test
+  void phaseFilterIsSharedByEveryOrderOfPhases() {
+    assertSame(
+        FluxQueryTemplate.phaseFilter(List.of(ElectricPhase.L1, ElectricPhase.L3)),
+        FluxQueryTemplate.phaseFilter(
+            List.of(ElectricPhase.L3, ElectricPhase.L1, ElectricPhase.L3)));
+    assertEquals(
+        " and (r.phase == \"L1\" or r.phase == \"L3\")",
+        FluxQueryTemplate.phaseFilter(List.of(ElectricPhase.L3, ElectricPhase.L1)).text());
+    assertEquals("", FluxQueryTemplate.phaseFilter(null).text());
+  }
+}
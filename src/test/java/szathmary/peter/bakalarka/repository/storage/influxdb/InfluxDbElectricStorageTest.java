@@ -0,0 +1,329 @@
+package szathmary.peter.bakalarka.repository.storage.influxdb;
+
+import com.influxdb.Cancellable;
+import com.influxdb.client.InfluxDBClient;
+import com.influxdb.client.QueryApi;
+import com.influxdb.client.domain.Dialect;
+import com.influxdb.query.FluxRecord;
+import com.influxdb.query.FluxTable;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.stubbing.Answer;
+import szathmary.peter.bakalarka.constant.ElectricPhase;
+import szathmary.peter.bakalarka.exception.WriteQueueFullException;
+import szathmary.peter.bakalarka.repository.rollup.RollupTier;
+import szathmary.peter.bakalarka.repository.storage.SampleBatch;
+import szathmary.peter.bakalarka.repository.writer.InfluxDbBatchWriter;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+class InfluxDbElectricStorageTest {
+
+  private static final Instant FIRST = Instant.parse("2023-05-01T00:00:00Z");
+
+  private static final Instant LAST = Instant.parse("2023-05-02T00:00:00Z");
+
+  private static final String HEADER = ",result,table,_time,_value,phase";
+
+  private QueryApi queryApi;
+
+  private InfluxDbElectricStorage storage;
+
+  /** queries of streamed values and values returned by each of them */
+  private final List<String> streamedQueries = new ArrayList<>();
+
+  private final List<List<String>> streamedResults = new ArrayList<>();
+
+  @BeforeEach
+  @SuppressWarnings("unchecked")
+  void setUp() {
+    InfluxDBClient influxDBClient = mock(InfluxDBClient.class);
+    queryApi = mock(QueryApi.class);
+    when(influxDBClient.getQueryApi()).thenReturn(queryApi);
+
+    FluxTable boundsTable = new FluxTable();
+    boundsTable.getRecords().add(value(FIRST, 1.0));
+    boundsTable.getRecords().add(value(LAST, 2.0));
+    when(queryApi.query(anyString(), anyString())).thenReturn(List.of(boundsTable));
+
+    doAnswer(
+            invocation -> {
+              streamedQueries.add(invocation.getArgument(0));
+              BiConsumer<Cancellable, String> onNext = invocation.getArgument(3);
+              Runnable onComplete = invocation.getArgument(5);
+              onNext.accept(mock(Cancellable.class), HEADER);
+              for (String row : streamedResults.remove(0)) {
+                onNext.accept(mock(Cancellable.class), row);
+              }
+              onComplete.run();
+              return null;
+            })
+        .when(queryApi)
+        .queryRaw(
+            anyString(),
+            any(Dialect.class),
+            anyString(),
+            any(BiConsumer.class),
+            any(Consumer.class),
+            any(Runnable.class));
+
+    storage =
+        new InfluxDbElectricStorage(
+            influxDBClient,
+            mock(InfluxDbBatchWriter.class),
+            "current",
+            null,
+            true,
+            "electric",
+            "org",
+            false,
+            0);
+  }
+
+  @Test
+  void lastValuesAreReadFromRangeEndingWithLastValue() {
+    streamedResults.add(List.of(row(LAST.minusSeconds(1), 1.0), row(LAST, 2.0)));
+
+    List<Double> values = new ArrayList<>();
+    storage.scanLast(
+        List.of(ElectricPhase.L1), 2, (phase, epochMillis, value) -> values.add(value));
+
+    assertEquals(List.of(1.0, 2.0), values);
+    assertEquals(1, streamedQueries.size());
+    assertTrue(streamedQueries.get(0).contains("range(start: " + LAST.minusSeconds(1) + ")"));
+    assertTrue(streamedQueries.get(0).contains("tail(n: 2)"));
+    assertFalse(streamedQueries.get(0).contains("sort"));
+  }
+
+  @Test
+  void rangeIsWidenedWhenItDoesNotContainEnoughValues() {
+    streamedResults.add(List.of(row(LAST, 3.0)));
+    streamedResults.add(
+        List.of(row(LAST.minusSeconds(9), 1.0), row(LAST.minusSeconds(5), 2.0), row(LAST, 3.0)));
+
+    List<Double> values = new ArrayList<>();
+    storage.scanLast(
+        List.of(ElectricPhase.L1), 3, (phase, epochMillis, value) -> values.add(value));
+
+    assertEquals(List.of(1.0, 2.0, 3.0), values);
+    assertEquals(2, streamedQueries.size());
+    assertTrue(streamedQueries.get(1).contains("range(start: " + LAST.minusSeconds(11) + ")"));
+  }
+
+  @Test
+  void timeBoundsAreLoadedOnceAndUpdatedByWrittenValues() throws Throwable {
+    assertArrayEquals(new Instant[] {FIRST, LAST}, storage.findTimeBounds(null));
+
+    SampleBatch batch = new SampleBatch(1);
+    batch.add(ElectricPhase.L2, LAST.plusMillis(10_500).toEpochMilli(), 1.0);
+    storage.write(batch);
+
+    assertArrayEquals(
+        new Instant[] {FIRST, LAST.plusSeconds(10)},
+        storage.findTimeBounds(List.of(ElectricPhase.L1, ElectricPhase.L2)));
+    verify(queryApi, times(1)).query(anyString(), anyString());
+  }
+
+  @Test
+  void scanWithoutStartIsBoundedByTheFirstValue() {
+    streamedResults.add(List.of());
+
+    storage.scan(null, null, null, (phase, epochMillis, value) -> {});
+
+    assertTrue(streamedQueries.get(0).contains("range(start: " + FIRST + ")"));
+  }
+
+  @Test
+  void queriesAreFilteredByDevice() {
+    InfluxDbElectricStorage deviceStorage =
+        new InfluxDbElectricStorage(
+            null, null, "current", "meter-1", true, "electric", "org", false, 0);
+
+    assertTrue(storage.buildScanQuery(null, FIRST, LAST).contains("not exists r.device"));
+    assertTrue(
+        deviceStorage
+            .buildScanQuery(List.of(ElectricPhase.L1), FIRST, LAST)
+            .contains("r.device == \"meter-1\""));
+  }
+
+  @Test
+  void rollupsNotAcceptedByWriterAreStoredByNextFlush() throws Throwable {
+    InfluxDbBatchWriter batchWriter = mock(InfluxDbBatchWriter.class);
+    when(batchWriter.getMaxBatchRecords()).thenReturn(100);
+    List<List<String>> enqueued = new ArrayList<>();
+    Answer<Void> recordEnqueued =
+        invocation -> {
+          enqueued.add(List.copyOf(invocation.<List<String>>getArgument(1)));
+          return null;
+        };
+    doAnswer(recordEnqueued)
+        .doThrow(new WriteQueueFullException("Write queue is full"))
+        .doAnswer(recordEnqueued)
+        .when(batchWriter)
+        .enqueue(any(), anyList());
+    when(queryApi.query(anyString(), anyString())).thenReturn(List.of());
+    InfluxDbElectricStorage rollupStorage = createRollupStorage(batchWriter);
+
+    // windows containing tracking start are recomputed, so value is aggregated in later window
+    SampleBatch batch = new SampleBatch(1);
+    batch.add(ElectricPhase.L1, System.currentTimeMillis() + Duration.ofDays(1).toMillis(), 5.0);
+    rollupStorage.write(batch);
+    rollupStorage.flushRollups();
+    assertEquals(1, enqueued.size());
+
+    rollupStorage.flushRollups();
+
+    assertEquals(2, enqueued.size());
+    List<String> rollups = enqueued.get(1);
+    // tracking start is stored with the first accepted rollups
+    assertEquals(RollupTier.values().length + 1, rollups.size());
+    assertTrue(rollups.get(0).startsWith("current_rollup_meta tracking_start=true "));
+    for (RollupTier tier : RollupTier.values()) {
+      assertTrue(
+          rollups.stream()
+              .anyMatch(
+                  rollup ->
+                      rollup.startsWith(tier.getMeasurement("current") + ",phase=L1 ")
+                          && rollup.contains("count=1i")));
+    }
+  }
+
+  @Test
+  void adjacentLateWindowsAreRecomputedByOneQuery() throws Throwable {
+    InfluxDbBatchWriter batchWriter = mock(InfluxDbBatchWriter.class);
+    when(batchWriter.getMaxBatchRecords()).thenReturn(100);
+    List<String> queries = new ArrayList<>();
+    FluxTable windowTable = new FluxTable();
+    FluxRecord window = new FluxRecord(0);
+    window.getValues().put("_time", FIRST.plusSeconds(60));
+    window.getValues().put("phase", "L1");
+    window.getValues().put("count", 1L);
+    window.getValues().put("sum", 1.0);
+    window.getValues().put("min", 1.0);
+    window.getValues().put("max", 1.0);
+    windowTable.getRecords().add(window);
+    when(queryApi.query(anyString(), anyString()))
+        .thenAnswer(
+            invocation -> {
+              String query = invocation.getArgument(0);
+              queries.add(query);
+              return query.contains("range(start: " + FIRST + ",") && query.contains("60000ms")
+                  ? List.of(windowTable)
+                  : List.of();
+            });
+    InfluxDbElectricStorage rollupStorage = createRollupStorage(batchWriter);
+
+    // the first two minutes are adjacent, the fifth minute is not
+    SampleBatch lateValues = new SampleBatch(3);
+    lateValues.add(ElectricPhase.L1, FIRST.toEpochMilli(), 1.0);
+    lateValues.add(ElectricPhase.L1, FIRST.plusSeconds(60).toEpochMilli(), 2.0);
+    lateValues.add(ElectricPhase.L1, FIRST.plusSeconds(240).toEpochMilli(), 3.0);
+    rollupStorage.write(lateValues);
+    // windows are recomputed one flush later than they were marked
+    rollupStorage.flushRollups();
+    assertTrue(queries.isEmpty());
+
+    rollupStorage.flushRollups();
+
+    List<String> minuteQueries =
+        queries.stream()
+            .filter(query -> query.contains("every: 60000ms") && query.contains("\"L1\""))
+            .toList();
+    assertTrue(
+        minuteQueries.stream()
+            .anyMatch(
+                query ->
+                    query.contains(
+                        "range(start: " + FIRST + ", stop: " + FIRST.plusSeconds(120) + ")")));
+    assertTrue(
+        minuteQueries.stream()
+            .anyMatch(
+                query ->
+                    query.contains(
+                        "range(start: "
+                            + FIRST.plusSeconds(240)
+                            + ", stop: "
+                            + FIRST.plusSeconds(300)
+                            + ")")));
+    // both late groups and window containing tracking start
+    assertEquals(3, minuteQueries.size());
+    verify(batchWriter)
+        .enqueue(
+            isNull(),
+            argThat(
+                records ->
+                    records.contains(
+                        "current_rollup_1m,phase=L1 count=1i,max=1.0,min=1.0,sum=1.0 "
+                            + FIRST.getEpochSecond())));
+  }
+
+  @Test
+  void rollupsAreUsedOnlySinceTheEarliestTrackingStart() {
+    Instant trackingStart = LAST.plus(Duration.ofDays(10));
+    List<String> queries = new ArrayList<>();
+    when(queryApi.query(anyString(), anyString()))
+        .thenAnswer(
+            invocation -> {
+              String query = invocation.getArgument(0);
+              queries.add(query);
+              FluxTable table = new FluxTable();
+              if (query.contains("\"current_rollup_meta\"")) {
+                table.getRecords().add(value(trackingStart.plusSeconds(30), 1.0));
+              } else if (query.contains("first()")) {
+                // rollup of late value saved long before tracking started
+                table.getRecords().add(value(FIRST, 1.0));
+              }
+              return List.of(table);
+            });
+    InfluxDbElectricStorage restartedStorage =
+        createRollupStorage(mock(InfluxDbBatchWriter.class));
+    long day = Duration.ofDays(1).toMillis();
+
+    // range in gap between the old rollup and tracking start is aggregated from raw values
+    restartedStorage.aggregate(null, LAST, LAST.plus(Duration.ofDays(2)), day);
+    restartedStorage.aggregate(
+        null, trackingStart, trackingStart.plus(Duration.ofDays(2)), day);
+
+    List<String> aggregationQueries =
+        queries.stream().filter(query -> query.contains("window(every: 86400000ms")).toList();
+    assertEquals(2, aggregationQueries.size());
+    assertTrue(aggregationQueries.get(0).contains("r._measurement == \"current\""));
+    assertTrue(aggregationQueries.get(1).contains("r._measurement == \"current_rollup_1d\""));
+  }
+
+  private InfluxDbElectricStorage createRollupStorage(InfluxDbBatchWriter batchWriter) {
+    InfluxDBClient influxDBClient = mock(InfluxDBClient.class);
+    when(influxDBClient.getQueryApi()).thenReturn(queryApi);
+
+    return new InfluxDbElectricStorage(
+        influxDBClient, batchWriter, "current", null, true, "electric", "org", true, 2);
+  }
+
+  private static String row(Instant time, double value) {
+    return ",_result,0," + time + "," + value + ",L1";
+  }
+
+  private static FluxRecord value(Instant time, double value) {
+    FluxRecord fluxRecord = new FluxRecord(0);
+    fluxRecord.getValues().put("_time", time);
+    fluxRecord.getValues().put("_value", value);
+    fluxRecord.getValues().put("phase", "L1");
+    return fluxRecord;
+  }
+}
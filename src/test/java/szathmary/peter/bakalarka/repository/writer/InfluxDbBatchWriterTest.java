@@ -0,0 +1,156 @@
+package szathmary.peter.bakalarka.repository.writer;
+
+import com.influxdb.client.InfluxDBClient;
+import com.influxdb.client.WriteApiBlocking;
+import com.influxdb.client.domain.WritePrecision;
+import com.influxdb.exceptions.InfluxException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import szathmary.peter.bakalarka.exception.WriteBatchTooLargeException;
+import szathmary.peter.bakalarka.exception.WriteQueueFullException;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class InfluxDbBatchWriterTest {
+
+  private static final long TIMEOUT_MILLIS = 5000;
+
+  private WriteApiBlocking writeApi;
+
+  private InfluxDBClient influxDBClient;
+
+  private InfluxDbBatchWriter writer;
+
+  private SimpleMeterRegistry meterRegistry;
+
+  @BeforeEach
+  void setUp() {
+    writeApi = mock(WriteApiBlocking.class);
+    meterRegistry = new SimpleMeterRegistry();
+    influxDBClient = mock(InfluxDBClient.class);
+    when(influxDBClient.getWriteApiBlocking()).thenReturn(writeApi);
+  }
+
+  @AfterEach
+  void tearDown() throws InterruptedException {
+    if (writer != null) {
+      writer.shutdown();
+    }
+  }
+
+  @Test
+  void fullQueueRejectsWholeBatch() throws Throwable {
+    // writer is not started, so nothing is taken from queue
+    InfluxDbBatchWriter stoppedWriter = createWriter(4, 2, 60_000, 1);
+
+    stoppedWriter.enqueue("meter", List.of("a", "b", "c"));
+    assertThrows(
+        WriteQueueFullException.class, () -> stoppedWriter.enqueue("meter", List.of("d", "e")));
+    stoppedWriter.enqueue("meter", List.of("d"));
+
+    assertThrows(
+        WriteBatchTooLargeException.class,
+        () -> stoppedWriter.enqueue("other", List.of("a", "b", "c", "d", "e")));
+    assertThrows(IllegalArgumentException.class, () -> createWriter(4, 2, 60_000, 5));
+  }
+
+  @Test
+  void fullBatchIsWrittenBeforeFlushInterval() throws Throwable {
+    writer = createWriter(100, 2, 60_000, 1);
+    writer.start();
+
+    writer.enqueue(null, List.of("a", "b", "c"));
+
+    verify(writeApi, timeout(TIMEOUT_MILLIS))
+        .writeRecords("electric", "org", WritePrecision.S, List.of("a", "b"));
+  }
+
+  @Test
+  void partialBatchIsWrittenAfterFlushInterval() throws Throwable {
+    writer = createWriter(100, 10, 50, 1);
+    writer.start();
+
+    writer.enqueue(null, List.of("a"));
+
+    verify(writeApi, timeout(TIMEOUT_MILLIS))
+        .writeRecords("electric", "org", WritePrecision.S, List.of("a"));
+  }
+
+  @Test
+  void failedBatchIsWrittenAgain() throws Throwable {
+    doThrow(new InfluxException("unavailable"))
+        .doNothing()
+        .when(writeApi)
+        .writeRecords(any(), any(), any(WritePrecision.class), anyList());
+    writer = createWriter(100, 1, 10, 1);
+    writer.start();
+
+    writer.enqueue("meter", List.of("a"));
+
+    verify(writeApi, timeout(TIMEOUT_MILLIS).times(2))
+        .writeRecords("electric", "org", WritePrecision.S, List.of("a"));
+  }
+
+  @Test
+  void rejectedBatchIsDroppedAndNextBatchIsWritten() throws Throwable {
+    InfluxException rejected = mock(InfluxException.class);
+    when(rejected.status()).thenReturn(422);
+    doThrow(rejected)
+        .when(writeApi)
+        .writeRecords("electric", "org", WritePrecision.S, List.of("a"));
+    writer = createWriter(100, 1, 10, 1);
+    writer.start();
+
+    writer.enqueue("meter", List.of("a"));
+    writer.enqueue("meter", List.of("b"));
+
+    verify(writeApi, timeout(TIMEOUT_MILLIS))
+        .writeRecords("electric", "org", WritePrecision.S, List.of("b"));
+    verify(writeApi, times(1)).writeRecords("electric", "org", WritePrecision.S, List.of("a"));
+    assertEquals(1, meterRegistry.counter("influxdb.write.dropped").count());
+  }
+
+  @Test
+  void shutdownWritesQueuedRecordsAndRejectsNewOnes() throws Throwable {
+    InfluxDbBatchWriter drainedWriter = createWriter(100, 10, 60_000, 1);
+    drainedWriter.enqueue("meter", List.of("a", "b"));
+    drainedWriter.start();
+    verify(writeApi, never()).writeRecords(any(), any(), any(WritePrecision.class), anyList());
+
+    drainedWriter.shutdown();
+
+    verify(writeApi, times(1))
+        .writeRecords(eq("electric"), eq("org"), eq(WritePrecision.S), eq(List.of("a", "b")));
+    assertThrows(
+        WriteQueueFullException.class, () -> drainedWriter.enqueue("meter", List.of("c")));
+  }
+
+  private InfluxDbBatchWriter createWriter(
+      int queueCapacity, int batchSize, long flushIntervalMillis, int importChunkSize) {
+    return new InfluxDbBatchWriter(
+        influxDBClient,
+        "electric",
+        "org",
+        queueCapacity,
+        batchSize,
+        flushIntervalMillis,
+        1,
+        importChunkSize,
+        meterRegistry);
+  }
+}
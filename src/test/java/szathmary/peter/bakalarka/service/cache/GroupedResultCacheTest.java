@@ -0,0 +1,91 @@
+package szathmary.peter.bakalarka.service.cache;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import szathmary.peter.bakalarka.constant.ElectricPhase;
+import szathmary.peter.bakalarka.dto.electric.GroupedSeriesDto;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class GroupedResultCacheTest {
+
+  private static final long HOUR = 3_600_000;
+
+  private static final long START = Instant.parse("2023-05-01T00:00:00Z").toEpochMilli();
+
+  private List<Long> loadedStarts;
+
+  @BeforeEach
+  void setUp() {
+    loadedStarts = new ArrayList<>();
+  }
+
+  @Test
+  void onlySettledRangesAreCached() {
+    GroupedResultCache cache = new GroupedResultCache(1000, 60_000);
+    long unsettledStart = System.currentTimeMillis() - HOUR;
+
+    get(cache, START);
+    get(cache, START);
+    get(cache, unsettledStart);
+    get(cache, unsettledStart);
+
+    assertEquals(List.of(START, unsettledStart, unsettledStart), loadedStarts);
+    assertThrows(UnsupportedOperationException.class, () -> get(cache, START).clear());
+  }
+
+  @Test
+  void leastRecentlyUsedResultsAreEvictedByNumberOfValues() {
+    // every result has one window, so cache holds two results
+    GroupedResultCache cache = new GroupedResultCache(6, 60_000);
+
+    get(cache, START);
+    get(cache, START + HOUR);
+    get(cache, START);
+    get(cache, START + 2 * HOUR);
+    get(cache, START);
+    get(cache, START + HOUR);
+
+    assertEquals(List.of(START, START + HOUR, START + 2 * HOUR, START + HOUR), loadedStarts);
+  }
+
+  @Test
+  void resultsOverlappingRecentlySavedLateValuesAreNotCached() {
+    GroupedResultCache cache = new GroupedResultCache(1000, 60_000);
+    get(cache, START);
+    get(cache, START + 2 * HOUR);
+
+    // results loaded after invalidation may still miss late values not written yet
+    cache.invalidate(START + 10, START + 20);
+    get(cache, START);
+    get(cache, START);
+    get(cache, START + 2 * HOUR);
+
+    assertEquals(List.of(START, START + 2 * HOUR, START, START), loadedStarts);
+  }
+
+  private List<GroupedSeriesDto> get(GroupedResultCache cache, long startMillis) {
+    return cache.get(
+        null,
+        Instant.ofEpochMilli(startMillis),
+        Instant.ofEpochMilli(startMillis + HOUR),
+        HOUR,
+        List.of(ElectricPhase.L1),
+        () -> {
+          loadedStarts.add(startMillis);
+          return new ArrayList<>(
+              List.of(
+                  new GroupedSeriesDto(
+                      ElectricPhase.L1,
+                      new long[] {startMillis + HOUR},
+                      new double[] {1},
+                      new double[] {2},
+                      new double[] {3})));
+        });
+  }
+}
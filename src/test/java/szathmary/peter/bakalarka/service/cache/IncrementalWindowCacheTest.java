@@ -0,0 +1,138 @@
+package szathmary.peter.bakalarka.service.cache;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import szathmary.peter.bakalarka.constant.ElectricPhase;
+import szathmary.peter.bakalarka.dto.electric.GroupedSeriesDto;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class IncrementalWindowCacheTest {
+
+  private static final long WINDOW = 1000;
+
+  private static final long START = Instant.parse("2023-05-01T00:00:00Z").toEpochMilli();
+
+  private IncrementalWindowCache cache;
+
+  private List<List<Long>> loadedRanges;
+
+  @BeforeEach
+  void setUp() {
+    cache = new IncrementalWindowCache(1_000_000, 0);
+    loadedRanges = new ArrayList<>();
+  }
+
+  @Test
+  void pollAfterCursorLoadsOnlyNewWindows() {
+    List<GroupedSeriesDto> first = get(START, START + 10 * WINDOW, START + 10 * WINDOW + 500);
+
+    assertEquals(
+        List.of(
+            range(START, START + 10 * WINDOW),
+            range(START + 10 * WINDOW, START + 10 * WINDOW + 500)),
+        loadedRanges);
+    assertArrayEquals(windowEnds(START, 11, START + 10 * WINDOW + 500), first.get(0).time());
+
+    loadedRanges.clear();
+    List<GroupedSeriesDto> second =
+        get(START + 10 * WINDOW, START + 12 * WINDOW, START + 12 * WINDOW + 500);
+
+    assertEquals(
+        List.of(
+            range(START + 10 * WINDOW, START + 12 * WINDOW),
+            range(START + 12 * WINDOW, START + 12 * WINDOW + 500)),
+        loadedRanges);
+    assertArrayEquals(
+        new long[] {START + 11 * WINDOW, START + 12 * WINDOW, START + 12 * WINDOW + 500},
+        second.get(0).time());
+    assertArrayEquals(new double[] {11, 12, 12.5}, second.get(0).mean());
+  }
+
+  @Test
+  void settledWindowsAreServedFromCache() {
+    get(START, START + 10 * WINDOW, START + 10 * WINDOW + 500);
+
+    loadedRanges.clear();
+    List<GroupedSeriesDto> result =
+        get(START + 5 * WINDOW, START + 10 * WINDOW, START + 10 * WINDOW + 500);
+
+    assertEquals(
+        List.of(range(START + 10 * WINDOW, START + 10 * WINDOW + 500)), loadedRanges);
+    assertArrayEquals(
+        windowEnds(START + 5 * WINDOW, 6, START + 10 * WINDOW + 500), result.get(0).time());
+  }
+
+  @Test
+  void lateValueReloadsWindowsFromItsWindow() {
+    get(START, START + 10 * WINDOW, START + 10 * WINDOW);
+
+    cache.invalidate(null, START + 7 * WINDOW + 300);
+    loadedRanges.clear();
+    List<GroupedSeriesDto> result = get(START, START + 10 * WINDOW, START + 10 * WINDOW);
+
+    assertEquals(List.of(range(START + 7 * WINDOW, START + 10 * WINDOW)), loadedRanges);
+    assertArrayEquals(windowEnds(START, 10, START + 10 * WINDOW), result.get(0).time());
+  }
+
+  @Test
+  void oldestLateValueOfDeviceSinceSequenceIsFound() {
+    long sequence = IncrementalWindowCache.getInvalidationSequence();
+    cache.invalidate("meter", START + 7 * WINDOW);
+    cache.invalidate("other", START + 2 * WINDOW);
+    cache.invalidate("meter", START + 4 * WINDOW);
+    long laterSequence = IncrementalWindowCache.getInvalidationSequence();
+    cache.invalidate("meter", START + 9 * WINDOW);
+
+    assertEquals(START + 4 * WINDOW, cache.findInvalidatedSince("meter", sequence));
+    assertEquals(START + 9 * WINDOW, cache.findInvalidatedSince("meter", laterSequence));
+    assertNull(cache.findInvalidatedSince(null, sequence));
+    assertEquals(Long.MIN_VALUE, cache.findInvalidatedSince("meter", -1));
+  }
+
+  private List<GroupedSeriesDto> get(long startMillis, long settledEndMillis, long endMillis) {
+    return cache.get(
+        null,
+        Instant.ofEpochMilli(startMillis),
+        Instant.ofEpochMilli(settledEndMillis),
+        Instant.ofEpochMilli(endMillis),
+        WINDOW,
+        List.of(ElectricPhase.L1),
+        this::load);
+  }
+
+  /** Creates window of every second of range with mean equal to its end in seconds from start */
+  private List<GroupedSeriesDto> load(Instant startDate, Instant endDate) {
+    long startMillis = startDate.toEpochMilli();
+    long endMillis = endDate.toEpochMilli();
+    loadedRanges.add(range(startMillis, endMillis));
+
+    long firstWindowStart = Math.floorDiv(startMillis, WINDOW) * WINDOW;
+    int windows = (int) ((endMillis - firstWindowStart + WINDOW - 1) / WINDOW);
+    long[] time = windowEnds(firstWindowStart, windows, endMillis);
+    double[] values = new double[windows];
+    for (int i = 0; i < windows; i++) {
+      values[i] = (time[i] - START) / (double) WINDOW;
+    }
+
+    return List.of(new GroupedSeriesDto(ElectricPhase.L1, time, values, values, values));
+  }
+
+  /** Ends of windows starting at first window start, the last one truncated to end of range */
+  private static long[] windowEnds(long firstWindowStart, int windows, long endMillis) {
+    return LongStream.range(1, windows + 1)
+        .map(i -> Math.min(firstWindowStart + i * WINDOW, endMillis))
+        .toArray();
+  }
+
+  private static List<Long> range(long startMillis, long endMillis) {
+    return List.of(startMillis, endMillis);
+  }
+}
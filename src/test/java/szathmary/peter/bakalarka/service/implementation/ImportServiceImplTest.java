@@ -0,0 +1,156 @@
+package szathmary.peter.bakalarka.service.implementation;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import szathmary.peter.bakalarka.constant.ImportStatus;
+import szathmary.peter.bakalarka.dto.electric.ImportProgressDto;
+import szathmary.peter.bakalarka.exception.InvalidElectricQuantityException;
+import szathmary.peter.bakalarka.exception.WriteBatchTooLargeException;
+import szathmary.peter.bakalarka.exception.WriteQueueFullException;
+import szathmary.peter.bakalarka.repository.storage.SampleBatch;
+import szathmary.peter.bakalarka.service.BaseInfluxdbElectricService;
+import szathmary.peter.bakalarka.service.CurrentElectricService;
+import szathmary.peter.bakalarka.service.GridFrequencyElectricService;
+import szathmary.peter.bakalarka.service.VoltageElectricService;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+
+class ImportServiceImplTest {
+
+  private static final String TIME = "2023-05-01T12:00:0%d.000Z";
+
+  private static final String STORED_TIME = "2023-05-01T12:00:0%dZ";
+
+  private CurrentElectricService currentService;
+
+  private VoltageElectricService voltageService;
+
+  private ImportServiceImpl importService;
+
+  private final List<String> written = new ArrayList<>();
+
+  @BeforeEach
+  void setUp() throws WriteQueueFullException, WriteBatchTooLargeException {
+    currentService = mock(CurrentElectricService.class);
+    GridFrequencyElectricService gridFrequencyService = mock(GridFrequencyElectricService.class);
+    voltageService = mock(VoltageElectricService.class);
+    recordSavedBatches(currentService, "current");
+    recordSavedBatches(gridFrequencyService, "frequency");
+    recordSavedBatches(voltageService, "voltage");
+
+    importService =
+        new ImportServiceImpl(
+            currentService, gridFrequencyService, voltageService, new ObjectMapper(), 2, 10, 0, 0);
+  }
+
+  @Test
+  void importsNdjsonInChunksAndRejectsInvalidRecords() throws Throwable {
+    String body =
+        String.join(
+            "\n",
+            "{\"current\": 1.5, \"time\": \"" + time(0) + "\", \"phase\": \"L1\"}",
+            "{\"frequency\": 50.01, \"time\": \"" + time(0) + "\"}",
+            "{\"voltage\": NaN, \"time\": \"" + time(0) + "\", \"phase\": \"L1\"}",
+            "{\"voltage\": 230.2, \"time\": \"" + time(1) + "\", \"phase\": \"L3\", \"x\": [1]}");
+
+    ImportProgressDto progress = importService.importNdjson("backlog", null, stream(body));
+
+    assertEquals(ImportStatus.COMPLETED, progress.getStatus());
+    assertEquals(4, progress.getCommittedRecords());
+    assertEquals(3, progress.getWrittenValues());
+    assertEquals(1, progress.getRejectedRecords());
+    assertEquals("Record 3: Record has no valid VOLTAGE value", progress.getLastRejection());
+    assertEquals(
+        List.of(
+            "current L1 " + stored(0) + " 1.5",
+            "frequency null " + stored(0) + " 50.01",
+            "voltage L3 " + stored(1) + " 230.2"),
+        written);
+  }
+
+  @Test
+  void resumedImportSkipsCommittedRecords() throws Throwable {
+    String body =
+        String.join(
+            "\n",
+            "quantity,phase,time,value",
+            "CURRENT,L1," + time(0) + ",1.0",
+            "CURRENT,L1," + time(1) + ",2.0",
+            "VOLTAGE,L2," + time(2) + ",230.0",
+            "GRID_FREQUENCY,," + time(3) + ",50.0");
+    doThrow(new WriteQueueFullException("Write queue is full"))
+        .when(voltageService)
+        .saveBatch(any(), any(SampleBatch.class));
+
+    assertThrows(
+        WriteQueueFullException.class,
+        () -> importService.importCsv("backlog", null, stream(body)));
+    ImportProgressDto failed = importService.getProgress("backlog");
+    assertEquals(ImportStatus.FAILED, failed.getStatus());
+    assertEquals(2, failed.getCommittedRecords());
+
+    // committed records were read from other body
+    assertThrows(
+        InvalidElectricQuantityException.class,
+        () -> importService.importCsv("backlog", "meter", stream(body)));
+    assertThrows(
+        InvalidElectricQuantityException.class,
+        () -> importService.importNdjson("backlog", null, stream(body)));
+
+    recordSavedBatches(voltageService, "voltage");
+    written.clear();
+    ImportProgressDto resumed = importService.importCsv("backlog", null, stream(body));
+
+    assertEquals(ImportStatus.COMPLETED, resumed.getStatus());
+    assertEquals(4, resumed.getCommittedRecords());
+    assertEquals(4, resumed.getWrittenValues());
+    assertEquals(
+        List.of("frequency null " + stored(3) + " 50.0", "voltage L2 " + stored(2) + " 230.0"),
+        written);
+  }
+
+  private void recordSavedBatches(BaseInfluxdbElectricService<?> service, String name)
+      throws WriteQueueFullException, WriteBatchTooLargeException {
+    doAnswer(
+            invocation -> {
+              SampleBatch batch = invocation.getArgument(1);
+              batch.forEach(
+                  (phase, epochMillis, value) ->
+                      written.add(
+                          String.join(
+                              " ",
+                              name,
+                              String.valueOf(phase),
+                              Instant.ofEpochMilli(epochMillis).toString(),
+                              String.valueOf(value))));
+              return null;
+            })
+        .when(service)
+        .saveBatch(any(), any(SampleBatch.class));
+  }
+
+  private static String time(int second) {
+    return String.format(TIME, second);
+  }
+
+  private static String stored(int second) {
+    return String.format(STORED_TIME, second);
+  }
+
+  private static InputStream stream(String body) {
+    return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,93 @@
+package szathmary.peter.bakalarka.service.ingest;
+
+import org.junit.jupiter.api.Test;
+import szathmary.peter.bakalarka.constant.ColumnarChannel;
+import szathmary.peter.bakalarka.constant.ElectricPhase;
+import szathmary.peter.bakalarka.exception.InvalidElectricQuantityException;
+import szathmary.peter.bakalarka.repository.storage.SampleBatch;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ColumnarPayloadDecoderTest {
+
+  private static final long TIME = 1_682_899_200_000L;
+
+  @Test
+  void decodesChannelsIntoBatchesOfQuantities() throws InvalidElectricQuantityException {
+    ByteBuffer payload =
+        payload(
+            new long[] {TIME, TIME + 10_000},
+            new ColumnarChannel[] {
+              ColumnarChannel.VOLTAGE_L2, ColumnarChannel.GRID_FREQUENCY, ColumnarChannel.CURRENT_L1
+            },
+            new double[][] {{230.1, 229.9}, {50.01, Double.NaN}, {1.5, 2.5}});
+
+    ColumnarElectricQuantities decoded = ColumnarPayloadDecoder.decode(payload);
+
+    SampleBatch voltages = decoded.voltages();
+    assertEquals(2, voltages.size());
+    assertEquals(ElectricPhase.L2, voltages.getPhase(1));
+    assertEquals(TIME + 10_000, voltages.getEpochMillis(1));
+    assertEquals(229.9, voltages.getValue(1));
+
+    // value that was not read by meter is skipped
+    SampleBatch gridFrequencies = decoded.gridFrequencies();
+    assertEquals(1, gridFrequencies.size());
+    assertNull(gridFrequencies.getPhase(0));
+    assertEquals(50.01, gridFrequencies.getValue(0));
+
+    SampleBatch currents = decoded.currents();
+    assertEquals(2, currents.size());
+    assertEquals(ElectricPhase.L1, currents.getPhase(0));
+    assertEquals(TIME, currents.getEpochMillis(0));
+    assertEquals(1.5, currents.getValue(0));
+  }
+
+  @Test
+  void rejectsPayloadOfUnexpectedLength() {
+    ByteBuffer payload =
+        payload(
+            new long[] {TIME},
+            new ColumnarChannel[] {ColumnarChannel.CURRENT_L1},
+            new double[][] {{1.0}});
+    // declares more samples than payload contains
+    payload.putInt(4, Integer.MAX_VALUE);
+
+    assertThrows(
+        InvalidElectricQuantityException.class, () -> ColumnarPayloadDecoder.decode(payload));
+  }
+
+  @Test
+  void rejectsRepeatedChannel() {
+    ByteBuffer payload =
+        payload(
+            new long[] {TIME},
+            new ColumnarChannel[] {ColumnarChannel.CURRENT_L1, ColumnarChannel.CURRENT_L1},
+            new double[][] {{1.0}, {2.0}});
+
+    assertThrows(
+        InvalidElectricQuantityException.class, () -> ColumnarPayloadDecoder.decode(payload));
+  }
+
+  private static ByteBuffer payload(long[] times, ColumnarChannel[] channels, double[][] values) {
+    ByteBuffer buffer =
+        ByteBuffer.allocate(12 + times.length * 8 + channels.length * (1 + times.length * 8))
+            .order(ByteOrder.LITTLE_ENDIAN);
+    buffer.putInt(ColumnarPayloadDecoder.MAGIC).putInt(times.length).putInt(channels.length);
+    for (long time : times) {
+      buffer.putLong(time);
+    }
+    for (int channel = 0; channel < channels.length; channel++) {
+      buffer.put((byte) channels[channel].ordinal());
+      for (double value : values[channel]) {
+        buffer.putDouble(value);
+      }
+    }
+    return buffer.flip();
+  }
+}
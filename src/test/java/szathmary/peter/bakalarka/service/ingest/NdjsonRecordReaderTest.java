@@ -0,0 +1,55 @@
+package szathmary.peter.bakalarka.service.ingest;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import org.junit.jupiter.api.Test;
+import szathmary.peter.bakalarka.constant.ElectricPhase;
+import szathmary.peter.bakalarka.constant.ElectricQuantities;
+import szathmary.peter.bakalarka.exception.InvalidElectricQuantityException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NdjsonRecordReaderTest {
+
+  private static final String TIME = "2023-05-01T12:00:00.000Z";
+
+  @Test
+  void fieldsOfNestedValuesAreNotReadAsFieldsOfRecord() throws Throwable {
+    NdjsonRecordReader reader =
+        reader(
+            String.join(
+                "\n",
+                "{\"current\": 1.5, \"time\": {\"time\": \"" + TIME + "\"}, \"phase\": \"L1\"}",
+                "{\"voltage\": 230.2, \"phase\": [\"L1\", {\"phase\": \"L2\"}], \"time\": \""
+                    + TIME
+                    + "\"}",
+                "{\"current\": 2.5, \"time\": \"" + TIME + "\", \"phase\": \"L3\"}"));
+    ImportRecord record = new ImportRecord();
+
+    InvalidElectricQuantityException noTime =
+        assertThrows(InvalidElectricQuantityException.class, () -> reader.next(record));
+    assertEquals("Record has no time", noTime.getMessage());
+    InvalidElectricQuantityException noPhase =
+        assertThrows(InvalidElectricQuantityException.class, () -> reader.next(record));
+    assertEquals("VOLTAGE record has no phase", noPhase.getMessage());
+
+    assertTrue(reader.next(record));
+    assertEquals(ElectricQuantities.CURRENT, record.getQuantity());
+    assertEquals(ElectricPhase.L3, record.getPhase());
+    assertEquals(Instant.parse(TIME).toEpochMilli(), record.getEpochMillis());
+    assertEquals(2.5, record.getValue());
+    assertFalse(reader.next(record));
+  }
+
+  private static NdjsonRecordReader reader(String body) throws IOException {
+    return new NdjsonRecordReader(
+        new JsonFactory(), new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+  }
+}
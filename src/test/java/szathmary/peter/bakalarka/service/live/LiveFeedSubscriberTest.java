@@ -0,0 +1,131 @@
+package szathmary.peter.bakalarka.service.live;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import szathmary.peter.bakalarka.constant.ElectricPhase;
+import szathmary.peter.bakalarka.constant.ElectricQuantities;
+import szathmary.peter.bakalarka.constant.LiveFeedOverflowPolicy;
+import szathmary.peter.bakalarka.dto.electric.ElectricQuantitiesDto;
+import szathmary.peter.bakalarka.entity.Current;
+import szathmary.peter.bakalarka.entity.Voltage;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.Mockito.mock;
+
+class LiveFeedSubscriberTest {
+
+  private static final Instant TIME = Instant.parse("2023-05-01T00:00:00Z");
+
+  @Test
+  void filtersQuantitiesAndPhases() {
+    LiveFeedSubscriber subscriber =
+        subscriber(
+            List.of(ElectricQuantities.CURRENT),
+            List.of(ElectricPhase.L2),
+            LiveFeedOverflowPolicy.DROP_OLDEST,
+            10);
+
+    assertFalse(
+        subscriber.offer(
+            dto(
+                List.of(new Current(1.0, TIME, ElectricPhase.L1)),
+                List.of(new Voltage(230.0, TIME, ElectricPhase.L2)))));
+    subscriber.offer(dto(List.of(new Current(2.0, TIME, ElectricPhase.L2)), List.of()));
+
+    assertEquals(
+        List.of(new Current(2.0, TIME, ElectricPhase.L2)),
+        subscriber.drain().values().getCurrents());
+  }
+
+  @Test
+  void dropsOldestValuesWhenFull() {
+    LiveFeedSubscriber subscriber = subscriber(null, null, LiveFeedOverflowPolicy.DROP_OLDEST, 2);
+
+    subscriber.offer(
+        dto(
+            List.of(
+                new Current(1.0, TIME, ElectricPhase.L1),
+                new Current(2.0, TIME.plusSeconds(1), ElectricPhase.L1),
+                new Current(3.0, TIME.plusSeconds(2), ElectricPhase.L1)),
+            List.of()));
+
+    LiveFeedSubscriber.Batch batch = subscriber.drain();
+    assertEquals(1, batch.droppedValues());
+    assertEquals(
+        List.of(
+            new Current(2.0, TIME.plusSeconds(1), ElectricPhase.L1),
+            new Current(3.0, TIME.plusSeconds(2), ElectricPhase.L1)),
+        batch.values().getCurrents());
+  }
+
+  @Test
+  void coalescesToLatestValueOfEverySeriesWhenFull() {
+    LiveFeedSubscriber subscriber = subscriber(null, null, LiveFeedOverflowPolicy.COALESCE, 3);
+
+    subscriber.offer(
+        dto(
+            List.of(
+                new Current(1.0, TIME, ElectricPhase.L1),
+                new Current(2.0, TIME, ElectricPhase.L2),
+                new Current(3.0, TIME.plusSeconds(1), ElectricPhase.L1),
+                new Current(4.0, TIME.plusSeconds(2), ElectricPhase.L1)),
+            List.of()));
+
+    LiveFeedSubscriber.Batch batch = subscriber.drain();
+    assertEquals(2, batch.droppedValues());
+    assertEquals(
+        List.of(
+            new Current(2.0, TIME, ElectricPhase.L2),
+            new Current(4.0, TIME.plusSeconds(2), ElectricPhase.L1)),
+        batch.values().getCurrents());
+  }
+
+  @Test
+  void dropsOldestSeriesWhenCoalescedSeriesExceedCapacity() {
+    LiveFeedSubscriber subscriber = subscriber(null, null, LiveFeedOverflowPolicy.COALESCE, 2);
+
+    subscriber.offer(
+        dto(
+            List.of(
+                new Current(1.0, TIME, ElectricPhase.L1),
+                new Current(2.0, TIME, ElectricPhase.L2),
+                new Current(3.0, TIME, ElectricPhase.L3),
+                new Current(4.0, TIME.plusSeconds(1), ElectricPhase.L2)),
+            List.of()));
+
+    LiveFeedSubscriber.Batch batch = subscriber.drain();
+    assertEquals(2, batch.droppedValues());
+    assertEquals(
+        List.of(
+            new Current(3.0, TIME, ElectricPhase.L3),
+            new Current(4.0, TIME.plusSeconds(1), ElectricPhase.L2)),
+        batch.values().getCurrents());
+    // buffer is used again after drain
+    subscriber.offer(dto(List.of(new Current(5.0, TIME, ElectricPhase.L1)), List.of()));
+    subscriber.offer(dto(List.of(new Current(6.0, TIME, ElectricPhase.L1)), List.of()));
+    assertEquals(0, subscriber.drain().droppedValues());
+  }
+
+  private static LiveFeedSubscriber subscriber(
+      List<ElectricQuantities> quantities,
+      List<ElectricPhase> currentPhases,
+      LiveFeedOverflowPolicy overflowPolicy,
+      int capacity) {
+    return new LiveFeedSubscriber(
+        mock(SseEmitter.class),
+        null,
+        quantities,
+        currentPhases,
+        null,
+        overflowPolicy,
+        capacity);
+  }
+
+  private static ElectricQuantitiesDto dto(List<Current> currents, List<Voltage> voltages) {
+    return new ElectricQuantitiesDto(currents, List.of(), voltages);
+  }
+}
@@ -0,0 +1,138 @@
+package szathmary.peter.bakalarka.service.quantity;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import szathmary.peter.bakalarka.constant.ElectricPhase;
+import szathmary.peter.bakalarka.dto.electric.ValueSeriesDto;
+import szathmary.peter.bakalarka.exception.InvalidElectricQuantityException;
+import szathmary.peter.bakalarka.repository.quantity.DeviceRegistry;
+import szathmary.peter.bakalarka.repository.quantity.ElectricQuantityRegistry;
+import szathmary.peter.bakalarka.repository.quantity.QuantityDefinition;
+import szathmary.peter.bakalarka.repository.storage.ElectricStorageFactory;
+import szathmary.peter.bakalarka.repository.storage.SampleBatch;
+import szathmary.peter.bakalarka.repository.storage.embedded.EmbeddedElectricStorage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class QuantitySeriesRegistryTest {
+
+  private static final long START = Instant.parse("2023-05-01T00:00:00Z").toEpochMilli();
+
+  private static final long DAY_MILLIS = 86_400_000L;
+
+  @TempDir Path directory;
+
+  private QuantitySeriesRegistry seriesRegistry;
+
+  @BeforeEach
+  void setUp() {
+    ElectricStorageFactory storageFactory =
+        (quantityName, device, hasPhases) -> {
+          try {
+            return new EmbeddedElectricStorage(
+                directory.resolve(quantityName), hasPhases, 16, DAY_MILLIS);
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        };
+    ElectricQuantityRegistry quantityRegistry =
+        new ElectricQuantityRegistry(
+            storageFactory,
+            new DeviceRegistry(storageFactory, 10),
+            new SimpleMeterRegistry(),
+            List.of("activePower", "powerFactor"),
+            List.of("gridFrequency"),
+            4,
+            0,
+            0);
+    seriesRegistry = new QuantitySeriesRegistry(quantityRegistry, 1000, 0, 1000);
+  }
+
+  @Test
+  void registersQuantitiesFromConfiguration() {
+    assertEquals(
+        List.of(
+            new QuantityDefinition("activePower", true),
+            new QuantityDefinition("powerFactor", true),
+            new QuantityDefinition("gridFrequency", false)),
+        seriesRegistry.getDefinitions());
+    assertThrows(InvalidElectricQuantityException.class, () -> seriesRegistry.get("unknown"));
+  }
+
+  @Test
+  void savedValuesAreReadAsPrimitiveSeriesOfTheirQuantity() throws Throwable {
+    SampleBatch batch = new SampleBatch(3);
+    batch.add(ElectricPhase.L2, START + 1000, 2.5);
+    batch.add(ElectricPhase.L1, START, 1.0);
+    batch.add(ElectricPhase.L1, START + 1000, 1.5);
+    seriesRegistry.get("activePower").saveBatch(null, batch);
+
+    List<ValueSeriesDto> values =
+        seriesRegistry
+            .get("activePower")
+            .getValues(
+                null, Instant.ofEpochMilli(START), Instant.ofEpochMilli(START + 2000), null, null);
+
+    assertEquals(
+        List.of(
+            new ValueSeriesDto(
+                ElectricPhase.L1, new long[] {START, START + 1000}, new double[] {1.0, 1.5}),
+            new ValueSeriesDto(
+                ElectricPhase.L2, new long[] {START + 1000}, new double[] {2.5})),
+        values);
+    assertEquals(
+        List.of(
+            new ValueSeriesDto(
+                ElectricPhase.L1, new long[] {START + 1000}, new double[] {1.5}),
+            new ValueSeriesDto(
+                ElectricPhase.L2, new long[] {START + 1000}, new double[] {2.5})),
+        seriesRegistry.get("activePower").getLastNValues(null, 1, null));
+    // values of other quantity are stored separately
+    assertEquals(
+        List.of(),
+        seriesRegistry
+            .get("powerFactor")
+            .getValues(
+                null, Instant.ofEpochMilli(START), Instant.ofEpochMilli(START + 2000), null, null));
+  }
+
+  @Test
+  void streamedValuesAreSplitIntoSeriesOfLimitedSize() throws Throwable {
+    SampleBatch batch = new SampleBatch(4);
+    batch.add(ElectricPhase.L1, START, 1.0);
+    batch.add(ElectricPhase.L2, START, 2.0);
+    batch.add(ElectricPhase.L1, START + 1000, 1.5);
+    batch.add(ElectricPhase.L1, START + 2000, 1.75);
+    seriesRegistry.get("activePower").saveBatch(null, batch);
+
+    List<ValueSeriesDto> series = new ArrayList<>();
+    seriesRegistry
+        .get("activePower")
+        .streamValues(
+            null,
+            Instant.ofEpochMilli(START),
+            Instant.ofEpochMilli(START + 3000),
+            null,
+            null,
+            2,
+            series::add);
+
+    assertEquals(
+        List.of(
+            new ValueSeriesDto(
+                ElectricPhase.L1, new long[] {START, START + 1000}, new double[] {1.0, 1.5}),
+            new ValueSeriesDto(ElectricPhase.L1, new long[] {START + 2000}, new double[] {1.75}),
+            new ValueSeriesDto(ElectricPhase.L2, new long[] {START}, new double[] {2.0})),
+        series);
+  }
+}